@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+
+# usage: ./runbench.sh [--quick] [--only=<prefix>] [baseline.json]
+# results are written to results/<commit>.json; if a baseline file is given,
+# the new results are compared against it
+
+# create bin directories if they don't exist
+if [ ! -d "../bin" ]
+then
+    mkdir ../bin
+fi
+if [ ! -d "../bench-bin" ]
+then
+    mkdir ../bench-bin
+fi
+
+# compile the code and the benchmarks, terminates if error occurred
+if ! javac -Xlint:none -d ../bin ../src/main/java/*.java
+then
+    echo "********** BUILD FAILURE **********"
+    exit 1
+fi
+if ! javac -Xlint:none -cp ../bin -d ../bench-bin ../src/bench/java/*.java
+then
+    echo "********** BENCHMARK BUILD FAILURE **********"
+    exit 1
+fi
+
+# name the results after the commit being measured
+COMMIT=$(git rev-parse --short HEAD 2>/dev/null || echo unknown)
+if [ -n "$(git status --porcelain -- ../src 2>/dev/null)" ]
+then
+    COMMIT="$COMMIT-dirty"
+fi
+mkdir -p results
+
+BASELINE=""
+ARGS=()
+for ARG in "$@"
+do
+    if [[ "$ARG" == *.json ]]
+    then
+        BASELINE="$ARG"
+    else
+        ARGS+=("$ARG")
+    fi
+done
+
+# run the benchmarks with a fixed heap so that runs are comparable
+if ! java -Xms4g -Xmx4g -classpath ../bin:../bench-bin EncikBenchmarks "${ARGS[@]}" \
+    --commit="$COMMIT" --out="results/$COMMIT.json"
+then
+    echo "********** BENCHMARK FAILURE **********"
+    exit 1
+fi
+
+# compare against the baseline, if one was given
+if [ -n "$BASELINE" ]
+then
+    java -classpath ../bench-bin BenchmarkComparison "$BASELINE" "results/$COMMIT.json"
+    exit $?
+fi
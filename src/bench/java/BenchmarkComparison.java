@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares two result files written by EncikBenchmarks and reports the
+ * benchmarks that became slower by more than a threshold.
+ *
+ * Usage: {@code java BenchmarkComparison <baseline.json> <current.json> [--threshold=<percent>]}
+ * Exits with status 1 if any benchmark regressed.
+ */
+public class BenchmarkComparison {
+    private static final String FLAG_THRESHOLD = "--threshold=";
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+    private static final Pattern RESULT = Pattern.compile(
+            "\\{\"name\": \"([^\"]*)\", \"params\": (\\{[^}]*\\}), \"nsPerOp\": ([0-9.]+)");
+
+    /**
+     * Runs the comparison.
+     *
+     * @param args See the class description.
+     * @throws IOException If a result file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java BenchmarkComparison <baseline.json> <current.json> "
+                    + "[--threshold=<percent>]");
+            System.exit(2);
+        }
+        double threshold = DEFAULT_THRESHOLD_PERCENT;
+        if (args.length > 2 && args[2].startsWith(FLAG_THRESHOLD)) {
+            threshold = Double.parseDouble(args[2].substring(FLAG_THRESHOLD.length()));
+        }
+        Map<String, Double> baseline = readResults(args[0]);
+        Map<String, Double> current = readResults(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s -> %12.1f ns/op  (new)%n", entry.getKey(), "", entry.getValue());
+                continue;
+            }
+            double change = (entry.getValue() - before) / before * 100;
+            boolean isRegression = change > threshold;
+            if (isRegression) {
+                regressions++;
+            }
+            System.out.printf("%-70s %12.1f -> %12.1f ns/op  %+7.1f%%%s%n", entry.getKey(), before,
+                    entry.getValue(), change, isRegression ? "  REGRESSION" : "");
+        }
+        System.out.println(regressions + " regression(s) above " + threshold + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Reads the time per operation of each benchmark in a result file.
+     *
+     * @param path The result file.
+     * @return The nanoseconds per operation, keyed by name and parameters.
+     * @throws IOException If the file cannot be read.
+     */
+    private static Map<String, Double> readResults(String path) throws IOException {
+        Map<String, Double> results = new LinkedHashMap<>();
+        Matcher matcher = RESULT.matcher(Files.readString(Paths.get(path), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            results.put(matcher.group(1) + " " + matcher.group(2), Double.parseDouble(matcher.group(3)));
+        }
+        return results;
+    }
+}
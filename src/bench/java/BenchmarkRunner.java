@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs small benchmarks and records their results as JSON.
+ * Each benchmark is warmed up, then timed over several iterations of a fixed
+ * duration. Console output produced by the code under test is discarded while
+ * it runs, so that printing to the terminal is not measured.
+ *
+ * This stands in for JMH, which the project cannot use without a build file.
+ * Warm-up iterations run the operation for as long as timed ones, so that it
+ * is compiled before it is measured. Every operation runs through the same
+ * call site, which is too polymorphic for the JIT to inline, and the value
+ * each run returns is folded into a volatile field, so the work producing it
+ * cannot be discarded as dead code. Numbers are folded in by value and other
+ * results by identity, so consuming a result costs the same whatever its
+ * size.
+ */
+public class BenchmarkRunner {
+    private static final PrintStream DISCARDING_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    /** Consumes benchmark results so that the JIT cannot discard them. */
+    private static volatile long blackhole;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final ArrayList<Result> results = new ArrayList<>();
+
+    /**
+     * A single operation to benchmark. The returned value is consumed so that
+     * the work producing it cannot be optimised away.
+     */
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Constructs a BenchmarkRunner.
+     *
+     * @param warmupIterations      The number of untimed iterations.
+     * @param measurementIterations The number of timed iterations.
+     * @param iterationMillis       The duration of each iteration.
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    /**
+     * Benchmarks an operation and records the result.
+     *
+     * @param name      The benchmark name.
+     * @param params    The parameters the benchmark ran with, e.g. task count.
+     * @param operation The operation to time.
+     * @throws Exception If the operation fails.
+     */
+    public void run(String name, Map<String, Object> params, Operation operation) throws Exception {
+        PrintStream out = System.out;
+        double[] nanosPerOp = new double[measurementIterations];
+        long sink = 0;
+        System.setOut(DISCARDING_OUT);
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                sink += runIteration(operation)[2];
+            }
+            for (int i = 0; i < measurementIterations; i++) {
+                long[] iteration = runIteration(operation);
+                nanosPerOp[i] = (double) iteration[0] / iteration[1];
+                sink += iteration[2];
+            }
+        } finally {
+            System.setOut(out);
+        }
+        blackhole = sink;
+        Result result = new Result(name, params, nanosPerOp);
+        results.add(result);
+        out.printf("%-32s %-36s %14.1f ns/op +- %.1f%n", name, params, result.mean(), result.error());
+    }
+
+    /**
+     * Writes all recorded results as a JSON document.
+     *
+     * @param path The file to write.
+     * @param meta Information about the run, such as the commit measured.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeJson(Path path, Map<String, Object> meta) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        for (Map.Entry<String, Object> entry : meta.entrySet()) {
+            json.append("  ").append(quote(entry.getKey())).append(": ").append(toJson(entry.getValue()))
+                    .append(",\n");
+        }
+        json.append("  \"benchmarks\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append("    {\"name\": ").append(quote(result.name))
+                    .append(", \"params\": ").append(toJson(result.params))
+                    .append(", \"nsPerOp\": ").append(String.format(Locale.ROOT, "%.3f", result.mean()))
+                    .append(", \"error\": ").append(String.format(Locale.ROOT, "%.3f", result.error()))
+                    .append(", \"opsPerSecond\": ").append(String.format(Locale.ROOT, "%.3f", 1e9 / result.mean()))
+                    .append("}").append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(path, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs the operation repeatedly for one iteration's duration.
+     *
+     * @param operation The operation.
+     * @return The elapsed nanoseconds, the number of operations run and a
+     *         value derived from the results.
+     * @throws Exception If the operation fails.
+     */
+    private long[] runIteration(Operation operation) throws Exception {
+        long operations = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += consume(operation.run());
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return new long[] {elapsed, operations, sink};
+    }
+
+    /**
+     * Returns a value derived from a benchmark result in constant time.
+     *
+     * @param value The result.
+     * @return Its value if it is a number, or else its identity hash code.
+     */
+    private static long consume(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return System.identityHashCode(value);
+    }
+
+    /**
+     * Builds a parameter map from alternating names and values.
+     *
+     * @param namesAndValues The parameter names and values.
+     * @return The parameter map, in the given order.
+     */
+    public static Map<String, Object> params(Object... namesAndValues) {
+        LinkedHashMap<String, Object> params = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            params.put(String.valueOf(namesAndValues[i]), namesAndValues[i + 1]);
+        }
+        return params;
+    }
+
+    /**
+     * Converts a string, number or map of them to JSON.
+     *
+     * @param value The value.
+     * @return The JSON text.
+     */
+    private static String toJson(Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Map) {
+            StringBuilder json = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (json.length() > 1) {
+                    json.append(", ");
+                }
+                json.append(quote(String.valueOf(entry.getKey()))).append(": ").append(toJson(entry.getValue()));
+            }
+            return json.append("}").toString();
+        }
+        return quote(String.valueOf(value));
+    }
+
+    /**
+     * Quotes a string for JSON.
+     *
+     * @param text The string.
+     * @return The quoted string.
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * The timings of one benchmark.
+     */
+    private static class Result {
+        final String name;
+        final Map<String, Object> params;
+        final double[] nanosPerOp;
+
+        Result(String name, Map<String, Object> params, double[] nanosPerOp) {
+            this.name = name;
+            this.params = params;
+            this.nanosPerOp = nanosPerOp;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double value : nanosPerOp) {
+                sum += value;
+            }
+            return sum / nanosPerOp.length;
+        }
+
+        double error() {
+            if (nanosPerOp.length < 2) {
+                return 0;
+            }
+            double mean = mean();
+            double squares = 0;
+            for (double value : nanosPerOp) {
+                squares += (value - mean) * (value - mean);
+            }
+            return Math.sqrt(squares / (nanosPerOp.length - 1));
+        }
+    }
+}
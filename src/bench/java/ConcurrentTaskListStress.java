@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress-tests ConcurrentTaskList under contention.
+ *
+ * The first phase checks that reads are linearizable: writers change the
+ * list one at a time, as commands do, and log each change, while readers
+ * take snapshots and search without holding the monitor. Replaying the log
+ * afterwards, every snapshot and search result must match the list as it
+ * was at some point while the read was running.
+ *
+ * The second phase has every thread add, remove and mark tasks by index
+ * with no outside locking, and then checks that no change was lost or
+ * applied twice and that the search index still agrees with the list.
+ *
+ * Usage: {@code java ConcurrentTaskListStress [threads] [secondsPerPhase]}
+ * Exits with status 1 if a check fails.
+ */
+public class ConcurrentTaskListStress {
+    private static final String WORD = "alpha";
+    private static final int TARGET_SIZE = 200;
+    private static final int MAX_LOGGED_CHANGES = 1_000_000;
+    private static final int MAX_RECORDED_READS = 200_000;
+
+    /**
+     * Runs both phases.
+     *
+     * @param args See the class description.
+     * @throws InterruptedException If interrupted while waiting for threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long millis = (args.length > 1 ? Long.parseLong(args[1]) : 5) * 1000;
+        boolean isPassed = checkLinearizableReads(threads, millis) & checkConcurrentUpdates(threads, millis);
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Runs the first phase.
+     *
+     * @param threads The number of writer threads, and of reader threads.
+     * @param millis  How long to run.
+     * @return True if every read matched a state of the list.
+     * @throws InterruptedException If interrupted while waiting for threads.
+     */
+    private static boolean checkLinearizableReads(int threads, long millis) throws InterruptedException {
+        ConcurrentTaskList list = new ConcurrentTaskList();
+        ArrayList<int[]> log = new ArrayList<>();
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        ConcurrentLinkedQueue<Read> reads = new ConcurrentLinkedQueue<>();
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        AtomicInteger nextDescription = new AtomicInteger();
+
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                while (isRunning.get() && completed.get() < MAX_LOGGED_CHANGES) {
+                    synchronized (list) {
+                        started.incrementAndGet();
+                        log.add(applyRandomChange(list, random, nextDescription));
+                        completed.incrementAndGet();
+                    }
+                }
+            }));
+            workers.add(new Thread(() -> {
+                while (isRunning.get() && reads.size() < MAX_RECORDED_READS) {
+                    int before = completed.get();
+                    List<Task> snapshot = list.getTasks();
+                    int afterSnapshot = started.get();
+                    reads.add(new Read(before, afterSnapshot, ids(snapshot), false));
+                    before = completed.get();
+                    TaskList matches = list.findWord(WORD);
+                    reads.add(new Read(before, started.get(), ids(matches.getTasks()), true));
+                }
+            }));
+        }
+        runFor(workers, isRunning, millis);
+
+        // Replay the log, checking each read against every state in its window.
+        ArrayList<Read> pending = new ArrayList<>(reads);
+        pending.sort((a, b) -> Integer.compare(a.from, b.from));
+        ArrayList<Integer> state = new ArrayList<>();
+        HashSet<Integer> wordIds = new HashSet<>();
+        ArrayList<Read> active = new ArrayList<>();
+        int next = 0;
+        long failures = 0;
+        for (int position = 0; position <= log.size(); position++) {
+            while (next < pending.size() && pending.get(next).from <= position) {
+                active.add(pending.get(next++));
+            }
+            for (int i = active.size() - 1; i >= 0; i--) {
+                Read read = active.get(i);
+                if (read.matches(state, wordIds)) {
+                    active.remove(i);
+                } else if (read.to <= position) {
+                    failures++;
+                    active.remove(i);
+                }
+            }
+            if (position < log.size()) {
+                replay(log.get(position), state, wordIds);
+            }
+        }
+        failures += active.size() + (pending.size() - next);
+        System.out.printf("linearizable reads: %d changes, %d reads checked, %d not matching any state%n",
+                log.size(), pending.size(), failures);
+        return failures == 0;
+    }
+
+    /**
+     * Makes one random change to the list and returns a log record of it:
+     * {0, id, hasWord} for an add, {1, index, id} for a remove, and
+     * {2, index, id} for a mark.
+     *
+     * @param list            The list.
+     * @param random          The random source.
+     * @param nextDescription A counter used to make descriptions unique.
+     * @return The log record.
+     */
+    private static int[] applyRandomChange(ConcurrentTaskList list, Random random, AtomicInteger nextDescription) {
+        int size = list.size();
+        int choice = random.nextInt(3);
+        if (size == 0 || (choice == 0 && size < 2 * TARGET_SIZE) || size < TARGET_SIZE / 2) {
+            boolean hasWord = random.nextBoolean();
+            Task task = new Todo("task " + nextDescription.incrementAndGet() + (hasWord ? " " + WORD : ""));
+            list.add(task);
+            return new int[] {0, task.getId(), hasWord ? 1 : 0};
+        }
+        int index = random.nextInt(size);
+        if (choice == 1) {
+            return new int[] {1, index, list.remove(index).getId()};
+        }
+        return new int[] {2, index, list.markAsDone(index).getId()};
+    }
+
+    /**
+     * Applies a logged change to the model of the list.
+     *
+     * @param record  The log record.
+     * @param state   The ids of the tasks in the list, in order.
+     * @param wordIds The ids of the tasks whose descriptions contain the word.
+     */
+    private static void replay(int[] record, ArrayList<Integer> state, HashSet<Integer> wordIds) {
+        if (record[0] == 0) {
+            state.add(record[1]);
+            if (record[2] == 1) {
+                wordIds.add(record[1]);
+            }
+        } else if (record[0] == 1) {
+            int removed = state.remove(record[1]);
+            if (removed != record[2]) {
+                throw new IllegalStateException("Log replay removed task " + removed + ", expected " + record[2]);
+            }
+        } else if (state.get(record[1]) != record[2]) {
+            throw new IllegalStateException("Log replay marked the wrong task at index " + record[1]);
+        }
+    }
+
+    /**
+     * Runs the second phase.
+     *
+     * @param threads The number of threads.
+     * @param millis  How long to run.
+     * @return True if the list is consistent afterwards.
+     * @throws InterruptedException If interrupted while waiting for threads.
+     */
+    private static boolean checkConcurrentUpdates(int threads, long millis) throws InterruptedException {
+        ConcurrentTaskList list = new ConcurrentTaskList();
+        ConcurrentLinkedQueue<Integer> added = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Integer> removed = new ConcurrentLinkedQueue<>();
+        AtomicLong marks = new AtomicLong();
+        AtomicLong missedIndexes = new AtomicLong();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = 1000 + t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                int count = 0;
+                while (isRunning.get()) {
+                    try {
+                        int size = list.size();
+                        int choice = random.nextInt(3);
+                        if (size < TARGET_SIZE / 2 || (choice == 0 && size < 2 * TARGET_SIZE)) {
+                            Task task = new Todo("task " + seed + "-" + count++
+                                    + (random.nextBoolean() ? " " + WORD : ""));
+                            list.add(task);
+                            added.add(task.getId());
+                        } else if (choice == 1) {
+                            removed.add(list.remove(random.nextInt(size)).getId());
+                        } else {
+                            list.markAsDone(random.nextInt(size));
+                            marks.incrementAndGet();
+                        }
+                    } catch (IndexOutOfBoundsException e) {
+                        // Another thread shrank the list after it was measured.
+                        missedIndexes.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                }
+            }));
+            workers.add(new Thread(() -> {
+                while (isRunning.get()) {
+                    try {
+                        list.findWord(WORD);
+                        list.getTasks();
+                        list.getByIds(list.filter(FilterIndex.Status.DONE, null, List.of()).slice(0, 100));
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                }
+            }));
+        }
+        runFor(workers, isRunning, millis);
+
+        HashSet<Integer> expected = new HashSet<>(added);
+        boolean isConsistent = errors.get() == 0 && expected.size() == added.size();
+        for (int id : removed) {
+            isConsistent &= expected.remove(id);
+        }
+        int[] finalIds = ids(list.getTasks());
+        isConsistent &= finalIds.length == expected.size();
+        for (int i = 0; i < finalIds.length; i++) {
+            isConsistent &= expected.contains(finalIds[i]) && (i == 0 || finalIds[i - 1] < finalIds[i]);
+        }
+        ArrayList<Task> scanned = new ArrayList<>();
+        for (Task task : list.getTasks()) {
+            if (Arrays.asList(task.getDescription().split(" ")).contains(WORD)) {
+                scanned.add(task);
+            }
+        }
+        isConsistent &= Arrays.equals(ids(scanned), ids(list.findWord(WORD).getTasks()));
+        ArrayList<Task> done = new ArrayList<>();
+        for (Task task : list.getTasks()) {
+            if (task.isDone()) {
+                done.add(task);
+            }
+        }
+        isConsistent &= Arrays.equals(ids(done), list.filter(FilterIndex.Status.DONE, null, List.of())
+                .slice(0, Integer.MAX_VALUE));
+        System.out.printf("concurrent updates: %d adds, %d removes, %d marks, %d stale indexes, %d errors, %s%n",
+                added.size(), removed.size(), marks.get(), missedIndexes.get(), errors.get(),
+                isConsistent ? "consistent" : "INCONSISTENT");
+        return isConsistent;
+    }
+
+    /**
+     * Starts the threads, lets them run, then stops them and waits.
+     *
+     * @param threads   The threads.
+     * @param isRunning The flag the threads poll.
+     * @param millis    How long to run.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private static void runFor(List<Thread> threads, AtomicBoolean isRunning, long millis)
+            throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(millis);
+        isRunning.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Returns the ids of tasks, in order.
+     *
+     * @param tasks The tasks.
+     * @return Their ids.
+     */
+    private static int[] ids(List<Task> tasks) {
+        return tasks.stream().mapToInt(Task::getId).toArray();
+    }
+
+    /**
+     * A read of the list, and the range of logged changes it may have seen.
+     */
+    private static class Read {
+        final int from;
+        final int to;
+        final int[] ids;
+        final boolean isSearch;
+
+        Read(int from, int to, int[] ids, boolean isSearch) {
+            this.from = from;
+            this.to = to;
+            this.ids = ids;
+            this.isSearch = isSearch;
+        }
+
+        boolean matches(List<Integer> state, HashSet<Integer> wordIds) {
+            int matched = 0;
+            for (int id : state) {
+                if (isSearch && !wordIds.contains(id)) {
+                    continue;
+                }
+                if (matched == ids.length || ids[matched] != id) {
+                    return false;
+                }
+                matched++;
+            }
+            return matched == ids.length;
+        }
+    }
+}
@@ -0,0 +1,655 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the hot paths of Encik: command handling and lexing, search,
+ * removing tasks, loading and saving, and rendering the task list.
+ * Results are printed and written as JSON so that runs on different commits
+ * can be compared with BenchmarkComparison.
+ *
+ * Usage: {@code java EncikBenchmarks [--quick] [--out=<file>] [--commit=<id>] [--only=<prefix>]}
+ */
+public class EncikBenchmarks {
+    private static final String FLAG_QUICK = "--quick";
+    private static final String FLAG_OUT = "--out=";
+    private static final String FLAG_COMMIT = "--commit=";
+    private static final String FLAG_ONLY = "--only=";
+    private static final long SEED = 42;
+    private static final int COMMAND_LIST_SIZE = 1000;
+    private static final long JOURNAL_COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+
+    private final BenchmarkRunner runner;
+    private final boolean isQuick;
+    private final String only;
+
+    /**
+     * Constructs the benchmark suite.
+     *
+     * @param runner  The runner that times and records each benchmark.
+     * @param isQuick Whether to skip the largest task lists.
+     * @param only    A benchmark name prefix to restrict the run to, or an
+     *                empty string to run everything.
+     */
+    public EncikBenchmarks(BenchmarkRunner runner, boolean isQuick, String only) {
+        this.runner = runner;
+        this.isQuick = isQuick;
+        this.only = only;
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args See the class description.
+     * @throws Exception If a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        boolean isQuick = false;
+        Path out = Paths.get("bench-results.json");
+        String commit = "unknown";
+        String only = "";
+        for (String arg : args) {
+            if (arg.equals(FLAG_QUICK)) {
+                isQuick = true;
+            } else if (arg.startsWith(FLAG_OUT)) {
+                out = Paths.get(arg.substring(FLAG_OUT.length()));
+            } else if (arg.startsWith(FLAG_COMMIT)) {
+                commit = arg.substring(FLAG_COMMIT.length());
+            } else if (arg.startsWith(FLAG_ONLY)) {
+                only = arg.substring(FLAG_ONLY.length());
+            }
+        }
+
+        BenchmarkRunner runner = isQuick ? new BenchmarkRunner(1, 3, 200) : new BenchmarkRunner(3, 5, 1000);
+        EncikBenchmarks benchmarks = new EncikBenchmarks(runner, isQuick, only);
+        benchmarks.benchmarkCommands();
+        benchmarks.benchmarkLexer();
+        benchmarks.benchmarkFind();
+        benchmarks.benchmarkRemove();
+        benchmarks.benchmarkReminders();
+        benchmarks.benchmarkUndo();
+        benchmarks.benchmarkFilter();
+        benchmarks.benchmarkMetrics();
+        benchmarks.benchmarkDescriptionPool();
+        benchmarks.benchmarkStorage();
+        benchmarks.benchmarkUi();
+
+        runner.writeJson(out, BenchmarkRunner.params(
+                "commit", commit,
+                "timestamp", Instant.now().toString(),
+                "javaVersion", System.getProperty("java.version"),
+                "quick", isQuick));
+        System.out.println("Results written to " + out);
+    }
+
+    /**
+     * Benchmarks Parser.handleCommand for each command type on a list of a
+     * thousand tasks, persisting through a journal that is never forced to
+     * disk. Adds and deletes are undone directly on the list so that its size
+     * stays constant.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkCommands() throws Exception {
+        if (!isSelected("parser")) {
+            return;
+        }
+        Path directory = Files.createTempDirectory("encik-bench");
+        TaskGenerator generator = new TaskGenerator(SEED);
+        Storage storage = new Storage(directory.resolve("encik.txt").toString(), Storage.Mode.JOURNAL,
+                JOURNAL_COMPACTION_THRESHOLD, Storage.Durability.NEVER, 1000);
+        TaskList tasks = new TaskList(generator.generate(COMMAND_LIST_SIZE));
+        storage.save(tasks.getTasks());
+        Ui ui = discardingUi();
+        PersistenceExecutor persistence = new PersistenceExecutor(storage, tasks, ui);
+        Map<String, Object> params = BenchmarkRunner.params("tasks", COMMAND_LIST_SIZE);
+        int[] counter = {0};
+
+        try {
+            benchmarkAddCommand("parser.todo", "todo read book", tasks, ui, persistence, params);
+            benchmarkAddCommand("parser.deadline", "deadline return book /by 2024-06-06", tasks, ui, persistence,
+                    params);
+            benchmarkAddCommand("parser.event", "event project meeting /from 2024-08-06 /to 2024-08-07", tasks,
+                    ui, persistence, params);
+            run("parser.mark", params, () -> {
+                synchronized (tasks) {
+                    Parser.handleCommand("mark " + (counter[0]++ % COMMAND_LIST_SIZE + 1), tasks, ui, persistence);
+                }
+                return tasks;
+            });
+            run("parser.unmark", params, () -> {
+                synchronized (tasks) {
+                    Parser.handleCommand("unmark " + (counter[0]++ % COMMAND_LIST_SIZE + 1), tasks, ui,
+                            persistence);
+                }
+                return tasks;
+            });
+            run("parser.delete", params, () -> {
+                synchronized (tasks) {
+                    Parser.handleCommand("delete " + COMMAND_LIST_SIZE, tasks, ui, persistence);
+                    tasks.add(generator.next(counter[0]++));
+                }
+                return tasks;
+            });
+            runCommand("parser.list", "list", tasks, ui, persistence, params);
+            runCommand("parser.find", "find report", tasks, ui, persistence, params);
+            runCommand("parser.due", "due 2024-06-01", tasks, ui, persistence, params);
+            runCommand("parser.between", "between 2024-06-01 2024-06-30", tasks, ui, persistence, params);
+        } finally {
+            persistence.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Benchmarks a command that adds a task, removing the task afterwards.
+     *
+     * @param name        The benchmark name.
+     * @param command     The command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
+     * @param params      The benchmark parameters.
+     * @throws Exception If the benchmark fails.
+     */
+    private void benchmarkAddCommand(String name, String command, TaskList tasks, Ui ui,
+            PersistenceExecutor persistence, Map<String, Object> params) throws Exception {
+        run(name, params, () -> {
+            synchronized (tasks) {
+                Parser.handleCommand(command, tasks, ui, persistence);
+                return tasks.remove(tasks.size() - 1);
+            }
+        });
+    }
+
+    /**
+     * Benchmarks a command that does not change the list.
+     *
+     * @param name        The benchmark name.
+     * @param command     The command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
+     * @param params      The benchmark parameters.
+     * @throws Exception If the benchmark fails.
+     */
+    private void runCommand(String name, String command, TaskList tasks, Ui ui, PersistenceExecutor persistence,
+            Map<String, Object> params) throws Exception {
+        run(name, params, () -> {
+            synchronized (tasks) {
+                Parser.handleCommand(command, tasks, ui, persistence);
+            }
+            return tasks;
+        });
+    }
+
+    /**
+     * Benchmarks breaking command lines into their parts, cycling through a
+     * stream of a million mixed commands (a hundred thousand in quick runs).
+     * "lexer.split" tokenizes the way Parser did before CommandLexer, with
+     * String.split; "lexer.singlePass" runs CommandLexer alone, and
+     * "lexer.singlePassStrings" also takes the substrings a handler keeps.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkLexer() throws Exception {
+        if (!isSelected("lexer")) {
+            return;
+        }
+        int lineCount = isQuick ? 100_000 : 1_000_000;
+        String[] lines = generateCommandLines(lineCount);
+        Map<String, Object> params = BenchmarkRunner.params("lines", lineCount);
+        Command command = new Command();
+        int[] counter = {0};
+        run("lexer.split", params, () -> splitCommand(lines[counter[0]++ % lineCount]));
+        run("lexer.singlePass", params, () -> {
+            CommandLexer.lex(lines[counter[0]++ % lineCount], command);
+            return command;
+        });
+        run("lexer.singlePassStrings", params, () -> {
+            CommandLexer.lex(lines[counter[0]++ % lineCount], command);
+            switch (command.getType()) {
+                case DEADLINE:
+                    return command.getDescription().length() + command.getFlag(Command.Flag.BY).length();
+                case EVENT:
+                    return command.getDescription().length() + command.getFlag(Command.Flag.FROM).length()
+                            + command.getFlag(Command.Flag.TO).length();
+                default:
+                    return command.getDescription().length();
+            }
+        });
+    }
+
+    /**
+     * Generates a stream of command lines in the proportions a busy user
+     * might type them: mostly adds, then marks, deletes, finds and lists.
+     *
+     * @param count The number of lines.
+     * @return The lines.
+     */
+    private static String[] generateCommandLines(int count) {
+        Random random = new Random(SEED);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            int choice = random.nextInt(10);
+            if (choice < 3) {
+                lines[i] = "todo read book " + i;
+            } else if (choice < 5) {
+                lines[i] = "deadline return book " + i + " /by 2024-06-" + (10 + random.nextInt(20));
+            } else if (choice < 6) {
+                lines[i] = "event project meeting " + i + " /from 2024-08-06 /to 2024-08-0" + (7 + random.nextInt(3));
+            } else if (choice < 8) {
+                lines[i] = "mark " + (1 + random.nextInt(1000));
+            } else if (choice < 9) {
+                lines[i] = "delete " + (1 + random.nextInt(1000));
+            } else {
+                lines[i] = random.nextBoolean() ? "find report " + random.nextInt(100) : "list";
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Breaks a command line into its parts with String.split, as Parser did
+     * before CommandLexer replaced it.
+     *
+     * @param input The command line.
+     * @return The parts.
+     */
+    private static String[] splitCommand(String input) {
+        String[] parts = input.trim().split("\\s+", 2);
+        String command = parts[0].toLowerCase();
+        String content = input.substring(command.length());
+        if (command.equals("deadline")) {
+            String[] byParts = content.split(" /by ");
+            return new String[] {command, byParts[0].trim(), byParts[1].trim()};
+        }
+        if (command.equals("event")) {
+            String[] fromParts = content.split(" /from ");
+            String[] toParts = fromParts[1].split(" /to ");
+            return new String[] {command, fromParts[0].trim(), toParts[0].trim(), toParts[1].trim()};
+        }
+        return new String[] {command, content.trim()};
+    }
+
+    /**
+     * Benchmarks substring, word and short-keyword searches at increasing
+     * list sizes, and a streamed search that stops after ten matches. The
+     * search index is built during warm-up.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkFind() throws Exception {
+        if (!isSelected("find")) {
+            return;
+        }
+        for (int size : sizes(1_000, 100_000, 1_000_000)) {
+            TaskList tasks = new TaskList(new TaskGenerator(SEED).generate(size));
+            Map<String, Object> params = BenchmarkRunner.params("tasks", size);
+            run("find.substring", params, () -> tasks.find("report 1").size());
+            run("find.shortKeyword", params, () -> tasks.find("bo").size());
+            run("find.shortKeywordFirst10", params, () -> {
+                try (Stream<Task> matches = tasks.streamFind("bo")) {
+                    return matches.limit(10).count();
+                }
+            });
+            run("find.word", params, () -> tasks.findWord("proposal").size());
+            run("find.fuzzy", params, () -> tasks.findFuzzy("meetng", 20).size());
+            run("find.fuzzyTwoWords", params, () -> tasks.findFuzzy("reviw meetng", 20).size());
+        }
+        benchmarkFuzzyWords();
+    }
+
+    /**
+     * Benchmarks finding the words within one or two edits of a query among
+     * a hundred thousand random words, with a BK-tree and with a scan of
+     * every word.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkFuzzyWords() throws Exception {
+        Random random = new Random(SEED);
+        ArrayList<String> words = new ArrayList<>();
+        BkTree tree = new BkTree();
+        while (words.size() < 100_000) {
+            char[] letters = new char[5 + random.nextInt(6)];
+            for (int i = 0; i < letters.length; i++) {
+                letters[i] = (char) ('a' + random.nextInt(26));
+            }
+            String word = new String(letters);
+            if (tree.add(word)) {
+                words.add(word);
+            }
+        }
+        for (int edits = 1; edits <= 2; edits++) {
+            int maxDistance = edits;
+            Map<String, Object> params = BenchmarkRunner.params("words", words.size(), "edits", edits);
+            int[] counter = {0};
+            run("find.fuzzyWordsTree", params,
+                    () -> tree.search(typo(words.get(counter[0]++ % words.size())), maxDistance).size());
+            run("find.fuzzyWordsScan", params, () -> {
+                String query = typo(words.get(counter[0]++ % words.size()));
+                int found = 0;
+                for (String word : words) {
+                    if (BkTree.distance(query, word) <= maxDistance) {
+                        found++;
+                    }
+                }
+                return found;
+            });
+        }
+    }
+
+    /**
+     * Returns a word with its second letter dropped.
+     *
+     * @param word The word.
+     * @return The misspelt word.
+     */
+    private static String typo(String word) {
+        return word.charAt(0) + word.substring(2);
+    }
+
+    /**
+     * Benchmarks removing the first task of large lists, and looking tasks up
+     * by id. A task is added back after each removal so that the list size
+     * stays constant.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkRemove() throws Exception {
+        if (!isSelected("tasklist")) {
+            return;
+        }
+        for (int size : sizes(100_000, 1_000_000)) {
+            TaskGenerator generator = new TaskGenerator(SEED);
+            TaskList tasks = new TaskList(generator.generate(size));
+            Map<String, Object> params = BenchmarkRunner.params("tasks", size);
+            int[] counter = {size};
+            run("tasklist.removeFirst", params, () -> {
+                Task removed = tasks.remove(0);
+                tasks.add(generator.next(counter[0]++));
+                return removed;
+            });
+            run("tasklist.indexOfId", params, () -> tasks.indexOfId(tasks.getNextId() - 1 - counter[0]++ % size));
+        }
+    }
+
+    /**
+     * Benchmarks keeping reminders up to date as tasks are marked and
+     * unmarked in large lists. The existing tasks are scheduled up front
+     * and the scheduler is never started, so only the cost to each change
+     * is measured.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkReminders() throws Exception {
+        if (!isSelected("reminders")) {
+            return;
+        }
+        for (int size : sizes(100_000, 1_000_000)) {
+            TaskList tasks = new TaskList(new TaskGenerator(SEED).generate(size));
+            ReminderScheduler reminders = new ReminderScheduler(tasks, discardingUi());
+            tasks.setReminders(reminders);
+            reminders.scheduleExisting();
+            Map<String, Object> params = BenchmarkRunner.params("tasks", size);
+            int[] counter = {0};
+            run("reminders.markUnmark", params, () -> {
+                int index = counter[0]++ % size;
+                tasks.markAsDone(index);
+                return tasks.markAsNotDone(index);
+            });
+        }
+    }
+
+    /**
+     * Benchmarks undoing and redoing a single deletion and the deletion of
+     * every task in large lists, as a pair so that the list is unchanged
+     * after each run.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkUndo() throws Exception {
+        if (!isSelected("undo")) {
+            return;
+        }
+        for (int size : sizes(100_000, 1_000_000)) {
+            TaskList tasks = new TaskList(new TaskGenerator(SEED).generate(size));
+            Map<String, Object> params = BenchmarkRunner.params("tasks", size);
+            UndoHistory history = new UndoHistory(Long.MAX_VALUE);
+            int index = size / 2;
+            history.record(List.of(new Mutation(Mutation.Type.DELETE, index, tasks.remove(index))));
+            run("undo.deleteOne", params, () -> {
+                history.undo(tasks);
+                return history.redo(tasks);
+            });
+            history.undo(tasks);
+
+            BitSet all = new BitSet(size);
+            all.set(0, size);
+            List<Task> removedTasks = tasks.removeAll(all);
+            ArrayList<Mutation> mutations = new ArrayList<>(size);
+            for (int i = size - 1; i >= 0; i--) {
+                mutations.add(new Mutation(Mutation.Type.DELETE, i, removedTasks.get(i)));
+            }
+            history.record(mutations);
+            run("undo.deleteAll", params, () -> {
+                history.undo(tasks);
+                return history.redo(tasks);
+            });
+        }
+    }
+
+    /**
+     * Benchmarks filtered list views: filtering by one set, intersecting
+     * several, and fetching the first page of a large result.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkFilter() throws Exception {
+        if (!isSelected("filter")) {
+            return;
+        }
+        for (int size : sizes(100_000, 1_000_000)) {
+            TaskList tasks = new TaskList(new TaskGenerator(SEED).generateTagged(size));
+            Map<String, Object> params = BenchmarkRunner.params("tasks", size);
+            List<String> none = List.of();
+            List<String> work = List.of("#work");
+            tasks.filter(null, null, work);
+            run("filter.pending", params, () -> tasks.filter(FilterIndex.Status.PENDING, null, none));
+            run("filter.tag", params, () -> tasks.filter(null, null, work));
+            run("filter.deadlinePendingTag", params,
+                    () -> tasks.filter(FilterIndex.Status.PENDING, FilterIndex.Type.DEADLINE, work));
+            run("filter.rareTag", params,
+                    () -> tasks.filter(FilterIndex.Status.PENDING, null, List.of("#urgent", "#work")));
+            run("filter.page", params,
+                    () -> tasks.getByIds(tasks.filter(FilterIndex.Status.PENDING, null, work).slice(0, 100)));
+            run("filter.scan", params, () -> tasks.getTasks().stream()
+                    .filter(task -> !task.isDone() && task instanceof Deadline
+                            && FilterIndex.tagsOf(task.getDescription()).contains("#work"))
+                    .count());
+        }
+    }
+
+    /**
+     * Benchmarks looking up descriptions in the description pool, which is
+     * paid for every task created, for descriptions that recur and for
+     * descriptions that are all different.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkDescriptionPool() throws Exception {
+        if (!isSelected("pool")) {
+            return;
+        }
+        int count = 1 << 16;
+        String[] recurring = new String[count];
+        String[] unique = new String[count];
+        for (int i = 0; i < count; i++) {
+            recurring[i] = new StringBuilder("weekly sync ").append(i % 100).toString();
+            unique[i] = new StringBuilder("read chapter ").append(i).toString();
+        }
+        int[] counter = {0};
+        run("pool.canonical", BenchmarkRunner.params("descriptions", "recurring"),
+                () -> DescriptionPool.canonical(recurring[counter[0]++ & (count - 1)]));
+        run("pool.canonical", BenchmarkRunner.params("descriptions", "unique"),
+                () -> DescriptionPool.canonical(unique[counter[0]++ & (count - 1)]));
+    }
+
+    /**
+     * Benchmarks the cost of recording a value in a histogram, which is paid
+     * on every command, search, save and response while metrics are on.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkMetrics() throws Exception {
+        if (!isSelected("metrics")) {
+            return;
+        }
+        Histogram histogram = new Histogram("bench", Histogram.Unit.NANOSECONDS);
+        long[] value = {0};
+        run("metrics.record", BenchmarkRunner.params("enabled", Metrics.ENABLED), () -> {
+            histogram.record(value[0]++ & 0xFFFFF);
+            return histogram;
+        });
+        run("metrics.recordSince", BenchmarkRunner.params("enabled", Metrics.ENABLED), () -> {
+            histogram.recordSince(System.nanoTime());
+            return histogram;
+        });
+    }
+
+    /**
+     * Benchmarks saving and loading whole task lists in the text, binary and
+     * segmented formats, and committing a change to one task, without
+     * forcing writes to disk.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkStorage() throws Exception {
+        if (!isSelected("storage")) {
+            return;
+        }
+        Storage.Mode[] modes = {Storage.Mode.SNAPSHOT, Storage.Mode.BINARY, Storage.Mode.SEGMENTED};
+        for (int size : sizes(1_000, 100_000, 1_000_000)) {
+            TaskList tasks = new TaskList(new TaskGenerator(SEED).generate(size));
+            for (Storage.Mode mode : modes) {
+                Path directory = Files.createTempDirectory("encik-bench");
+                Storage storage = new Storage(directory.resolve("encik.txt").toString(), mode,
+                        JOURNAL_COMPACTION_THRESHOLD, Storage.Durability.NEVER, 1000);
+                Map<String, Object> params = BenchmarkRunner.params("tasks", size, "format", mode.name());
+                int[] counter = {0};
+                try {
+                    run("storage.save", params, () -> {
+                        storage.save(tasks.getTasks());
+                        return storage;
+                    });
+                    run("storage.load", params, () -> storage.load().size());
+                    run("storage.commitOne", params, () -> {
+                        int index = counter[0]++ % size;
+                        Task task = tasks.get(index);
+                        storage.commit(List.of(new Mutation(Mutation.Type.MARK, index, task)), tasks);
+                        return storage;
+                    });
+                } finally {
+                    storage.close();
+                    deleteRecursively(directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Benchmarks rendering the whole task list.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    private void benchmarkUi() throws Exception {
+        if (!isSelected("ui")) {
+            return;
+        }
+        Ui ui = discardingUi();
+        for (int size : sizes(1_000, 100_000)) {
+            TaskList tasks = new TaskList(new TaskGenerator(SEED).generate(size));
+            run("ui.showTaskList", BenchmarkRunner.params("tasks", size), () -> {
+                ui.showTaskList(tasks);
+                return tasks;
+            });
+        }
+    }
+
+    /**
+     * Returns a Ui that formats every response in full but discards it, so
+     * that rendering is measured without the cost of the terminal.
+     *
+     * @return The Ui.
+     */
+    private static Ui discardingUi() {
+        return new Ui(InputStream.nullInputStream(), new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Runs a benchmark if its name is selected.
+     *
+     * @param name      The benchmark name.
+     * @param params    The benchmark parameters.
+     * @param operation The operation to time.
+     * @throws Exception If the benchmark fails.
+     */
+    private void run(String name, Map<String, Object> params, BenchmarkRunner.Operation operation)
+            throws Exception {
+        if (isSelected(name)) {
+            runner.run(name, params, operation);
+        }
+    }
+
+    /**
+     * Checks whether a benchmark, or group of benchmarks, should run.
+     *
+     * @param name The benchmark or group name.
+     * @return True if it matches the --only prefix, or there is none.
+     */
+    private boolean isSelected(String name) {
+        return name.startsWith(only) || only.startsWith(name);
+    }
+
+    /**
+     * Returns the list sizes to benchmark, dropping the largest in quick runs.
+     *
+     * @param sizes The sizes, smallest first.
+     * @return The sizes to use.
+     */
+    private int[] sizes(int... sizes) {
+        if (!isQuick || sizes.length == 1) {
+            return sizes;
+        }
+        int[] quickSizes = new int[sizes.length - 1];
+        System.arraycopy(sizes, 0, quickSizes, 0, quickSizes.length);
+        return quickSizes;
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     *
+     * @param directory The directory.
+     * @throws IOException If a file cannot be deleted.
+     */
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/**
+ * Measures the heap used to hold tasks as Task objects in an ArrayList and
+ * in a PackedTaskStore, and for lists of mostly recurring tasks, the heap
+ * and binary file size saved by sharing descriptions.
+ * Run with a fixed heap, e.g. {@code java -Xmx2g FootprintBenchmark 1000000}.
+ */
+public class FootprintBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 1_000_000;
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+    private static final String[] RECURRING_DESCRIPTIONS = {
+        "standup", "pay rent", "weekly sync", "gym", "water plants", "team lunch", "review pull requests",
+        "call mum", "take out the bins", "grocery run"
+    };
+    private static final int UNIQUE_ONE_IN = 10;
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args Optionally, the number of tasks to hold.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+
+        long baseline = usedHeap();
+        ArrayList<Task> objects = createTasks(count);
+        long objectBytes = usedHeap() - baseline;
+
+        PackedTaskStore packed = PackedTaskStore.of(objects);
+        objects = null;
+        long packedBytes = usedHeap() - baseline;
+
+        System.out.printf("tasks:          %d%n", packed.size());
+        System.out.printf("ArrayList<Task>: %,d bytes (%.1f per task)%n", objectBytes,
+                (double) objectBytes / count);
+        System.out.printf("PackedTaskStore: %,d bytes (%.1f per task)%n", packedBytes,
+                (double) packedBytes / count);
+        System.out.printf("reduction:       %.1fx%n", (double) objectBytes / packedBytes);
+        packed = null;
+
+        measureRecurring(count);
+    }
+
+    /**
+     * Measures the heap used by the descriptions of mostly recurring tasks,
+     * as one String per task and as shared by the description pool, and
+     * the size of their binary file with and without a description
+     * dictionary.
+     *
+     * @param count The number of tasks.
+     */
+    private static void measureRecurring(int count) {
+        long baseline = usedHeap();
+        String[] descriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            descriptions[i] = recurringDescription(i);
+        }
+        long separateBytes = usedHeap() - baseline;
+        for (int i = 0; i < count; i++) {
+            descriptions[i] = DescriptionPool.canonical(recurringDescription(i));
+        }
+        long pooledBytes = usedHeap() - baseline;
+
+        ArrayList<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task task = new Todo(descriptions[i]);
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        int inlineSize = BinaryTaskFile.encode(tasks, count + 1, false).remaining();
+        int dictionarySize = BinaryTaskFile.encode(tasks, count + 1).remaining();
+
+        System.out.printf("%nrecurring tasks: %d, 1 in %d with a unique description%n", count, UNIQUE_ONE_IN);
+        System.out.printf("descriptions, one String each: %,d bytes (%.1f per task)%n", separateBytes,
+                (double) separateBytes / count);
+        System.out.printf("descriptions, pooled:          %,d bytes (%.1f per task)%n", pooledBytes,
+                (double) pooledBytes / count);
+        System.out.printf("binary file, inline:           %,d bytes (%.1f per task)%n", inlineSize,
+                (double) inlineSize / count);
+        System.out.printf("binary file, dictionary:       %,d bytes (%.1f per task)%n", dictionarySize,
+                (double) dictionarySize / count);
+    }
+
+    /**
+     * Builds a new String holding the description of a recurring task, as
+     * parsing a command or a data file would.
+     *
+     * @param number The number of the task.
+     * @return The description.
+     */
+    private static String recurringDescription(int number) {
+        StringBuilder description = new StringBuilder();
+        if (number / RECURRING_DESCRIPTIONS.length % UNIQUE_ONE_IN == 0) {
+            return description.append("read chapter ").append(number).toString();
+        }
+        return description.append(RECURRING_DESCRIPTIONS[number % RECURRING_DESCRIPTIONS.length]).toString();
+    }
+
+    /**
+     * Creates a mix of todos, deadlines and events with distinct descriptions.
+     *
+     * @param count The number of tasks.
+     * @return The tasks.
+     */
+    private static ArrayList<Task> createTasks(int count) {
+        ArrayList<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDate date = BASE_DATE.plusDays(i % 3650);
+            switch (i % 3) {
+                case 0:
+                    tasks.add(new Todo("read chapter " + i));
+                    break;
+                case 1:
+                    tasks.add(new Deadline("submit report " + i, date));
+                    break;
+                default:
+                    tasks.add(new Event("attend meeting " + i, date, date.plusDays(2)));
+                    break;
+            }
+            if (i % 4 == 0) {
+                tasks.get(i).markAsDone();
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns the heap in use after collecting garbage.
+     *
+     * @return The used heap in bytes.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
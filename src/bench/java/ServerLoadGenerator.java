@@ -0,0 +1,153 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens many concurrent sessions against a running Encik server and reports
+ * throughput and latency.
+ * Every session connects and logs in before any of them sends a command,
+ * so all sessions are open at the same time.
+ *
+ * Usage: {@code java ServerLoadGenerator [port] [sessions] [commandsPerSession] [users]}
+ * Sessions are spread over the given number of users, so several sessions
+ * may share a task list.
+ */
+public class ServerLoadGenerator {
+    private static final int DEFAULT_SESSIONS = 2000;
+    private static final int DEFAULT_COMMANDS_PER_SESSION = 50;
+    private static final long CLIENT_THREAD_STACK_SIZE = 256 * 1024;
+
+    /**
+     * Runs the load test.
+     *
+     * @param args See the class description.
+     * @throws InterruptedException If interrupted while waiting for sessions.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : EncikServer.DEFAULT_PORT;
+        int sessionCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SESSIONS;
+        int commandsPerSession = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COMMANDS_PER_SESSION;
+        int userCount = args.length > 3 ? Integer.parseInt(args[3]) : sessionCount;
+
+        CountDownLatch connected = new CountDownLatch(sessionCount);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        long[][] latencies = new long[sessionCount][];
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < sessionCount; i++) {
+            int session = i;
+            Thread thread = new Thread(null, () -> {
+                try {
+                    latencies[session] = runSession(port, "load-" + (session % userCount), commandsPerSession,
+                            connected, start);
+                } catch (IOException | InterruptedException e) {
+                    failures.incrementAndGet();
+                    connected.countDown();
+                }
+            }, "load-" + i, CLIENT_THREAD_STACK_SIZE);
+            threads.add(thread);
+            thread.start();
+        }
+
+        connected.await();
+        System.out.println((sessionCount - failures.get()) + " sessions open.");
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long[] all = Arrays.stream(latencies).filter(l -> l != null).flatMapToLong(Arrays::stream).sorted()
+                .toArray();
+        System.out.printf("sessions: %d (%d failed), commands: %d in %.2f s, %.0f commands/s%n", sessionCount,
+                failures.get(), all.length, seconds, all.length / seconds);
+        if (all.length > 0) {
+            System.out.printf("latency: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", all[all.length / 2] / 1e6,
+                    all[(int) (all.length * 0.99)] / 1e6, all[all.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Connects, logs in, waits for the start signal and sends a mix of
+     * commands.
+     *
+     * @param port               The server port.
+     * @param userName           The user to log in as.
+     * @param commandsPerSession The number of commands to send.
+     * @param connected          Counted down once logged in.
+     * @param start              Awaited before sending commands.
+     * @return The latency of each command in nanoseconds.
+     * @throws IOException          If the connection fails.
+     * @throws InterruptedException If interrupted while waiting to start.
+     */
+    private static long[] runSession(int port, String userName, int commandsPerSession, CountDownLatch connected,
+            CountDownLatch start) throws IOException, InterruptedException {
+        try (Socket socket = new Socket("localhost", port);
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println(userName);
+            readResponse(in);
+            connected.countDown();
+            start.await();
+
+            long[] latencies = new long[commandsPerSession];
+            for (int i = 0; i < commandsPerSession; i++) {
+                long startNanos = System.nanoTime();
+                out.println(command(i));
+                readResponse(in);
+                latencies[i] = System.nanoTime() - startNanos;
+            }
+            out.println("bye");
+            readResponse(in);
+            return latencies;
+        }
+    }
+
+    /**
+     * Returns the command to send at a step of a session.
+     *
+     * @param step The 0-based step.
+     * @return The command.
+     */
+    private static String command(int step) {
+        switch (step % 5) {
+            case 0:
+                return "todo load test " + step;
+            case 1:
+                return "deadline report " + step + " /by 2024-06-0" + (step % 9 + 1);
+            case 2:
+                return "mark 1";
+            case 3:
+                return "find report";
+            default:
+                return "list";
+        }
+    }
+
+    /**
+     * Reads one response, up to the empty line that ends it.
+     *
+     * @param in The server's output.
+     * @throws IOException If the connection closes first.
+     */
+    private static void readResponse(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                return;
+            }
+        }
+        throw new IOException("Connection closed by server.");
+    }
+}
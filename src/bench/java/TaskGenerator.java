@@ -0,0 +1,108 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates reproducible synthetic task lists for benchmarks.
+ * Descriptions are drawn from a fixed vocabulary so that searches have a
+ * realistic spread of hits.
+ */
+public class TaskGenerator {
+    private static final String[] VERBS = {
+        "read", "write", "submit", "review", "plan", "attend", "buy", "call", "fix", "clean"
+    };
+    private static final String[] NOUNS = {
+        "book", "report", "assignment", "meeting", "groceries", "project", "lecture", "email",
+        "proposal", "presentation", "tutorial", "invoice", "garden", "kitchen", "budget"
+    };
+    private static final String[] TAGS = {"#work", "#home", "#school"};
+    private static final String RARE_TAG = "#urgent";
+    private static final int RARE_TAG_ONE_IN = 50;
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+    private static final int DATE_RANGE_DAYS = 3 * 365;
+
+    private final Random random;
+    private final Random tagRandom;
+
+    /**
+     * Constructs a TaskGenerator with a fixed seed.
+     *
+     * @param seed The random seed.
+     */
+    public TaskGenerator(long seed) {
+        this.random = new Random(seed);
+        this.tagRandom = new Random(seed);
+    }
+
+    /**
+     * Generates a mix of todos, deadlines and events, a quarter of them done.
+     *
+     * @param count The number of tasks.
+     * @return The tasks.
+     */
+    public ArrayList<Task> generate(int count) {
+        ArrayList<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(next(i));
+        }
+        return tasks;
+    }
+
+    /**
+     * Generates the same tasks as generate, each also given one of a few
+     * common #tags, and about one in fifty a rarer second tag.
+     *
+     * @param count The number of tasks.
+     * @return The tasks.
+     */
+    public ArrayList<Task> generateTagged(int count) {
+        ArrayList<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String tags = " " + TAGS[tagRandom.nextInt(TAGS.length)];
+            if (tagRandom.nextInt(RARE_TAG_ONE_IN) == 0) {
+                tags += " " + RARE_TAG;
+            }
+            tasks.add(next(i, tags));
+        }
+        return tasks;
+    }
+
+    /**
+     * Generates a single task.
+     *
+     * @param number A number to make the description unique.
+     * @return The task.
+     */
+    public Task next(int number) {
+        return next(number, "");
+    }
+
+    /**
+     * Generates a single task with text added to the end of its description.
+     *
+     * @param number A number to make the description unique.
+     * @param suffix The text to add.
+     * @return The task.
+     */
+    private Task next(int number, String suffix) {
+        String description = VERBS[random.nextInt(VERBS.length)] + " " + NOUNS[random.nextInt(NOUNS.length)]
+                + " " + number + suffix;
+        LocalDate date = BASE_DATE.plusDays(random.nextInt(DATE_RANGE_DAYS));
+        Task task;
+        switch (random.nextInt(3)) {
+            case 0:
+                task = new Todo(description);
+                break;
+            case 1:
+                task = new Deadline(description, date);
+                break;
+            default:
+                task = new Event(description, date, date.plusDays(random.nextInt(7)));
+                break;
+        }
+        if (random.nextInt(4) == 0) {
+            task.markAsDone();
+        }
+        return task;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Stores tasks as objects in an ArrayList.
+ */
+public class ArrayTaskStore implements TaskStore {
+    private final ArrayList<Task> tasks;
+
+    /**
+     * Constructs an ArrayTaskStore backed by the given list.
+     *
+     * @param tasks The list of tasks.
+     */
+    public ArrayTaskStore(ArrayList<Task> tasks) {
+        this.tasks = tasks;
+    }
+
+    @Override
+    public int size() {
+        return tasks.size();
+    }
+
+    @Override
+    public Task get(int index) {
+        return tasks.get(index);
+    }
+
+    @Override
+    public int getId(int index) {
+        return tasks.get(index).getId();
+    }
+
+    @Override
+    public boolean supportsConcurrentReads() {
+        return true;
+    }
+
+    @Override
+    public void add(Task task) {
+        tasks.add(task);
+    }
+
+    @Override
+    public void removeAll(BitSet indexes) {
+        int kept = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (!indexes.get(i)) {
+                tasks.set(kept++, tasks.get(i));
+            }
+        }
+        tasks.subList(kept, tasks.size()).clear();
+    }
+
+    @Override
+    public void insertAll(int[] indexes, List<Task> inserted) {
+        int source = tasks.size() - 1;
+        int next = inserted.size() - 1;
+        tasks.addAll(inserted);
+        for (int i = tasks.size() - 1; next >= 0; i--) {
+            tasks.set(i, indexes[next] == i ? inserted.get(next--) : tasks.get(source--));
+        }
+    }
+
+    @Override
+    public Task setDone(int index, boolean isDone) {
+        Task task = tasks.get(index);
+        if (isDone) {
+            task.markAsDone();
+        } else {
+            task.markAsNotDone();
+        }
+        return task;
+    }
+}
@@ -0,0 +1,510 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes tasks in Encik's compact binary data format.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ * header:     magic "ENCK" | version (1 byte) | task count (int) | offset table position (long)
+ *             | next task id (int) | dictionary position (long)
+ * records:    tag (1 byte) | task id (int) | [epoch day (int)]... | description reference (int)
+ *             | [UTF-8 description]
+ * entries:    description length (int) | UTF-8 description, one per dictionary entry
+ * dictionary: entry count (int) | entry position (long), one per entry
+ * offsets:    record position (long), one per task
+ * </pre>
+ * The tag holds the task type ('T', 'D' or 'E') with the high bit set when
+ * the task is done. Deadlines store one epoch day and events two.
+ * Descriptions shared by several tasks are stored once, as dictionary
+ * entries, and their records hold the index of the entry. Other records hold
+ * the bitwise complement of the description length, which is negative,
+ * followed by the description itself.
+ * Version 2 files have no dictionary and every record holds its description
+ * length and description. Version 1 files also have no task ids or next
+ * task id; their tasks are given their 1-based record number as their id
+ * when read.
+ * The offset table lets a reader decode any single record without scanning
+ * the file, and skip a corrupted record without losing the rest.
+ */
+public class BinaryTaskFile {
+    public static final int MAGIC = 0x454E434B;
+    public static final byte VERSION = 3;
+    public static final byte VERSION_WITHOUT_DICTIONARY = 2;
+    public static final byte VERSION_WITHOUT_IDS = 1;
+    public static final int HEADER_SIZE = 29;
+    public static final int HEADER_SIZE_WITHOUT_DICTIONARY = 21;
+    public static final int HEADER_SIZE_WITHOUT_IDS = 17;
+
+    private static final int DONE_BIT = 0x80;
+    private static final int TYPE_MASK = 0x7F;
+
+    /**
+     * Encodes tasks in the binary format, storing each description shared
+     * by several tasks once.
+     *
+     * @param tasks  The tasks to encode.
+     * @param nextId The id the next new task will be given.
+     * @return A buffer containing the whole file, ready to be written.
+     */
+    public static ByteBuffer encode(List<Task> tasks, int nextId) {
+        return encode(tasks, nextId, true);
+    }
+
+    /**
+     * Encodes tasks in the binary format.
+     *
+     * @param tasks           The tasks to encode.
+     * @param nextId          The id the next new task will be given.
+     * @param isDeduplicating Whether to store each description shared by
+     *                        several tasks once, rather than with every
+     *                        task.
+     * @return A buffer containing the whole file, ready to be written.
+     */
+    public static ByteBuffer encode(List<Task> tasks, int nextId, boolean isDeduplicating) {
+        int[] descriptionOf = new int[tasks.size()];
+        ArrayList<String> descriptions = new ArrayList<>();
+        if (isDeduplicating) {
+            findDistinctDescriptions(tasks, descriptionOf, descriptions);
+        } else {
+            for (int i = 0; i < tasks.size(); i++) {
+                descriptionOf[i] = i;
+                descriptions.add(tasks.get(i).getDescription());
+            }
+        }
+        int[] taskCounts = new int[descriptions.size()];
+        for (int description : descriptionOf) {
+            taskCounts[description]++;
+        }
+
+        byte[][] bytes = new byte[descriptions.size()][];
+        int[] entryOf = new int[descriptions.size()];
+        ArrayList<byte[]> entries = new ArrayList<>();
+        long size = HEADER_SIZE + Integer.BYTES + (long) tasks.size() * Long.BYTES;
+        for (int i = 0; i < tasks.size(); i++) {
+            int description = descriptionOf[i];
+            size += recordSize(tasks.get(i));
+            if (bytes[description] == null) {
+                bytes[description] = descriptions.get(description).getBytes(StandardCharsets.UTF_8);
+                entryOf[description] = taskCounts[description] > 1 ? entries.size() : -1;
+                if (entryOf[description] >= 0) {
+                    entries.add(bytes[description]);
+                    size += Long.BYTES + Integer.BYTES + bytes[description].length;
+                }
+            }
+            if (entryOf[description] < 0) {
+                size += bytes[description].length;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Task list too large for a single binary file.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        long[] offsets = new long[tasks.size()];
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < tasks.size(); i++) {
+            offsets[i] = buffer.position();
+            int description = descriptionOf[i];
+            encodeRecord(buffer, tasks.get(i), entryOf[description], bytes[description]);
+        }
+        long[] entryOffsets = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            entryOffsets[i] = buffer.position();
+            buffer.putInt(entries.get(i).length);
+            buffer.put(entries.get(i));
+        }
+        long dictionaryPosition = buffer.position();
+        buffer.putInt(entries.size());
+        for (long offset : entryOffsets) {
+            buffer.putLong(offset);
+        }
+        long offsetTablePosition = buffer.position();
+        for (long offset : offsets) {
+            buffer.putLong(offset);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.put(4, VERSION);
+        buffer.putInt(5, tasks.size());
+        buffer.putLong(9, offsetTablePosition);
+        buffer.putInt(17, nextId);
+        buffer.putLong(21, dictionaryPosition);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Finds the distinct descriptions of tasks, with an open-addressing hash
+     * table of their indexes. Descriptions are usually shared through the
+     * description pool, so most comparisons are of the same instance.
+     *
+     * @param tasks         The tasks.
+     * @param descriptionOf Filled in with the index of each task's
+     *                      description among the distinct descriptions.
+     * @param descriptions  Filled in with the distinct descriptions, in the
+     *                      order they first appear.
+     */
+    private static void findDistinctDescriptions(List<Task> tasks, int[] descriptionOf,
+            ArrayList<String> descriptions) {
+        int[] slots = new int[Integer.highestOneBit(Math.max(1, tasks.size())) * 4];
+        int mask = slots.length - 1;
+        for (int i = 0; i < tasks.size(); i++) {
+            String description = tasks.get(i).getDescription();
+            int hash = description.hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (true) {
+                int index = slots[slot] - 1;
+                if (index < 0) {
+                    index = descriptions.size();
+                    descriptions.add(description);
+                    slots[slot] = index + 1;
+                    descriptionOf[i] = index;
+                    break;
+                }
+                String other = descriptions.get(index);
+                if (other == description || other.hashCode() == hash && other.equals(description)) {
+                    descriptionOf[i] = index;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * Writes an encoded file through a memory-mapped channel.
+     *
+     * @param path     The file to write.
+     * @param encoded  The encoded file contents.
+     * @param isForced Whether to force the mapped pages to disk.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, ByteBuffer encoded, boolean isForced) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, encoded.remaining());
+            mapped.put(encoded);
+            if (isForced) {
+                mapped.force();
+            }
+        }
+    }
+
+    /**
+     * Maps a binary data file into memory for reading.
+     *
+     * @param path The file to map.
+     * @return The mapped file contents.
+     * @throws IOException If the file cannot be read or is not a binary data
+     *                     file of a supported version.
+     */
+    public static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE_WITHOUT_IDS || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an Encik binary data file: " + path);
+            }
+            byte version = buffer.get(4);
+            if (version != VERSION && version != VERSION_WITHOUT_DICTIONARY && version != VERSION_WITHOUT_IDS) {
+                throw new IOException("Unsupported binary data file version: " + version);
+            }
+            if (version == VERSION && buffer.limit() < HEADER_SIZE
+                    || version == VERSION_WITHOUT_DICTIONARY && buffer.limit() < HEADER_SIZE_WITHOUT_DICTIONARY) {
+                throw new IOException("Not an Encik binary data file: " + path);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Returns the number of tasks in a mapped file.
+     *
+     * @param buffer The mapped file.
+     * @return The task count.
+     */
+    public static int count(ByteBuffer buffer) {
+        return buffer.getInt(5);
+    }
+
+    /**
+     * Returns the id the next new task will be given, as recorded in a mapped
+     * file.
+     *
+     * @param buffer The mapped file.
+     * @return The next task id.
+     */
+    public static int nextId(ByteBuffer buffer) {
+        return hasIds(buffer) ? buffer.getInt(17) : count(buffer) + 1;
+    }
+
+    /**
+     * Returns the id of a task in a mapped file without decoding the rest of
+     * its record.
+     *
+     * @param buffer The mapped file.
+     * @param index  The 0-based index of the task.
+     * @return The task id, or Task.UNASSIGNED_ID if the record is corrupted.
+     */
+    public static int readId(ByteBuffer buffer, int index) {
+        if (!hasIds(buffer)) {
+            return index + 1;
+        }
+        try {
+            return buffer.getInt(recordOffset(buffer, index) + 1);
+        } catch (IndexOutOfBoundsException e) {
+            return Task.UNASSIGNED_ID;
+        }
+    }
+
+    /**
+     * Passes the id and date of a task in a mapped file to a consumer if it
+     * is an undone deadline or event, without decoding its description.
+     * Corrupted records are skipped.
+     *
+     * @param buffer   The mapped file.
+     * @param index    The 0-based index of the task.
+     * @param consumer The consumer of the date.
+     */
+    public static void readUndoneDate(ByteBuffer buffer, int index, TaskStore.DateConsumer consumer) {
+        try {
+            int position = recordOffset(buffer, index);
+            int tag = buffer.get(position) & 0xFF;
+            char type = (char) (tag & TYPE_MASK);
+            if ((tag & DONE_BIT) != 0 || type != 'D' && type != 'E') {
+                return;
+            }
+            boolean hasIds = hasIds(buffer);
+            int id = hasIds ? buffer.getInt(position + 1) : index + 1;
+            int day = buffer.getInt(position + 1 + (hasIds ? Integer.BYTES : 0));
+            consumer.accept(id, type == 'E', day);
+        } catch (IndexOutOfBoundsException e) {
+            // Corrupted records are reported when they are decoded.
+        }
+    }
+
+    /**
+     * Returns the position of a record in a mapped file, read from the
+     * offset table.
+     *
+     * @param buffer The mapped file.
+     * @param index  The 0-based index of the task.
+     * @return The position of the record.
+     */
+    public static int recordOffset(ByteBuffer buffer, int index) {
+        long offsetTablePosition = buffer.getLong(9);
+        return (int) buffer.getLong((int) offsetTablePosition + index * Long.BYTES);
+    }
+
+    /**
+     * Reads every task from a mapped binary data file, skipping corrupted
+     * records.
+     *
+     * @param buffer The mapped file, as returned by map.
+     * @return The tasks in the file.
+     */
+    public static ArrayList<Task> read(ByteBuffer buffer) {
+        int count = count(buffer);
+        ArrayList<Task> tasks = new ArrayList<>(count);
+        String[] entries = new String[entryCount(buffer)];
+        for (int i = 0; i < count; i++) {
+            try {
+                tasks.add(decode(buffer, i, entries));
+            } catch (EncikException e) {
+                System.out.println("Warning: Skipping corrupted record: " + (i + 1));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Decodes a single task from a mapped file.
+     *
+     * @param buffer The mapped file.
+     * @param index  The 0-based index of the task.
+     * @return The decoded task.
+     * @throws EncikException If the record is corrupted.
+     */
+    public static Task decode(ByteBuffer buffer, int index) throws EncikException {
+        return decode(buffer, index, null);
+    }
+
+    /**
+     * Decodes a single task from a mapped file, reusing the dictionary
+     * entries already decoded.
+     *
+     * @param buffer  The mapped file.
+     * @param index   The 0-based index of the task.
+     * @param entries The dictionary entries decoded so far, by index, which
+     *                this fills in as it decodes more; or null to decode
+     *                every entry afresh.
+     * @return The decoded task.
+     * @throws EncikException If the record is corrupted.
+     */
+    private static Task decode(ByteBuffer buffer, int index, String[] entries) throws EncikException {
+        try {
+            ByteBuffer record = buffer.duplicate();
+            record.position(recordOffset(buffer, index));
+            int tag = record.get() & 0xFF;
+            int id = hasIds(buffer) ? record.getInt() : index + 1;
+            Task task;
+            switch ((char) (tag & TYPE_MASK)) {
+                case 'T':
+                    task = new Todo(readDescription(buffer, record, entries));
+                    break;
+                case 'D':
+                    LocalDate by = LocalDate.ofEpochDay(record.getInt());
+                    task = new Deadline(readDescription(buffer, record, entries), by);
+                    break;
+                case 'E':
+                    LocalDate from = LocalDate.ofEpochDay(record.getInt());
+                    LocalDate to = LocalDate.ofEpochDay(record.getInt());
+                    task = new Event(readDescription(buffer, record, entries), from, to);
+                    break;
+                default:
+                    throw new EncikException("Unknown task type tag: " + tag);
+            }
+            if ((tag & DONE_BIT) != 0) {
+                task.markAsDone();
+            }
+            task.setId(id);
+            return task;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | DateTimeException e) {
+            throw new EncikException("Corrupted binary record: " + (index + 1));
+        }
+    }
+
+    /**
+     * Returns the encoded size of a task record, not counting a description
+     * stored in the record.
+     *
+     * @param task The task.
+     * @return The record size in bytes.
+     */
+    private static int recordSize(Task task) {
+        int dates = task instanceof Event ? 2 : task instanceof Deadline ? 1 : 0;
+        return 1 + Integer.BYTES + dates * Integer.BYTES + Integer.BYTES;
+    }
+
+    /**
+     * Encodes a single task record.
+     *
+     * @param buffer      The buffer to write to.
+     * @param task        The task.
+     * @param entry       The dictionary entry of the description, or -1 to
+     *                    store the description in the record.
+     * @param description The UTF-8 description.
+     */
+    private static void encodeRecord(ByteBuffer buffer, Task task, int entry, byte[] description) {
+        int doneBit = task.isDone() ? DONE_BIT : 0;
+        if (task instanceof Deadline) {
+            buffer.put((byte) ('D' | doneBit));
+            buffer.putInt(task.getId());
+            buffer.putInt((int) ((Deadline) task).getByDate().toEpochDay());
+        } else if (task instanceof Event) {
+            Event event = (Event) task;
+            buffer.put((byte) ('E' | doneBit));
+            buffer.putInt(task.getId());
+            buffer.putInt((int) event.getFromDate().toEpochDay());
+            buffer.putInt((int) event.getToDate().toEpochDay());
+        } else {
+            buffer.put((byte) ('T' | doneBit));
+            buffer.putInt(task.getId());
+        }
+        if (entry >= 0) {
+            buffer.putInt(entry);
+        } else {
+            buffer.putInt(~description.length);
+            buffer.put(description);
+        }
+    }
+
+    /**
+     * Checks whether a mapped file records task ids.
+     *
+     * @param buffer The mapped file.
+     * @return True if the file is of version 2 or later.
+     */
+    private static boolean hasIds(ByteBuffer buffer) {
+        return buffer.get(4) >= VERSION_WITHOUT_DICTIONARY;
+    }
+
+    /**
+     * Returns the number of dictionary entries in a mapped file.
+     *
+     * @param buffer The mapped file.
+     * @return The entry count, or 0 if the file has no dictionary.
+     */
+    private static int entryCount(ByteBuffer buffer) {
+        if (buffer.get(4) != VERSION) {
+            return 0;
+        }
+        try {
+            int dictionaryPosition = (int) buffer.getLong(21);
+            int count = buffer.getInt(dictionaryPosition);
+            boolean isPlausible = count >= 0 && count <= (buffer.limit() - dictionaryPosition) / Long.BYTES;
+            return isPlausible ? count : 0;
+        } catch (IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the description of a record, either stored in the record or
+     * referring to a dictionary entry.
+     *
+     * @param buffer  The mapped file.
+     * @param record  The buffer positioned at the description reference.
+     * @param entries The dictionary entries decoded so far, or null.
+     * @return The description.
+     */
+    private static String readDescription(ByteBuffer buffer, ByteBuffer record, String[] entries) {
+        int reference = record.getInt();
+        if (buffer.get(4) != VERSION) {
+            return readUtf8(record, reference);
+        }
+        if (reference < 0) {
+            return readUtf8(record, ~reference);
+        }
+        if (entries != null && reference < entries.length && entries[reference] != null) {
+            return entries[reference];
+        }
+        int dictionaryPosition = (int) buffer.getLong(21);
+        if (reference >= buffer.getInt(dictionaryPosition)) {
+            throw new IllegalArgumentException("Invalid dictionary entry: " + reference);
+        }
+        ByteBuffer entry = buffer.duplicate();
+        entry.position((int) buffer.getLong(dictionaryPosition + Integer.BYTES + reference * Long.BYTES));
+        String description = readUtf8(entry, entry.getInt());
+        if (entries != null && reference < entries.length) {
+            entries[reference] = description;
+        }
+        return description;
+    }
+
+    /**
+     * Reads a UTF-8 description of a given length.
+     *
+     * @param source The buffer positioned at the description.
+     * @param length The length of the description in bytes.
+     * @return The description.
+     */
+    private static String readUtf8(ByteBuffer source, int length) {
+        if (length < 0 || length > source.remaining()) {
+            throw new IllegalArgumentException("Invalid description length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
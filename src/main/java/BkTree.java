@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A set of words arranged as a BK-tree, so that the words within a given
+ * edit distance of a query can be found without comparing the query with
+ * every word.
+ *
+ * Each child of a node is labelled with its edit distance from the node.
+ * By the triangle inequality, a word within distance d of the query can
+ * only be below a child whose label is within d of the node's own distance
+ * from the query, so the other children are skipped, and the distance to a
+ * node only has to be computed exactly up to its largest child label plus
+ * d. Nodes are kept in parallel arrays rather than as objects. Removed words
+ * stay in the tree, marked as removed, until they outnumber the words still
+ * in it, when the tree is rebuilt.
+ */
+public class BkTree {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+    private int[] label = new int[INITIAL_CAPACITY];
+    private int[] maxChildLabel = new int[INITIAL_CAPACITY];
+    private boolean[] isRemoved = new boolean[INITIAL_CAPACITY];
+    private int nodeCount;
+    private int removedCount;
+
+    /**
+     * Adds a word to the tree.
+     *
+     * @param word The word.
+     * @return True if the word was not already in the tree.
+     */
+    public boolean add(String word) {
+        if (nodeCount == 0) {
+            newNode(word, 0);
+            return true;
+        }
+        int node = 0;
+        while (true) {
+            int distance = distance(word, words[node]);
+            if (distance == 0) {
+                if (!isRemoved[node]) {
+                    return false;
+                }
+                isRemoved[node] = false;
+                removedCount--;
+                return true;
+            }
+            int child = childLabelled(node, distance);
+            if (child < 0) {
+                child = newNode(word, distance);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+                maxChildLabel[node] = Math.max(maxChildLabel[node], distance);
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Removes a word from the tree.
+     *
+     * @param word The word.
+     * @return True if the word was in the tree.
+     */
+    public boolean remove(String word) {
+        int node = nodeCount == 0 ? -1 : 0;
+        while (node >= 0) {
+            int distance = distance(word, words[node]);
+            if (distance == 0) {
+                break;
+            }
+            node = childLabelled(node, distance);
+        }
+        if (node < 0 || isRemoved[node]) {
+            return false;
+        }
+        isRemoved[node] = true;
+        removedCount++;
+        if (removedCount > nodeCount - removedCount) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of words in the tree.
+     *
+     * @return The number of words.
+     */
+    public int size() {
+        return nodeCount - removedCount;
+    }
+
+    /**
+     * Finds the words within an edit distance of a query.
+     *
+     * @param query       The query.
+     * @param maxDistance The greatest edit distance to accept.
+     * @return The words found, in no particular order.
+     */
+    public ArrayList<String> search(String query, int maxDistance) {
+        ArrayList<String> found = new ArrayList<>();
+        if (nodeCount == 0) {
+            return found;
+        }
+        int[] stack = new int[INITIAL_CAPACITY];
+        int[] row = new int[query.length() + 1];
+        int[] previousRow = new int[query.length() + 1];
+        int depth = 0;
+        stack[depth++] = 0;
+        while (depth > 0) {
+            int node = stack[--depth];
+            int bound = Math.max(maxChildLabel[node], 0) + maxDistance;
+            int distance = boundedDistance(query, words[node], bound, row, previousRow);
+            if (distance > bound) {
+                continue;
+            }
+            if (distance <= maxDistance && !isRemoved[node]) {
+                found.add(words[node]);
+            }
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (Math.abs(label[child] - distance) <= maxDistance) {
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = child;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the Levenshtein distance between two words: the fewest
+     * single-character insertions, deletions and substitutions that turn one
+     * into the other.
+     *
+     * @param a The first word.
+     * @param b The second word.
+     * @return The edit distance.
+     */
+    public static int distance(String a, String b) {
+        return boundedDistance(a, b, Integer.MAX_VALUE, new int[a.length() + 1], new int[a.length() + 1]);
+    }
+
+    /**
+     * Returns the Levenshtein distance between two words if it is at most a
+     * bound, stopping early once it is known to be more.
+     *
+     * @param a           The first word.
+     * @param b           The second word.
+     * @param bound       The largest distance of interest.
+     * @param row         Scratch space for at least a.length() + 1 values.
+     * @param previousRow More scratch space of the same size.
+     * @return The edit distance, or a value greater than the bound if the
+     *         distance is greater than the bound.
+     */
+    private static int boundedDistance(String a, String b, int bound, int[] row, int[] previousRow) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+        for (int i = 0; i <= a.length(); i++) {
+            previousRow[i] = i;
+        }
+        for (int j = 1; j <= b.length(); j++) {
+            row[0] = j;
+            char c = b.charAt(j - 1);
+            int rowMin = j;
+            for (int i = 1; i <= a.length(); i++) {
+                int substitution = previousRow[i - 1] + (c == a.charAt(i - 1) ? 0 : 1);
+                row[i] = Math.min(substitution, Math.min(previousRow[i], row[i - 1]) + 1);
+                rowMin = Math.min(rowMin, row[i]);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] swap = previousRow;
+            previousRow = row;
+            row = swap;
+        }
+        return previousRow[a.length()];
+    }
+
+    /**
+     * Returns the child of a node with the given label.
+     *
+     * @param node     The node.
+     * @param distance The label.
+     * @return The child, or -1 if there is none.
+     */
+    private int childLabelled(int node, int distance) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (label[child] == distance) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a node with no children.
+     *
+     * @param word     The word of the node.
+     * @param distance The label of the node.
+     * @return The new node.
+     */
+    private int newNode(String word, int distance) {
+        if (nodeCount == words.length) {
+            int capacity = nodeCount * 2;
+            words = Arrays.copyOf(words, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            label = Arrays.copyOf(label, capacity);
+            maxChildLabel = Arrays.copyOf(maxChildLabel, capacity);
+            isRemoved = Arrays.copyOf(isRemoved, capacity);
+        }
+        int node = nodeCount++;
+        words[node] = word;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        label[node] = distance;
+        maxChildLabel[node] = -1;
+        isRemoved[node] = false;
+        return node;
+    }
+
+    /**
+     * Rebuilds the tree from the words that have not been removed.
+     */
+    private void rebuild() {
+        String[] kept = new String[nodeCount - removedCount];
+        int keptCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (!isRemoved[node]) {
+                kept[keptCount++] = words[node];
+            }
+        }
+        Arrays.fill(words, 0, nodeCount, null);
+        nodeCount = 0;
+        removedCount = 0;
+        for (String word : kept) {
+            add(word);
+        }
+    }
+}
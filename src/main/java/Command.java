@@ -0,0 +1,268 @@
+/**
+ * Represents one line of user input, broken into its parts by CommandLexer.
+ * Parts are kept as offsets into the input rather than as substrings, so the
+ * same Command can be reused for every line without allocating; handlers
+ * only take substrings of the parts they keep, such as a task description.
+ */
+public class Command {
+    /**
+     * The commands Encik understands, with the word that invokes each.
+     */
+    public enum Type {
+        LIST("list", true),
+        MARK("mark", false),
+        UNMARK("unmark", false),
+        TODO("todo", false),
+        DEADLINE("deadline", false),
+        EVENT("event", false),
+        DELETE("delete", false),
+        FIND("find", true),
+        DUE("due", true),
+        BETWEEN("between", true),
+        OVERLAPPING("overlapping", true),
+        UNDO("undo", false),
+        REDO("redo", false),
+        STATS("stats", true),
+        UNKNOWN("", false);
+
+        private static final Type[] VALUES = values();
+
+        private final String word;
+        private final boolean isReadOnly;
+
+        Type(String word, boolean isReadOnly) {
+            this.word = word;
+            this.isReadOnly = isReadOnly;
+        }
+
+        /**
+         * Returns whether the command only reads the task list.
+         *
+         * @return True if the command does not change the task list.
+         */
+        public boolean isReadOnly() {
+            return isReadOnly;
+        }
+
+        /**
+         * Looks up the command invoked by a word of the input, ignoring case.
+         *
+         * @param input The input.
+         * @param start The index of the first character of the word.
+         * @param end   The index after the last character of the word.
+         * @return The command, or UNKNOWN if the word invokes none.
+         */
+        public static Type of(String input, int start, int end) {
+            int length = end - start;
+            for (Type type : VALUES) {
+                if (type.word.length() == length && length > 0
+                        && input.regionMatches(true, start, type.word, 0, length)) {
+                    return type;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * The options that may follow a task description.
+     */
+    public enum Flag {
+        BY(" /by "),
+        FROM(" /from "),
+        TO(" /to ");
+
+        private final String marker;
+
+        Flag(String marker) {
+            this.marker = marker;
+        }
+
+        /**
+         * Returns the text that introduces the option, including the spaces
+         * around it.
+         *
+         * @return The marker.
+         */
+        public String getMarker() {
+            return marker;
+        }
+    }
+
+    private final int[] flagStarts = new int[Flag.values().length];
+    private final int[] flagEnds = new int[Flag.values().length];
+
+    private String input;
+    private Type type;
+    private int argumentStart;
+    private int argumentEnd;
+    private int descriptionStart;
+    private int descriptionEnd;
+
+    /**
+     * Starts describing a new line of input, clearing every part.
+     *
+     * @param input The line of input.
+     * @param type  The command it invokes.
+     */
+    void reset(String input, Type type) {
+        this.input = input;
+        this.type = type;
+        argumentStart = 0;
+        argumentEnd = 0;
+        descriptionStart = 0;
+        descriptionEnd = 0;
+        for (int i = 0; i < flagStarts.length; i++) {
+            flagStarts[i] = -1;
+            flagEnds[i] = -1;
+        }
+    }
+
+    /**
+     * Records the span of the arguments after the command word.
+     *
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     */
+    void setArgument(int start, int end) {
+        argumentStart = start;
+        argumentEnd = end;
+    }
+
+    /**
+     * Records the span of the task description.
+     *
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     */
+    void setDescription(int start, int end) {
+        descriptionStart = start;
+        descriptionEnd = end;
+    }
+
+    /**
+     * Records the span of the value of an option.
+     *
+     * @param flag  The option.
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     */
+    void setFlag(Flag flag, int start, int end) {
+        flagStarts[flag.ordinal()] = start;
+        flagEnds[flag.ordinal()] = end;
+    }
+
+    /**
+     * Returns the line of input.
+     *
+     * @return The input.
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the command the input invokes.
+     *
+     * @return The command type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns whether anything follows the command word.
+     *
+     * @return True if the arguments are not empty.
+     */
+    public boolean hasArgument() {
+        return argumentEnd > argumentStart;
+    }
+
+    /**
+     * Returns the index of the first character of the arguments.
+     *
+     * @return The start of the arguments.
+     */
+    public int getArgumentStart() {
+        return argumentStart;
+    }
+
+    /**
+     * Returns the index after the last character of the arguments.
+     *
+     * @return The end of the arguments.
+     */
+    public int getArgumentEnd() {
+        return argumentEnd;
+    }
+
+    /**
+     * Returns the arguments after the command word, without surrounding
+     * whitespace.
+     *
+     * @return The arguments.
+     */
+    public String getArgument() {
+        return input.substring(argumentStart, argumentEnd);
+    }
+
+    /**
+     * Checks whether the arguments are the given word, ignoring case.
+     *
+     * @param word The word.
+     * @return True if the arguments are exactly the word.
+     */
+    public boolean isArgument(String word) {
+        return argumentEnd - argumentStart == word.length()
+                && input.regionMatches(true, argumentStart, word, 0, word.length());
+    }
+
+    /**
+     * Returns the position of a character in the arguments.
+     *
+     * @param c The character.
+     * @return Its offset from the start of the arguments, or -1 if absent.
+     */
+    public int indexInArgument(char c) {
+        for (int i = argumentStart; i < argumentEnd; i++) {
+            if (input.charAt(i) == c) {
+                return i - argumentStart;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the task description, without surrounding whitespace.
+     *
+     * @return The description, which may be empty.
+     */
+    public String getDescription() {
+        return input.substring(descriptionStart, descriptionEnd);
+    }
+
+    /**
+     * Returns whether an option was given.
+     *
+     * @param flag The option.
+     * @return True if the option's marker appears in the input.
+     */
+    public boolean hasFlag(Flag flag) {
+        return flagStarts[flag.ordinal()] >= 0;
+    }
+
+    /**
+     * Returns the value of an option, without surrounding whitespace.
+     *
+     * @param flag The option.
+     * @return The value, which may be empty, or null if the option was not
+     *         given.
+     */
+    public String getFlag(Flag flag) {
+        if (!hasFlag(flag)) {
+            return null;
+        }
+        return input.substring(flagStarts[flag.ordinal()], flagEnds[flag.ordinal()]);
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Breaks a line of user input into a Command in a single scan, without
+ * regular expressions or intermediate strings.
+ *
+ * The command word ends at the first whitespace. For deadlines and events,
+ * the description runs up to the first option marker, and each option's
+ * value runs up to the next occurrence of the same marker, or for "/to", up
+ * to the end of the "/from" value it appears in. Every part has surrounding
+ * whitespace removed, as String.trim does.
+ */
+public class CommandLexer {
+
+    /**
+     * Returns the command a line of input invokes, without breaking up the
+     * rest of it.
+     *
+     * @param input The line of input.
+     * @return The command type.
+     */
+    public static Command.Type typeOf(String input) {
+        int start = skipWhitespace(input, 0, input.length());
+        return Command.Type.of(input, start, skipWord(input, start, input.length()));
+    }
+
+    /**
+     * Breaks a line of input into its parts.
+     *
+     * @param input   The line of input.
+     * @param command The command to fill in, which is cleared first.
+     */
+    public static void lex(String input, Command command) {
+        int end = input.length();
+        while (end > 0 && isWhitespace(input.charAt(end - 1))) {
+            end--;
+        }
+        int verbStart = skipWhitespace(input, 0, end);
+        int verbEnd = skipWord(input, verbStart, end);
+        Command.Type type = Command.Type.of(input, verbStart, verbEnd);
+        command.reset(input, type);
+        command.setArgument(skipWhitespace(input, verbEnd, end), end);
+
+        if (type == Command.Type.DEADLINE) {
+            lexDeadline(input, command, verbEnd, end);
+        } else if (type == Command.Type.EVENT) {
+            lexEvent(input, command, verbEnd, end);
+        } else {
+            command.setDescription(command.getArgumentStart(), end);
+        }
+    }
+
+    /**
+     * Finds the description and "/by" value of a deadline.
+     *
+     * @param input   The line of input.
+     * @param command The command to fill in.
+     * @param start   The index after the command word.
+     * @param end     The index after the last non-whitespace character.
+     */
+    private static void lexDeadline(String input, Command command, int start, int end) {
+        int markerLength = Command.Flag.BY.getMarker().length();
+        int by = -1;
+        int nextBy = end;
+        for (int i = start; i < end; i++) {
+            if (!isMarker(input, i, end, Command.Flag.BY)) {
+                continue;
+            }
+            if (by >= 0) {
+                nextBy = i;
+                break;
+            }
+            by = i;
+            i += markerLength - 1;
+        }
+        if (by < 0) {
+            setTrimmedDescription(input, command, start, end);
+            return;
+        }
+        setTrimmedDescription(input, command, start, by);
+        setTrimmedFlag(input, command, Command.Flag.BY, by + markerLength, nextBy);
+    }
+
+    /**
+     * Finds the description, "/from" value and "/to" value of an event.
+     * A "/to" counts only inside the first "/from" value, and is ignored if
+     * only further "/to"s follow it there, as String.split drops trailing
+     * empty parts.
+     *
+     * @param input   The line of input.
+     * @param command The command to fill in.
+     * @param start   The index after the command word.
+     * @param end     The index after the last non-whitespace character.
+     */
+    private static void lexEvent(String input, Command command, int start, int end) {
+        int fromLength = Command.Flag.FROM.getMarker().length();
+        int toLength = Command.Flag.TO.getMarker().length();
+        int from = -1;
+        int nextFrom = end;
+        int to = -1;
+        int nextTo = -1;
+        for (int i = start; i < end; i++) {
+            if (isMarker(input, i, end, Command.Flag.FROM)) {
+                if (from >= 0) {
+                    nextFrom = i;
+                    break;
+                }
+                from = i;
+                i += fromLength - 1;
+            } else if (from >= 0 && nextTo < 0 && (to < 0 || i >= to + toLength)
+                    && isMarker(input, i, end, Command.Flag.TO)) {
+                // Not skipped past, as the next "/from" may share its space.
+                if (to >= 0) {
+                    nextTo = i;
+                } else {
+                    to = i;
+                }
+            }
+        }
+        if (from < 0) {
+            setTrimmedDescription(input, command, start, end);
+            return;
+        }
+        setTrimmedDescription(input, command, start, from);
+        int fromStart = from + fromLength;
+        int toStart = to + toLength;
+        int toEnd = nextTo >= 0 && nextTo + toLength <= nextFrom ? nextTo : nextFrom;
+        if (to < 0 || toStart > nextFrom || isOnlyMarkers(input, toStart, nextFrom, Command.Flag.TO)) {
+            setTrimmedFlag(input, command, Command.Flag.FROM, fromStart, nextFrom);
+            return;
+        }
+        setTrimmedFlag(input, command, Command.Flag.FROM, fromStart, to);
+        setTrimmedFlag(input, command, Command.Flag.TO, toStart, toEnd);
+    }
+
+    /**
+     * Checks whether an option marker starts at a position.
+     *
+     * @param input The line of input.
+     * @param index The position.
+     * @param end   The index after the last non-whitespace character.
+     * @param flag  The option.
+     * @return True if the marker starts at the position.
+     */
+    private static boolean isMarker(String input, int index, int end, Command.Flag flag) {
+        String marker = flag.getMarker();
+        return input.charAt(index) == ' ' && index + marker.length() <= end
+                && input.startsWith(marker, index);
+    }
+
+    /**
+     * Checks whether a span consists only of repetitions of an option marker.
+     *
+     * @param input The line of input.
+     * @param start The start of the span.
+     * @param end   The end of the span.
+     * @param flag  The option.
+     * @return True if the span is empty or made up of whole markers.
+     */
+    private static boolean isOnlyMarkers(String input, int start, int end, Command.Flag flag) {
+        String marker = flag.getMarker();
+        for (int i = start; i < end; i += marker.length()) {
+            if (!input.startsWith(marker, i) || i + marker.length() > end) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the description, trimming the given span.
+     *
+     * @param input   The line of input.
+     * @param command The command to fill in.
+     * @param start   The start of the span.
+     * @param end     The end of the span.
+     */
+    private static void setTrimmedDescription(String input, Command command, int start, int end) {
+        start = skipWhitespace(input, start, end);
+        command.setDescription(start, trimEnd(input, start, end));
+    }
+
+    /**
+     * Records the value of an option, trimming the given span.
+     *
+     * @param input   The line of input.
+     * @param command The command to fill in.
+     * @param flag    The option.
+     * @param start   The start of the span.
+     * @param end     The end of the span.
+     */
+    private static void setTrimmedFlag(String input, Command command, Command.Flag flag, int start, int end) {
+        start = skipWhitespace(input, start, end);
+        command.setFlag(flag, start, trimEnd(input, start, end));
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after a
+     * position.
+     *
+     * @param input The line of input.
+     * @param start The position.
+     * @param end   The index to stop at.
+     * @return The index, or end if there is none.
+     */
+    private static int skipWhitespace(String input, int start, int end) {
+        while (start < end && isWhitespace(input.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the index of the first whitespace character at or after a
+     * position.
+     *
+     * @param input The line of input.
+     * @param start The position.
+     * @param end   The index to stop at.
+     * @return The index, or end if there is none.
+     */
+    private static int skipWord(String input, int start, int end) {
+        while (start < end && !isWhitespace(input.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the end of a span with trailing whitespace removed.
+     *
+     * @param input The line of input.
+     * @param start The start of the span.
+     * @param end   The end of the span.
+     * @return The new end.
+     */
+    private static int trimEnd(String input, int start, int end) {
+        while (end > start && isWhitespace(input.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Checks whether a character is whitespace in the sense of String.trim.
+     *
+     * @param c The character.
+     * @return True if the character is a space or control character.
+     */
+    private static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+}
@@ -0,0 +1,377 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A TaskList that may be used by several threads at once.
+ *
+ * Adding and removing tasks shifts the positions of other tasks, so these
+ * take an exclusive lock. Marking a task only changes its done flag, which
+ * is volatile, so marks share a lock with readers and with each other, and
+ * an index always refers to the task at that position when the mark takes
+ * effect. Searches and lookups by id also share the lock, once the index
+ * or map they use has been built under the exclusive lock. Once the filter
+ * index has been built, marks also update it, and so take the exclusive
+ * lock too.
+ *
+ * getTasks returns an immutable snapshot of the list, taken at most once
+ * per change to its contents, so listing and saving never see a list in
+ * the middle of a change and never block later changes.
+ *
+ * Each method is atomic on its own. A caller that needs several calls to
+ * act as one, such as a command that changes the list and records the
+ * change for persistence, must still hold the list's monitor.
+ */
+public class ConcurrentTaskList extends TaskList {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long version;
+    private volatile Snapshot snapshot = new Snapshot(-1, Collections.emptyList());
+    private volatile boolean isSearchIndexBuilt;
+    private volatile boolean isDateIndexBuilt;
+    private volatile boolean isIdMapBuilt;
+    private volatile boolean isFilterIndexBuilt;
+
+    /**
+     * Constructs an empty ConcurrentTaskList.
+     */
+    public ConcurrentTaskList() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Constructs a ConcurrentTaskList with the given list of tasks.
+     * The list must not be used directly afterwards.
+     *
+     * @param tasks The initial list of tasks.
+     */
+    public ConcurrentTaskList(ArrayList<Task> tasks) {
+        super(tasks);
+    }
+
+    @Override
+    public void setReminders(ReminderScheduler reminders) {
+        lock.writeLock().lock();
+        try {
+            super.setReminders(reminders);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes the dates of undone deadlines and events in an id range to a
+     * consumer, under the shared lock.
+     *
+     * @param firstId  The lowest id to include.
+     * @param endId    The id after the highest id to include.
+     * @param consumer The consumer of the dates.
+     */
+    @Override
+    public void forEachUndoneDate(int firstId, int endId, TaskStore.DateConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            super.forEachUndoneDate(firstId, endId, consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(Task task) {
+        lock.writeLock().lock();
+        try {
+            super.add(task);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Task remove(int index) {
+        lock.writeLock().lock();
+        try {
+            Task task = super.remove(index);
+            version++;
+            return task;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> removeAll(BitSet indexes) {
+        lock.writeLock().lock();
+        try {
+            List<Task> removedTasks = super.removeAll(indexes);
+            version++;
+            return removedTasks;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> restoreAll(int[] indexes, List<Task> removedTasks) {
+        lock.writeLock().lock();
+        try {
+            List<Task> restoredTasks = super.restoreAll(indexes, removedTasks);
+            version++;
+            return restoredTasks;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Task get(int index) {
+        return read(() -> super.get(index));
+    }
+
+    @Override
+    public Task markAsDone(int index) {
+        return mark(() -> super.markAsDone(index));
+    }
+
+    @Override
+    public Task markAsNotDone(int index) {
+        return mark(() -> super.markAsNotDone(index));
+    }
+
+    @Override
+    public int size() {
+        return read(super::size);
+    }
+
+    @Override
+    public boolean isValidIndex(int index) {
+        return read(() -> super.isValidIndex(index));
+    }
+
+    /**
+     * Returns the position of the task with the given id. The first lookup
+     * builds the map from ids, and so runs under the exclusive lock.
+     *
+     * @param id The task id.
+     * @return The 0-based index of the task, or -1 if no task has that id.
+     */
+    @Override
+    public int indexOfId(int id) {
+        if (isIdMapBuilt) {
+            return read(() -> super.indexOfId(id));
+        }
+        lock.writeLock().lock();
+        try {
+            int index = super.indexOfId(id);
+            isIdMapBuilt = true;
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns an immutable snapshot of the tasks in list order.
+     * The snapshot does not change when tasks are later added or removed,
+     * but shows the current done state of the tasks it holds.
+     *
+     * @return The snapshot.
+     */
+    @Override
+    public List<Task> getTasks() {
+        lock.readLock().lock();
+        try {
+            Snapshot current = snapshot;
+            if (current.version != version) {
+                current = new Snapshot(version, Collections.unmodifiableList(new ArrayList<>(super.getTasks())));
+                snapshot = current;
+            }
+            return current.tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TaskList find(String keyword) {
+        if (!SearchIndex.supportsSubstring(keyword)) {
+            // Scans a snapshot through streamFind, so needs no lock.
+            return super.find(keyword);
+        }
+        return searchWith(() -> super.find(keyword));
+    }
+
+    /**
+     * Finds tasks whose descriptions contain the given keyword, yielding
+     * them as they are found. Candidates from the search index are taken
+     * under the shared lock, and short keywords scan a snapshot, so the
+     * stream may be consumed without holding any lock.
+     *
+     * @param keyword The keyword to search for (case-insensitive).
+     * @return The matching tasks.
+     */
+    @Override
+    public Stream<Task> streamFind(String keyword) {
+        if (SearchIndex.supportsSubstring(keyword)) {
+            return searchWith(() -> super.streamFind(keyword));
+        }
+        List<Task> tasks = getTasks();
+        return searchStream(keyword, matches -> ParallelTaskScan.stream(tasks::get, tasks.size(), true, matches));
+    }
+
+    @Override
+    public TaskList findWord(String word) {
+        return searchWith(() -> super.findWord(word));
+    }
+
+    @Override
+    public TaskList findPrefix(String prefix) {
+        return searchWith(() -> super.findPrefix(prefix));
+    }
+
+    @Override
+    public List<Task> findFuzzy(String query, int limit) {
+        return searchWith(() -> super.findFuzzy(query, limit));
+    }
+
+    @Override
+    public TaskList findDue(LocalDate date) {
+        return searchDatesWith(() -> super.findDue(date));
+    }
+
+    @Override
+    public TaskList findBetween(LocalDate from, LocalDate to) {
+        return searchDatesWith(() -> super.findBetween(from, to));
+    }
+
+    @Override
+    public TaskList findOverlapping(LocalDate date) {
+        return searchDatesWith(() -> super.findOverlapping(date));
+    }
+
+    @Override
+    public IdBitmap filter(FilterIndex.Status status, FilterIndex.Type type, List<String> tags) {
+        if (isFilterIndexBuilt) {
+            return read(() -> super.filter(status, type, tags));
+        }
+        lock.writeLock().lock();
+        try {
+            IdBitmap result = super.filter(status, type, tags);
+            isFilterIndexBuilt = true;
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> getByIds(int[] ids) {
+        return read(() -> super.getByIds(ids));
+    }
+
+    /**
+     * Runs a search that uses the search index. The first such search builds
+     * the index, and so runs under the exclusive lock.
+     *
+     * @param search The search.
+     * @param <T>    The type of the result.
+     * @return The search result.
+     */
+    private <T> T searchWith(Supplier<T> search) {
+        if (isSearchIndexBuilt) {
+            return read(search);
+        }
+        lock.writeLock().lock();
+        try {
+            T result = search.get();
+            isSearchIndexBuilt = true;
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a search that uses the date index. The first such search builds
+     * the index, and so runs under the exclusive lock.
+     *
+     * @param search The search.
+     * @return The search result.
+     */
+    private TaskList searchDatesWith(Supplier<TaskList> search) {
+        if (isDateIndexBuilt) {
+            return read(search);
+        }
+        lock.writeLock().lock();
+        try {
+            TaskList result = search.get();
+            isDateIndexBuilt = true;
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks or unmarks a task under the shared lock, or under the exclusive
+     * lock once the filter index has been built, as the mark then changes
+     * the index too. The flag is checked again once the shared lock is held,
+     * in case the index was built while waiting for it.
+     *
+     * @param marking The mark or unmark.
+     * @return The task marked or unmarked.
+     */
+    private Task mark(Supplier<Task> marking) {
+        if (!isFilterIndexBuilt) {
+            lock.readLock().lock();
+            try {
+                if (!isFilterIndexBuilt) {
+                    return marking.get();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            return marking.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs an operation under the shared lock.
+     *
+     * @param operation The operation.
+     * @param <T>       The type of the result.
+     * @return The result of the operation.
+     */
+    private <T> T read(Supplier<T> operation) {
+        lock.readLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * An immutable copy of the list, tagged with the version it was taken at.
+     */
+    private static class Snapshot {
+        final long version;
+        final List<Task> tasks;
+
+        Snapshot(long version, List<Task> tasks) {
+            this.version = version;
+            this.tasks = tasks;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Indexes the dates of deadlines and events so that date queries do not have
+ * to scan every task.
+ * Deadlines and events are kept in separate interval trees keyed on epoch
+ * days, so each query takes logarithmic time plus the number of results.
+ * The trees hold task ids, and the matching tasks are looked up in their
+ * list when a query returns them.
+ */
+public class DateIndex {
+    private final IntervalTree deadlines = new IntervalTree();
+    private final IntervalTree events = new IntervalTree();
+    private final Function<int[], ArrayList<Task>> tasksWithIds;
+
+    /**
+     * Constructs an empty DateIndex.
+     *
+     * @param tasksWithIds Looks up indexed tasks in their list by id, in
+     *                     the order of the ids given.
+     */
+    public DateIndex(Function<int[], ArrayList<Task>> tasksWithIds) {
+        this.tasksWithIds = tasksWithIds;
+    }
+
+    /**
+     * Adds a task to the index. Tasks without dates are ignored.
+     *
+     * @param task The task to index. Its id must already be assigned.
+     */
+    public void add(Task task) {
+        if (task instanceof Deadline) {
+            long day = ((Deadline) task).getByDate().toEpochDay();
+            deadlines.insert(day, day, task.getId());
+        } else if (task instanceof Event) {
+            Event event = (Event) task;
+            events.insert(event.getFromDate().toEpochDay(), event.getToDate().toEpochDay(), task.getId());
+        }
+    }
+
+    /**
+     * Removes a task from the index.
+     *
+     * @param task The task to remove.
+     */
+    public void remove(Task task) {
+        if (task instanceof Deadline) {
+            deadlines.delete(((Deadline) task).getByDate().toEpochDay(), task.getId());
+        } else if (task instanceof Event) {
+            events.delete(((Event) task).getFromDate().toEpochDay(), task.getId());
+        }
+    }
+
+    /**
+     * Finds deadlines due on the given date.
+     *
+     * @param date The due date.
+     * @return The matching tasks, in list order.
+     */
+    public ArrayList<Task> findDue(LocalDate date) {
+        ArrayList<Integer> matches = new ArrayList<>();
+        deadlines.collectOverlapping(date.toEpochDay(), date.toEpochDay(), matches);
+        return inListOrder(matches);
+    }
+
+    /**
+     * Finds deadlines due within, and events overlapping, the given range.
+     *
+     * @param from The first date of the range.
+     * @param to   The last date of the range.
+     * @return The matching tasks, in list order.
+     */
+    public ArrayList<Task> findBetween(LocalDate from, LocalDate to) {
+        ArrayList<Integer> matches = new ArrayList<>();
+        deadlines.collectOverlapping(from.toEpochDay(), to.toEpochDay(), matches);
+        events.collectOverlapping(from.toEpochDay(), to.toEpochDay(), matches);
+        return inListOrder(matches);
+    }
+
+    /**
+     * Finds events taking place on the given date.
+     *
+     * @param date The date.
+     * @return The matching tasks, in list order.
+     */
+    public ArrayList<Task> findOverlapping(LocalDate date) {
+        ArrayList<Integer> matches = new ArrayList<>();
+        events.collectOverlapping(date.toEpochDay(), date.toEpochDay(), matches);
+        return inListOrder(matches);
+    }
+
+    /**
+     * Sorts matches by task id, which follows list order, and looks up
+     * their tasks.
+     *
+     * @param matches The ids of the matching tasks.
+     * @return The tasks, in list order.
+     */
+    private ArrayList<Task> inListOrder(ArrayList<Integer> matches) {
+        int[] ids = new int[matches.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = matches.get(i);
+        }
+        Arrays.sort(ids);
+        return tasksWithIds.apply(ids);
+    }
+
+    /**
+     * A treap of closed intervals ordered by start day and task id, where
+     * each node also records the largest end day in its subtree.
+     */
+    private static class IntervalTree {
+        private final Random random = new Random();
+        private Node root;
+
+        void insert(long start, long end, int id) {
+            root = insert(root, new Node(start, end, id, random.nextInt()));
+        }
+
+        void delete(long start, int id) {
+            root = delete(root, start, id);
+        }
+
+        void collectOverlapping(long from, long to, ArrayList<Integer> matches) {
+            collectOverlapping(root, from, to, matches);
+        }
+
+        private Node insert(Node node, Node added) {
+            if (node == null) {
+                return added;
+            }
+            if (compare(added.start, added.id, node) < 0) {
+                node.left = insert(node.left, added);
+                if (node.left.priority > node.priority) {
+                    node = rotateRight(node);
+                }
+            } else {
+                node.right = insert(node.right, added);
+                if (node.right.priority > node.priority) {
+                    node = rotateLeft(node);
+                }
+            }
+            node.update();
+            return node;
+        }
+
+        private Node delete(Node node, long start, int id) {
+            if (node == null) {
+                return null;
+            }
+            int order = compare(start, id, node);
+            if (order < 0) {
+                node.left = delete(node.left, start, id);
+            } else if (order > 0) {
+                node.right = delete(node.right, start, id);
+            } else if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            } else if (node.left.priority > node.right.priority) {
+                node = rotateRight(node);
+                node.right = delete(node.right, start, id);
+            } else {
+                node = rotateLeft(node);
+                node.left = delete(node.left, start, id);
+            }
+            node.update();
+            return node;
+        }
+
+        private void collectOverlapping(Node node, long from, long to, ArrayList<Integer> matches) {
+            if (node == null || node.maxEnd < from) {
+                return;
+            }
+            collectOverlapping(node.left, from, to, matches);
+            if (node.start > to) {
+                return;
+            }
+            if (node.end >= from) {
+                matches.add(node.id);
+            }
+            collectOverlapping(node.right, from, to, matches);
+        }
+
+        private static int compare(long start, int id, Node node) {
+            if (start != node.start) {
+                return Long.compare(start, node.start);
+            }
+            return Integer.compare(id, node.id);
+        }
+
+        private static Node rotateRight(Node node) {
+            Node pivot = node.left;
+            node.left = pivot.right;
+            pivot.right = node;
+            node.update();
+            pivot.update();
+            return pivot;
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node pivot = node.right;
+            node.right = pivot.left;
+            pivot.left = node;
+            node.update();
+            pivot.update();
+            return pivot;
+        }
+    }
+
+    /**
+     * A node of the interval tree.
+     */
+    private static class Node {
+        final long start;
+        final long end;
+        final int id;
+        final int priority;
+        long maxEnd;
+        Node left;
+        Node right;
+
+        Node(long start, long end, int id, int priority) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+
+        void update() {
+            maxEnd = end;
+            if (left != null) {
+                maxEnd = Math.max(maxEnd, left.maxEnd);
+            }
+            if (right != null) {
+                maxEnd = Math.max(maxEnd, right.maxEnd);
+            }
+        }
+    }
+}
@@ -1,5 +1,4 @@
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 /**
@@ -25,6 +24,17 @@ public class Deadline extends Task {
         }
     }
 
+    /**
+     * Constructs a new Deadline task from an already parsed date.
+     *
+     * @param description The description of the task.
+     * @param byDate      The date by which the task should be completed.
+     */
+    public Deadline(String description, LocalDate byDate) {
+        super(description);
+        this.byDate = byDate;
+    }
+
     /**
      * Returns the deadline date string in ISO format for storage.
      *
@@ -34,6 +44,15 @@ public class Deadline extends Task {
         return byDate.toString();
     }
 
+    /**
+     * Returns the deadline date.
+     *
+     * @return The "by" date.
+     */
+    public LocalDate getByDate() {
+        return byDate;
+    }
+
     /**
      * Returns the string representation of the Deadline task.
      *
@@ -42,6 +61,6 @@ public class Deadline extends Task {
      */
     @Override
     public String toString() {
-        return "[D]" + super.toString() + " (by: " + byDate.format(DateTimeFormatter.ofPattern("MMM d yyyy")) + ")";
+        return "[D]" + super.toString() + " (by: " + byDate.format(TaskFormatter.DISPLAY_DATE_FORMAT) + ")";
     }
 }
@@ -0,0 +1,47 @@
+/**
+ * Shares one String among tasks with equal descriptions, so that recurring
+ * tasks such as "standup" or "pay rent" do not each hold a copy of their
+ * description.
+ *
+ * The pool is a fixed-size table indexed by the hash of a description. A
+ * slot first only remembers the hash of a description it has seen, and
+ * keeps the description itself once a description with the same hash is
+ * seen again, so descriptions that never recur cost no more than a hash.
+ * A description that collides with another simply replaces it, so the pool
+ * never grows, and the few descriptions it keeps alive after their tasks
+ * are deleted are bounded by its size. Long descriptions are rarely repeated
+ * and are not pooled. Slots are read and written without locking: Strings
+ * are immutable, so a thread sees either a whole description or an older
+ * one, and losing a race only loses some sharing.
+ */
+public class DescriptionPool {
+    private static final int SLOT_COUNT = 1 << 14;
+    private static final int MAX_POOLED_LENGTH = 128;
+    private static final int[] HASHES = new int[SLOT_COUNT];
+    private static final String[] DESCRIPTIONS = new String[SLOT_COUNT];
+
+    /**
+     * Returns a description equal to the given one, shared with earlier
+     * tasks where possible.
+     *
+     * @param description The description.
+     * @return An equal description, possibly the same instance.
+     */
+    public static String canonical(String description) {
+        if (description == null || description.length() > MAX_POOLED_LENGTH) {
+            return description;
+        }
+        int hash = description.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (SLOT_COUNT - 1);
+        String pooled = DESCRIPTIONS[slot];
+        if (description.equals(pooled)) {
+            return pooled;
+        }
+        if (HASHES[slot] == hash) {
+            DESCRIPTIONS[slot] = description;
+        } else {
+            HASHES[slot] = hash;
+        }
+        return description;
+    }
+}
@@ -1,15 +1,50 @@
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Main class for Encik task manager chatbot.
  * Handles the main application flow.
  */
 public class Encik {
+    /**
+     * How tasks are held in memory once loaded.
+     */
+    public enum Loading {
+        EAGER, LAZY, PACKED
+    }
+
     private static final String DATA_FILE_PATH = "data" + File.separator + "encik.txt";
+    private static final String USERS_DIRECTORY_PATH = "data" + File.separator + "users";
+    private static final String USER_DATA_FILE_NAME = "encik.txt";
+    private static final String FLAG_JOURNAL = "--journal";
+    private static final String FLAG_BINARY = "--binary";
+    private static final String FLAG_SEGMENTED = "--segmented";
+    private static final String FLAG_LAZY = "--lazy";
+    private static final String FLAG_PACKED = "--packed";
+    private static final String FLAG_DURABILITY = "--durability=";
+    private static final String FLAG_BATCH = "--batch";
+    private static final String FLAG_QUIET = "--quiet";
+    private static final String FLAG_COMMIT_EVERY = "--commit-every=";
+    private static final String STANDARD_INPUT = "-";
+    private static final String FLAG_PREFIX = "--";
+    private static final String FLAG_SERVER = "--server";
+    private static final String FLAG_PORT = "--port=";
+    private static final String FLAG_UNDO_BUDGET = "--undo-budget=";
+    private static final String FLAG_METRICS = "--metrics=";
+    private static final long METRICS_INTERVAL_MILLIS = 10_000;
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+    private static final long JOURNAL_COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
 
     private Storage storage;
     private TaskList tasks;
     private Ui ui;
+    private PersistenceExecutor persistence;
 
     /**
      * Constructs a new Encik chatbot with the specified file path.
@@ -17,44 +52,265 @@ public class Encik {
      * @param filePath The path to the data file for task persistence.
      */
     public Encik(String filePath) {
+        this(new Storage(filePath));
+    }
+
+    /**
+     * Constructs a new Encik chatbot backed by the specified storage.
+     *
+     * @param storage The storage handler for task persistence.
+     */
+    public Encik(Storage storage) {
+        this(storage, Loading.EAGER);
+    }
+
+    /**
+     * Constructs a new Encik chatbot backed by the specified storage,
+     * holding tasks in memory as chosen. Lazy loading falls back to eager
+     * loading when there is no binary data file or segment manifest to read
+     * from.
+     *
+     * @param storage The storage handler for task persistence.
+     * @param loading How tasks are held in memory.
+     */
+    public Encik(Storage storage, Loading loading) {
         ui = new Ui();
-        storage = new Storage(filePath);
+        this.storage = storage;
         try {
-            tasks = new TaskList(storage.load());
+            if (loading == Loading.LAZY && storage.canLoadLazily()) {
+                tasks = new TaskList(storage.loadLazily(MappedTaskStore.DEFAULT_CACHE_SIZE));
+            } else if (loading == Loading.PACKED) {
+                tasks = new TaskList(PackedTaskStore.of(storage.load()));
+            } else {
+                tasks = new TaskList(storage.load());
+            }
+            tasks.reserveIds(storage.getNextId());
         } catch (EncikException e) {
             ui.showLoadingError();
             tasks = new TaskList();
         }
+        persistence = new PersistenceExecutor(storage, tasks, ui);
     }
 
     /**
      * Runs the main command loop of the chatbot.
      * Reads user input, processes commands, and handles errors.
+     * Commands run while holding the task list lock, so that background
+     * saves always see a consistent list. Reminders of due deadlines and
+     * starting events are shown as they come due while the loop runs.
      */
     public void run() {
         ui.showWelcome();
+        ReminderScheduler reminders = new ReminderScheduler(tasks, ui);
+        synchronized (tasks) {
+            tasks.setReminders(reminders);
+        }
+        reminders.start();
         boolean isExit = false;
         while (!isExit) {
             try {
                 String fullCommand = ui.readCommand();
                 isExit = Parser.isExit(fullCommand);
                 if (!isExit) {
-                    Parser.handleCommand(fullCommand, tasks, ui, storage);
+                    synchronized (tasks) {
+                        Parser.handleCommand(fullCommand, tasks, ui, persistence);
+                    }
                 }
             } catch (EncikException e) {
                 ui.showError(e.getMessage());
             }
         }
+        reminders.close();
+        persistence.close();
         ui.showExit();
         ui.close();
     }
 
+    /**
+     * Runs every command in a command stream without interaction.
+     * Changes are persisted together at the end, or after every given number
+     * of commands, rather than after each command. A failed command is
+     * reported and the run continues with the next one.
+     *
+     * @param input        The commands, one per line. Reading stops at "bye"
+     *                     or at the end of the stream.
+     * @param commitEvery  The number of commands after which changes are
+     *                     persisted, or 0 to persist only at the end.
+     * @param isQuiet      Whether to suppress the response to each command
+     *                     and show only a summary.
+     * @throws IOException If the commands cannot be read.
+     */
+    public void runBatch(BufferedReader input, long commitEvery, boolean isQuiet) throws IOException {
+        Ui commandUi = isQuiet ? Ui.silent() : ui;
+        long startMillis = System.currentTimeMillis();
+        long lineNumber = 0;
+        long commandCount = 0;
+        long failureCount = 0;
+        long firstFailure = 0;
+        persistence.setDeferred(true);
+        String line;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            String command = line.trim();
+            if (command.isEmpty()) {
+                continue;
+            }
+            if (Parser.isExit(command)) {
+                break;
+            }
+            commandCount++;
+            try {
+                synchronized (tasks) {
+                    Parser.handleCommand(command, tasks, commandUi, persistence);
+                }
+            } catch (EncikException e) {
+                commandUi.showError(e.getMessage());
+                failureCount++;
+                if (firstFailure == 0) {
+                    firstFailure = lineNumber;
+                }
+            }
+            if (commitEvery > 0 && commandCount % commitEvery == 0) {
+                persistence.flush();
+            }
+        }
+        persistence.close();
+        ui.showBatchSummary(commandCount, failureCount, firstFailure, System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * Serves every user's task list over a local socket until the process is
+     * stopped. Each user's tasks are kept in data/users/&lt;name&gt;/encik.txt,
+     * and are saved when the process shuts down.
+     *
+     * @param port       The port to listen on.
+     * @param mode       How changes are persisted.
+     * @param durability How often writes are forced to disk.
+     */
+    private static void runServer(int port, Storage.Mode mode, Storage.Durability durability) {
+        EncikServer server = new EncikServer(port, userName -> new Storage(
+                USERS_DIRECTORY_PATH + File.separator + userName + File.separator + USER_DATA_FILE_NAME, mode,
+                JOURNAL_COMPACTION_THRESHOLD, durability, SYNC_INTERVAL_MILLIS));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        try {
+            server.run();
+        } catch (IOException e) {
+            System.out.println("Warning: Unable to start the server on port " + port + ".");
+        }
+    }
+
     /**
      * Main entry point of the application.
      *
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments. Pass "--journal" to persist
+     *             changes through an append-only journal instead of
+     *             rewriting the data file after every command, or "--binary"
+     *             to store tasks in the compact binary format, or
+     *             "--segmented" to store them in segment files of which only
+     *             the changed ones are rewritten, or "--lazy" to also read
+     *             tasks from either only when they are used; "--lazy" on its
+     *             own implies "--binary", and is ignored with a warning
+     *             alongside "--journal". Pass "--packed" to hold tasks in
+     *             compact primitive arrays. Pass
+     *             "--durability=always|batched|never" to choose how often
+     *             writes are forced to disk. Pass "--batch <file>" to run
+     *             the commands in a file (standard input if the file is "-"
+     *             or left out) without interaction, persisting once at the
+     *             end or every "--commit-every=N" commands, and "--quiet" to
+     *             show only a summary of the run. Pass "--server" to serve
+     *             many users over a local socket instead, on the port given
+     *             by "--port=N". Pass "--undo-budget=N" to let the undo
+     *             history take up to N megabytes, or 0 to turn undo off.
+     *             Pass "--metrics=<file>" to write the metrics shown by the
+     *             stats command to a JSON file every ten seconds.
      */
     public static void main(String[] args) {
-        new Encik(DATA_FILE_PATH).run();
+        Storage.Mode mode = Storage.Mode.SNAPSHOT;
+        Storage.Durability durability = Storage.Durability.BATCHED;
+        Loading loading = Loading.EAGER;
+        String batchPath = null;
+        long commitEvery = 0;
+        boolean isQuiet = false;
+        boolean isServer = false;
+        int port = EncikServer.DEFAULT_PORT;
+        long undoBudgetBytes = UndoHistory.DEFAULT_BUDGET_BYTES;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals(FLAG_JOURNAL)) {
+                mode = Storage.Mode.JOURNAL;
+            } else if (arg.equals(FLAG_BINARY)) {
+                mode = Storage.Mode.BINARY;
+            } else if (arg.equals(FLAG_SEGMENTED)) {
+                mode = Storage.Mode.SEGMENTED;
+            } else if (arg.equals(FLAG_LAZY)) {
+                loading = Loading.LAZY;
+            } else if (arg.equals(FLAG_PACKED)) {
+                loading = Loading.PACKED;
+            } else if (arg.startsWith(FLAG_DURABILITY)) {
+                try {
+                    durability = Storage.Durability.valueOf(
+                            arg.substring(FLAG_DURABILITY.length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Warning: Unknown durability policy, using batched.");
+                }
+            } else if (arg.equals(FLAG_BATCH)) {
+                batchPath = i + 1 < args.length && !args[i + 1].startsWith(FLAG_PREFIX) ? args[++i]
+                        : STANDARD_INPUT;
+            } else if (arg.equals(FLAG_QUIET)) {
+                isQuiet = true;
+            } else if (arg.startsWith(FLAG_COMMIT_EVERY)) {
+                try {
+                    commitEvery = Long.parseLong(arg.substring(FLAG_COMMIT_EVERY.length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Warning: Invalid commit interval, committing at the end only.");
+                }
+            } else if (arg.equals(FLAG_SERVER)) {
+                isServer = true;
+            } else if (arg.startsWith(FLAG_PORT)) {
+                try {
+                    port = Integer.parseInt(arg.substring(FLAG_PORT.length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Warning: Invalid port, using " + EncikServer.DEFAULT_PORT + ".");
+                }
+            } else if (arg.startsWith(FLAG_METRICS)) {
+                if (Metrics.ENABLED) {
+                    Metrics.startDumping(arg.substring(FLAG_METRICS.length()), METRICS_INTERVAL_MILLIS);
+                } else {
+                    System.out.println("Warning: Metrics are turned off, so none will be written.");
+                }
+            } else if (arg.startsWith(FLAG_UNDO_BUDGET)) {
+                try {
+                    undoBudgetBytes = Long.parseLong(arg.substring(FLAG_UNDO_BUDGET.length())) * BYTES_PER_MEGABYTE;
+                } catch (NumberFormatException e) {
+                    System.out.println("Warning: Invalid undo budget, using "
+                            + UndoHistory.DEFAULT_BUDGET_BYTES / BYTES_PER_MEGABYTE + " MB.");
+                }
+            }
+        }
+        if (loading == Loading.LAZY && mode == Storage.Mode.SNAPSHOT) {
+            mode = Storage.Mode.BINARY;
+        } else if (loading == Loading.LAZY && mode == Storage.Mode.JOURNAL) {
+            System.out.println("Warning: --lazy only works with --binary or --segmented, loading all tasks.");
+            loading = Loading.EAGER;
+        }
+        if (isServer) {
+            runServer(port, mode, durability);
+            return;
+        }
+        Encik encik = new Encik(new Storage(DATA_FILE_PATH, mode, JOURNAL_COMPACTION_THRESHOLD, durability,
+                SYNC_INTERVAL_MILLIS), loading);
+        encik.persistence.setUndoBudget(undoBudgetBytes);
+        if (batchPath == null) {
+            encik.run();
+            return;
+        }
+        try (InputStream batchInput = batchPath.equals(STANDARD_INPUT) ? System.in
+                : new FileInputStream(batchPath)) {
+            encik.runBatch(new BufferedReader(new InputStreamReader(batchInput, StandardCharsets.UTF_8)),
+                    commitEvery, isQuiet);
+        } catch (IOException e) {
+            System.out.println("Warning: Unable to read commands from " + batchPath + ".");
+            encik.persistence.close();
+        }
     }
 }
@@ -2,6 +2,8 @@
  * Represents exceptions specific to the Encik chatbot.
  */
 public class EncikException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     /**
      * Constructs a new EncikException with the specified detail message.
      *
@@ -0,0 +1,311 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Serves Encik's command language to many users over a local TCP socket.
+ *
+ * The protocol is line-based UTF-8 text. A client first sends its user
+ * name on a line of its own, then one command per line. Each response is
+ * the same text the console version prints, followed by an empty line
+ * that marks its end. "bye" ends the session.
+ *
+ * Every user has their own task list and data file. Connections from the
+ * same user share that list, which stays loaded while any of them is open.
+ * Commands that change the list run one at a time, holding the list's
+ * monitor so that changes are persisted in the order they were made, while
+ * commands that only read it run alongside them.
+ * Each connection is served by its own thread: a virtual thread when the
+ * Java runtime supports them, and otherwise a platform thread with a small
+ * stack.
+ */
+public class EncikServer {
+    public static final int DEFAULT_PORT = 7878;
+
+    private static final Pattern USER_NAME = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    private static final long PLATFORM_THREAD_STACK_SIZE = 256 * 1024;
+
+    private final int port;
+    private final Function<String, Storage> storageFactory;
+    private final Ui log = new Ui();
+    private final HashMap<String, UserContext> users = new HashMap<>();
+    private final HashMap<String, UserContext> closingUsers = new HashMap<>();
+
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+
+    /**
+     * Constructs an EncikServer.
+     *
+     * @param port           The local port to listen on.
+     * @param storageFactory Creates the storage for a user, given their name.
+     */
+    public EncikServer(int port, Function<String, Storage> storageFactory) {
+        this.port = port;
+        this.storageFactory = storageFactory;
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     *
+     * @throws IOException If the server socket cannot be opened.
+     */
+    public void run() throws IOException {
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        connections = newConnectionExecutor();
+        System.out.println("Encik server listening on port " + serverSocket.getLocalPort() + ".");
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> serve(socket));
+            }
+        } catch (SocketException e) {
+            // The server socket was closed; stop accepting connections.
+        } finally {
+            connections.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting connections and saves every loaded task list.
+     */
+    public void close() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Nothing more to do; the socket is unusable either way.
+        }
+        ArrayList<UserContext> openUsers;
+        synchronized (users) {
+            openUsers = new ArrayList<>(users.values());
+            users.clear();
+        }
+        for (UserContext user : openUsers) {
+            user.close();
+        }
+    }
+
+    /**
+     * Runs one client session.
+     *
+     * @param socket The client connection.
+     */
+    private void serve(Socket socket) {
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false,
+                        StandardCharsets.UTF_8)) {
+            Ui ui = new Ui(InputStream.nullInputStream(), out);
+            String userName = in.readLine();
+            if (userName == null) {
+                return;
+            }
+            userName = userName.trim();
+            if (!USER_NAME.matcher(userName).matches()) {
+                ui.showError("OOPS!!! Invalid user name.\n"
+                        + "User names have 1 to 32 letters, digits, underscores or hyphens.");
+                endResponse(out);
+                return;
+            }
+
+            UserContext user = openUser(userName);
+            try {
+                user.load(storageFactory, log);
+                ui.showWelcome();
+                endResponse(out);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.trim();
+                    if (Parser.isExit(command)) {
+                        ui.showExit();
+                        endResponse(out);
+                        break;
+                    }
+                    try {
+                        if (Parser.isReadOnly(command)) {
+                            Parser.handleCommand(command, user.tasks, ui, user.persistence);
+                        } else {
+                            synchronized (user.tasks) {
+                                Parser.handleCommand(command, user.tasks, ui, user.persistence);
+                            }
+                        }
+                    } catch (EncikException e) {
+                        ui.showError(e.getMessage());
+                    }
+                    endResponse(out);
+                }
+            } finally {
+                releaseUser(user);
+            }
+        } catch (IOException e) {
+            // The client disconnected; its changes have already been submitted.
+        }
+    }
+
+    /**
+     * Returns the context of a user, creating it if no other connection of
+     * theirs is open. The context is not loaded yet; the caller loads it
+     * without holding the user table, so that loading one user's data file
+     * does not hold up other users.
+     *
+     * @param userName The user name.
+     * @return The user's context.
+     */
+    private UserContext openUser(String userName) {
+        synchronized (users) {
+            UserContext user = users.get(userName);
+            if (user == null) {
+                user = new UserContext(userName, closingUsers.get(userName));
+                users.put(userName, user);
+            }
+            user.connectionCount++;
+            return user;
+        }
+    }
+
+    /**
+     * Releases a connection's hold on a user's task list, saving and
+     * unloading it when the last connection closes.
+     * The list is saved after it is removed from the user table, so that
+     * saving it does not hold up other users. A new connection of the same
+     * user gets a new context, which waits for the save to finish before
+     * loading the data file.
+     *
+     * @param user The user's context.
+     */
+    private void releaseUser(UserContext user) {
+        boolean isLast;
+        synchronized (users) {
+            user.connectionCount--;
+            isLast = user.connectionCount == 0 && users.get(user.name) == user;
+            if (isLast) {
+                users.remove(user.name);
+                closingUsers.put(user.name, user);
+            }
+        }
+        if (isLast) {
+            user.close();
+            synchronized (users) {
+                closingUsers.remove(user.name, user);
+            }
+        }
+    }
+
+    /**
+     * Marks the end of a response and sends it.
+     *
+     * @param out The client's output stream.
+     */
+    private static void endResponse(PrintStream out) {
+        out.println();
+        out.flush();
+    }
+
+    /**
+     * Creates the executor that runs client sessions: one virtual thread per
+     * connection if the runtime supports them, and otherwise a cached pool of
+     * platform threads with small stacks.
+     *
+     * @return The executor.
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(null, runnable, "encik-session", PLATFORM_THREAD_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * The loaded state of one user. Loading and closing hold the context's
+     * own monitor, so a connection never sees a half-loaded list.
+     */
+    private static class UserContext {
+        final String name;
+        UserContext previous;
+        TaskList tasks;
+        PersistenceExecutor persistence;
+        int connectionCount;
+        boolean isClosed;
+
+        UserContext(String name, UserContext previous) {
+            this.name = name;
+            this.previous = previous;
+        }
+
+        /**
+         * Loads the user's task list if it has not been loaded yet, after
+         * the previous context of the same user, if any, has been saved.
+         *
+         * @param storageFactory Creates the storage for a user.
+         * @param log            The UI used to report loading and saving
+         *                       errors.
+         */
+        synchronized void load(Function<String, Storage> storageFactory, Ui log) {
+            if (tasks != null) {
+                return;
+            }
+            if (previous != null) {
+                previous.awaitClosed();
+                previous = null;
+            }
+            Storage storage = storageFactory.apply(name);
+            TaskList loaded;
+            try {
+                loaded = new ConcurrentTaskList(storage.load());
+                loaded.reserveIds(storage.getNextId());
+            } catch (EncikException e) {
+                log.showLoadingError();
+                loaded = new ConcurrentTaskList();
+            }
+            persistence = new PersistenceExecutor(storage, loaded, log);
+            tasks = loaded;
+        }
+
+        /**
+         * Saves the user's task list, if it was loaded, and marks the
+         * context closed.
+         */
+        synchronized void close() {
+            if (persistence != null && !isClosed) {
+                persistence.close();
+            }
+            isClosed = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the context has been closed.
+         */
+        synchronized void awaitClosed() {
+            try {
+                while (!isClosed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,5 +1,4 @@
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 /**
@@ -28,6 +27,19 @@ public class Event extends Task {
         }
     }
 
+    /**
+     * Constructs a new Event task from already parsed dates.
+     *
+     * @param description The description of the task.
+     * @param fromDate    The start date of the event.
+     * @param toDate      The end date of the event.
+     */
+    public Event(String description, LocalDate fromDate, LocalDate toDate) {
+        super(description);
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+    }
+
     /**
      * Returns the start date of the event in ISO format for storage.
      *
@@ -46,6 +58,24 @@ public class Event extends Task {
         return toDate.toString();
     }
 
+    /**
+     * Returns the start date of the event.
+     *
+     * @return The "from" date.
+     */
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    /**
+     * Returns the end date of the event.
+     *
+     * @return The "to" date.
+     */
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
     /**
      * Returns the string representation of the Event task.
      *
@@ -54,7 +84,7 @@ public class Event extends Task {
      */
     @Override
     public String toString() {
-        return "[E]" + super.toString() + " (from: " + fromDate.format(DateTimeFormatter.ofPattern("MMM d yyyy"))
-                + " to: " + toDate.format(DateTimeFormatter.ofPattern("MMM d yyyy")) + ")";
+        return "[E]" + super.toString() + " (from: " + fromDate.format(TaskFormatter.DISPLAY_DATE_FORMAT)
+                + " to: " + toDate.format(TaskFormatter.DISPLAY_DATE_FORMAT) + ")";
     }
 }
@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Indexes tasks by whether they are done, by their type and by the #tags in
+ * their descriptions, so that filtered views of the list do not have to
+ * scan every task.
+ *
+ * Each status, type and tag has a set of the ids of its tasks, and a filter
+ * is answered by intersecting the sets it names, smallest first. Ids rather
+ * than positions are kept, so the sets stay valid as tasks are removed and
+ * the list is compacted, and ascending ids are list order.
+ */
+public class FilterIndex {
+    /**
+     * Whether a task has been done.
+     */
+    public enum Status {
+        PENDING, DONE
+    }
+
+    /**
+     * The types of task.
+     */
+    public enum Type {
+        TODO, DEADLINE, EVENT
+    }
+
+    private static final char TAG_MARKER = '#';
+
+    private final IdBitmap all = new IdBitmap();
+    private final IdBitmap done = new IdBitmap();
+    private final EnumMap<Type, IdBitmap> byType = new EnumMap<>(Type.class);
+    private final HashMap<String, IdBitmap> byTag = new HashMap<>();
+
+    /**
+     * Constructs an empty FilterIndex.
+     */
+    public FilterIndex() {
+        for (Type type : Type.values()) {
+            byType.put(type, new IdBitmap());
+        }
+    }
+
+    /**
+     * Adds a task to the index.
+     *
+     * @param task The task to index. Its id must already be assigned.
+     */
+    public void add(Task task) {
+        int id = task.getId();
+        all.add(id);
+        if (task.isDone()) {
+            done.add(id);
+        }
+        byType.get(typeOf(task)).add(id);
+        for (String tag : tagsOf(task.getDescription())) {
+            byTag.computeIfAbsent(tag, key -> new IdBitmap()).add(id);
+        }
+    }
+
+    /**
+     * Removes a task from the index.
+     *
+     * @param task The task to remove.
+     */
+    public void remove(Task task) {
+        int id = task.getId();
+        all.remove(id);
+        done.remove(id);
+        byType.get(typeOf(task)).remove(id);
+        for (String tag : tagsOf(task.getDescription())) {
+            IdBitmap tagged = byTag.get(tag);
+            if (tagged != null && tagged.remove(id) && tagged.isEmpty()) {
+                byTag.remove(tag);
+            }
+        }
+    }
+
+    /**
+     * Updates the index after a task has been marked or unmarked.
+     *
+     * @param task The task, as it is now.
+     */
+    public void updateStatus(Task task) {
+        if (task.isDone()) {
+            done.add(task.getId());
+        } else {
+            done.remove(task.getId());
+        }
+    }
+
+    /**
+     * Finds the tasks with the given status and type and every given tag.
+     *
+     * @param status The status to match, or null to match any.
+     * @param type   The type to match, or null to match any.
+     * @param tags   The tags to match, in lower case.
+     * @return The ids of the matching tasks, as a new set.
+     */
+    public IdBitmap filter(Status status, Type type, List<String> tags) {
+        ArrayList<IdBitmap> sets = new ArrayList<>();
+        if (status == Status.DONE) {
+            sets.add(done);
+        }
+        if (type != null) {
+            sets.add(byType.get(type));
+        }
+        for (String tag : tags) {
+            IdBitmap tagged = byTag.get(tag);
+            if (tagged == null) {
+                return new IdBitmap();
+            }
+            sets.add(tagged);
+        }
+        if (sets.isEmpty()) {
+            sets.add(all);
+        }
+        sets.sort(Comparator.comparingInt(IdBitmap::cardinality));
+        IdBitmap matches = sets.get(0);
+        for (int i = 1; i < sets.size() && !matches.isEmpty(); i++) {
+            matches = matches.and(sets.get(i));
+        }
+        if (status == Status.PENDING) {
+            return matches.andNot(done);
+        }
+        return matches == sets.get(0) ? matches.copy() : matches;
+    }
+
+    /**
+     * Checks whether a word is a tag: a # followed by a letter and then any
+     * letters, digits, hyphens or underscores.
+     *
+     * @param word The word.
+     * @return True if the word is a tag.
+     */
+    public static boolean isTag(String word) {
+        return tagLength(word, 0) == word.length() && word.length() > 1;
+    }
+
+    /**
+     * Returns the tags in a description, in lower case. A tag starts a word
+     * with a # followed by a letter, and runs on through any letters,
+     * digits, hyphens or underscores, so "#work," is the tag "#work".
+     *
+     * @param description The description.
+     * @return The tags, in the order they appear.
+     */
+    public static List<String> tagsOf(String description) {
+        List<String> tags = new ArrayList<>();
+        int start = description.indexOf(TAG_MARKER);
+        while (start >= 0) {
+            int end = start + tagLength(description, start);
+            boolean isWordStart = start == 0 || Character.isWhitespace(description.charAt(start - 1));
+            if (end > start + 1 && isWordStart) {
+                tags.add(description.substring(start, end).toLowerCase());
+            }
+            start = description.indexOf(TAG_MARKER, Math.max(start + 1, end));
+        }
+        return tags;
+    }
+
+    /**
+     * Returns the length of the tag starting at an index of some text.
+     *
+     * @param text  The text.
+     * @param start The index of the # that starts the tag.
+     * @return The length of the tag, or 0 if no tag starts there.
+     */
+    private static int tagLength(String text, int start) {
+        if (start + 1 >= text.length() || text.charAt(start) != TAG_MARKER
+                || !Character.isLetter(text.charAt(start + 1))) {
+            return 0;
+        }
+        int end = start + 2;
+        while (end < text.length() && isTagCharacter(text.charAt(end))) {
+            end++;
+        }
+        return end - start;
+    }
+
+    /**
+     * Checks whether a character may follow the first letter of a tag.
+     *
+     * @param c The character.
+     * @return True if the character is a letter, digit, hyphen or
+     *         underscore.
+     */
+    private static boolean isTagCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    /**
+     * Returns the type of a task.
+     *
+     * @param task The task.
+     * @return Its type.
+     */
+    private static Type typeOf(Task task) {
+        if (task instanceof Deadline) {
+            return Type.DEADLINE;
+        }
+        if (task instanceof Event) {
+            return Type.EVENT;
+        }
+        return Type.TODO;
+    }
+}
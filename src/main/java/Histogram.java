@@ -0,0 +1,172 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded values in buckets of logarithmically growing width, in the
+ * manner of HdrHistogram, so that percentiles can be read off with a bounded
+ * relative error while the histogram itself stays a fixed, small size.
+ *
+ * Values below 32 have a bucket each. Above that, each power of two is split
+ * into 16 buckets, so a percentile is off by at most one part in 16.
+ * Recording is lock-free: it increments one bucket and updates the count,
+ * total and maximum with atomic operations, so any number of threads may
+ * record at once while another reads.
+ */
+public class Histogram {
+    /**
+     * What the recorded values measure, which decides how they are shown.
+     */
+    public enum Unit {
+        NANOSECONDS, BYTES, COUNT
+    }
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+    private final String name;
+    private final Unit unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructs an empty Histogram.
+     *
+     * @param name The name the histogram is reported under.
+     * @param unit What the recorded values measure.
+     */
+    public Histogram(String name, Unit unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value The value.
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(clamped));
+        count.increment();
+        total.add(clamped);
+        long current = max.get();
+        while (clamped > current && !max.compareAndSet(current, clamped)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start.
+     *
+     * @param startNanos The start time, as returned by System.nanoTime.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the name the histogram is reported under.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns what the recorded values measure.
+     *
+     * @return The unit.
+     */
+    public Unit getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return The mean, or 0 if nothing has been recorded.
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return The maximum, or 0 if nothing has been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given fraction of recorded values
+     * fall, as the upper end of the bucket that holds it. Values recorded
+     * while the percentile is read may or may not be counted.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile, or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long recorded = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            recorded += snapshot[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the bucket that holds a value.
+     *
+     * @param value The value, which must not be negative.
+     * @return The bucket index.
+     */
+    private static int bucketOf(long value) {
+        int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1);
+        int offset = (int) (value >>> shift);
+        return shift == 0 ? offset : shift * SUB_BUCKET_COUNT + offset;
+    }
+
+    /**
+     * Returns the largest value a bucket holds.
+     *
+     * @param bucket The bucket index.
+     * @return The upper bound of the bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long offset = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((offset + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,440 @@
+import java.util.Arrays;
+
+/**
+ * A compressed set of task ids, laid out in the manner of a Roaring bitmap.
+ *
+ * Ids are split into chunks of 65536 by their upper 16 bits, and only chunks
+ * holding at least one id are kept, in order of their upper bits. A chunk
+ * holding few ids keeps their lower 16 bits in a sorted array; once it holds
+ * more than 4096 it switches to a plain bitmap of 1024 words, which is then
+ * the smaller of the two. A set of a few ids scattered over millions thus
+ * takes a few bytes per id, and a dense set about one bit per id.
+ *
+ * Sets are combined chunk by chunk: two bitmaps word by word, and an array
+ * against anything by testing each of its ids, so intersecting two sets
+ * takes time in proportion to the smaller of them rather than to the ids
+ * they could hold.
+ */
+public class IdBitmap {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int WORDS_PER_CHUNK = (1 << CHUNK_BITS) / Long.SIZE;
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] keys;
+    private Chunk[] chunks;
+    private int chunkCount;
+
+    /**
+     * Constructs an empty IdBitmap.
+     */
+    public IdBitmap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty IdBitmap with room for the given number of chunks.
+     *
+     * @param capacity The number of chunks to make room for.
+     */
+    private IdBitmap(int capacity) {
+        keys = new int[Math.max(1, capacity)];
+        chunks = new Chunk[keys.length];
+    }
+
+    /**
+     * Adds an id to the set.
+     *
+     * @param id The id, which must not be negative.
+     * @return True if the id was not already in the set.
+     */
+    public boolean add(int id) {
+        int key = id >>> CHUNK_BITS;
+        int position = Arrays.binarySearch(keys, 0, chunkCount, key);
+        if (position < 0) {
+            position = -position - 1;
+            insertChunk(position, key, new Chunk());
+        }
+        return chunks[position].add((char) (id & CHUNK_MASK));
+    }
+
+    /**
+     * Removes an id from the set.
+     *
+     * @param id The id.
+     * @return True if the id was in the set.
+     */
+    public boolean remove(int id) {
+        int position = Arrays.binarySearch(keys, 0, chunkCount, id >>> CHUNK_BITS);
+        if (position < 0 || !chunks[position].remove((char) (id & CHUNK_MASK))) {
+            return false;
+        }
+        if (chunks[position].count == 0) {
+            System.arraycopy(keys, position + 1, keys, position, chunkCount - position - 1);
+            System.arraycopy(chunks, position + 1, chunks, position, chunkCount - position - 1);
+            chunks[--chunkCount] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an id is in the set.
+     *
+     * @param id The id.
+     * @return True if the id is in the set.
+     */
+    public boolean contains(int id) {
+        int position = Arrays.binarySearch(keys, 0, chunkCount, id >>> CHUNK_BITS);
+        return position >= 0 && chunks[position].contains((char) (id & CHUNK_MASK));
+    }
+
+    /**
+     * Checks whether the set is empty.
+     *
+     * @return True if the set holds no ids.
+     */
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /**
+     * Returns the number of ids in the set.
+     *
+     * @return The number of ids.
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            cardinality += chunks[i].count;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns a copy of the set.
+     *
+     * @return A new set holding the same ids.
+     */
+    public IdBitmap copy() {
+        IdBitmap copy = new IdBitmap(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            copy.appendChunk(keys[i], chunks[i].copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the ids in both this set and another.
+     *
+     * @param other The other set.
+     * @return A new set holding the ids in both.
+     */
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap(Math.min(chunkCount, other.chunkCount));
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount && j < other.chunkCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Chunk chunk = Chunk.and(chunks[i], other.chunks[j]);
+                if (chunk != null) {
+                    result.appendChunk(keys[i], chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids in this set but not in another.
+     *
+     * @param other The other set.
+     * @return A new set holding the ids only in this one.
+     */
+    public IdBitmap andNot(IdBitmap other) {
+        IdBitmap result = new IdBitmap(chunkCount);
+        int j = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            while (j < other.chunkCount && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Chunk chunk = j < other.chunkCount && other.keys[j] == keys[i]
+                    ? Chunk.andNot(chunks[i], other.chunks[j])
+                    : chunks[i].copy();
+            if (chunk != null) {
+                result.appendChunk(keys[i], chunk);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns some of the ids in the set, in ascending order, skipping
+     * whole chunks at a time to reach the first.
+     *
+     * @param skip  The number of the smallest ids to leave out.
+     * @param count The most ids to return.
+     * @return The ids.
+     */
+    public int[] slice(int skip, int count) {
+        int[] ids = new int[Math.max(0, Math.min(count, cardinality() - skip))];
+        int filled = 0;
+        for (int i = 0; i < chunkCount && filled < ids.length; i++) {
+            Chunk chunk = chunks[i];
+            if (skip >= chunk.count) {
+                skip -= chunk.count;
+                continue;
+            }
+            filled = chunk.collect(keys[i] << CHUNK_BITS, skip, ids, filled);
+            skip = 0;
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts a chunk at a position, making room for it if needed.
+     *
+     * @param position The position.
+     * @param key      The upper bits of the ids in the chunk.
+     * @param chunk    The chunk.
+     */
+    private void insertChunk(int position, int key, Chunk chunk) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, chunkCount - position);
+        System.arraycopy(chunks, position, chunks, position + 1, chunkCount - position);
+        keys[position] = key;
+        chunks[position] = chunk;
+        chunkCount++;
+    }
+
+    /**
+     * Adds a chunk after every chunk already in the set.
+     *
+     * @param key   The upper bits of the ids in the chunk, which must be
+     *              greater than those of every other chunk.
+     * @param chunk The chunk.
+     */
+    private void appendChunk(int key, Chunk chunk) {
+        insertChunk(chunkCount, key, chunk);
+    }
+
+    /**
+     * The lower 16 bits of the ids sharing one value of their upper bits,
+     * held either as a sorted array or as a bitmap, whichever is smaller.
+     * A bitmap turns back into an array only once it has fallen to half
+     * the size it turned into a bitmap at, so that adding and removing one
+     * id at the boundary does not convert the chunk back and forth.
+     */
+    private static class Chunk {
+        char[] values;
+        long[] words;
+        int count;
+
+        Chunk() {
+            values = new char[INITIAL_CAPACITY];
+        }
+
+        Chunk(char[] values, long[] words, int count) {
+            this.values = values;
+            this.words = words;
+            this.count = count;
+        }
+
+        boolean add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) != 0) {
+                    return false;
+                }
+                words[value >>> 6] |= bit;
+                count++;
+                return true;
+            }
+            int position = Arrays.binarySearch(values, 0, count, value);
+            if (position >= 0) {
+                return false;
+            }
+            if (count == MAX_ARRAY_SIZE) {
+                toWords();
+                return add(value);
+            }
+            position = -position - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, values.length * 2));
+            }
+            System.arraycopy(values, position, values, position + 1, count - position);
+            values[position] = value;
+            count++;
+            return true;
+        }
+
+        boolean remove(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    return false;
+                }
+                words[value >>> 6] &= ~bit;
+                count--;
+                if (count <= MAX_ARRAY_SIZE / 2) {
+                    toValues();
+                }
+                return true;
+            }
+            int position = Arrays.binarySearch(values, 0, count, value);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, count - position - 1);
+            count--;
+            return true;
+        }
+
+        boolean contains(char value) {
+            if (words != null) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, count, value) >= 0;
+        }
+
+        Chunk copy() {
+            return words != null
+                    ? new Chunk(null, words.clone(), count)
+                    : new Chunk(Arrays.copyOf(values, Math.max(1, count)), null, count);
+        }
+
+        /**
+         * Writes the ids of the chunk into an array, after skipping some.
+         *
+         * @param base   The upper bits of the ids, already shifted.
+         * @param skip   The number of the smallest ids to leave out.
+         * @param ids    The array to write into.
+         * @param filled The number of ids already written.
+         * @return The number of ids written afterwards.
+         */
+        int collect(int base, int skip, int[] ids, int filled) {
+            if (words == null) {
+                for (int i = skip; i < count && filled < ids.length; i++) {
+                    ids[filled++] = base | values[i];
+                }
+                return filled;
+            }
+            for (int w = 0; w < WORDS_PER_CHUNK && filled < ids.length; w++) {
+                long word = words[w];
+                int bits = Long.bitCount(word);
+                if (skip >= bits) {
+                    skip -= bits;
+                    continue;
+                }
+                while (word != 0 && filled < ids.length) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        ids[filled++] = base | (w << 6) | bit;
+                    }
+                }
+            }
+            return filled;
+        }
+
+        static Chunk and(Chunk a, Chunk b) {
+            if (a.words != null && b.words != null) {
+                long[] words = new long[WORDS_PER_CHUNK];
+                int count = 0;
+                for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                    words[w] = a.words[w] & b.words[w];
+                    count += Long.bitCount(words[w]);
+                }
+                return ofWords(words, count);
+            }
+            Chunk sparse = a.words == null && (b.words != null || a.count <= b.count) ? a : b;
+            Chunk other = sparse == a ? b : a;
+            return filter(sparse, other, true);
+        }
+
+        static Chunk andNot(Chunk a, Chunk b) {
+            if (a.words == null) {
+                return filter(a, b, false);
+            }
+            long[] words = a.words.clone();
+            if (b.words != null) {
+                for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                    words[w] &= ~b.words[w];
+                }
+            } else {
+                for (int i = 0; i < b.count; i++) {
+                    words[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+                }
+            }
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            return ofWords(words, count);
+        }
+
+        /**
+         * Keeps the values of an array chunk that are, or are not, in
+         * another chunk.
+         *
+         * @param sparse   The array chunk.
+         * @param other    The other chunk.
+         * @param isInside Whether to keep the values in the other chunk
+         *                 rather than those outside it.
+         * @return The chunk of values kept, or null if there are none.
+         */
+        private static Chunk filter(Chunk sparse, Chunk other, boolean isInside) {
+            char[] values = new char[Math.max(1, sparse.count)];
+            int count = 0;
+            for (int i = 0; i < sparse.count; i++) {
+                if (other.contains(sparse.values[i]) == isInside) {
+                    values[count++] = sparse.values[i];
+                }
+            }
+            return count == 0 ? null : new Chunk(values, null, count);
+        }
+
+        private static Chunk ofWords(long[] words, int count) {
+            if (count == 0) {
+                return null;
+            }
+            Chunk chunk = new Chunk(null, words, count);
+            if (count <= MAX_ARRAY_SIZE) {
+                chunk.toValues();
+            }
+            return chunk;
+        }
+
+        private void toWords() {
+            words = new long[WORDS_PER_CHUNK];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toValues() {
+            values = new char[Math.max(INITIAL_CAPACITY, count)];
+            int filled = 0;
+            for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    values[filled++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            words = null;
+        }
+    }
+}
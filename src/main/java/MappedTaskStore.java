@@ -0,0 +1,263 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores tasks as records in a memory-mapped binary data file and decodes
+ * each one only when it is first accessed.
+ * Opening the store only reads the file header, so start-up time does not
+ * depend on the number of tasks. Recently used tasks are kept in a bounded
+ * LRU cache; tasks that have been added or marked since loading are pinned
+ * in memory so that no change is lost when the cache evicts them.
+ */
+public class MappedTaskStore implements TaskStore {
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final ByteBuffer file;
+    private final int recordCount;
+    private final LinkedHashMap<Integer, Task> recentTasks;
+    private final TaskViewCache decodedTasks = new TaskViewCache();
+    private final HashMap<Integer, Task> changedTasks = new HashMap<>();
+    private final ArrayList<Task> addedTasks = new ArrayList<>();
+
+    private int[] slots;
+    private int size;
+
+    /**
+     * Constructs a MappedTaskStore over a mapped binary data file.
+     *
+     * @param file      The mapped file, as returned by BinaryTaskFile.map.
+     * @param cacheSize The maximum number of decoded tasks kept in the cache.
+     */
+    public MappedTaskStore(ByteBuffer file, int cacheSize) {
+        this.file = file;
+        this.recordCount = BinaryTaskFile.count(file);
+        this.size = recordCount;
+        this.recentTasks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Task> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the task at the specified index, decoding it from the file if
+     * it is not already in memory.
+     *
+     * @param index The 0-based index of the task.
+     * @return The task at the given index.
+     */
+    @Override
+    public Task get(int index) {
+        checkIndex(index);
+        int slot = slotAt(index);
+        if (slot < 0) {
+            return addedTasks.get(-slot - 1);
+        }
+        Task task = changedTasks.get(slot);
+        if (task == null) {
+            task = recentTasks.get(slot);
+        }
+        if (task == null) {
+            task = decode(slot);
+        }
+        return task;
+    }
+
+    /**
+     * Returns the id of the task at the specified index, reading it from the
+     * file without decoding the task.
+     *
+     * @param index The 0-based index of the task.
+     * @return The task id.
+     */
+    @Override
+    public int getId(int index) {
+        checkIndex(index);
+        int slot = slotAt(index);
+        if (slot < 0) {
+            return addedTasks.get(-slot - 1).getId();
+        }
+        Task task = changedTasks.get(slot);
+        return task != null ? task.getId() : BinaryTaskFile.readId(file, slot);
+    }
+
+    /**
+     * Returns false, as reads cache the tasks they build.
+     *
+     * @return False.
+     */
+    @Override
+    public boolean supportsConcurrentReads() {
+        return false;
+    }
+
+    @Override
+    public void add(Task task) {
+        addedTasks.add(task);
+        if (slots != null) {
+            ensureCapacity(size + 1);
+            slots[size] = -addedTasks.size();
+        }
+        size++;
+    }
+
+    @Override
+    public void removeAll(BitSet indexes) {
+        materializeSlots();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = slots[i];
+            if (!indexes.get(i)) {
+                slots[kept++] = slot;
+            } else if (slot < 0) {
+                addedTasks.set(-slot - 1, null);
+            } else {
+                changedTasks.remove(slot);
+                recentTasks.remove(slot);
+                decodedTasks.remove(slot);
+            }
+        }
+        size = kept;
+    }
+
+    @Override
+    public void insertAll(int[] indexes, List<Task> tasks) {
+        materializeSlots();
+        ensureCapacity(size + tasks.size());
+        int source = size - 1;
+        int next = tasks.size() - 1;
+        size += tasks.size();
+        for (int i = size - 1; next >= 0; i--) {
+            if (indexes[next] == i) {
+                addedTasks.add(tasks.get(next--));
+                slots[i] = -addedTasks.size();
+            } else {
+                slots[i] = slots[source--];
+            }
+        }
+    }
+
+    @Override
+    public Task setDone(int index, boolean isDone) {
+        Task task = get(index);
+        if (isDone) {
+            task.markAsDone();
+        } else {
+            task.markAsNotDone();
+        }
+        int slot = slotAt(index);
+        if (slot >= 0) {
+            changedTasks.put(slot, task);
+        }
+        return task;
+    }
+
+    /**
+     * Reads the dates of undone deadlines and events straight from their
+     * records, decoding neither the records nor their descriptions. Tasks
+     * added or changed since loading are read from memory instead.
+     *
+     * @param from     The 0-based index of the first task.
+     * @param to       The index after the last task.
+     * @param consumer The consumer of the dates.
+     */
+    @Override
+    public void forEachUndoneDate(int from, int to, DateConsumer consumer) {
+        for (int i = from; i < to; i++) {
+            int slot = slotAt(i);
+            Task task = slot < 0 ? addedTasks.get(-slot - 1) : changedTasks.get(slot);
+            if (task != null) {
+                TaskStore.acceptUndoneDate(task, consumer);
+            } else {
+                BinaryTaskFile.readUndoneDate(file, slot, consumer);
+            }
+        }
+    }
+
+    /**
+     * Decodes a record, reusing the object already handed out for it if one
+     * is still reachable so that every caller sees the same task.
+     *
+     * @param record The record number.
+     * @return The decoded task.
+     */
+    private Task decode(int record) {
+        Task task = decodedTasks.get(record);
+        if (task == null) {
+            try {
+                task = BinaryTaskFile.decode(file, record);
+            } catch (EncikException e) {
+                System.out.println("Warning: " + e.getMessage());
+                task = new Todo("(corrupted task)");
+                task.setId(BinaryTaskFile.readId(file, record));
+                changedTasks.put(record, task);
+            }
+            decodedTasks.put(record, task);
+        }
+        recentTasks.put(record, task);
+        return task;
+    }
+
+    /**
+     * Returns the slot of the task at an index: a record number if the task
+     * is in the file, or the negated position in the added tasks otherwise.
+     *
+     * @param index The 0-based index of the task.
+     * @return The slot of the task.
+     */
+    private int slotAt(int index) {
+        if (slots != null) {
+            return slots[index];
+        }
+        return index < recordCount ? index : -(index - recordCount) - 1;
+    }
+
+    /**
+     * Builds the explicit slot table the first time tasks are removed.
+     * Until then, slots are implied by position.
+     */
+    private void materializeSlots() {
+        if (slots != null) {
+            return;
+        }
+        int[] initialSlots = new int[Math.max(size, 16)];
+        for (int i = 0; i < size; i++) {
+            initialSlots[i] = slotAt(i);
+        }
+        slots = initialSlots;
+    }
+
+    /**
+     * Grows the slot table to hold at least the given number of slots.
+     *
+     * @param capacity The required capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(capacity, slots.length * 2));
+        }
+    }
+
+    /**
+     * Checks that an index refers to a task in the store.
+     *
+     * @param index The 0-based index.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records where time goes in Encik: how long each type of command takes,
+ * how long loads and saves take and how many bytes they move, how many
+ * tasks a search examines against how many it finds, and how long responses
+ * take to render.
+ *
+ * Recording is on unless Encik is started with -Dencik.metrics=false.
+ * ENABLED is a constant, so every recording site is guarded by it and the
+ * JIT compiler removes the guarded code entirely when it is off.
+ */
+public class Metrics {
+    public static final boolean ENABLED = !"false".equals(System.getProperty("encik.metrics"));
+
+    public static final Histogram STORAGE_LOAD = new Histogram("storage.load", Histogram.Unit.NANOSECONDS);
+    public static final Histogram STORAGE_LOAD_BYTES = new Histogram("storage.loadBytes", Histogram.Unit.BYTES);
+    public static final Histogram STORAGE_SAVE = new Histogram("storage.save", Histogram.Unit.NANOSECONDS);
+    public static final Histogram STORAGE_SAVE_BYTES = new Histogram("storage.saveBytes", Histogram.Unit.BYTES);
+    public static final Histogram STORAGE_APPEND = new Histogram("storage.append", Histogram.Unit.NANOSECONDS);
+    public static final Histogram STORAGE_APPEND_BYTES =
+            new Histogram("storage.appendBytes", Histogram.Unit.BYTES);
+    public static final Histogram FIND_SCANNED = new Histogram("find.scanned", Histogram.Unit.COUNT);
+    public static final Histogram FIND_MATCHED = new Histogram("find.matched", Histogram.Unit.COUNT);
+    public static final Histogram UI_RENDER = new Histogram("ui.render", Histogram.Unit.NANOSECONDS);
+
+    private static final EnumMap<Command.Type, Histogram> COMMANDS = new EnumMap<>(Command.Type.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    static {
+        for (Command.Type type : Command.Type.values()) {
+            String word = type == Command.Type.UNKNOWN ? "unknown" : type.name().toLowerCase();
+            COMMANDS.put(type, new Histogram("command." + word, Histogram.Unit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * Returns the histogram of the time taken by a type of command.
+     *
+     * @param type The command type.
+     * @return The histogram.
+     */
+    public static Histogram command(Command.Type type) {
+        return COMMANDS.get(type);
+    }
+
+    /**
+     * Returns every histogram that has recorded a value, commands first.
+     *
+     * @return The histograms.
+     */
+    public static List<Histogram> recorded() {
+        ArrayList<Histogram> histograms = new ArrayList<>(COMMANDS.values());
+        histograms.add(STORAGE_LOAD);
+        histograms.add(STORAGE_LOAD_BYTES);
+        histograms.add(STORAGE_SAVE);
+        histograms.add(STORAGE_SAVE_BYTES);
+        histograms.add(STORAGE_APPEND);
+        histograms.add(STORAGE_APPEND_BYTES);
+        histograms.add(FIND_SCANNED);
+        histograms.add(FIND_MATCHED);
+        histograms.add(UI_RENDER);
+        histograms.removeIf(histogram -> histogram.getCount() == 0);
+        return histograms;
+    }
+
+    /**
+     * Describes a histogram on one line, for the stats command.
+     *
+     * @param histogram The histogram.
+     * @return The description.
+     */
+    public static String describe(Histogram histogram) {
+        Histogram.Unit unit = histogram.getUnit();
+        return String.format("%-22s n=%-8d mean=%-9s p50=%-9s p99=%-9s max=%s", histogram.getName(),
+                histogram.getCount(), format(histogram.getMean(), unit),
+                format(histogram.getPercentile(50), unit), format(histogram.getPercentile(99), unit),
+                format(histogram.getMax(), unit));
+    }
+
+    /**
+     * Returns every recorded histogram as a JSON object, keyed by name.
+     *
+     * @return The JSON text.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\":\"").append(Instant.now()).append("\",\"metrics\":{");
+        String separator = "";
+        for (Histogram histogram : recorded()) {
+            json.append(separator).append('"').append(histogram.getName()).append("\":{")
+                    .append("\"unit\":\"").append(histogram.getUnit().name().toLowerCase()).append('"')
+                    .append(",\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(String.format(Locale.ROOT, "%.3f", histogram.getMean()))
+                    .append(",\"p50\":").append(histogram.getPercentile(50))
+                    .append(",\"p90\":").append(histogram.getPercentile(90))
+                    .append(",\"p99\":").append(histogram.getPercentile(99))
+                    .append(",\"max\":").append(histogram.getMax())
+                    .append('}');
+            separator = ",";
+        }
+        return json.append("}}").append(System.lineSeparator()).toString();
+    }
+
+    /**
+     * Starts a thread that writes every recorded histogram to a JSON file at
+     * a fixed interval, replacing the file in one step each time. The file
+     * is written once more when the process exits.
+     *
+     * @param path           The path of the file.
+     * @param intervalMillis The time between writes in milliseconds.
+     */
+    public static void startDumping(String path, long intervalMillis) {
+        Path file = Paths.get(path);
+        Thread dumper = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(intervalMillis);
+                    dump(file);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "encik-metrics");
+        dumper.setDaemon(true);
+        dumper.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(file)));
+    }
+
+    /**
+     * Writes every recorded histogram to a JSON file, through a temporary
+     * file so that readers never see a partial dump.
+     *
+     * @param path The path of the file.
+     */
+    private static void dump(Path path) {
+        Path temp = Paths.get(path + TEMP_SUFFIX);
+        try {
+            Files.write(temp, toJson().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.out.println("Warning: Unable to write metrics to " + path + ".");
+        }
+    }
+
+    /**
+     * Formats a value with a unit suited to its size. Values that are not
+     * whole, such as means, keep a decimal place, so that a mean below one
+     * is not shown as 0.
+     *
+     * @param value The value.
+     * @param unit  What the value measures.
+     * @return The formatted value.
+     */
+    private static String format(double value, Histogram.Unit unit) {
+        switch (unit) {
+            case NANOSECONDS:
+                if (value >= 1e9) {
+                    return String.format("%.2fs", value / 1e9);
+                }
+                if (value >= 1e6) {
+                    return String.format("%.2fms", value / 1e6);
+                }
+                return String.format("%.1fus", value / 1e3);
+            case BYTES:
+                if (value >= 1 << 20) {
+                    return String.format("%.1fMB", value / (1 << 20));
+                }
+                if (value >= 1 << 10) {
+                    return String.format("%.1fKB", value / (1 << 10));
+                }
+                return formatNumber(value) + "B";
+            default:
+                return formatNumber(value);
+        }
+    }
+
+    /**
+     * Formats a number without a decimal place if it is whole, and with one
+     * otherwise.
+     *
+     * @param value The number.
+     * @return The formatted number.
+     */
+    private static String formatNumber(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : String.format("%.1f", value);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Represents a single change made to the task list.
+ * Mutations are recorded by Storage so that a change can be persisted
+ * without rewriting the whole data file.
+ */
+public class Mutation {
+    /**
+     * The kinds of change that can be made to the task list.
+     */
+    public enum Type {
+        ADD, MARK, UNMARK, DELETE;
+
+        /**
+         * Returns the kind of change that reverses this one.
+         *
+         * @return The inverse mutation type.
+         */
+        public Type inverse() {
+            switch (this) {
+                case ADD:
+                    return DELETE;
+                case MARK:
+                    return UNMARK;
+                case UNMARK:
+                    return MARK;
+                default:
+                    return ADD;
+            }
+        }
+    }
+
+    private final Type type;
+    private final int index;
+    private final Task task;
+
+    /**
+     * Constructs a new Mutation.
+     *
+     * @param type  The kind of change.
+     * @param index The 0-based index of the affected task.
+     * @param task  The affected task.
+     */
+    public Mutation(Type type, int index, Task task) {
+        this.type = type;
+        this.index = index;
+        this.task = task;
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return The mutation type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the 0-based index of the affected task.
+     *
+     * @return The task index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the affected task.
+     *
+     * @return The task that was added, marked, unmarked or deleted.
+     */
+    public Task getTask() {
+        return task;
+    }
+}
@@ -0,0 +1,360 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Stores tasks in parallel primitive arrays instead of one object per task.
+ * Each task takes a type/done byte, two epoch-day ints, an id and the offset
+ * of its UTF-8 description in a shared byte arena, which is a fraction of the
+ * headers and pointers of a Task object graph. Descriptions are kept in list
+ * order, so each one ends where the next one starts.
+ * Todo, Deadline and Event objects are only built when a task is read
+ * through get(), and the same object is returned while it is still held.
+ */
+public class PackedTaskStore implements TaskStore {
+    private static final byte TYPE_TODO = 0;
+    private static final byte TYPE_DEADLINE = 1;
+    private static final byte TYPE_EVENT = 2;
+    private static final int TYPE_MASK = 0x03;
+    private static final int DONE_BIT = 0x80;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TaskViewCache views = new TaskViewCache();
+
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private int[] firstDays = new int[INITIAL_CAPACITY];
+    private int[] secondDays = new int[INITIAL_CAPACITY];
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] descriptionOffsets = new int[INITIAL_CAPACITY + 1];
+    private byte[] arena = new byte[INITIAL_CAPACITY * 16];
+    private int size;
+
+    /**
+     * Constructs an empty PackedTaskStore.
+     */
+    public PackedTaskStore() {
+    }
+
+    /**
+     * Constructs an empty PackedTaskStore with room for the given number of
+     * tasks and description bytes.
+     *
+     * @param capacity      The number of tasks to make room for.
+     * @param arenaCapacity The number of description bytes to make room for.
+     */
+    public PackedTaskStore(int capacity, int arenaCapacity) {
+        flags = new byte[capacity];
+        firstDays = new int[capacity];
+        secondDays = new int[capacity];
+        ids = new int[capacity];
+        descriptionOffsets = new int[capacity + 1];
+        arena = new byte[arenaCapacity];
+    }
+
+    /**
+     * Builds a packed store holding the given tasks. Tasks without an id are
+     * given their 1-based position as their id.
+     *
+     * @param tasks The tasks to pack.
+     * @return The packed store.
+     */
+    public static PackedTaskStore of(List<Task> tasks) {
+        int arenaCapacity = 0;
+        for (Task task : tasks) {
+            arenaCapacity += utf8Length(task.getDescription());
+        }
+        PackedTaskStore store = new PackedTaskStore(tasks.size(), arenaCapacity);
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task.getId() == Task.UNASSIGNED_ID) {
+                task.setId(i + 1);
+            }
+            store.append(task);
+        }
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Task get(int index) {
+        checkIndex(index);
+        Task task = views.get(ids[index]);
+        if (task == null) {
+            task = materialize(index);
+            views.put(ids[index], task);
+        }
+        return task;
+    }
+
+    @Override
+    public int getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * Returns false, as reads cache the tasks they build.
+     *
+     * @return False.
+     */
+    @Override
+    public boolean supportsConcurrentReads() {
+        return false;
+    }
+
+    /**
+     * Packs a task into the arrays. The task object is returned by get()
+     * as it is, as long as it is still held elsewhere, so that changes made
+     * through the store are seen by whoever added it.
+     *
+     * @param task The task to add.
+     */
+    @Override
+    public void add(Task task) {
+        append(task);
+        views.put(task.getId(), task);
+    }
+
+    /**
+     * Packs a task into the arrays after the others, without keeping the
+     * task object.
+     *
+     * @param task The task to pack.
+     */
+    private void append(Task task) {
+        ensureCapacity(size + 1);
+        pack(size, task);
+
+        byte[] description = task.getDescription().getBytes(StandardCharsets.UTF_8);
+        int start = descriptionOffsets[size];
+        ensureArenaCapacity(start + description.length);
+        System.arraycopy(description, 0, arena, start, description.length);
+        descriptionOffsets[size + 1] = start + description.length;
+        size++;
+    }
+
+    @Override
+    public void removeAll(BitSet indexes) {
+        int kept = 0;
+        int arenaEnd = 0;
+        for (int i = 0; i < size; i++) {
+            if (indexes.get(i)) {
+                views.remove(ids[i]);
+                continue;
+            }
+            int start = descriptionOffsets[i];
+            int length = descriptionOffsets[i + 1] - start;
+            System.arraycopy(arena, start, arena, arenaEnd, length);
+            flags[kept] = flags[i];
+            firstDays[kept] = firstDays[i];
+            secondDays[kept] = secondDays[i];
+            ids[kept] = ids[i];
+            descriptionOffsets[kept] = arenaEnd;
+            arenaEnd += length;
+            kept++;
+        }
+        descriptionOffsets[kept] = arenaEnd;
+        size = kept;
+    }
+
+    /**
+     * Packs the tasks into place, moving the tasks and descriptions after
+     * each one up in a single pass from the end. The inserted tasks are
+     * returned by get() as they are.
+     *
+     * @param indexes The 0-based indexes the tasks will have afterwards, in
+     *                ascending order.
+     * @param tasks   The tasks to insert, in the same order.
+     */
+    @Override
+    public void insertAll(int[] indexes, List<Task> tasks) {
+        byte[][] descriptions = new byte[tasks.size()][];
+        int insertedBytes = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            descriptions[i] = tasks.get(i).getDescription().getBytes(StandardCharsets.UTF_8);
+            insertedBytes += descriptions[i].length;
+        }
+        int newSize = size + tasks.size();
+        ensureCapacity(newSize);
+        int arenaEnd = descriptionOffsets[size] + insertedBytes;
+        ensureArenaCapacity(arenaEnd);
+        descriptionOffsets[newSize] = arenaEnd;
+        int source = size - 1;
+        int next = tasks.size() - 1;
+        for (int i = newSize - 1; next >= 0; i--) {
+            if (indexes[next] == i) {
+                Task task = tasks.get(next);
+                byte[] description = descriptions[next--];
+                arenaEnd -= description.length;
+                System.arraycopy(description, 0, arena, arenaEnd, description.length);
+                pack(i, task);
+                views.put(task.getId(), task);
+            } else {
+                int start = descriptionOffsets[source];
+                int length = descriptionOffsets[source + 1] - start;
+                arenaEnd -= length;
+                System.arraycopy(arena, start, arena, arenaEnd, length);
+                flags[i] = flags[source];
+                firstDays[i] = firstDays[source];
+                secondDays[i] = secondDays[source];
+                ids[i] = ids[source];
+                source--;
+            }
+            descriptionOffsets[i] = arenaEnd;
+        }
+        size = newSize;
+    }
+
+    @Override
+    public Task setDone(int index, boolean isDone) {
+        checkIndex(index);
+        flags[index] = (byte) (isDone ? flags[index] | DONE_BIT : flags[index] & ~DONE_BIT);
+        Task task = get(index);
+        if (isDone) {
+            task.markAsDone();
+        } else {
+            task.markAsNotDone();
+        }
+        return task;
+    }
+
+    /**
+     * Reads the dates of undone deadlines and events from the per-task
+     * arrays, without building any task.
+     *
+     * @param from     The 0-based index of the first task.
+     * @param to       The index after the last task.
+     * @param consumer The consumer of the dates.
+     */
+    @Override
+    public void forEachUndoneDate(int from, int to, DateConsumer consumer) {
+        for (int i = from; i < to; i++) {
+            int flag = flags[i];
+            if ((flag & DONE_BIT) == 0 && (flag & TYPE_MASK) != TYPE_TODO) {
+                consumer.accept(ids[i], (flag & TYPE_MASK) == TYPE_EVENT, firstDays[i]);
+            }
+        }
+    }
+
+    /**
+     * Packs the type, done state, dates and id of a task into an index of
+     * the per-task arrays. The description is left to the caller.
+     *
+     * @param index The 0-based index.
+     * @param task  The task.
+     */
+    private void pack(int index, Task task) {
+        byte type = TYPE_TODO;
+        if (task instanceof Deadline) {
+            type = TYPE_DEADLINE;
+            firstDays[index] = (int) ((Deadline) task).getByDate().toEpochDay();
+        } else if (task instanceof Event) {
+            type = TYPE_EVENT;
+            firstDays[index] = (int) ((Event) task).getFromDate().toEpochDay();
+            secondDays[index] = (int) ((Event) task).getToDate().toEpochDay();
+        }
+        flags[index] = (byte) (type | (task.isDone() ? DONE_BIT : 0));
+        ids[index] = task.getId();
+    }
+
+    /**
+     * Builds the Task object for the task at an index.
+     *
+     * @param index The 0-based index of the task.
+     * @return The task.
+     */
+    private Task materialize(int index) {
+        int start = descriptionOffsets[index];
+        String description = new String(arena, start, descriptionOffsets[index + 1] - start,
+                StandardCharsets.UTF_8);
+        Task task;
+        switch (flags[index] & TYPE_MASK) {
+            case TYPE_DEADLINE:
+                task = new Deadline(description, LocalDate.ofEpochDay(firstDays[index]));
+                break;
+            case TYPE_EVENT:
+                task = new Event(description, LocalDate.ofEpochDay(firstDays[index]),
+                        LocalDate.ofEpochDay(secondDays[index]));
+                break;
+            default:
+                task = new Todo(description);
+                break;
+        }
+        if ((flags[index] & DONE_BIT) != 0) {
+            task.markAsDone();
+        }
+        task.setId(ids[index]);
+        return task;
+    }
+
+    /**
+     * Returns the number of bytes a string takes in UTF-8.
+     *
+     * @param text The string.
+     * @return The UTF-8 length in bytes.
+     */
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Grows the per-task arrays to hold at least the given number of tasks.
+     *
+     * @param capacity The required capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= flags.length) {
+            return;
+        }
+        int newCapacity = Math.max(Math.max(capacity, INITIAL_CAPACITY), flags.length + (flags.length >> 1));
+        flags = Arrays.copyOf(flags, newCapacity);
+        firstDays = Arrays.copyOf(firstDays, newCapacity);
+        secondDays = Arrays.copyOf(secondDays, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        descriptionOffsets = Arrays.copyOf(descriptionOffsets, newCapacity + 1);
+    }
+
+    /**
+     * Grows the description arena to hold at least the given number of bytes.
+     *
+     * @param capacity The required capacity in bytes.
+     */
+    private void ensureArenaCapacity(int capacity) {
+        if (capacity > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(Math.max(capacity, INITIAL_CAPACITY),
+                    arena.length + (arena.length >> 1)));
+        }
+    }
+
+    /**
+     * Checks that an index refers to a task in the store.
+     *
+     * @param index The 0-based index.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+}
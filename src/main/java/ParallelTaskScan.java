@@ -0,0 +1,161 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scans a range of slots for matching tasks on the common fork/join pool.
+ *
+ * The range is split into chunks that are scanned in parallel, and matches
+ * are yielded in slot order as soon as the chunk holding them is done. Only
+ * a few chunks are scanned ahead of the consumer, so memory stays small no
+ * matter how many tasks match, and a consumer that stops early, such as a
+ * search with a limit, cancels the chunks it no longer needs when the
+ * stream is closed.
+ */
+public class ParallelTaskScan implements Spliterator<Task> {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+    private final IntFunction<Task> source;
+    private final int size;
+    private final Predicate<Task> filter;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final int maxChunksAhead = Math.max(2, pool.getParallelism() * CHUNKS_AHEAD_PER_THREAD);
+    private final ArrayDeque<ForkJoinTask<ArrayList<Task>>> pending = new ArrayDeque<>();
+
+    private int nextChunkStart;
+    private ArrayList<Task> chunk = new ArrayList<>();
+    private int position;
+
+    /**
+     * Constructs a ParallelTaskScan. The source must be safe to read from
+     * several threads at once while the scan is running.
+     *
+     * @param source Returns the task in a slot, or null if the slot is empty.
+     * @param size   The number of slots.
+     * @param filter The test a task must pass to be yielded.
+     */
+    public ParallelTaskScan(IntFunction<Task> source, int size, Predicate<Task> filter) {
+        this.source = source;
+        this.size = size;
+        this.filter = filter;
+    }
+
+    /**
+     * Returns a stream of the tasks in a range of slots that pass a filter,
+     * in slot order. Ranges of more than one chunk are scanned in parallel
+     * if the source allows it, and sequentially otherwise. Closing the
+     * stream cancels any scanning still in progress.
+     *
+     * @param source     Returns the task in a slot, or null if the slot is
+     *                   empty.
+     * @param size       The number of slots.
+     * @param isParallel Whether the source may be read from several threads.
+     * @param filter     The test a task must pass.
+     * @return The matching tasks.
+     */
+    public static Stream<Task> stream(IntFunction<Task> source, int size, boolean isParallel,
+            Predicate<Task> filter) {
+        if (!isParallel || size <= CHUNK_SIZE) {
+            return IntStream.range(0, size).mapToObj(source).filter(task -> task != null && filter.test(task));
+        }
+        ParallelTaskScan scan = new ParallelTaskScan(source, size, filter);
+        return StreamSupport.stream(scan, false).onClose(scan::cancel);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Task> action) {
+        while (position == chunk.size()) {
+            submitChunks();
+            ForkJoinTask<ArrayList<Task>> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            chunk = next.join();
+            position = 0;
+        }
+        action.accept(chunk.get(position++));
+        return true;
+    }
+
+    /**
+     * Returns null, as the scan already runs in parallel internally and
+     * yields its matches in order.
+     *
+     * @return Null.
+     */
+    @Override
+    public Spliterator<Task> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Cancels the chunks that have not been consumed and stops the scan.
+     */
+    public void cancel() {
+        for (ForkJoinTask<ArrayList<Task>> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+        nextChunkStart = size;
+        chunk = new ArrayList<>();
+        position = 0;
+    }
+
+    /**
+     * Submits chunks to the pool until enough are scanning ahead of the
+     * consumer or the range is exhausted.
+     */
+    private void submitChunks() {
+        while (pending.size() < maxChunksAhead && nextChunkStart < size) {
+            int end = Math.min(size, nextChunkStart + CHUNK_SIZE);
+            pending.add(pool.submit(new ChunkScan(nextChunkStart, end)));
+            nextChunkStart = end;
+        }
+    }
+
+    /**
+     * Scans one chunk of slots. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class ChunkScan extends RecursiveTask<ArrayList<Task>> {
+        private final int start;
+        private final int end;
+
+        ChunkScan(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected ArrayList<Task> compute() {
+            ArrayList<Task> matches = new ArrayList<>();
+            for (int slot = start; slot < end; slot++) {
+                Task task = source.apply(slot);
+                if (task != null && filter.test(task)) {
+                    matches.add(task);
+                }
+            }
+            return matches;
+        }
+    }
+}
@@ -1,23 +1,71 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.stream.Stream;
+
 /**
  * Parses user input and makes sense of user commands.
+ * Input is broken up by CommandLexer into a Command, which is reused for
+ * every line a thread handles, and the command is then looked up in a
+ * dispatch table of handlers.
  */
 public class Parser {
 
     // Command Constants
     private static final String COMMAND_BYE = "bye";
-    private static final String COMMAND_LIST = "list";
-    private static final String COMMAND_MARK = "mark";
-    private static final String COMMAND_UNMARK = "unmark";
-    private static final String COMMAND_TODO = "todo";
-    private static final String COMMAND_DEADLINE = "deadline";
-    private static final String COMMAND_EVENT = "event";
-    private static final String COMMAND_DELETE = "delete";
-    private static final String COMMAND_FIND = "find";
 
     // Task Syntax Markers
-    private static final String DEADLINE_BY = " /by ";
-    private static final String EVENT_FROM = " /from ";
-    private static final String EVENT_TO = " /to ";
+    private static final String FIND_WORD = "/word ";
+    private static final String FIND_PREFIX = "/prefix ";
+    private static final String FIND_FUZZY = "~";
+    private static final int FIND_FUZZY_LIMIT = 20;
+    private static final String FIND_LIMIT = "limit";
+    private static final char TASK_ID_MARKER = '#';
+    private static final char TARGET_SEPARATOR = ',';
+    private static final char RANGE_SEPARATOR = '-';
+    private static final String TARGET_ALL = "all";
+    private static final String TARGET_DONE = "done";
+    private static final String FILTER_PENDING = "pending";
+    private static final String FILTER_DONE = "done";
+    private static final String FILTER_TODO = "todo";
+    private static final String FILTER_DEADLINE = "deadline";
+    private static final String FILTER_EVENT = "event";
+
+    // Usage Hints
+    private static final String USAGE_LIST = "Usage: list [pending | done] [todo | deadline | event] [#tag ...] [page]";
+    private static final String USAGE_MARK = "Usage: mark <index | #id | from-to>[,...] | all | done";
+    private static final String USAGE_UNMARK = "Usage: unmark <index | #id | from-to>[,...] | all | done";
+    private static final String USAGE_DELETE = "Usage: delete <index | #id | from-to>[,...] | all | done";
+    private static final String USAGE_FIND = "Usage: find [/word | /prefix] <keyword> [limit N]"
+            + " or find ~<words> [limit N]";
+
+    // Listing Limits
+    private static final int LIST_PAGE_SIZE = 100;
+    private static final int LIST_ALL_LIMIT = 1000;
+
+    private static final ThreadLocal<Command> COMMANDS = ThreadLocal.withInitial(Command::new);
+    private static final EnumMap<Command.Type, Handler> HANDLERS = new EnumMap<>(Command.Type.class);
+
+    static {
+        HANDLERS.put(Command.Type.LIST, (command, tasks, ui, persistence) -> handleList(command, tasks, ui));
+        HANDLERS.put(Command.Type.MARK, Parser::handleMark);
+        HANDLERS.put(Command.Type.UNMARK, Parser::handleUnmark);
+        HANDLERS.put(Command.Type.TODO, Parser::handleTodo);
+        HANDLERS.put(Command.Type.DEADLINE, Parser::handleDeadline);
+        HANDLERS.put(Command.Type.EVENT, Parser::handleEvent);
+        HANDLERS.put(Command.Type.DELETE, Parser::handleDelete);
+        HANDLERS.put(Command.Type.FIND, (command, tasks, ui, persistence) -> handleFind(command, tasks, ui));
+        HANDLERS.put(Command.Type.DUE, (command, tasks, ui, persistence) -> handleDue(command, tasks, ui));
+        HANDLERS.put(Command.Type.BETWEEN, (command, tasks, ui, persistence) -> handleBetween(command, tasks, ui));
+        HANDLERS.put(Command.Type.OVERLAPPING,
+                (command, tasks, ui, persistence) -> handleOverlapping(command, tasks, ui));
+        HANDLERS.put(Command.Type.UNDO, Parser::handleUndo);
+        HANDLERS.put(Command.Type.REDO, Parser::handleRedo);
+        HANDLERS.put(Command.Type.STATS, (command, tasks, ui, persistence) -> handleStats(ui));
+    }
 
     /**
      * Checks if the user input is the exit command.
@@ -29,148 +77,305 @@ public class Parser {
         return input.equalsIgnoreCase(COMMAND_BYE);
     }
 
+    /**
+     * Checks if the user input is a command that only reads the task list.
+     * Such commands may run alongside others on a ConcurrentTaskList without
+     * holding its monitor.
+     *
+     * @param input The user input string.
+     * @return True if the command does not change the task list.
+     */
+    public static boolean isReadOnly(String input) {
+        return CommandLexer.typeOf(input).isReadOnly();
+    }
+
     /**
      * Parses the user input and executes the corresponding command.
      *
-     * @param input   The raw user input string.
-     * @param tasks   The current task list.
-     * @param ui      The UI handler for output.
-     * @param storage The storage handler for persistence.
+     * @param input       The raw user input string.
+     * @param tasks       The current task list.
+     * @param ui          The UI handler for output.
+     * @param persistence The persistence executor that saves changes.
      * @throws EncikException If the command is unknown or has invalid arguments.
      */
-    public static void handleCommand(String input, TaskList tasks, Ui ui, Storage storage)
+    public static void handleCommand(String input, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        String[] parts = input.trim().split("\\s+", 2);
-        String command = parts[0].toLowerCase();
-
-        switch (command) {
-            case COMMAND_LIST:
-                ui.showTaskList(tasks);
-                break;
-            case COMMAND_MARK:
-                handleMark(input, tasks, ui, storage);
-                break;
-            case COMMAND_UNMARK:
-                handleUnmark(input, tasks, ui, storage);
-                break;
-            case COMMAND_TODO:
-                handleTodo(input, tasks, ui, storage);
-                break;
-            case COMMAND_DEADLINE:
-                handleDeadline(input, tasks, ui, storage);
-                break;
-            case COMMAND_EVENT:
-                handleEvent(input, tasks, ui, storage);
-                break;
-            case COMMAND_DELETE:
-                handleDelete(input, tasks, ui, storage);
-                break;
-            case COMMAND_FIND:
-                handleFind(input, tasks, ui);
-                break;
-            default:
+        Command command = COMMANDS.get();
+        long startNanos = Metrics.ENABLED ? System.nanoTime() : 0;
+        CommandLexer.lex(input, command);
+        try {
+            Handler handler = HANDLERS.get(command.getType());
+            if (handler == null) {
                 throw new EncikException(
                         "OOPS!!! I'm sorry, but I don't know what that means :-(\n"
-                                + "Available commands: todo, deadline, event, list, mark, unmark, delete, find, bye");
+                                + "Available commands: todo, deadline, event, list, mark, unmark, delete, find, "
+                                + "due, between, overlapping, undo, redo, stats, bye");
+            }
+            handler.handle(command, tasks, ui, persistence);
+        } finally {
+            if (Metrics.ENABLED) {
+                Metrics.command(command.getType()).recordSince(startNanos);
+            }
         }
     }
 
     /**
-     * Handles the mark command.
+     * Handles the list command. Lists longer than a thousand tasks are shown
+     * a page at a time, starting with the first page unless a page number is
+     * given. The list may be filtered by status, by type and by any number
+     * of tags, in any order, in which case only the matching tasks are
+     * shown, paged in the same way.
      *
-     * @param input   The user input.
+     * @param command The lexed command.
      * @param tasks   The task list.
      * @param ui      The UI handler.
-     * @param storage The storage handler.
+     * @throws EncikException If a filter or the page number is invalid.
+     */
+    private static void handleList(Command command, TaskList tasks, Ui ui) throws EncikException {
+        if (!command.hasArgument()) {
+            if (tasks.size() <= LIST_ALL_LIMIT) {
+                ui.showTaskList(tasks);
+            } else {
+                ui.showTaskPage(tasks, 1, LIST_PAGE_SIZE);
+            }
+            return;
+        }
+        String input = command.getInput();
+        int end = command.getArgumentEnd();
+        FilterIndex.Status status = null;
+        FilterIndex.Type type = null;
+        ArrayList<String> tags = new ArrayList<>();
+        int page = 0;
+        int wordEnd;
+        for (int start = command.getArgumentStart(); start < end; start = skipWhitespace(input, wordEnd, end)) {
+            wordEnd = start;
+            while (wordEnd < end && input.charAt(wordEnd) > ' ') {
+                wordEnd++;
+            }
+            String word = input.substring(start, wordEnd).toLowerCase();
+            if (Character.isDigit(word.charAt(0)) && page == 0) {
+                page = parsePageNumber(word);
+            } else if ((word.equals(FILTER_PENDING) || word.equals(FILTER_DONE)) && status == null) {
+                status = word.equals(FILTER_DONE) ? FilterIndex.Status.DONE : FilterIndex.Status.PENDING;
+            } else if (parseTaskType(word) != null && type == null) {
+                type = parseTaskType(word);
+            } else if (FilterIndex.isTag(word)) {
+                tags.add(word);
+            } else if (word.equals(FILTER_PENDING) || word.equals(FILTER_DONE) || parseTaskType(word) != null) {
+                throw new EncikException("OOPS!!! The list can only be filtered by one status and one type.\n"
+                        + USAGE_LIST);
+            } else {
+                throw new EncikException("OOPS!!! I can't filter the list by \"" + word + "\".\n" + USAGE_LIST);
+            }
+        }
+        if (status == null && type == null && tags.isEmpty()) {
+            showListPage(tasks, ui, page);
+            return;
+        }
+        IdBitmap matches = tasks.filter(status, type, tags);
+        int total = matches.cardinality();
+        int pageSize = page == 0 && total <= LIST_ALL_LIMIT ? Math.max(1, total) : LIST_PAGE_SIZE;
+        int pageCount = Math.max(1, (total + pageSize - 1) / pageSize);
+        page = Math.max(1, page);
+        if (page > pageCount) {
+            throw new EncikException("OOPS!!! Invalid page number. The matching tasks fill " + pageCount
+                    + " page(s).\n" + USAGE_LIST);
+        }
+        int from = (page - 1) * pageSize;
+        ui.showFilteredTasks(tasks.getByIds(matches.slice(from, pageSize)), from, total, page, pageCount);
+    }
+
+    /**
+     * Shows one page of the whole task list.
+     *
+     * @param tasks The task list.
+     * @param ui    The UI handler.
+     * @param page  The 1-based page number, or 0 if it was not valid.
+     * @throws EncikException If the page number is invalid.
+     */
+    private static void showListPage(TaskList tasks, Ui ui, int page) throws EncikException {
+        int pageCount = Math.max(1, (tasks.size() + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE);
+        if (page < 1 || page > pageCount) {
+            throw new EncikException("OOPS!!! Invalid page number. The list has " + pageCount + " page(s).\n"
+                    + USAGE_LIST);
+        }
+        if (tasks.size() == 0) {
+            ui.showTaskList(tasks);
+        } else {
+            ui.showTaskPage(tasks, page, LIST_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Parses a page number given to the list command.
+     *
+     * @param word The word holding the page number.
+     * @return The page number.
+     * @throws EncikException If the word is not a positive number.
+     */
+    private static int parsePageNumber(String word) throws EncikException {
+        int page;
+        try {
+            page = Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            page = 0;
+        }
+        if (page < 1) {
+            throw new EncikException("OOPS!!! Invalid page number.\n" + USAGE_LIST);
+        }
+        return page;
+    }
+
+    /**
+     * Parses a task type given to the list command.
+     *
+     * @param word The word, in lower case.
+     * @return The task type, or null if the word names none.
+     */
+    private static FilterIndex.Type parseTaskType(String word) {
+        switch (word) {
+            case FILTER_TODO:
+                return FilterIndex.Type.TODO;
+            case FILTER_DEADLINE:
+                return FilterIndex.Type.DEADLINE;
+            case FILTER_EVENT:
+                return FilterIndex.Type.EVENT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Handles the mark command. Several tasks may be given at once, and are
+     * marked in one pass and persisted together.
+     *
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
      * @throws EncikException If the index is missing or invalid.
      */
-    private static void handleMark(String input, TaskList tasks, Ui ui, Storage storage)
+    private static void handleMark(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_MARK)) {
-            throw new EncikException("OOPS!!! Invalid task index.\nUsage: mark <index>");
+        if (!command.hasArgument()) {
+            throw new EncikException("OOPS!!! Invalid task index.\n" + USAGE_MARK);
+        }
+        if (isMultipleTargets(command)) {
+            ui.showTasksMarked(setDone(parseTaskIndexes(command, tasks, USAGE_MARK), true, tasks, persistence));
+            return;
         }
-        int taskIndex = parseTaskIndex(input, COMMAND_MARK.length());
+        int taskIndex = parseTaskIndex(command.getInput(), command.getArgumentStart(), command.getArgumentEnd(),
+                tasks);
         if (!tasks.isValidIndex(taskIndex)) {
-            throw new EncikException("OOPS!!! Invalid task index.\nUsage: mark <index>");
+            throw new EncikException("OOPS!!! Invalid task index.\n" + USAGE_MARK);
         }
-        tasks.get(taskIndex).markAsDone();
-        saveTasksSilently(tasks, ui, storage);
-        ui.showTaskMarked(tasks.get(taskIndex));
+        boolean wasDone = tasks.get(taskIndex).isDone();
+        Task task = tasks.markAsDone(taskIndex);
+        if (!wasDone) {
+            persistence.submit(new Mutation(Mutation.Type.MARK, taskIndex, task));
+        }
+        ui.showTaskMarked(task);
     }
 
     /**
-     * Handles the unmark command.
+     * Handles the unmark command. Several tasks may be given at once, and
+     * are unmarked in one pass and persisted together.
      *
-     * @param input   The user input.
-     * @param tasks   The task list.
-     * @param ui      The UI handler.
-     * @param storage The storage handler.
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
      * @throws EncikException If the index is missing or invalid.
      */
-    private static void handleUnmark(String input, TaskList tasks, Ui ui, Storage storage)
+    private static void handleUnmark(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_UNMARK)) {
-            throw new EncikException("OOPS!!! Invalid task index.\nUsage: unmark <index>");
+        if (!command.hasArgument()) {
+            throw new EncikException("OOPS!!! Invalid task index.\n" + USAGE_UNMARK);
         }
-        int taskIndex = parseTaskIndex(input, COMMAND_UNMARK.length());
+        if (isMultipleTargets(command)) {
+            ui.showTasksUnmarked(setDone(parseTaskIndexes(command, tasks, USAGE_UNMARK), false, tasks,
+                    persistence));
+            return;
+        }
+        int taskIndex = parseTaskIndex(command.getInput(), command.getArgumentStart(), command.getArgumentEnd(),
+                tasks);
         if (!tasks.isValidIndex(taskIndex)) {
-            throw new EncikException("OOPS!!! Invalid task index.\nUsage: unmark <index>");
+            throw new EncikException("OOPS!!! Invalid task index.\n" + USAGE_UNMARK);
+        }
+        boolean wasDone = tasks.get(taskIndex).isDone();
+        Task task = tasks.markAsNotDone(taskIndex);
+        if (wasDone) {
+            persistence.submit(new Mutation(Mutation.Type.UNMARK, taskIndex, task));
+        }
+        ui.showTaskUnmarked(task);
+    }
+
+    /**
+     * Marks several tasks as done or not done, skipping tasks that are
+     * already in that state, and submits the changes as one batch.
+     *
+     * @param indexes     The 0-based indexes of the tasks.
+     * @param isDone      Whether to mark the tasks as done.
+     * @param tasks       The task list.
+     * @param persistence The persistence executor.
+     * @return The tasks that changed, in list order.
+     */
+    private static List<Task> setDone(BitSet indexes, boolean isDone, TaskList tasks,
+            PersistenceExecutor persistence) {
+        ArrayList<Task> changedTasks = new ArrayList<>();
+        ArrayList<Mutation> mutations = new ArrayList<>();
+        Mutation.Type type = isDone ? Mutation.Type.MARK : Mutation.Type.UNMARK;
+        for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+            if (tasks.get(i).isDone() == isDone) {
+                continue;
+            }
+            Task task = isDone ? tasks.markAsDone(i) : tasks.markAsNotDone(i);
+            changedTasks.add(task);
+            mutations.add(new Mutation(type, i, task));
         }
-        tasks.get(taskIndex).markAsNotDone();
-        saveTasksSilently(tasks, ui, storage);
-        ui.showTaskUnmarked(tasks.get(taskIndex));
+        persistence.submitAll(mutations);
+        return changedTasks;
     }
 
     /**
      * Handles the todo command.
      *
-     * @param input   The user input.
-     * @param tasks   The task list.
-     * @param ui      The UI handler.
-     * @param storage The storage handler.
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
      * @throws EncikException If the description is empty.
      */
-    private static void handleTodo(String input, TaskList tasks, Ui ui, Storage storage)
+    private static void handleTodo(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_TODO)) {
-            throw new EncikException(
-                    "OOPS!!! The description of a todo cannot be empty.\nUsage: todo <description>");
-        }
-        String description = input.substring(COMMAND_TODO.length()).trim();
-        if (description.isEmpty()) {
+        if (!command.hasArgument()) {
             throw new EncikException(
                     "OOPS!!! The description of a todo cannot be empty.\nUsage: todo <description>");
         }
-        Task task = new Todo(description);
+        Task task = new Todo(command.getDescription());
         tasks.add(task);
-        saveTasksSilently(tasks, ui, storage);
+        persistence.submit(new Mutation(Mutation.Type.ADD, tasks.size() - 1, task));
         ui.showTaskAdded(task, tasks.size());
     }
 
     /**
      * Handles the deadline command.
      *
-     * @param input   The user input.
-     * @param tasks   The task list.
-     * @param ui      The UI handler.
-     * @param storage The storage handler.
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
      * @throws EncikException If the format is invalid.
      */
-    private static void handleDeadline(String input, TaskList tasks, Ui ui, Storage storage)
+    private static void handleDeadline(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_DEADLINE)) {
-            throw new EncikException(
-                    "OOPS!!! Invalid deadline format.\nUsage: deadline <desc> /by <date>");
-        }
-        String content = input.substring(COMMAND_DEADLINE.length());
-        String[] parts = content.split(DEADLINE_BY);
-        if (parts.length < 2) {
+        if (!command.hasArgument() || !command.hasFlag(Command.Flag.BY)) {
             throw new EncikException(
                     "OOPS!!! Invalid deadline format.\nUsage: deadline <desc> /by <date>");
         }
 
-        String description = parts[0].trim();
-        String by = parts[1].trim();
+        String description = command.getDescription();
+        String by = command.getFlag(Command.Flag.BY);
 
         if (description.isEmpty() || by.isEmpty()) {
             throw new EncikException(
@@ -179,41 +384,29 @@ public class Parser {
 
         Task task = new Deadline(description, by);
         tasks.add(task);
-        saveTasksSilently(tasks, ui, storage);
+        persistence.submit(new Mutation(Mutation.Type.ADD, tasks.size() - 1, task));
         ui.showTaskAdded(task, tasks.size());
     }
 
     /**
      * Handles the event command.
      *
-     * @param input   The user input.
-     * @param tasks   The task list.
-     * @param ui      The UI handler.
-     * @param storage The storage handler.
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
      * @throws EncikException If the format is invalid.
      */
-    private static void handleEvent(String input, TaskList tasks, Ui ui, Storage storage)
+    private static void handleEvent(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_EVENT)) {
-            throw new EncikException(
-                    "OOPS!!! Invalid event format.\nUsage: event <desc> /from <start> /to <end>");
-        }
-        String content = input.substring(COMMAND_EVENT.length());
-        String[] parts = content.split(EVENT_FROM);
-        if (parts.length < 2) {
-            throw new EncikException(
-                    "OOPS!!! Invalid event format.\nUsage: event <desc> /from <start> /to <end>");
-        }
-
-        String description = parts[0].trim();
-        String[] timeParts = parts[1].split(EVENT_TO);
-        if (timeParts.length < 2) {
+        if (!command.hasArgument() || !command.hasFlag(Command.Flag.FROM) || !command.hasFlag(Command.Flag.TO)) {
             throw new EncikException(
                     "OOPS!!! Invalid event format.\nUsage: event <desc> /from <start> /to <end>");
         }
 
-        String from = timeParts[0].trim();
-        String to = timeParts[1].trim();
+        String description = command.getDescription();
+        String from = command.getFlag(Command.Flag.FROM);
+        String to = command.getFlag(Command.Flag.TO);
 
         if (description.isEmpty() || from.isEmpty() || to.isEmpty()) {
             throw new EncikException(
@@ -222,83 +415,435 @@ public class Parser {
 
         Task task = new Event(description, from, to);
         tasks.add(task);
-        saveTasksSilently(tasks, ui, storage);
+        persistence.submit(new Mutation(Mutation.Type.ADD, tasks.size() - 1, task));
         ui.showTaskAdded(task, tasks.size());
     }
 
     /**
-     * Handles the delete command.
+     * Handles the delete command. Several tasks may be given at once; they
+     * are removed in one pass and persisted together, last first, so that
+     * each journaled index is still valid when it is replayed.
      *
-     * @param input   The user input.
-     * @param tasks   The task list.
-     * @param ui      The UI handler.
-     * @param storage The storage handler.
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor.
      * @throws EncikException If the index is missing or invalid.
      */
-    private static void handleDelete(String input, TaskList tasks, Ui ui, Storage storage)
+    private static void handleDelete(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_DELETE)) {
-            throw new EncikException("OOPS!!! Invalid task index.\nUsage: delete <index>");
+        if (!command.hasArgument()) {
+            throw new EncikException("OOPS!!! Invalid task index.\n" + USAGE_DELETE);
+        }
+        if (isMultipleTargets(command)) {
+            BitSet indexes = parseTaskIndexes(command, tasks, USAGE_DELETE);
+            List<Task> removedTasks = tasks.removeAll(indexes);
+            ArrayList<Mutation> mutations = new ArrayList<>(removedTasks.size());
+            int position = removedTasks.size() - 1;
+            for (int i = indexes.length() - 1; i >= 0; i = indexes.previousSetBit(i - 1)) {
+                mutations.add(new Mutation(Mutation.Type.DELETE, i, removedTasks.get(position--)));
+            }
+            persistence.submitAll(mutations);
+            ui.showTasksDeleted(removedTasks, tasks.size());
+            return;
         }
-        int taskIndex = parseTaskIndex(input, COMMAND_DELETE.length());
+        int taskIndex = parseTaskIndex(command.getInput(), command.getArgumentStart(), command.getArgumentEnd(),
+                tasks);
         if (!tasks.isValidIndex(taskIndex)) {
-            throw new EncikException("OOPS!!! Invalid task index.\nUsage: delete <index>");
+            throw new EncikException("OOPS!!! Invalid task index.\n" + USAGE_DELETE);
         }
         Task removedTask = tasks.remove(taskIndex);
-        saveTasksSilently(tasks, ui, storage);
+        persistence.submit(new Mutation(Mutation.Type.DELETE, taskIndex, removedTask));
         ui.showTaskDeleted(removedTask, tasks.size());
     }
 
+    /**
+     * Handles the undo command, which reverses the most recent change that
+     * has not been undone yet.
+     *
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor, which keeps the history.
+     * @throws EncikException If there is nothing to undo.
+     */
+    private static void handleUndo(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
+            throws EncikException {
+        if (command.hasArgument()) {
+            throw new EncikException("OOPS!!! Undo takes no arguments.\nUsage: undo");
+        }
+        ui.showUndone(persistence.undo(), tasks.size());
+    }
+
+    /**
+     * Handles the redo command, which makes the most recently undone change
+     * again.
+     *
+     * @param command     The lexed command.
+     * @param tasks       The task list.
+     * @param ui          The UI handler.
+     * @param persistence The persistence executor, which keeps the history.
+     * @throws EncikException If there is nothing to redo.
+     */
+    private static void handleRedo(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence)
+            throws EncikException {
+        if (command.hasArgument()) {
+            throw new EncikException("OOPS!!! Redo takes no arguments.\nUsage: redo");
+        }
+        ui.showRedone(persistence.redo(), tasks.size());
+    }
+
+    /**
+     * Handles the stats command, which shows how long each kind of command
+     * and storage operation has taken since Encik started.
+     *
+     * @param ui The UI handler.
+     * @throws EncikException If metrics are turned off.
+     */
+    private static void handleStats(Ui ui) throws EncikException {
+        if (!Metrics.ENABLED) {
+            throw new EncikException("OOPS!!! Metrics are turned off.\n"
+                    + "Start Encik without -Dencik.metrics=false to collect them.");
+        }
+        ArrayList<String> lines = new ArrayList<>();
+        for (Histogram histogram : Metrics.recorded()) {
+            lines.add(Metrics.describe(histogram));
+        }
+        ui.showStats(lines);
+    }
+
     /**
      * Handles the find command.
+     * Matches any substring by default; "/word" matches whole words only and
+     * "/prefix" matches the start of words, and "~" ranks tasks by how
+     * closely they match the words that follow, allowing for typos.
+     * Substring matches are shown as they are found, and a trailing
+     * "limit N" stops the search after N. Ranked searches show the best 20
+     * unless given a limit.
      *
-     * @param input The user input.
-     * @param tasks The task list.
-     * @param ui    The UI handler.
-     * @throws EncikException If the keyword is empty.
+     * @param command The lexed command.
+     * @param tasks   The task list.
+     * @param ui      The UI handler.
+     * @throws EncikException If the keyword is empty or the limit invalid.
      */
-    private static void handleFind(String input, TaskList tasks, Ui ui)
+    private static void handleFind(Command command, TaskList tasks, Ui ui)
             throws EncikException {
-        if (input.trim().equalsIgnoreCase(COMMAND_FIND)) {
+        if (!command.hasArgument()) {
             throw new EncikException(
                     "OOPS!!! The search keyword cannot be empty.\nUsage: find <keyword>");
         }
-        String keyword = input.substring(COMMAND_FIND.length()).trim();
-        if (keyword.isEmpty()) {
+        String input = command.getInput();
+        int limitStart = findLimitStart(command);
+        int limit = command.getArgument().startsWith(FIND_FUZZY) ? FIND_FUZZY_LIMIT : Integer.MAX_VALUE;
+        String keyword = command.getArgument();
+        if (limitStart >= 0) {
+            int countStart = skipWhitespace(input, limitStart + FIND_LIMIT.length(), command.getArgumentEnd());
+            try {
+                limit = Integer.parseInt(input, countStart, command.getArgumentEnd(), 10);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1) {
+                throw new EncikException("OOPS!!! The limit must be a positive number.\n" + USAGE_FIND);
+            }
+            keyword = input.substring(command.getArgumentStart(), trimEnd(input, 0, limitStart));
+        }
+        if (keyword.startsWith(FIND_WORD)) {
+            ui.showFoundTasks(tasks.findWord(parseFindKeyword(keyword, FIND_WORD)).getTasks().iterator(), limit);
+        } else if (keyword.startsWith(FIND_PREFIX)) {
+            ui.showFoundTasks(tasks.findPrefix(parseFindKeyword(keyword, FIND_PREFIX)).getTasks().iterator(),
+                    limit);
+        } else if (keyword.startsWith(FIND_FUZZY)) {
+            ui.showFoundTasks(tasks.findFuzzy(parseFindKeyword(keyword, FIND_FUZZY), limit).iterator(), limit);
+        } else {
+            try (Stream<Task> matches = tasks.streamFind(keyword)) {
+                ui.showFoundTasks(matches.iterator(), limit);
+            }
+        }
+    }
+
+    /**
+     * Finds the "limit" option at the end of a find command's arguments:
+     * the word "limit" followed by a number, after a keyword.
+     *
+     * @param command The lexed command.
+     * @return The index of the word "limit", or -1 if there is no limit.
+     */
+    private static int findLimitStart(Command command) {
+        String input = command.getInput();
+        int start = command.getArgumentStart();
+        int countStart = command.getArgumentEnd();
+        while (countStart > start && Character.isDigit(input.charAt(countStart - 1))) {
+            countStart--;
+        }
+        int limitEnd = trimEnd(input, start, countStart);
+        int limitStart = limitEnd - FIND_LIMIT.length();
+        if (countStart == command.getArgumentEnd() || limitEnd == countStart || limitStart <= start
+                || input.charAt(limitStart - 1) > ' '
+                || !input.regionMatches(true, limitStart, FIND_LIMIT, 0, FIND_LIMIT.length())) {
+            return -1;
+        }
+        return limitStart;
+    }
+
+    /**
+     * Extracts the keyword following a find option.
+     *
+     * @param keyword The text after the find command.
+     * @param option  The option prefix to skip.
+     * @return The keyword.
+     * @throws EncikException If the keyword is empty.
+     */
+    private static String parseFindKeyword(String keyword, String option) throws EncikException {
+        String value = keyword.substring(option.length()).trim();
+        if (value.isEmpty()) {
             throw new EncikException(
-                    "OOPS!!! The search keyword cannot be empty.\nUsage: find <keyword>");
+                    "OOPS!!! The search keyword cannot be empty.\n" + USAGE_FIND);
+        }
+        return value;
+    }
+
+    /**
+     * Handles the due command, listing deadlines due on a date.
+     *
+     * @param command The lexed command.
+     * @param tasks   The task list.
+     * @param ui      The UI handler.
+     * @throws EncikException If the date is missing or invalid.
+     */
+    private static void handleDue(Command command, TaskList tasks, Ui ui) throws EncikException {
+        String[] dates = parseDates(command, 1, "Usage: due <date>");
+        ui.showFoundTasks(tasks.findDue(parseDate(dates[0])));
+    }
+
+    /**
+     * Handles the between command, listing deadlines and events within a
+     * date range.
+     *
+     * @param command The lexed command.
+     * @param tasks   The task list.
+     * @param ui      The UI handler.
+     * @throws EncikException If the dates are missing or invalid.
+     */
+    private static void handleBetween(Command command, TaskList tasks, Ui ui) throws EncikException {
+        String[] dates = parseDates(command, 2, "Usage: between <from> <to>");
+        LocalDate from = parseDate(dates[0]);
+        LocalDate to = parseDate(dates[1]);
+        if (to.isBefore(from)) {
+            throw new EncikException("OOPS!!! The end date cannot be before the start date.\n"
+                    + "Usage: between <from> <to>");
         }
-        TaskList matchingTasks = tasks.find(keyword);
-        ui.showFoundTasks(matchingTasks);
+        ui.showFoundTasks(tasks.findBetween(from, to));
     }
 
     /**
-     * Parses the task index from user input.
+     * Handles the overlapping command, listing events taking place on a date.
      *
-     * @param input         The user input.
-     * @param commandLength The length of the command prefix to skip.
+     * @param command The lexed command.
+     * @param tasks   The task list.
+     * @param ui      The UI handler.
+     * @throws EncikException If the date is missing or invalid.
+     */
+    private static void handleOverlapping(Command command, TaskList tasks, Ui ui) throws EncikException {
+        String[] dates = parseDates(command, 1, "Usage: overlapping <date>");
+        ui.showFoundTasks(tasks.findOverlapping(parseDate(dates[0])));
+    }
+
+    /**
+     * Splits the arguments of a date query command at whitespace.
+     *
+     * @param command The lexed command.
+     * @param count   The number of dates expected.
+     * @param usage   The usage hint shown on error.
+     * @return The date arguments.
+     * @throws EncikException If the number of arguments is wrong.
+     */
+    private static String[] parseDates(Command command, int count, String usage) throws EncikException {
+        String input = command.getInput();
+        int end = command.getArgumentEnd();
+        String[] dates = new String[count];
+        int found = 0;
+        int i = command.getArgumentStart();
+        while (i < end) {
+            int start = i;
+            while (i < end && input.charAt(i) > ' ') {
+                i++;
+            }
+            if (found == count) {
+                throw new EncikException("OOPS!!! Invalid date query.\n" + usage);
+            }
+            dates[found++] = input.substring(start, i);
+            while (i < end && input.charAt(i) <= ' ') {
+                i++;
+            }
+        }
+        if (found != count) {
+            throw new EncikException("OOPS!!! Invalid date query.\n" + usage);
+        }
+        return dates;
+    }
+
+    /**
+     * Parses a date argument.
+     *
+     * @param date The date string (yyyy-MM-dd).
+     * @return The parsed date.
+     * @throws EncikException If the date format is invalid.
+     */
+    private static LocalDate parseDate(String date) throws EncikException {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new EncikException("Invalid date format. Please use yyyy-MM-dd (e.g., 2019-10-15).");
+        }
+    }
+
+    /**
+     * Parses a task given either by its 1-based position in the list or,
+     * after "#", by its id.
+     *
+     * @param input The user input.
+     * @param start The index of the first character of the task argument.
+     * @param end   The index after its last character.
+     * @param tasks The task list, used to look up ids.
      * @return The 0-based index of the task, or -1 if invalid.
      */
-    private static int parseTaskIndex(String input, int commandLength) {
+    private static int parseTaskIndex(String input, int start, int end, TaskList tasks) {
         try {
-            return Integer.parseInt(input.substring(commandLength).trim()) - 1;
+            if (start < end && input.charAt(start) == TASK_ID_MARKER) {
+                return tasks.indexOfId(Integer.parseInt(input, start + 1, end, 10));
+            }
+            return Integer.parseInt(input, start, end, 10) - 1;
         } catch (NumberFormatException e) {
             return -1;
         }
     }
 
     /**
-     * Saves tasks to storage, displaying a warning on failure.
+     * Checks whether a task argument names more than one task: a list, a
+     * range, "all" or "done".
      *
-     * @param tasks   The task list to save.
-     * @param ui      The UI handler for error display.
-     * @param storage The storage handler.
+     * @param command The lexed command.
+     * @return True if the argument must be parsed with parseTaskIndexes.
      */
-    private static void saveTasksSilently(TaskList tasks, Ui ui, Storage storage) {
-        try {
-            storage.save(tasks.getTasks());
-        } catch (EncikException e) {
-            ui.showSavingError();
+    private static boolean isMultipleTargets(Command command) {
+        return command.isArgument(TARGET_ALL) || command.isArgument(TARGET_DONE)
+                || command.indexInArgument(TARGET_SEPARATOR) >= 0 || command.indexInArgument(RANGE_SEPARATOR) > 0;
+    }
+
+    /**
+     * Parses a task argument naming several tasks: "all", "done", or a
+     * comma-separated list of 1-based positions, "from-to" ranges of
+     * positions and "#id"s.
+     *
+     * @param command The lexed command.
+     * @param tasks   The task list.
+     * @param usage   The usage hint shown on error.
+     * @return The 0-based indexes of the tasks.
+     * @throws EncikException If any part of the argument is invalid, in
+     *                        which case no task is changed.
+     */
+    private static BitSet parseTaskIndexes(Command command, TaskList tasks, String usage) throws EncikException {
+        BitSet indexes = new BitSet();
+        if (command.isArgument(TARGET_ALL)) {
+            indexes.set(0, tasks.size());
+            return indexes;
+        }
+        if (command.isArgument(TARGET_DONE)) {
+            List<Task> list = tasks.getTasks();
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).isDone()) {
+                    indexes.set(i);
+                }
+            }
+            return indexes;
+        }
+        String input = command.getInput();
+        // Trailing separators name no task, as with String.split.
+        int end = command.getArgumentEnd();
+        while (end > command.getArgumentStart() && input.charAt(end - 1) == TARGET_SEPARATOR) {
+            end--;
+        }
+        int start = command.getArgumentStart();
+        while (start < end) {
+            int targetEnd = start;
+            int rangeSeparator = -1;
+            while (targetEnd < end && input.charAt(targetEnd) != TARGET_SEPARATOR) {
+                if (rangeSeparator < 0 && input.charAt(targetEnd) == RANGE_SEPARATOR) {
+                    rangeSeparator = targetEnd;
+                }
+                targetEnd++;
+            }
+            int targetStart = skipWhitespace(input, start, targetEnd);
+            int trimmedEnd = trimEnd(input, targetStart, targetEnd);
+            if (rangeSeparator <= targetStart) {
+                int index = parseTaskIndex(input, targetStart, trimmedEnd, tasks);
+                if (!tasks.isValidIndex(index)) {
+                    throw new EncikException("OOPS!!! Invalid task index: "
+                            + input.substring(targetStart, trimmedEnd) + "\n" + usage);
+                }
+                indexes.set(index);
+            } else {
+                int fromStart = targetStart;
+                int toStart = skipWhitespace(input, rangeSeparator + 1, trimmedEnd);
+                int from = parseTaskIndex(input, fromStart, trimEnd(input, fromStart, rangeSeparator), tasks);
+                int to = parseTaskIndex(input, toStart, trimmedEnd, tasks);
+                if (!tasks.isValidIndex(from) || !tasks.isValidIndex(to) || to < from) {
+                    throw new EncikException("OOPS!!! Invalid task range: "
+                            + input.substring(targetStart, trimmedEnd) + "\n" + usage);
+                }
+                indexes.set(from, to + 1);
+            }
+            start = targetEnd + 1;
+        }
+        return indexes;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after a
+     * position.
+     *
+     * @param input The user input.
+     * @param start The position.
+     * @param end   The index to stop at.
+     * @return The index, or end if there is none.
+     */
+    private static int skipWhitespace(String input, int start, int end) {
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the end of a span with trailing whitespace removed.
+     *
+     * @param input The user input.
+     * @param start The start of the span.
+     * @param end   The end of the span.
+     * @return The new end.
+     */
+    private static int trimEnd(String input, int start, int end) {
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
         }
+        return end;
+    }
+
+    /**
+     * Handles one command, given its lexed parts.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        /**
+         * Executes the command.
+         *
+         * @param command     The lexed command.
+         * @param tasks       The task list.
+         * @param ui          The UI handler.
+         * @param persistence The persistence executor.
+         * @throws EncikException If the command has invalid arguments.
+         */
+        void handle(Command command, TaskList tasks, Ui ui, PersistenceExecutor persistence) throws EncikException;
     }
 }
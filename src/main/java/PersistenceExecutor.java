@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists changes to the task list on a background thread.
+ * Changes submitted while a write is in progress are coalesced and written
+ * together in the next write (group commit), so saving never adds to the
+ * latency of the command that made the change.
+ * In deferred mode, changes are held back until the next flush and then
+ * written as a single batch.
+ * Each submission is also recorded as one step of the undo history, and
+ * undoing or redoing a step is persisted the same way.
+ */
+public class PersistenceExecutor {
+    private final Storage storage;
+    private final TaskList tasks;
+    private final Ui ui;
+    private final Thread worker;
+    private final ArrayList<Mutation> pending = new ArrayList<>();
+    private final UndoHistory history = new UndoHistory(UndoHistory.DEFAULT_BUDGET_BYTES);
+
+    private long submittedCount;
+    private long releasedCount;
+    private long completedCount;
+    private boolean isDeferred;
+    private boolean isClosed;
+
+    /**
+     * Constructs a PersistenceExecutor and starts its background thread.
+     *
+     * @param storage The storage handler that writes the changes.
+     * @param tasks   The task list being persisted.
+     * @param ui      The UI handler used to report save failures.
+     */
+    public PersistenceExecutor(Storage storage, TaskList tasks, Ui ui) {
+        this.storage = storage;
+        this.tasks = tasks;
+        this.ui = ui;
+        this.worker = new Thread(this::runWorker, "encik-persistence");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a change to be persisted. Returns without waiting for the write.
+     *
+     * @param mutation The change that was made.
+     */
+    public synchronized void submit(Mutation mutation) {
+        history.record(List.of(mutation));
+        pending.add(mutation);
+        submittedCount++;
+        if (!isDeferred) {
+            releasedCount = submittedCount;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Queues several changes to be persisted together. They are always
+     * written in the same batch, and so in a single write.
+     *
+     * @param mutations The changes that were made, in order.
+     */
+    public synchronized void submitAll(List<Mutation> mutations) {
+        history.record(mutations);
+        enqueue(mutations);
+    }
+
+    /**
+     * Undoes the most recent change submitted, and queues the undoing to be
+     * persisted. The caller must hold the task list's monitor.
+     *
+     * @return The changes made in undoing it, in order.
+     * @throws EncikException If there is no change to undo.
+     */
+    public List<Mutation> undo() throws EncikException {
+        List<Mutation> mutations = history.undo(tasks);
+        enqueue(mutations);
+        return mutations;
+    }
+
+    /**
+     * Redoes the most recently undone change, and queues it to be persisted.
+     * The caller must hold the task list's monitor.
+     *
+     * @return The changes made in redoing it, in order.
+     * @throws EncikException If there is no change to redo.
+     */
+    public List<Mutation> redo() throws EncikException {
+        List<Mutation> mutations = history.redo(tasks);
+        enqueue(mutations);
+        return mutations;
+    }
+
+    /**
+     * Sets the most memory the undo history may take.
+     *
+     * @param budgetBytes The budget in bytes, or 0 to keep no history.
+     */
+    public void setUndoBudget(long budgetBytes) {
+        history.setBudget(budgetBytes);
+    }
+
+    /**
+     * Queues changes to be persisted together, without recording them in
+     * the undo history.
+     *
+     * @param mutations The changes that were made, in order.
+     */
+    private synchronized void enqueue(List<Mutation> mutations) {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        pending.addAll(mutations);
+        submittedCount += mutations.size();
+        if (!isDeferred) {
+            releasedCount = submittedCount;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Sets whether changes are held back until the next flush instead of
+     * being written as soon as possible.
+     *
+     * @param isDeferred Whether to defer writes.
+     */
+    public synchronized void setDeferred(boolean isDeferred) {
+        this.isDeferred = isDeferred;
+        if (!isDeferred) {
+            releasedCount = submittedCount;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes every change submitted so far, including deferred ones, and
+     * waits until they have been written.
+     */
+    public synchronized void flush() {
+        long target = submittedCount;
+        releasedCount = target;
+        notifyAll();
+        try {
+            while (completedCount < target) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes any outstanding changes, stops the background thread and closes
+     * the storage.
+     */
+    public void close() {
+        flush();
+        synchronized (this) {
+            isClosed = true;
+            notifyAll();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        storage.close();
+        reportCompactionFailure();
+    }
+
+    /**
+     * Repeatedly takes every pending change that is not held back and writes
+     * them as one batch. The batch is taken and encoded while holding the
+     * task list's monitor, as commands change the list and submit their
+     * changes while holding it, so the encoded list holds exactly the
+     * changes in the batch and those written before it.
+     */
+    private void runWorker() {
+        while (true) {
+            synchronized (this) {
+                while (!isClosed && (pending.isEmpty() || completedCount + pending.size() > releasedCount)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+            }
+
+            ArrayList<Mutation> batch;
+            Storage.PreparedCommit prepared;
+            synchronized (tasks) {
+                synchronized (this) {
+                    int count = isClosed ? pending.size()
+                            : (int) Math.min(pending.size(), releasedCount - completedCount);
+                    batch = new ArrayList<>(pending.subList(0, count));
+                    pending.subList(0, count).clear();
+                }
+                prepared = storage.prepareCommit(batch, tasks);
+            }
+
+            try {
+                storage.writeCommit(prepared);
+                reportCompactionFailure();
+            } catch (EncikException e) {
+                ui.showSavingError();
+            } finally {
+                synchronized (this) {
+                    completedCount += batch.size();
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Warns the user if the storage failed to compact its journal since the
+     * last warning. Compactions run in the background, so a failure is
+     * reported with the next write, or when the storage is closed.
+     */
+    private void reportCompactionFailure() {
+        if (storage.takeCompactionFailure()) {
+            ui.showCompactionError();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Reminds the user of deadlines that are due or overdue and of events that
+ * start today.
+ *
+ * Each undone deadline and upcoming event has one pending reminder, kept in
+ * a min-heap ordered by the day it is due, so adding, marking or deleting a
+ * task costs O(log n) and the list is never rescanned. A single thread
+ * sleeps until the earliest reminder is due and then shows every reminder
+ * that has come due. Reminders that are replaced or cancelled stay in the
+ * heap until they reach the top, and are skipped there; the heap is rebuilt
+ * if such reminders come to outnumber the live ones.
+ *
+ * Reminders hold task ids rather than tasks, and the thread looks tasks up
+ * again while holding the task list's monitor, so a reminder is never shown
+ * for a task that has since been deleted or marked as done.
+ *
+ * The tasks already in the list when the scheduler starts are scheduled by
+ * the reminder thread, a range of ids at a time, from dates the task store
+ * reads without building the tasks. Start-up therefore does not wait for
+ * the list to be read, and commands only wait for one range at a time.
+ */
+public class ReminderScheduler {
+    private static final String THREAD_NAME = "encik-reminders";
+    private static final int MIN_STALE_REMINDERS_TO_REBUILD = 1024;
+    private static final int IDS_PER_SCAN = 8192;
+
+    private final TaskList tasks;
+    private final Ui ui;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final HashMap<Integer, Reminder> pending = new HashMap<>();
+    private PriorityQueue<Reminder> queue = new PriorityQueue<>();
+    private Thread thread;
+    private boolean isRunning;
+    private boolean isClosed;
+
+    /**
+     * The kinds of reminder, in the order they are shown.
+     */
+    private enum Kind {
+        OVERDUE("Reminder: these deadlines are overdue:"),
+        DUE_TODAY("Reminder: these deadlines are due today:"),
+        STARTS_TODAY("Reminder: these events start today:");
+
+        private final String message;
+
+        Kind(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Constructs a ReminderScheduler for the given task list.
+     * No reminders are shown until the scheduler is started.
+     *
+     * @param tasks The task list whose tasks are reminded of.
+     * @param ui    The user interface to show reminders on.
+     */
+    public ReminderScheduler(TaskList tasks, Ui ui) {
+        this.tasks = tasks;
+        this.ui = ui;
+    }
+
+    /**
+     * Schedules a reminder for every task already in the list. The list is
+     * read a range of ids at a time, holding its monitor only while each
+     * range is read, so that commands can run in between. Tasks changed by
+     * a command meanwhile are scheduled by that command, and read again in
+     * their current state if their range is still to come.
+     * The reminder thread calls this when it starts.
+     */
+    public void scheduleExisting() {
+        int endId;
+        synchronized (tasks) {
+            endId = tasks.getNextId();
+        }
+        for (int firstId = 0; firstId < endId && !isClosed(); firstId += IDS_PER_SCAN) {
+            int lastId = (int) Math.min(endId, (long) firstId + IDS_PER_SCAN);
+            long today = today();
+            synchronized (tasks) {
+                tasks.forEachUndoneDate(firstId, lastId, (id, isEvent, day) -> schedule(id, isEvent, day, today));
+            }
+        }
+    }
+
+    /**
+     * Schedules a reminder for a task, replacing any reminder it already has.
+     * Tasks that are done or have no upcoming date are not reminded of.
+     *
+     * @param task The task.
+     */
+    public synchronized void schedule(Task task) {
+        replace(task.getId(), reminderFor(task, today()));
+    }
+
+    /**
+     * Schedules a reminder for an undone deadline or event read by
+     * scheduleExisting.
+     *
+     * @param taskId  The id of the task.
+     * @param isEvent Whether the task is an event rather than a deadline.
+     * @param day     The epoch day the deadline is due or the event starts.
+     * @param today   Today's date as an epoch day.
+     */
+    private synchronized void schedule(int taskId, boolean isEvent, long day, long today) {
+        replace(taskId, reminderFor(taskId, isEvent, day, today));
+    }
+
+    /**
+     * Cancels the reminder of a task, if it has one.
+     *
+     * @param taskId The id of the task.
+     */
+    public synchronized void cancel(int taskId) {
+        if (pending.remove(taskId) != null) {
+            rebuildIfStale();
+        }
+    }
+
+    /**
+     * Starts the thread that schedules the tasks already in the list and
+     * then shows reminders as they come due. Reminders that are already due
+     * are shown once the list has been read.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        isRunning = true;
+        thread = new Thread(this::run, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the reminder thread. Reminders still pending are not shown.
+     */
+    public void close() {
+        Thread stopped;
+        synchronized (this) {
+            isRunning = false;
+            isClosed = true;
+            notifyAll();
+            stopped = thread;
+            thread = null;
+        }
+        if (stopped == null) {
+            return;
+        }
+        try {
+            stopped.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Shows reminders as they come due until the scheduler is closed.
+     */
+    private void run() {
+        scheduleExisting();
+        try {
+            List<Reminder> due;
+            while ((due = takeDueReminders()) != null) {
+                showReminders(due);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until at least one reminder is due, then removes and returns
+     * every reminder that is due. A deadline that falls due today is given
+     * a further reminder for tomorrow, when it becomes overdue.
+     *
+     * @return The due reminders, or null once the scheduler is closed.
+     * @throws InterruptedException If the thread is interrupted while
+     *                              waiting.
+     */
+    private synchronized List<Reminder> takeDueReminders() throws InterruptedException {
+        while (isRunning) {
+            Reminder next = queue.peek();
+            long today = today();
+            if (next == null) {
+                wait();
+                continue;
+            }
+            if (next.day > today) {
+                wait(millisUntil(next.day));
+                continue;
+            }
+            ArrayList<Reminder> due = new ArrayList<>();
+            ArrayList<Reminder> later = new ArrayList<>();
+            while (!queue.isEmpty() && queue.peek().day <= today) {
+                Reminder reminder = queue.poll();
+                if (pending.get(reminder.taskId) != reminder) {
+                    continue;
+                }
+                pending.remove(reminder.taskId);
+                if (reminder.kind == Kind.DUE_TODAY && reminder.day < today) {
+                    reminder = new Reminder(today, reminder.taskId, Kind.OVERDUE);
+                } else if (reminder.kind == Kind.DUE_TODAY) {
+                    later.add(new Reminder(today + 1, reminder.taskId, Kind.OVERDUE));
+                }
+                due.add(reminder);
+            }
+            for (Reminder reminder : later) {
+                pending.put(reminder.taskId, reminder);
+                queue.add(reminder);
+            }
+            if (!due.isEmpty()) {
+                return due;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shows the due reminders, grouped by kind. Tasks are looked up by id
+     * while holding the task list's monitor, and tasks that were deleted or
+     * marked as done meanwhile are left out.
+     *
+     * @param due The due reminders.
+     */
+    private void showReminders(List<Reminder> due) {
+        Kind[] kinds = Kind.values();
+        ArrayList<List<Task>> groups = new ArrayList<>(kinds.length);
+        for (int i = 0; i < kinds.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        synchronized (tasks) {
+            for (Reminder reminder : due) {
+                int index = tasks.indexOfId(reminder.taskId);
+                if (index < 0) {
+                    continue;
+                }
+                Task task = tasks.get(index);
+                if (!task.isDone()) {
+                    groups.get(reminder.kind.ordinal()).add(task);
+                }
+            }
+        }
+        for (Kind kind : kinds) {
+            List<Task> group = groups.get(kind.ordinal());
+            if (!group.isEmpty()) {
+                ui.showReminder(kind.message, group);
+            }
+        }
+    }
+
+    /**
+     * Returns the reminder a task should have, or null if it should have
+     * none. Deadlines are reminded of on the day they are due, or now if
+     * already overdue, and events on the day they start.
+     *
+     * @param task  The task.
+     * @param today Today's date as an epoch day.
+     * @return The reminder, or null.
+     */
+    private static Reminder reminderFor(Task task, long today) {
+        if (task.isDone()) {
+            return null;
+        }
+        if (task instanceof Deadline) {
+            return reminderFor(task.getId(), false, ((Deadline) task).getByDate().toEpochDay(), today);
+        }
+        if (task instanceof Event) {
+            return reminderFor(task.getId(), true, ((Event) task).getFromDate().toEpochDay(), today);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the reminder an undone deadline or event should have, or null
+     * if it should have none.
+     *
+     * @param taskId  The id of the task.
+     * @param isEvent Whether the task is an event rather than a deadline.
+     * @param day     The epoch day the deadline is due or the event starts.
+     * @param today   Today's date as an epoch day.
+     * @return The reminder, or null.
+     */
+    private static Reminder reminderFor(int taskId, boolean isEvent, long day, long today) {
+        if (isEvent) {
+            return day < today ? null : new Reminder(day, taskId, Kind.STARTS_TODAY);
+        }
+        return day < today ? new Reminder(today, taskId, Kind.OVERDUE) : new Reminder(day, taskId, Kind.DUE_TODAY);
+    }
+
+    /**
+     * Replaces the reminder of a task, or cancels it if the task should
+     * have none.
+     *
+     * @param taskId   The id of the task.
+     * @param reminder The new reminder, or null.
+     */
+    private void replace(int taskId, Reminder reminder) {
+        if (reminder == null) {
+            cancel(taskId);
+            return;
+        }
+        pending.put(taskId, reminder);
+        offer(reminder);
+    }
+
+    /**
+     * Adds a reminder to the heap, waking the reminder thread if the
+     * reminder is now the earliest.
+     *
+     * @param reminder The reminder.
+     */
+    private void offer(Reminder reminder) {
+        queue.add(reminder);
+        if (queue.peek() == reminder) {
+            notifyAll();
+        }
+        rebuildIfStale();
+    }
+
+    /**
+     * Rebuilds the heap from the live reminders once replaced and cancelled
+     * reminders outnumber them.
+     */
+    private void rebuildIfStale() {
+        int staleCount = queue.size() - pending.size();
+        if (staleCount >= MIN_STALE_REMINDERS_TO_REBUILD && staleCount > pending.size()) {
+            queue = new PriorityQueue<>(pending.values());
+        }
+    }
+
+    /**
+     * Returns whether the scheduler has been closed.
+     *
+     * @return True once close is called.
+     */
+    private synchronized boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Returns today's date as an epoch day.
+     *
+     * @return Today's epoch day.
+     */
+    private long today() {
+        return LocalDate.now(zone).toEpochDay();
+    }
+
+    /**
+     * Returns the number of milliseconds until the start of the given day,
+     * and at least 1, so that waiting for it never waits forever.
+     *
+     * @param day The epoch day.
+     * @return The number of milliseconds to wait.
+     */
+    private long millisUntil(long day) {
+        long startMillis = LocalDate.ofEpochDay(day).atStartOfDay(zone).toInstant().toEpochMilli();
+        return Math.max(1, startMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * A reminder about one task, due at the start of a day.
+     */
+    private static class Reminder implements Comparable<Reminder> {
+        final long day;
+        final int taskId;
+        final Kind kind;
+
+        Reminder(long day, int taskId, Kind kind) {
+            this.day = day;
+            this.taskId = taskId;
+            this.kind = kind;
+        }
+
+        @Override
+        public int compareTo(Reminder other) {
+            int byDay = Long.compare(day, other.day);
+            return byDay != 0 ? byDay : Integer.compare(taskId, other.taskId);
+        }
+    }
+}
@@ -0,0 +1,684 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Indexes task descriptions so that searches do not have to scan every task.
+ * Keeps an inverted index from each lower-case word to the ids of the tasks
+ * containing it, for whole-word and prefix queries, and a trigram index for
+ * substring queries. Both are updated incrementally as tasks are added and
+ * removed. Words containing a letter are also kept in a BK-tree, so that
+ * fuzzy queries can find the words within a few typos of each query word.
+ * The index holds only ids, and looks the matching tasks up in their list
+ * when returning them, so it neither keeps tasks in memory nor returns
+ * copies that have since been changed.
+ */
+public class SearchIndex {
+    private static final int GRAM_LENGTH = 3;
+    private static final int ONE_EDIT_MIN_LENGTH = 3;
+    private static final int TWO_EDITS_MIN_LENGTH = 6;
+    private static final String GRAM_PADDING_START = "  ";
+    private static final String GRAM_PADDING_END = " ";
+    private static final int FULL_SIMILARITY = 1000;
+    private static final Comparator<ScoredTask> WORST_FIRST =
+            Comparator.comparingInt((ScoredTask scored) -> scored.score)
+                    .thenComparing(Comparator.comparingInt((ScoredTask scored) -> scored.id).reversed());
+
+    private final TreeMap<String, PostingList> words = new TreeMap<>();
+    private final BkTree fuzzyWords = new BkTree();
+    private final HashMap<Long, PostingList> trigrams = new HashMap<>();
+    private final IdBitmap indexedIds = new IdBitmap();
+    private final Function<int[], ArrayList<Task>> tasksWithIds;
+
+    /**
+     * Constructs an empty SearchIndex.
+     *
+     * @param tasksWithIds Looks up indexed tasks in their list by id, in
+     *                     the order of the ids given.
+     */
+    public SearchIndex(Function<int[], ArrayList<Task>> tasksWithIds) {
+        this.tasksWithIds = tasksWithIds;
+    }
+
+    /**
+     * Adds a task to the index.
+     *
+     * @param task The task to index. Its id must already be assigned.
+     */
+    public void add(Task task) {
+        indexedIds.add(task.getId());
+        String text = task.getDescription().toLowerCase();
+        for (String word : tokenize(text)) {
+            PostingList postings = words.get(word);
+            if (postings == null) {
+                postings = new PostingList();
+                words.put(word, postings);
+                if (hasLetter(word)) {
+                    fuzzyWords.add(word);
+                }
+            }
+            postings.add(task.getId());
+        }
+        for (long gram : trigramsOf(text)) {
+            trigrams.computeIfAbsent(gram, key -> new PostingList()).add(task.getId());
+        }
+    }
+
+    /**
+     * Removes a task from the index.
+     *
+     * @param task The task to remove.
+     */
+    public void remove(Task task) {
+        if (!indexedIds.remove(task.getId())) {
+            return;
+        }
+        String text = task.getDescription().toLowerCase();
+        for (String word : tokenize(text)) {
+            removePosting(words, word, task.getId());
+            if (!words.containsKey(word) && hasLetter(word)) {
+                fuzzyWords.remove(word);
+            }
+        }
+        for (long gram : trigramsOf(text)) {
+            removePosting(trigrams, gram, task.getId());
+        }
+    }
+
+    /**
+     * Finds tasks containing the given whole word.
+     *
+     * @param word The word to search for (case-insensitive).
+     * @return The matching tasks, in list order.
+     */
+    public ArrayList<Task> findWord(String word) {
+        PostingList postings = words.get(word.toLowerCase());
+        return postings == null ? new ArrayList<>() : toTasks(postings.toArray());
+    }
+
+    /**
+     * Finds tasks containing a word that starts with the given prefix.
+     *
+     * @param prefix The prefix to search for (case-insensitive).
+     * @return The matching tasks, in list order.
+     */
+    public ArrayList<Task> findPrefix(String prefix) {
+        String lowerPrefix = prefix.toLowerCase();
+        Map<String, PostingList> matches = words.subMap(lowerPrefix, lowerPrefix + Character.MAX_VALUE);
+        if (matches.size() == 1) {
+            return toTasks(matches.values().iterator().next().toArray());
+        }
+        PostingList union = new PostingList();
+        for (PostingList postings : matches.values()) {
+            union.addAll(postings);
+        }
+        int[] ids = union.toArray();
+        Arrays.sort(ids);
+        return toTasks(distinct(ids));
+    }
+
+    /**
+     * Finds tasks whose descriptions contain the given substring.
+     * Candidates are the intersection of the posting lists of the keyword's
+     * trigrams, which are then verified against the description.
+     *
+     * @param keyword The substring to search for (case-insensitive). Must be
+     *                at least three characters long.
+     * @return The matching tasks, in list order.
+     */
+    public ArrayList<Task> findSubstring(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        PostingList smallest = smallestPostings(lowerKeyword);
+        if (smallest == null) {
+            if (Metrics.ENABLED) {
+                Metrics.FIND_SCANNED.record(0);
+            }
+            return new ArrayList<>();
+        }
+
+        ArrayList<Task> matches = new ArrayList<>();
+        int[] candidates = smallest.toArray();
+        for (Task task : toTasks(candidates)) {
+            if (task.getDescription().toLowerCase().contains(lowerKeyword)) {
+                matches.add(task);
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.FIND_SCANNED.record(candidates.length);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the tasks that may contain the given substring: those in the
+     * smallest posting list of its trigrams. The caller must still check
+     * each description for the substring.
+     *
+     * @param keyword The substring to search for (case-insensitive). Must be
+     *                at least three characters long.
+     * @return The candidate tasks, in list order.
+     */
+    public ArrayList<Task> findSubstringCandidates(String keyword) {
+        PostingList smallest = smallestPostings(keyword.toLowerCase());
+        return smallest == null ? new ArrayList<>() : toTasks(smallest.toArray());
+    }
+
+    /**
+     * Returns the smallest posting list among a keyword's trigrams.
+     *
+     * @param lowerKeyword The lower-case keyword.
+     * @return The posting list, or null if some trigram occurs in no task.
+     */
+    private PostingList smallestPostings(String lowerKeyword) {
+        PostingList smallest = null;
+        for (long gram : trigramsOf(lowerKeyword)) {
+            PostingList postings = trigrams.get(gram);
+            if (postings == null) {
+                return null;
+            }
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * Finds the tasks that best match a query, allowing for typos.
+     * Each query word matches the words within a few edits of it, found in
+     * the BK-tree: none for words shorter than three characters, one for
+     * words shorter than six and two for longer words. Words without
+     * letters match only themselves. Each match scores the similarity of
+     * the two words' trigrams, in thousandths so that scores add up
+     * exactly, and a task scores the sum of the best match
+     * of each query word in its description. Only the best tasks are kept,
+     * in a bounded heap, and tasks that could no longer make the cut are
+     * skipped rather than scored.
+     *
+     * @param query The words to search for (case-insensitive).
+     * @param limit The most tasks to return.
+     * @return The best matching tasks, best first, with ties in list order.
+     */
+    public ArrayList<Task> findFuzzy(String query, int limit) {
+        ArrayList<ArrayList<WordMatch>> matchesByWord = new ArrayList<>();
+        for (String queryWord : tokenize(query.toLowerCase())) {
+            ArrayList<WordMatch> matches = matchWord(queryWord);
+            if (!matches.isEmpty()) {
+                matchesByWord.add(matches);
+            }
+        }
+        PriorityQueue<ScoredTask> best = new PriorityQueue<>(WORST_FIRST);
+        int scanned = matchesByWord.size() == 1
+                ? rankByWord(matchesByWord.get(0), best, limit)
+                : rankByTask(matchesByWord, best, limit);
+        if (Metrics.ENABLED) {
+            Metrics.FIND_SCANNED.record(scanned);
+        }
+        int[] ranked = new int[best.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = best.poll().id;
+        }
+        return toTasks(ranked);
+    }
+
+    /**
+     * Ranks the tasks matching a single query word. Matching words are
+     * taken best first, and only as many of each word's tasks as could
+     * still make the cut are examined, so common words cost no more than
+     * rare ones.
+     *
+     * @param matches The words matched by the query word, best first.
+     * @param best    The heap of the best tasks, worst first.
+     * @param limit   The most tasks to keep.
+     * @return The number of task ids examined.
+     */
+    private int rankByWord(ArrayList<WordMatch> matches, PriorityQueue<ScoredTask> best, int limit) {
+        HashSet<Integer> seen = new HashSet<>();
+        int scanned = 0;
+        for (WordMatch match : matches) {
+            if (best.size() == limit && best.peek().score > match.score) {
+                break;
+            }
+            PostingList postings = words.get(match.word);
+            for (int i = 0; i < postings.size(); i++) {
+                int id = postings.get(i);
+                scanned++;
+                if (seen.add(id) && !offer(best, new ScoredTask(id, match.score), limit)) {
+                    break;
+                }
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Ranks the tasks matching several query words, visiting them in id
+     * order. Once the heap is full, a task must score more than the worst
+     * task in it, as it comes later in the list, so query words whose best
+     * scores together cannot reach that are no longer used to find
+     * candidates, only to score the candidates the other words find.
+     *
+     * @param matchesByWord The words matched by each query word, best first.
+     * @param best          The heap of the best tasks, worst first.
+     * @param limit         The most tasks to keep.
+     * @return The number of task ids examined.
+     */
+    private int rankByTask(ArrayList<ArrayList<WordMatch>> matchesByWord, PriorityQueue<ScoredTask> best,
+            int limit) {
+        MatchCursor[] cursors = new MatchCursor[matchesByWord.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = new MatchCursor(matchesByWord.get(i));
+        }
+        Arrays.sort(cursors, Comparator.comparingInt(cursor -> cursor.bestScore));
+        int[] boundUpTo = new int[cursors.length];
+        for (int i = 0; i < cursors.length; i++) {
+            boundUpTo[i] = cursors[i].bestScore + (i > 0 ? boundUpTo[i - 1] : 0);
+        }
+        int scanned = 0;
+        int firstEssential = 0;
+        while (true) {
+            int threshold = best.size() == limit ? best.peek().score : -1;
+            while (firstEssential < cursors.length && boundUpTo[firstEssential] <= threshold) {
+                firstEssential++;
+            }
+            int id = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < cursors.length; i++) {
+                id = Math.min(id, cursors[i].currentId);
+            }
+            if (id == Integer.MAX_VALUE) {
+                return scanned;
+            }
+            int score = 0;
+            for (int i = firstEssential; i < cursors.length; i++) {
+                if (cursors[i].currentId == id) {
+                    score += cursors[i].currentScore();
+                    cursors[i].advance();
+                    scanned++;
+                }
+            }
+            for (int i = firstEssential - 1; i >= 0 && score + boundUpTo[i] > threshold; i--) {
+                score += cursors[i].scoreOf(id);
+                scanned++;
+            }
+            offer(best, new ScoredTask(id, score), limit);
+        }
+    }
+
+    /**
+     * Offers a scored task to a bounded heap of the best tasks so far.
+     *
+     * @param best   The heap, worst task first.
+     * @param scored The scored task.
+     * @param limit  The most tasks the heap may hold.
+     * @return True if the task was kept.
+     */
+    private static boolean offer(PriorityQueue<ScoredTask> best, ScoredTask scored, int limit) {
+        if (best.size() < limit) {
+            best.add(scored);
+            return true;
+        }
+        if (WORST_FIRST.compare(scored, best.peek()) <= 0) {
+            return false;
+        }
+        best.poll();
+        best.add(scored);
+        return true;
+    }
+
+    /**
+     * Finds the indexed words that a query word matches, scored by trigram
+     * similarity.
+     *
+     * @param queryWord The lower-case query word.
+     * @return The matching words, best first.
+     */
+    private ArrayList<WordMatch> matchWord(String queryWord) {
+        ArrayList<WordMatch> matches = new ArrayList<>();
+        if (!hasLetter(queryWord)) {
+            if (words.containsKey(queryWord)) {
+                matches.add(new WordMatch(queryWord, FULL_SIMILARITY));
+            }
+            return matches;
+        }
+        int maxEdits = queryWord.length() >= TWO_EDITS_MIN_LENGTH ? 2
+                : queryWord.length() >= ONE_EDIT_MIN_LENGTH ? 1 : 0;
+        long[] queryGrams = paddedTrigramsOf(queryWord);
+        for (String word : fuzzyWords.search(queryWord, maxEdits)) {
+            matches.add(new WordMatch(word, similarity(queryGrams, paddedTrigramsOf(word))));
+        }
+        matches.sort(Comparator.comparingInt((WordMatch match) -> match.score).reversed()
+                .thenComparing(match -> match.word));
+        return matches;
+    }
+
+    /**
+     * Returns the Dice similarity of two sets of trigrams: twice the number
+     * they share over the total number, in thousandths, from 0 for none
+     * shared to 1000 for equal sets.
+     *
+     * @param a The first sorted, distinct trigrams.
+     * @param b The second sorted, distinct trigrams.
+     * @return The similarity.
+     */
+    private static int similarity(long[] a, long[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        return (2 * shared * FULL_SIMILARITY + (a.length + b.length) / 2) / (a.length + b.length);
+    }
+
+    /**
+     * Returns the distinct trigrams of a word padded with spaces, so that
+     * even short words have trigrams and the start and end of a word count
+     * towards similarity.
+     *
+     * @param word The word.
+     * @return The packed trigrams, sorted.
+     */
+    private static long[] paddedTrigramsOf(String word) {
+        return trigramsOf(GRAM_PADDING_START + word + GRAM_PADDING_END);
+    }
+
+    /**
+     * Checks whether a word contains a letter. Only such words are matched
+     * fuzzily, as a typo in a number makes a different number.
+     *
+     * @param word The word.
+     * @return True if the word contains a letter.
+     */
+    private static boolean hasLetter(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetter(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether substring queries for the keyword can use the trigram
+     * index.
+     *
+     * @param keyword The keyword to search for.
+     * @return True if the keyword is long enough to have a trigram.
+     */
+    public static boolean supportsSubstring(String keyword) {
+        return keyword.length() >= GRAM_LENGTH;
+    }
+
+    /**
+     * Splits lower-case text into distinct words of letters and digits.
+     *
+     * @param text The text to split.
+     * @return The distinct words in the text.
+     */
+    private static ArrayList<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean isWordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                String token = text.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the distinct trigrams of the text, each packed into a long.
+     *
+     * @param text The text to split.
+     * @return The packed trigrams.
+     */
+    private static long[] trigramsOf(String text) {
+        int count = Math.max(0, text.length() - GRAM_LENGTH + 1);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Removes an id from the posting list for a key, dropping empty lists.
+     *
+     * @param index The index to update.
+     * @param key   The key whose posting list contains the id.
+     * @param id    The task id to remove.
+     * @param <K>   The key type.
+     */
+    private static <K> void removePosting(Map<K, PostingList> index, K key, int id) {
+        PostingList postings = index.get(key);
+        if (postings == null) {
+            return;
+        }
+        postings.remove(id);
+        if (postings.size() == 0) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Removes adjacent duplicates from a sorted array.
+     *
+     * @param ids The sorted ids.
+     * @return The distinct ids.
+     */
+    private static int[] distinct(int[] ids) {
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Looks up the tasks for an array of ids in their list.
+     *
+     * @param ids The task ids.
+     * @return The tasks, in the same order.
+     */
+    private ArrayList<Task> toTasks(int[] ids) {
+        return tasksWithIds.apply(ids);
+    }
+
+    /**
+     * A sorted, growable list of task ids.
+     * Ids are assigned in increasing order, so additions are appends.
+     */
+    private static class PostingList {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                insertSorted(id);
+                return;
+            }
+            ensureCapacity(size + 1);
+            ids[size++] = id;
+        }
+
+        void addAll(PostingList other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int position) {
+            return ids[position];
+        }
+
+        /**
+         * Returns the position of the first id at least the given one,
+         * searching from a position onwards.
+         */
+        int positionOf(int id, int from) {
+            int position = Arrays.binarySearch(ids, from, size, id);
+            return position >= 0 ? position : -position - 1;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        private void insertSorted(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            ensureCapacity(size + 1);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+            }
+        }
+    }
+
+    /**
+     * An indexed word matched by a query word, with its similarity score.
+     */
+    private static class WordMatch {
+        final String word;
+        final int score;
+
+        WordMatch(String word, int score) {
+            this.word = word;
+            this.score = score;
+        }
+    }
+
+    /**
+     * A task's score in a fuzzy search.
+     */
+    private static class ScoredTask {
+        final int id;
+        final int score;
+
+        ScoredTask(int id, int score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Walks through the tasks matching one query word in id order, merging
+     * the posting lists of the words it matches.
+     */
+    private class MatchCursor {
+        final int bestScore;
+        int currentId;
+        private final PostingList[] postings;
+        private final int[] scores;
+        private final int[] positions;
+
+        MatchCursor(ArrayList<WordMatch> matches) {
+            postings = new PostingList[matches.size()];
+            scores = new int[matches.size()];
+            positions = new int[matches.size()];
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = words.get(matches.get(i).word);
+                scores[i] = matches.get(i).score;
+            }
+            bestScore = scores[0];
+            updateCurrentId();
+        }
+
+        /**
+         * Returns the score of the best match in the current task. The
+         * matches are in descending order of score, so it is the first one
+         * at the current task.
+         */
+        int currentScore() {
+            for (int i = 0; i < postings.length; i++) {
+                if (positions[i] < postings[i].size() && postings[i].get(positions[i]) == currentId) {
+                    return scores[i];
+                }
+            }
+            return 0;
+        }
+
+        void advance() {
+            for (int i = 0; i < postings.length; i++) {
+                if (positions[i] < postings[i].size() && postings[i].get(positions[i]) == currentId) {
+                    positions[i]++;
+                }
+            }
+            updateCurrentId();
+        }
+
+        /**
+         * Skips ahead to a task and returns the score of its best match, or
+         * 0 if the query word does not match it.
+         */
+        int scoreOf(int id) {
+            if (currentId < id) {
+                for (int i = 0; i < postings.length; i++) {
+                    positions[i] = postings[i].positionOf(id, positions[i]);
+                }
+                updateCurrentId();
+            }
+            return currentId == id ? currentScore() : 0;
+        }
+
+        private void updateCurrentId() {
+            currentId = Integer.MAX_VALUE;
+            for (int i = 0; i < postings.length; i++) {
+                if (positions[i] < postings[i].size()) {
+                    currentId = Math.min(currentId, postings[i].get(positions[i]));
+                }
+            }
+        }
+    }
+}
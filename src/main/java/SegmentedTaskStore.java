@@ -0,0 +1,345 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Stores tasks in segments, each holding the tasks whose ids fall in one
+ * fixed range, and reads each segment from its file only when one of its
+ * tasks is first accessed.
+ *
+ * Opening the store only needs the number of tasks in each segment, as
+ * listed in the manifest of the segmented data files, so start-up time does
+ * not depend on the number of tasks. Ids increase in list order, so the
+ * segments follow one another in the list and a task never moves between
+ * them. Segments stay in memory once read.
+ */
+public class SegmentedTaskStore implements TaskStore {
+    private final int segmentSize;
+    private final IntFunction<ArrayList<Task>> loader;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+
+    private int[] starts = new int[1];
+    private boolean isStartsStale;
+    private int size;
+
+    /**
+     * Constructs a SegmentedTaskStore over segments that have not been read
+     * yet.
+     *
+     * @param segmentSize The number of ids in the range of each segment.
+     * @param numbers     The numbers of the segments, in ascending order. A
+     *                    segment numbered n holds the tasks with ids from
+     *                    n * segmentSize up to but excluding
+     *                    (n + 1) * segmentSize.
+     * @param counts      The number of tasks in each segment.
+     * @param loader      Reads the tasks of a segment, given its number.
+     */
+    public SegmentedTaskStore(int segmentSize, int[] numbers, int[] counts, IntFunction<ArrayList<Task>> loader) {
+        this.segmentSize = segmentSize;
+        this.loader = loader;
+        for (int i = 0; i < numbers.length; i++) {
+            if (counts[i] > 0) {
+                segments.add(new Segment(numbers[i], counts[i], null));
+                size += counts[i];
+            }
+        }
+        isStartsStale = true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the task at the specified index, reading its segment first if
+     * it has not been read yet.
+     *
+     * @param index The 0-based index of the task.
+     * @return The task at the given index.
+     */
+    @Override
+    public Task get(int index) {
+        int position = segmentAt(index);
+        return tasksOf(segments.get(position)).get(index - starts[position]);
+    }
+
+    @Override
+    public int getId(int index) {
+        return get(index).getId();
+    }
+
+    /**
+     * Returns the index of the first task whose id is at least the given
+     * id. When the id starts a segment, as it does when a whole segment is
+     * saved, the index is found from the segment counts without reading any
+     * segment; otherwise only the segment the id falls in is read.
+     *
+     * @param id The task id.
+     * @return The 0-based index, or size() if every task has a smaller id.
+     */
+    @Override
+    public int indexOfFirstIdAtLeast(int id) {
+        refreshStarts();
+        int number = id / segmentSize;
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).number < number) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == segments.size() || segments.get(low).number > number || id % segmentSize == 0) {
+            return starts[low];
+        }
+        ArrayList<Task> tasks = tasksOf(segments.get(low));
+        int index = 0;
+        while (index < tasks.size() && tasks.get(index).getId() < id) {
+            index++;
+        }
+        return starts[low] + index;
+    }
+
+    /**
+     * Returns false, as reading a task may read its segment into memory.
+     *
+     * @return False.
+     */
+    @Override
+    public boolean supportsConcurrentReads() {
+        return false;
+    }
+
+    @Override
+    public void add(Task task) {
+        int number = task.getId() / segmentSize;
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || number > last.number) {
+            last = new Segment(number, 0, new ArrayList<>());
+            segments.add(last);
+        }
+        tasksOf(last).add(task);
+        last.count++;
+        size++;
+        isStartsStale = true;
+    }
+
+    @Override
+    public void removeAll(BitSet indexes) {
+        refreshStarts();
+        ArrayList<Segment> kept = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            int start = starts[i];
+            int first = indexes.nextSetBit(start);
+            if (first >= 0 && first < start + segment.count) {
+                ArrayList<Task> tasks = tasksOf(segment);
+                int keptCount = 0;
+                for (int j = 0; j < tasks.size(); j++) {
+                    if (!indexes.get(start + j)) {
+                        tasks.set(keptCount++, tasks.get(j));
+                    }
+                }
+                tasks.subList(keptCount, tasks.size()).clear();
+                size -= segment.count - keptCount;
+                segment.count = keptCount;
+            }
+            if (segment.count > 0) {
+                kept.add(segment);
+            }
+        }
+        segments.clear();
+        segments.addAll(kept);
+        isStartsStale = true;
+    }
+
+    /**
+     * Inserts tasks at the given indexes. Each task goes into the segment
+     * its id belongs to, which is read first or created if need be, and the
+     * tasks of each segment are merged into it in one pass.
+     *
+     * @param indexes  The 0-based indexes the tasks will have afterwards,
+     *                 in ascending order.
+     * @param inserted The tasks to insert, in the same order.
+     */
+    @Override
+    public void insertAll(int[] indexes, List<Task> inserted) {
+        int from = 0;
+        while (from < inserted.size()) {
+            int number = inserted.get(from).getId() / segmentSize;
+            int to = from + 1;
+            while (to < inserted.size() && inserted.get(to).getId() / segmentSize == number) {
+                to++;
+            }
+            Segment segment = segmentNumbered(number);
+            ArrayList<Task> tasks = tasksOf(segment);
+            ArrayList<Task> merged = new ArrayList<>(tasks.size() + to - from);
+            int i = 0;
+            for (Task task : inserted.subList(from, to)) {
+                while (i < tasks.size() && tasks.get(i).getId() < task.getId()) {
+                    merged.add(tasks.get(i++));
+                }
+                merged.add(task);
+            }
+            merged.addAll(tasks.subList(i, tasks.size()));
+            segment.tasks = merged;
+            segment.count = merged.size();
+            size += to - from;
+            from = to;
+        }
+        isStartsStale = true;
+    }
+
+    @Override
+    public Task setDone(int index, boolean isDone) {
+        Task task = get(index);
+        if (isDone) {
+            task.markAsDone();
+        } else {
+            task.markAsNotDone();
+        }
+        return task;
+    }
+
+    /**
+     * Passes the dates of undone deadlines and events to a consumer. A
+     * segment not read yet that lies wholly in the range is read only for
+     * the scan and not kept, so scanning every task does not leave every
+     * segment in memory.
+     *
+     * @param from     The 0-based index of the first task.
+     * @param to       The index after the last task.
+     * @param consumer The consumer of the dates.
+     */
+    @Override
+    public void forEachUndoneDate(int from, int to, DateConsumer consumer) {
+        if (from >= to) {
+            return;
+        }
+        for (int position = segmentAt(from); position < segments.size() && starts[position] < to; position++) {
+            Segment segment = segments.get(position);
+            int start = starts[position];
+            List<Task> tasks = segment.tasks;
+            if (tasks == null && from <= start && start + segment.count <= to) {
+                tasks = loader.apply(segment.number);
+            } else {
+                tasks = tasksOf(segment);
+            }
+            int first = Math.max(from, start) - start;
+            int end = Math.min(to, start + segment.count) - start;
+            for (Task task : tasks.subList(first, Math.min(end, tasks.size()))) {
+                TaskStore.acceptUndoneDate(task, consumer);
+            }
+        }
+    }
+
+    /**
+     * Returns the tasks of a segment, reading them first if they have not
+     * been read yet.
+     *
+     * @param segment The segment.
+     * @return Its tasks.
+     * @throws IllegalStateException If the segment does not hold as many
+     *                               tasks as it was opened with.
+     */
+    private ArrayList<Task> tasksOf(Segment segment) {
+        if (segment.tasks == null) {
+            ArrayList<Task> tasks = loader.apply(segment.number);
+            if (tasks.size() != segment.count) {
+                throw new IllegalStateException("Segment " + segment.number + " holds " + tasks.size()
+                        + " tasks instead of " + segment.count + ".");
+            }
+            segment.tasks = tasks;
+        }
+        return segment.tasks;
+    }
+
+    /**
+     * Returns the segment with the given number, creating an empty one in
+     * its place among the others if there is none.
+     *
+     * @param number The segment number.
+     * @return The segment.
+     */
+    private Segment segmentNumbered(int number) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleNumber = segments.get(middle).number;
+            if (middleNumber < number) {
+                low = middle + 1;
+            } else if (middleNumber > number) {
+                high = middle - 1;
+            } else {
+                return segments.get(middle);
+            }
+        }
+        Segment segment = new Segment(number, 0, new ArrayList<>());
+        segments.add(low, segment);
+        return segment;
+    }
+
+    /**
+     * Returns the position of the segment holding the task at an index.
+     *
+     * @param index The 0-based index of the task.
+     * @return The position of the segment among the segments.
+     */
+    private int segmentAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        refreshStarts();
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Recomputes the index of the first task of each segment after the
+     * segments have changed.
+     */
+    private void refreshStarts() {
+        if (!isStartsStale) {
+            return;
+        }
+        if (starts.length < segments.size() + 1) {
+            starts = new int[segments.size() + 1];
+        }
+        int start = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            starts[i] = start;
+            start += segments.get(i).count;
+        }
+        starts[segments.size()] = start;
+        isStartsStale = false;
+    }
+
+    /**
+     * The tasks in one range of ids, or just their number until read.
+     */
+    private static class Segment {
+        final int number;
+        int count;
+        ArrayList<Task> tasks;
+
+        Segment(int number, int count, ArrayList<Task> tasks) {
+            this.number = number;
+            this.count = count;
+            this.tasks = tasks;
+        }
+    }
+}
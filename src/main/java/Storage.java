@@ -1,105 +1,1441 @@
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles loading tasks from the data file and saving tasks to the data file.
+ * In journal mode, each change is appended to a journal file instead of
+ * rewriting the whole data file, and the journal is periodically compacted
+ * into a new snapshot in the background.
+ * Snapshots are written to a temporary file and atomically renamed into
+ * place, keeping the previous snapshot as a fallback.
+ * In binary mode, snapshots use the compact format of BinaryTaskFile and an
+ * existing text data file is migrated on first load.
+ * Task ids are stored with each task, together with the next id to assign,
+ * so that ids stay the same across runs and are never reused.
+ * Large text data files are loaded in chunks parsed in parallel.
+ * In segmented mode, tasks are kept in a directory of segment files, each
+ * holding the tasks whose ids fall in one fixed range, listed by a manifest;
+ * a commit rewrites only the segments it changed, and segments are loaded in
+ * parallel, or one at a time as they are needed.
  */
 public class Storage {
     private static final String FILE_DELIMITER = " | ";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String OLD_JOURNAL_SUFFIX = ".journal.old";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String BACKUP_SUFFIX = ".bak";
+    private static final String MIGRATED_SUFFIX = ".migrated";
+    private static final String BINARY_EXTENSION = ".bin";
+    private static final String SEGMENTS_EXTENSION = ".segments";
+    private static final String MANIFEST_FILE_NAME = "manifest.txt";
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_FORMAT = SEGMENT_FILE_PREFIX + "%06d-%d.txt";
+    private static final String SEGMENT_SIZE_HEADER = "# segment-size ";
+    private static final String GENERATION_HEADER = "# generation ";
+    private static final int DEFAULT_SEGMENT_SIZE = 8192;
+    private static final String SEQUENCE_HEADER = "# journal-seq ";
+    private static final String NEXT_ID_HEADER = "# next-id ";
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+    private static final long PARALLEL_LOAD_THRESHOLD = 4 * 1024 * 1024;
+    private static final long MIN_LOAD_CHUNK_SIZE = 1024 * 1024;
+    private static final long MAX_LOAD_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int LOAD_CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The ways in which changes are persisted.
+     */
+    public enum Mode {
+        SNAPSHOT, JOURNAL, BINARY, SEGMENTED
+    }
+
+    /**
+     * How often written data is forced onto the storage device.
+     */
+    public enum Durability {
+        /** Force every write before it is considered saved. */
+        ALWAYS,
+        /** Force at most once per sync interval. */
+        BATCHED,
+        /** Leave flushing to the operating system. */
+        NEVER
+    }
 
     private final String filePath;
     private final String directoryPath;
+    private final String journalPath;
+    private final String oldJournalPath;
+    private final String snapshotPath;
+    private final String segmentsPath;
+    private final Mode mode;
+    private final long compactionThreshold;
+    private final Durability durability;
+    private final long syncIntervalMillis;
+
+    private FileChannel journalChannel;
+    private long journalSize;
+    private long lastSyncMillis;
+    private long nextSequence = 1;
+    private int nextId = 1;
+    private volatile boolean isCompacting;
+    private final AtomicBoolean hasCompactionFailed = new AtomicBoolean();
+    private ExecutorService compactor;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long generation;
+
+    /**
+     * Constructs a Storage with the specified file path.
+     *
+     * @param filePath The path to the data file.
+     */
+    public Storage(String filePath) {
+        this(filePath, Mode.SNAPSHOT, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Constructs a Storage with the specified file path and persistence mode,
+     * forcing writes in batches.
+     *
+     * @param filePath            The path to the data file.
+     * @param mode                How changes are persisted.
+     * @param compactionThreshold The journal size in bytes after which the
+     *                            journal is compacted into a new snapshot.
+     */
+    public Storage(String filePath, Mode mode, long compactionThreshold) {
+        this(filePath, mode, compactionThreshold, Durability.BATCHED, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a Storage with the specified file path, persistence mode and
+     * durability policy.
+     *
+     * @param filePath            The path to the data file.
+     * @param mode                How changes are persisted.
+     * @param compactionThreshold The journal size in bytes after which the
+     *                            journal is compacted into a new snapshot.
+     * @param durability          How often writes are forced to disk.
+     * @param syncIntervalMillis  The minimum time between forced writes when
+     *                            durability is batched.
+     */
+    public Storage(String filePath, Mode mode, long compactionThreshold, Durability durability,
+            long syncIntervalMillis) {
+        this.filePath = filePath;
+        File file = new File(filePath);
+        this.directoryPath = file.getParent();
+        this.journalPath = filePath + JOURNAL_SUFFIX;
+        this.oldJournalPath = filePath + OLD_JOURNAL_SUFFIX;
+        this.snapshotPath = mode == Mode.BINARY ? toBinaryPath(filePath) : filePath;
+        this.segmentsPath = replaceExtension(filePath, SEGMENTS_EXTENSION);
+        this.mode = mode;
+        this.compactionThreshold = compactionThreshold;
+        this.durability = durability;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * Loads tasks from the data file, then replays any journaled changes
+     * made since that snapshot was written.
+     * Falls back to the previous snapshot if the data file is missing or
+     * cannot be read.
+     *
+     * @return An ArrayList of tasks loaded from the file.
+     * @throws EncikException If the file cannot be read.
+     */
+    public ArrayList<Task> load() throws EncikException {
+        long startNanos = Metrics.ENABLED ? System.nanoTime() : 0;
+        ArrayList<Task> tasks;
+        if (mode == Mode.SEGMENTED) {
+            tasks = loadSegments();
+        } else {
+            tasks = mode == Mode.BINARY ? loadBinary() : loadText();
+        }
+        if (Metrics.ENABLED) {
+            Metrics.STORAGE_LOAD.recordSince(startNanos);
+            Metrics.STORAGE_LOAD_BYTES.record(mode == Mode.SEGMENTED ? segmentBytes()
+                    : new File(snapshotPath).length() + new File(journalPath).length());
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns the id to give the next new task, as recorded in the data file
+     * by the last load.
+     *
+     * @return The next task id.
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Returns whether the data file can be opened with loadLazily.
+     *
+     * @return True if storage is in binary mode and the binary data file
+     *         exists, or in segmented mode and the manifest exists.
+     */
+    public boolean canLoadLazily() {
+        if (mode == Mode.SEGMENTED) {
+            return new File(segmentsPath, MANIFEST_FILE_NAME).exists();
+        }
+        return mode == Mode.BINARY && new File(snapshotPath).exists();
+    }
+
+    /**
+     * Returns a store that reads tasks only when they are accessed, so
+     * loading takes constant time. In binary mode the data file is mapped
+     * and tasks are decoded one at a time; in segmented mode only the
+     * manifest is read, and each segment is read when first needed.
+     *
+     * @param cacheSize The maximum number of decoded tasks kept in memory,
+     *                  in binary mode.
+     * @return A store backed by the data files.
+     * @throws EncikException If the files cannot be opened.
+     */
+    public TaskStore loadLazily(int cacheSize) throws EncikException {
+        if (mode == Mode.SEGMENTED) {
+            return openSegments();
+        }
+        try {
+            Files.deleteIfExists(Paths.get(snapshotPath + TEMP_SUFFIX));
+            ByteBuffer file = BinaryTaskFile.map(Paths.get(snapshotPath));
+            nextId = BinaryTaskFile.nextId(file);
+            return new MappedTaskStore(file, cacheSize);
+        } catch (IOException e) {
+            throw new EncikException("Unable to load tasks from file.");
+        }
+    }
+
+    /**
+     * Loads tasks from the binary data file, falling back to the previous
+     * snapshot if it cannot be read. If there is no binary data file yet, the
+     * text data file is loaded and migrated to the binary format once.
+     *
+     * @return An ArrayList of tasks loaded from the file.
+     * @throws EncikException If the file cannot be read.
+     */
+    private ArrayList<Task> loadBinary() throws EncikException {
+        Path binary = Paths.get(snapshotPath);
+        Path backup = Paths.get(snapshotPath + BACKUP_SUFFIX);
+        try {
+            Files.deleteIfExists(Paths.get(snapshotPath + TEMP_SUFFIX));
+            if (Files.exists(binary)) {
+                try {
+                    return readBinary(binary);
+                } catch (IOException e) {
+                    if (!Files.exists(backup)) {
+                        throw e;
+                    }
+                    System.out.println("Warning: Data file unreadable, loading the previous snapshot.");
+                    return readBinary(backup);
+                }
+            }
+            if (Files.exists(backup)) {
+                return readBinary(backup);
+            }
+        } catch (IOException e) {
+            throw new EncikException("Unable to load tasks from file.");
+        }
+
+        ArrayList<Task> tasks = loadText();
+        if (new File(filePath).exists() || new File(journalPath).exists()) {
+            migrateToBinary(tasks);
+        }
+        return tasks;
+    }
+
+    /**
+     * Reads every task from a binary data file and the next id to assign.
+     *
+     * @param path The file to read.
+     * @return The tasks in the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private ArrayList<Task> readBinary(Path path) throws IOException {
+        ByteBuffer file = BinaryTaskFile.map(path);
+        ArrayList<Task> tasks = BinaryTaskFile.read(file);
+        nextId = Math.max(BinaryTaskFile.nextId(file), nextIdAfter(tasks));
+        return tasks;
+    }
+
+    /**
+     * Writes the tasks loaded from the text data file in the binary format,
+     * then moves the text data file aside so that the migration runs once.
+     *
+     * @param tasks The tasks loaded from the text data file.
+     * @throws EncikException If the binary data file cannot be written.
+     */
+    private void migrateToBinary(ArrayList<Task> tasks) throws EncikException {
+        ensureDirectoryExists();
+        try {
+            writeSnapshot(BinaryTaskFile.encode(tasks, nextId));
+            Path text = Paths.get(filePath);
+            if (Files.exists(text)) {
+                Files.move(text, Paths.get(filePath + MIGRATED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(Paths.get(journalPath));
+            Files.deleteIfExists(Paths.get(oldJournalPath));
+        } catch (IOException e) {
+            throw new EncikException("Unable to migrate tasks to the binary format.");
+        }
+    }
+
+    /**
+     * Loads tasks from the text data file and journal.
+     *
+     * @return An ArrayList of tasks loaded from the file.
+     * @throws EncikException If the file cannot be read.
+     */
+    private ArrayList<Task> loadText() throws EncikException {
+        ArrayList<Task> tasks = new ArrayList<>();
+        long snapshotSequence;
+        nextId = 1;
+        File file = new File(filePath);
+        File backup = new File(filePath + BACKUP_SUFFIX);
+        new File(filePath + TEMP_SUFFIX).delete();
+
+        try {
+            try {
+                snapshotSequence = file.exists() || !backup.exists()
+                        ? readSnapshot(file, tasks)
+                        : readSnapshot(backup, tasks);
+            } catch (IOException e) {
+                if (!backup.exists()) {
+                    throw e;
+                }
+                System.out.println("Warning: Data file unreadable, loading the previous snapshot.");
+                tasks.clear();
+                nextId = 1;
+                snapshotSequence = readSnapshot(backup, tasks);
+            }
+            long lastSequence = snapshotSequence;
+            lastSequence = replayJournal(oldJournalPath, tasks, snapshotSequence, lastSequence);
+            lastSequence = replayJournal(journalPath, tasks, snapshotSequence, lastSequence);
+            nextSequence = lastSequence + 1;
+        } catch (IOException e) {
+            throw new EncikException("Unable to load tasks from file.");
+        }
+        return tasks;
+    }
+
+    /**
+     * Reads tasks from a snapshot file, skipping corrupted lines.
+     * Tasks saved before ids were stored are given their 1-based position in
+     * the file as their id. Large files are split into chunks of whole lines
+     * that are parsed in parallel; the result is the same either way.
+     *
+     * @param file  The snapshot file.
+     * @param tasks The list to add the tasks to.
+     * @return The journal sequence number recorded in the snapshot, or 0.
+     * @throws IOException If the file cannot be read.
+     */
+    private long readSnapshot(File file, ArrayList<Task> tasks) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        if (file.length() >= PARALLEL_LOAD_THRESHOLD) {
+            return readSnapshotInParallel(file, tasks);
+        }
+        SnapshotChunk chunk = new SnapshotChunk();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.addLine(line);
+            }
+        }
+        return mergeSnapshotChunks(List.of(chunk), tasks);
+    }
+
+    /**
+     * Reads tasks from a large snapshot file, parsing chunks of it in
+     * parallel on the common fork/join pool. Chunks end at line breaks, so
+     * no line is split between two of them.
+     *
+     * @param file  The snapshot file.
+     * @param tasks The list to add the tasks to.
+     * @return The journal sequence number recorded in the snapshot, or 0.
+     * @throws IOException If the file cannot be read.
+     */
+    private long readSnapshotInParallel(File file, ArrayList<Task> tasks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            long chunkSize = size / ((long) pool.getParallelism() * LOAD_CHUNKS_PER_THREAD);
+            chunkSize = Math.max(MIN_LOAD_CHUNK_SIZE, Math.min(MAX_LOAD_CHUNK_SIZE, chunkSize));
+
+            ArrayList<ForkJoinTask<SnapshotChunk>> parses = new ArrayList<>();
+            long start = 0;
+            while (start < size) {
+                long end = nextLineStart(channel, Math.min(size, start + chunkSize), size);
+                parses.add(pool.submit(new ChunkParse(channel, start, end)));
+                start = end;
+            }
+
+            ArrayList<SnapshotChunk> chunks = new ArrayList<>(parses.size());
+            IOException failure = null;
+            for (ForkJoinTask<SnapshotChunk> parse : parses) {
+                try {
+                    chunks.add(parse.join());
+                } catch (UncheckedIOException e) {
+                    failure = failure == null ? e.getCause() : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return mergeSnapshotChunks(chunks, tasks);
+        }
+    }
+
+    /**
+     * Returns the position after the first line break at or after a
+     * position in a file.
+     *
+     * @param channel  The file.
+     * @param position The position to search from.
+     * @param size     The size of the file.
+     * @return The position after the line break, or the size of the file if
+     *         there is none.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if (count <= 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += count;
+        }
+        return size;
+    }
+
+    /**
+     * Adds the tasks read from the chunks of a snapshot to a list, in order,
+     * and applies their headers. Warnings for corrupted lines are shown in
+     * the order the lines appear in the file.
+     *
+     * @param chunks The chunks, in file order.
+     * @param tasks  The list to add the tasks to.
+     * @return The last journal sequence number recorded, or 0.
+     */
+    private long mergeSnapshotChunks(List<SnapshotChunk> chunks, ArrayList<Task> tasks) {
+        long snapshotSequence = 0;
+        int taskCount = 0;
+        for (SnapshotChunk chunk : chunks) {
+            taskCount += chunk.tasks.size();
+        }
+        tasks.ensureCapacity(tasks.size() + taskCount);
+        for (SnapshotChunk chunk : chunks) {
+            if (chunk.sequence >= 0) {
+                snapshotSequence = chunk.sequence;
+            }
+            nextId = Math.max(nextId, chunk.nextId);
+            for (Task task : chunk.tasks) {
+                if (task.getId() == Task.UNASSIGNED_ID) {
+                    task.setId(tasks.size() + 1);
+                }
+                nextId = Math.max(nextId, task.getId() + 1);
+                tasks.add(task);
+            }
+            for (String line : chunk.corruptedLines) {
+                System.out.println("Warning: Skipping corrupted line: " + line);
+            }
+        }
+        return snapshotSequence;
+    }
+
+    /**
+     * Loads tasks from the segment files listed in the manifest, reading the
+     * segments in parallel on the common fork/join pool. If there is no
+     * manifest yet, the text data file is loaded and split into segments
+     * once.
+     *
+     * @return An ArrayList of tasks loaded from the segments.
+     * @throws EncikException If the manifest or a segment cannot be read.
+     */
+    private ArrayList<Task> loadSegments() throws EncikException {
+        if (!new File(segmentsPath, MANIFEST_FILE_NAME).exists()) {
+            ArrayList<Task> tasks = loadText();
+            if (new File(filePath).exists() || new File(journalPath).exists()) {
+                migrateToSegments(tasks);
+            }
+            return tasks;
+        }
+        try {
+            List<Segment> listed = readManifest();
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            ArrayList<ForkJoinTask<SnapshotChunk>> reads = new ArrayList<>(listed.size());
+            for (Segment segment : listed) {
+                reads.add(pool.submit(new SegmentRead(segment.fileName)));
+            }
+            ArrayList<SnapshotChunk> chunks = new ArrayList<>(reads.size());
+            IOException failure = null;
+            for (ForkJoinTask<SnapshotChunk> read : reads) {
+                try {
+                    chunks.add(read.join());
+                } catch (UncheckedIOException e) {
+                    failure = failure == null ? e.getCause() : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            ArrayList<Task> tasks = new ArrayList<>();
+            mergeSnapshotChunks(chunks, tasks);
+            return tasks;
+        } catch (IOException e) {
+            throw new EncikException("Unable to load tasks from file.");
+        }
+    }
+
+    /**
+     * Reads the manifest and returns a store that reads each segment only
+     * when one of its tasks is first needed.
+     *
+     * @return The store.
+     * @throws EncikException If the manifest cannot be read.
+     */
+    private TaskStore openSegments() throws EncikException {
+        List<Segment> listed;
+        try {
+            listed = readManifest();
+        } catch (IOException e) {
+            throw new EncikException("Unable to load tasks from file.");
+        }
+        int[] numbers = new int[listed.size()];
+        int[] counts = new int[listed.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = listed.get(i).number;
+            counts[i] = listed.get(i).count;
+        }
+        return new SegmentedTaskStore(segmentSize, numbers, counts, this::loadSegment);
+    }
+
+    /**
+     * Reads the tasks of one segment for a store opened by openSegments.
+     * A segment is only rewritten once it has been read, so the file the
+     * manifest lists for a segment not yet read is always the one it was
+     * opened with.
+     *
+     * @param number The segment number.
+     * @return The tasks in the segment.
+     * @throws UncheckedIOException If the segment cannot be read.
+     */
+    private ArrayList<Task> loadSegment(int number) {
+        String fileName;
+        synchronized (this) {
+            fileName = segments.get(number).fileName;
+        }
+        try {
+            SnapshotChunk chunk = readSegment(fileName);
+            for (String line : chunk.corruptedLines) {
+                System.out.println("Warning: Skipping corrupted line: " + line);
+            }
+            return chunk.tasks;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the lines of a segment file.
+     *
+     * @param fileName The name of the segment file.
+     * @return The tasks and corrupted lines read.
+     * @throws IOException If the file cannot be read.
+     */
+    private SnapshotChunk readSegment(String fileName) throws IOException {
+        SnapshotChunk chunk = new SnapshotChunk();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(segmentsPath, fileName),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.addLine(line);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads the manifest, which lists the segment files in use, and deletes
+     * any segment files it does not list and any temporary manifest, left by
+     * a commit that did not finish.
+     *
+     * @return The segments, in order of their numbers.
+     * @throws IOException If the manifest cannot be read or is corrupted.
+     */
+    private synchronized List<Segment> readManifest() throws IOException {
+        segments.clear();
+        nextId = 1;
+        generation = 0;
+        segmentSize = DEFAULT_SEGMENT_SIZE;
+        for (String line : Files.readAllLines(Paths.get(segmentsPath, MANIFEST_FILE_NAME), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                if (line.startsWith(NEXT_ID_HEADER)) {
+                    nextId = Math.max(nextId, parseNextIdHeader(line));
+                } else if (line.startsWith(SEGMENT_SIZE_HEADER)) {
+                    segmentSize = Integer.parseInt(line.substring(SEGMENT_SIZE_HEADER.length()).trim());
+                } else if (line.startsWith(GENERATION_HEADER)) {
+                    generation = Long.parseLong(line.substring(GENERATION_HEADER.length()).trim());
+                } else {
+                    String[] fields = splitFields(line, 3);
+                    if (fields.length < 3) {
+                        throw new IOException("Corrupted manifest line: " + line);
+                    }
+                    int number = Integer.parseInt(fields[0].trim());
+                    segments.put(number, new Segment(number, Integer.parseInt(fields[1].trim()), fields[2].trim()));
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupted manifest line: " + line);
+            }
+        }
+        HashSet<String> listed = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            listed.add(segment.fileName);
+        }
+        File[] files = new File(segmentsPath).listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            if (file.getName().startsWith(SEGMENT_FILE_PREFIX) && !listed.contains(file.getName())) {
+                file.delete();
+            }
+        }
+        Files.deleteIfExists(Paths.get(segmentsPath, MANIFEST_FILE_NAME + TEMP_SUFFIX));
+        return new ArrayList<>(segments.values());
+    }
+
+    /**
+     * Writes every task to segment files, replacing every segment in use.
+     *
+     * @param tasks      The tasks, in ascending order of id.
+     * @param nextTaskId The id the next new task will be given.
+     * @throws EncikException If the segments cannot be written.
+     */
+    private void saveSegments(List<Task> tasks, int nextTaskId) throws EncikException {
+        TreeSet<Integer> numbers;
+        synchronized (this) {
+            numbers = new TreeSet<>(segments.keySet());
+        }
+        for (Task task : tasks) {
+            numbers.add(task.getId() / segmentSize);
+        }
+        ArrayList<EncodedSegment> encoded = new ArrayList<>(numbers.size());
+        for (int number : numbers) {
+            encoded.add(encodeSegment(number, tasksInSegment(tasks, number)));
+        }
+        writeSegments(encoded, nextTaskId);
+    }
+
+    /**
+     * Returns the tasks of one segment from a list of tasks. The tasks are
+     * found by binary search, as ids increase in list order.
+     *
+     * @param tasks  The tasks, in ascending order of id.
+     * @param number The segment number.
+     * @return The tasks whose ids fall in the segment.
+     */
+    private List<Task> tasksInSegment(List<Task> tasks, int number) {
+        long firstId = (long) number * segmentSize;
+        long endId = firstId + segmentSize;
+        int low = 0;
+        int high = tasks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tasks.get(middle).getId() < firstId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        while (end < tasks.size() && tasks.get(end).getId() < endId) {
+            end++;
+        }
+        return tasks.subList(low, end);
+    }
+
+    /**
+     * Encodes the tasks of one segment in the data file format.
+     *
+     * @param number The segment number.
+     * @param tasks  The tasks whose ids fall in the segment, in order.
+     * @return The encoded segment, which is empty if no task is in it.
+     */
+    private EncodedSegment encodeSegment(int number, List<Task> tasks) {
+        StringBuilder segment = new StringBuilder();
+        for (Task task : tasks) {
+            segment.append(taskToFileString(task)).append(System.lineSeparator());
+        }
+        return new EncodedSegment(number, tasks.size(), StandardCharsets.UTF_8.encode(CharBuffer.wrap(segment)));
+    }
+
+    /**
+     * Writes encoded segments to new files, then replaces the manifest so
+     * that it lists them instead of the files they replace, which are then
+     * deleted. Segments left empty are dropped from the manifest. The
+     * manifest is replaced in one step, so a crash at any point leaves the
+     * manifest listing either every old file or every new one.
+     *
+     * @param encoded    The encoded segments.
+     * @param nextTaskId The id the next new task will be given.
+     * @throws EncikException If the segments cannot be written.
+     */
+    private synchronized void writeSegments(List<EncodedSegment> encoded, int nextTaskId) throws EncikException {
+        long startNanos = Metrics.ENABLED ? System.nanoTime() : 0;
+        long bytes = 0;
+        boolean isSyncing = shouldSync();
+        generation++;
+        ArrayList<String> replacedFiles = new ArrayList<>();
+        try {
+            Files.createDirectories(Paths.get(segmentsPath));
+            ArrayList<Segment> written = new ArrayList<>(encoded.size());
+            for (EncodedSegment segment : encoded) {
+                String fileName = String.format(SEGMENT_FILE_FORMAT, segment.number, generation);
+                if (segment.count > 0) {
+                    bytes += segment.bytes.remaining();
+                    writeFile(Paths.get(segmentsPath, fileName), segment.bytes, isSyncing);
+                }
+                written.add(new Segment(segment.number, segment.count, fileName));
+            }
+            for (Segment segment : written) {
+                Segment replaced = segment.count > 0
+                        ? segments.put(segment.number, segment)
+                        : segments.remove(segment.number);
+                if (replaced != null) {
+                    replacedFiles.add(replaced.fileName);
+                }
+            }
+            bytes += writeManifest(nextTaskId, isSyncing);
+        } catch (IOException e) {
+            throw new EncikException("Unable to save tasks to file.");
+        }
+        for (String fileName : replacedFiles) {
+            new File(segmentsPath, fileName).delete();
+        }
+        if (Metrics.ENABLED) {
+            Metrics.STORAGE_SAVE.recordSince(startNanos);
+            Metrics.STORAGE_SAVE_BYTES.record(bytes);
+        }
+    }
+
+    /**
+     * Writes the manifest to a temporary file and atomically renames it into
+     * place.
+     *
+     * @param nextTaskId The id the next new task will be given.
+     * @param isSyncing  Whether to force the manifest to disk.
+     * @return The size of the manifest in bytes.
+     * @throws IOException If the manifest cannot be written.
+     */
+    private long writeManifest(int nextTaskId, boolean isSyncing) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append(NEXT_ID_HEADER).append(nextTaskId).append(System.lineSeparator());
+        manifest.append(SEGMENT_SIZE_HEADER).append(segmentSize).append(System.lineSeparator());
+        manifest.append(GENERATION_HEADER).append(generation).append(System.lineSeparator());
+        for (Segment segment : segments.values()) {
+            manifest.append(segment.number).append(FILE_DELIMITER).append(segment.count).append(FILE_DELIMITER)
+                    .append(segment.fileName).append(System.lineSeparator());
+        }
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(manifest));
+        int size = bytes.remaining();
+        Path target = Paths.get(segmentsPath, MANIFEST_FILE_NAME);
+        Path temp = Paths.get(segmentsPath, MANIFEST_FILE_NAME + TEMP_SUFFIX);
+        writeFile(temp, bytes, isSyncing);
+        if (durability == Durability.ALWAYS) {
+            syncDirectory(segmentsPath);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (durability == Durability.ALWAYS) {
+            syncDirectory(segmentsPath);
+        }
+        return size;
+    }
+
+    /**
+     * Splits the tasks loaded from the text data file into segment files,
+     * then moves the text data file aside so that the migration runs once.
+     *
+     * @param tasks The tasks loaded from the text data file.
+     * @throws EncikException If the segment files cannot be written.
+     */
+    private void migrateToSegments(ArrayList<Task> tasks) throws EncikException {
+        saveSegments(tasks, nextId);
+        try {
+            Path text = Paths.get(filePath);
+            if (Files.exists(text)) {
+                Files.move(text, Paths.get(filePath + MIGRATED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(Paths.get(journalPath));
+            Files.deleteIfExists(Paths.get(oldJournalPath));
+        } catch (IOException e) {
+            throw new EncikException("Unable to migrate tasks to segment files.");
+        }
+    }
+
+    /**
+     * Returns the total size of the manifest and the segment files it lists.
+     *
+     * @return The size in bytes.
+     */
+    private synchronized long segmentBytes() {
+        long bytes = new File(segmentsPath, MANIFEST_FILE_NAME).length();
+        for (Segment segment : segments.values()) {
+            bytes += new File(segmentsPath, segment.fileName).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Persists a batch of changes to the task list.
+     * In snapshot and binary mode the whole list is saved; in journal mode the records
+     * for the batch are appended to the journal in a single write; in
+     * segmented mode only the segments holding changed tasks are rewritten.
+     * The task list is locked only while the changes are encoded, so the
+     * file I/O does not block commands that modify the list.
+     *
+     * @param mutations The changes that were made, in order.
+     * @param tasks     The task list after the changes.
+     * @throws EncikException If the changes cannot be written.
+     */
+    public void commit(List<Mutation> mutations, TaskList tasks) throws EncikException {
+        PreparedCommit prepared;
+        synchronized (tasks) {
+            prepared = prepareCommit(mutations, tasks);
+        }
+        writeCommit(prepared);
+    }
+
+    /**
+     * Encodes a batch of changes to be written by writeCommit. The caller
+     * must hold the task list's monitor, and the list must not have been
+     * changed since the changes in the batch, so that a snapshot taken to
+     * compact the journal holds exactly the changes journaled so far.
+     *
+     * @param mutations The changes that were made, in order.
+     * @param tasks     The task list after the changes.
+     * @return The encoded changes.
+     */
+    public PreparedCommit prepareCommit(List<Mutation> mutations, TaskList tasks) {
+        if (mode == Mode.SEGMENTED) {
+            TreeSet<Integer> changed = new TreeSet<>();
+            for (Mutation mutation : mutations) {
+                changed.add(mutation.getTask().getId() / segmentSize);
+            }
+            ArrayList<EncodedSegment> encoded = new ArrayList<>(changed.size());
+            for (int number : changed) {
+                int firstId = number * segmentSize;
+                int endId = (int) Math.min((long) firstId + segmentSize, Integer.MAX_VALUE);
+                encoded.add(encodeSegment(number, tasks.getTasksWithIds(firstId, endId)));
+            }
+            return new PreparedCommit(null, null, encoded, tasks.getNextId());
+        }
+        if (mode != Mode.JOURNAL) {
+            return new PreparedCommit(encodeSnapshot(tasks.getTasks(), null, tasks.getNextId()), null, null, 0);
+        }
+
+        StringBuilder records = new StringBuilder();
+        ByteBuffer snapshot = null;
+        for (Mutation mutation : mutations) {
+            records.append(mutationToJournalString(nextSequence, mutation)).append(System.lineSeparator());
+            nextSequence++;
+        }
+        if (journalSize + records.length() >= compactionThreshold && !isCompacting) {
+            snapshot = encodeSnapshot(tasks.getTasks(), nextSequence - 1, tasks.getNextId());
+        }
+        return new PreparedCommit(snapshot, records, null, 0);
+    }
 
     /**
-     * Constructs a Storage with the specified file path.
+     * Writes a batch of changes encoded by prepareCommit, without holding
+     * the task list's monitor. Batches must be written in the order they
+     * were prepared.
      *
-     * @param filePath The path to the data file.
+     * @param prepared The encoded changes.
+     * @throws EncikException If the changes cannot be written.
      */
-    public Storage(String filePath) {
-        this.filePath = filePath;
-        File file = new File(filePath);
-        this.directoryPath = file.getParent();
+    public void writeCommit(PreparedCommit prepared) throws EncikException {
+        ensureDirectoryExists();
+        if (prepared.segments != null) {
+            writeSegments(prepared.segments, prepared.nextTaskId);
+            return;
+        }
+        if (prepared.records == null) {
+            saveSnapshot(prepared.snapshot);
+            return;
+        }
+
+        try {
+            if (journalChannel == null) {
+                journalChannel = FileChannel.open(Paths.get(journalPath), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                journalSize = journalChannel.size();
+            }
+            long startNanos = Metrics.ENABLED ? System.nanoTime() : 0;
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(prepared.records));
+            int bytes = buffer.remaining();
+            journalSize += bytes;
+            writeFully(journalChannel, buffer);
+            if (shouldSync()) {
+                journalChannel.force(false);
+            }
+            if (Metrics.ENABLED) {
+                Metrics.STORAGE_APPEND.recordSince(startNanos);
+                Metrics.STORAGE_APPEND_BYTES.record(bytes);
+            }
+        } catch (IOException e) {
+            throw new EncikException("Unable to save tasks to file.");
+        }
+        if (prepared.snapshot != null) {
+            compactInBackground(prepared.snapshot);
+        }
     }
 
     /**
-     * Loads tasks from the data file.
+     * Saves all tasks to the data file.
+     * Creates the data directory if it does not exist. Any journal is
+     * discarded, since the data file now holds the complete state. In
+     * journal mode the journal is kept, and the snapshot records the last
+     * journal sequence number so that the records it already contains are
+     * skipped when loading.
      *
-     * @return An ArrayList of tasks loaded from the file.
-     * @throws EncikException If the file cannot be read.
+     * @param tasks The list of tasks to save.
+     * @throws EncikException If the file cannot be written.
      */
-    public ArrayList<Task> load() throws EncikException {
-        ArrayList<Task> tasks = new ArrayList<>();
-        File file = new File(filePath);
-        if (!file.exists()) {
-            return tasks;
+    public void save(List<Task> tasks) throws EncikException {
+        ensureDirectoryExists();
+        if (mode == Mode.SEGMENTED) {
+            saveSegments(tasks, Math.max(nextId, nextIdAfter(tasks)));
+            return;
+        }
+        Long sequence = mode == Mode.JOURNAL ? nextSequence - 1 : null;
+        saveSnapshot(encodeSnapshot(tasks, sequence, Math.max(nextId, nextIdAfter(tasks))));
+    }
+
+    /**
+     * Writes an encoded snapshot over the data file and discards any journal.
+     *
+     * @param snapshot The encoded snapshot.
+     * @throws EncikException If the file cannot be written.
+     */
+    private void saveSnapshot(ByteBuffer snapshot) throws EncikException {
+        try {
+            writeSnapshot(snapshot);
+        } catch (IOException e) {
+            throw new EncikException("Unable to save tasks to file.");
+        }
+        if (mode != Mode.JOURNAL) {
+            new File(journalPath).delete();
+            new File(oldJournalPath).delete();
+        }
+    }
+
+    /**
+     * Waits for any background compaction to finish and closes the journal.
+     */
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeJournal();
+    }
+
+    /**
+     * Returns whether a compaction has failed since this was last called,
+     * so that the failure can be reported once.
+     *
+     * @return True if a compaction failed.
+     */
+    public boolean takeCompactionFailure() {
+        return hasCompactionFailed.getAndSet(false);
+    }
+
+    /**
+     * Rotates the journal and writes a new snapshot on a background thread.
+     * The snapshot is encoded by the caller while the task list is locked so
+     * that later changes to the list cannot race with the writer.
+     * If an old journal was left behind by an earlier compaction that failed,
+     * the journal is folded into it instead of being renamed, so that the
+     * old journal again holds every change since the last snapshot and the
+     * new snapshot supersedes both.
+     *
+     * @param snapshot The encoded snapshot, including its sequence header.
+     */
+    private void compactInBackground(ByteBuffer snapshot) {
+        closeJournal();
+        File journal = new File(journalPath);
+        File oldJournal = new File(oldJournalPath);
+        if (oldJournal.exists() ? !foldJournal() : !journal.renameTo(oldJournal)) {
+            hasCompactionFailed.set(true);
+            return;
+        }
+        journalSize = 0;
+        isCompacting = true;
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "encik-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compactor.execute(() -> {
+            try {
+                writeSnapshot(snapshot);
+                new File(oldJournalPath).delete();
+            } catch (IOException e) {
+                hasCompactionFailed.set(true);
+            } finally {
+                isCompacting = false;
+            }
+        });
+    }
+
+    /**
+     * Appends the journal to the old journal and deletes it. If the append
+     * fails, the old journal is cut back to its previous length so that no
+     * record is held by both files.
+     *
+     * @return True if the journal was folded into the old journal.
+     */
+    private boolean foldJournal() {
+        Path journal = Paths.get(journalPath);
+        try (FileChannel source = FileChannel.open(journal, StandardOpenOption.READ);
+                FileChannel target = FileChannel.open(Paths.get(oldJournalPath), StandardOpenOption.WRITE)) {
+            long oldSize = target.size();
+            try {
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target.position(oldSize + position));
+                }
+                if (durability != Durability.NEVER) {
+                    target.force(false);
+                }
+            } catch (IOException e) {
+                target.truncate(oldSize);
+                throw e;
+            }
+            Files.delete(journal);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encodes the task list in the data file format.
+     *
+     * @param tasks    The tasks to encode.
+     * @param sequence The last journal sequence number contained in the
+     *                 snapshot, or null to omit the sequence header.
+     * @param nextId   The id the next new task will be given.
+     * @return The encoded snapshot.
+     */
+    private ByteBuffer encodeSnapshot(List<Task> tasks, Long sequence, int nextId) {
+        if (mode == Mode.BINARY) {
+            return BinaryTaskFile.encode(tasks, nextId);
+        }
+        StringBuilder snapshot = new StringBuilder();
+        if (sequence != null) {
+            snapshot.append(SEQUENCE_HEADER).append(sequence).append(System.lineSeparator());
+        }
+        snapshot.append(NEXT_ID_HEADER).append(nextId).append(System.lineSeparator());
+        for (int i = 0; i < tasks.size(); i++) {
+            snapshot.append(taskToFileString(tasks.get(i))).append(System.lineSeparator());
+        }
+        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(snapshot));
+    }
+
+    /**
+     * Writes a snapshot to a temporary file and atomically renames it over
+     * the data file. The previous data file is kept as a backup.
+     *
+     * Binary snapshots are written through a memory-mapped channel.
+     *
+     * @param snapshot The encoded snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private synchronized void writeSnapshot(ByteBuffer snapshot) throws IOException {
+        long startNanos = Metrics.ENABLED ? System.nanoTime() : 0;
+        int bytes = snapshot.remaining();
+        Path target = Paths.get(snapshotPath);
+        Path temp = Paths.get(snapshotPath + TEMP_SUFFIX);
+        Path backup = Paths.get(snapshotPath + BACKUP_SUFFIX);
+
+        if (mode == Mode.BINARY) {
+            BinaryTaskFile.write(temp, snapshot, shouldSync());
+        } else {
+            writeFile(temp, snapshot, shouldSync());
         }
 
+        if (Files.exists(target)) {
+            Files.deleteIfExists(backup);
+            try {
+                Files.createLink(backup, target);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(target, backup, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
         try {
-            Scanner fileScanner = new Scanner(file);
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine().trim();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (durability == Durability.ALWAYS) {
+            syncDirectory(directoryPath);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.STORAGE_SAVE.recordSince(startNanos);
+            Metrics.STORAGE_SAVE_BYTES.record(bytes);
+        }
+    }
+
+    /**
+     * Writes a file, replacing any file already at its path.
+     *
+     * @param path      The path of the file.
+     * @param bytes     The contents of the file.
+     * @param isSyncing Whether to force the contents to disk.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeFile(Path path, ByteBuffer bytes, boolean isSyncing) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, bytes);
+            if (isSyncing) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * Writes the whole buffer to the channel.
+     *
+     * @param channel The channel to write to.
+     * @param buffer  The bytes to write.
+     * @throws IOException If the write fails.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Decides whether the current write should be forced to disk, according
+     * to the durability policy.
+     *
+     * @return True if the write should be forced.
+     */
+    private synchronized boolean shouldSync() {
+        switch (durability) {
+            case ALWAYS:
+                return true;
+            case BATCHED:
+                long now = System.currentTimeMillis();
+                if (now - lastSyncMillis < syncIntervalMillis) {
+                    return false;
+                }
+                lastSyncMillis = now;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Forces the entries of renamed or created files in a directory to disk.
+     * Not every platform supports opening a directory, so failures are ignored.
+     *
+     * @param path The path of the directory, or null for the current one.
+     */
+    private static void syncDirectory(String path) {
+        if (path == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The rename itself has already succeeded.
+        }
+    }
+
+    /**
+     * Replays the records of a journal file onto the given task list.
+     * Records already contained in the snapshot are skipped.
+     *
+     * @param path             The path to the journal file.
+     * @param tasks            The task list to apply the records to.
+     * @param snapshotSequence The last sequence number in the snapshot.
+     * @param lastSequence     The last sequence number replayed so far.
+     * @return The last sequence number replayed.
+     * @throws IOException If the journal cannot be read.
+     */
+    private long replayJournal(String path, ArrayList<Task> tasks, long snapshotSequence, long lastSequence)
+            throws IOException {
+        File journal = new File(path);
+        if (!journal.exists()) {
+            return lastSequence;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journal.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
                 if (line.isEmpty()) {
                     continue;
                 }
                 try {
-                    Task task = parseTaskFromFile(line);
-                    tasks.add(task);
+                    long sequence = applyJournalRecord(line, tasks, snapshotSequence);
+                    lastSequence = Math.max(lastSequence, sequence);
                 } catch (EncikException e) {
-                    System.out.println("Warning: Skipping corrupted line: " + line);
+                    System.out.println("Warning: Skipping corrupted journal record: " + line);
                 }
             }
-            fileScanner.close();
-        } catch (IOException e) {
-            throw new EncikException("Unable to load tasks from file.");
         }
-        return tasks;
+        return lastSequence;
     }
 
     /**
-     * Saves all tasks to the data file.
-     * Creates the data directory if it does not exist.
+     * Applies a single journal record to the task list.
+     * Format: SEQUENCE | OP | INDEX [| task fields]
+     * Added tasks recorded before ids were stored are given the next id.
      *
-     * @param tasks The list of tasks to save.
-     * @throws EncikException If the file cannot be written.
+     * @param line             The journal record.
+     * @param tasks            The task list to apply the record to.
+     * @param snapshotSequence The last sequence number in the snapshot.
+     * @return The sequence number of the record.
+     * @throws EncikException If the record is corrupted.
+     */
+    private long applyJournalRecord(String line, ArrayList<Task> tasks, long snapshotSequence)
+            throws EncikException {
+        String[] parts = splitFields(line, 4);
+        if (parts.length < 3) {
+            throw new EncikException("Corrupted journal record: " + line);
+        }
+        long sequence;
+        int index;
+        try {
+            sequence = Long.parseLong(parts[0].trim());
+            index = Integer.parseInt(parts[2].trim());
+        } catch (NumberFormatException e) {
+            throw new EncikException("Corrupted journal record: " + line);
+        }
+        if (sequence <= snapshotSequence) {
+            return sequence;
+        }
+
+        String op = parts[1].trim();
+        if (op.equals("A")) {
+            if (parts.length < 4 || index < 0 || index > tasks.size()) {
+                throw new EncikException("Corrupted journal record: " + line);
+            }
+            Task task = parseTaskFromFile(parts[3]);
+            if (task.getId() == Task.UNASSIGNED_ID) {
+                task.setId(nextId);
+            }
+            nextId = Math.max(nextId, task.getId() + 1);
+            tasks.add(index, task);
+            return sequence;
+        }
+        if (index < 0 || index >= tasks.size()) {
+            throw new EncikException("Corrupted journal record: " + line);
+        }
+        switch (op) {
+            case "M":
+                tasks.get(index).markAsDone();
+                break;
+            case "U":
+                tasks.get(index).markAsNotDone();
+                break;
+            case "X":
+                tasks.remove(index);
+                break;
+            default:
+                throw new EncikException("Unknown journal operation: " + op);
+        }
+        return sequence;
+    }
+
+    /**
+     * Converts a mutation to its journal record representation.
+     *
+     * @param sequence The sequence number of the record.
+     * @param mutation The mutation to convert.
+     * @return The journal record string.
+     */
+    private String mutationToJournalString(long sequence, Mutation mutation) {
+        String prefix = sequence + FILE_DELIMITER;
+        String index = FILE_DELIMITER + mutation.getIndex();
+        switch (mutation.getType()) {
+            case ADD:
+                return prefix + "A" + index + FILE_DELIMITER + taskToFileString(mutation.getTask());
+            case MARK:
+                return prefix + "M" + index;
+            case UNMARK:
+                return prefix + "U" + index;
+            default:
+                return prefix + "X" + index;
+        }
+    }
+
+    /**
+     * Parses the sequence number from a snapshot header line.
+     *
+     * @param line The header line.
+     * @return The sequence number, or 0 if the header is corrupted.
+     */
+    private long parseSequenceHeader(String line) {
+        try {
+            return Long.parseLong(line.substring(SEQUENCE_HEADER.length()).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses the next task id from a snapshot header line.
+     *
+     * @param line The header line.
+     * @return The next task id, or 1 if the header is corrupted.
+     */
+    private int parseNextIdHeader(String line) {
+        try {
+            return Integer.parseInt(line.substring(NEXT_ID_HEADER.length()).trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Returns the id after the last id in a list of tasks, whose ids increase
+     * in list order.
+     *
+     * @param tasks The tasks.
+     * @return The id after the last task's id, or 1 if the list is empty.
      */
-    public void save(ArrayList<Task> tasks) throws EncikException {
+    private static int nextIdAfter(List<Task> tasks) {
+        return tasks.isEmpty() ? 1 : tasks.get(tasks.size() - 1).getId() + 1;
+    }
+
+    /**
+     * Derives the binary data file path from the text data file path by
+     * replacing its extension.
+     *
+     * @param textPath The text data file path.
+     * @return The binary data file path.
+     */
+    private static String toBinaryPath(String textPath) {
+        return replaceExtension(textPath, BINARY_EXTENSION);
+    }
+
+    /**
+     * Replaces the extension of a file path, or adds one if it has none.
+     *
+     * @param path      The file path.
+     * @param extension The new extension, including its dot.
+     * @return The new path.
+     */
+    private static String replaceExtension(String path, String extension) {
+        int dot = path.lastIndexOf('.');
+        int separator = path.lastIndexOf(File.separatorChar);
+        String base = dot > separator ? path.substring(0, dot) : path;
+        return base + extension;
+    }
+
+    /**
+     * Creates the data directory if it does not exist.
+     */
+    private void ensureDirectoryExists() {
+        if (directoryPath == null) {
+            return;
+        }
         File directory = new File(directoryPath);
         if (!directory.exists()) {
             directory.mkdirs();
         }
+    }
 
+    /**
+     * Forces and closes the journal channel if it is open.
+     */
+    private void closeJournal() {
+        if (journalChannel == null) {
+            return;
+        }
         try {
-            FileWriter writer = new FileWriter(filePath);
-            for (int i = 0; i < tasks.size(); i++) {
-                writer.write(taskToFileString(tasks.get(i)) + System.lineSeparator());
+            if (durability != Durability.NEVER) {
+                journalChannel.force(false);
             }
-            writer.close();
+            journalChannel.close();
         } catch (IOException e) {
-            throw new EncikException("Unable to save tasks to file.");
+            System.out.println("Warning: Unable to close the task journal.");
         }
+        journalChannel = null;
     }
 
     /**
      * Converts a task to its file storage string representation.
-     * Format: TYPE | DONE | DESCRIPTION [| extra fields]
+     * Format: [ID |] TYPE | DONE | DESCRIPTION [| extra fields]
+     * The id is left out for tasks that have not been given one.
      *
      * @param task The task to convert.
      * @return The file format string for the task.
      */
     private String taskToFileString(Task task) {
+        String id = task.getId() == Task.UNASSIGNED_ID ? "" : task.getId() + FILE_DELIMITER;
         String doneFlag = task.isDone() ? "1" : "0";
         if (task instanceof Todo) {
-            return "T" + FILE_DELIMITER + doneFlag + FILE_DELIMITER + task.getDescription();
+            return id + "T" + FILE_DELIMITER + doneFlag + FILE_DELIMITER + task.getDescription();
         } else if (task instanceof Deadline) {
             Deadline d = (Deadline) task;
-            return "D" + FILE_DELIMITER + doneFlag + FILE_DELIMITER + d.getDescription()
+            return id + "D" + FILE_DELIMITER + doneFlag + FILE_DELIMITER + d.getDescription()
                     + FILE_DELIMITER + d.getBy();
         } else if (task instanceof Event) {
             Event e = (Event) task;
-            return "E" + FILE_DELIMITER + doneFlag + FILE_DELIMITER + e.getDescription()
+            return id + "E" + FILE_DELIMITER + doneFlag + FILE_DELIMITER + e.getDescription()
                     + FILE_DELIMITER + e.getFrom() + FILE_DELIMITER + e.getTo();
         }
         return "";
@@ -107,13 +1443,25 @@ public class Storage {
 
     /**
      * Parses a task from a file storage line.
+     * Lines written before ids were stored start with the task type instead
+     * of a numeric id, and give a task without an id.
      *
      * @param line The line from the data file.
      * @return The parsed Task object.
      * @throws EncikException If the line format is corrupted.
      */
     private Task parseTaskFromFile(String line) throws EncikException {
-        String[] parts = line.split(" \\| ");
+        int id = Task.UNASSIGNED_ID;
+        int idEnd = line.indexOf(FILE_DELIMITER);
+        if (idEnd > 0 && Character.isDigit(line.charAt(0))) {
+            try {
+                id = Integer.parseInt(line.substring(0, idEnd));
+            } catch (NumberFormatException e) {
+                throw new EncikException("Corrupted data: " + line);
+            }
+            line = line.substring(idEnd + FILE_DELIMITER.length());
+        }
+        String[] parts = splitFields(line, 6);
         if (parts.length < 3) {
             throw new EncikException("Corrupted data: " + line);
         }
@@ -146,6 +1494,186 @@ public class Storage {
         if (isDone) {
             task.markAsDone();
         }
+        task.setId(id);
         return task;
     }
+
+    /**
+     * Splits a data file line on the field delimiter without going through
+     * the regular expression engine.
+     *
+     * @param line      The line to split.
+     * @param maxFields The maximum number of fields; the last field holds the
+     *                  rest of the line.
+     * @return The fields of the line.
+     */
+    private static String[] splitFields(String line, int maxFields) {
+        String[] fields = new String[maxFields];
+        int count = 0;
+        int start = 0;
+        while (count < maxFields - 1) {
+            int end = line.indexOf(FILE_DELIMITER, start);
+            if (end < 0) {
+                break;
+            }
+            fields[count++] = line.substring(start, end);
+            start = end + FILE_DELIMITER.length();
+        }
+        fields[count++] = line.substring(start);
+        return count == maxFields ? fields : Arrays.copyOf(fields, count);
+    }
+
+    /**
+     * A batch of changes encoded while the task list was locked, waiting to
+     * be written: a whole snapshot, journal records with perhaps a snapshot
+     * to compact the journal into, or the changed segments.
+     */
+    public static class PreparedCommit {
+        private final ByteBuffer snapshot;
+        private final CharSequence records;
+        private final List<EncodedSegment> segments;
+        private final int nextTaskId;
+
+        private PreparedCommit(ByteBuffer snapshot, CharSequence records, List<EncodedSegment> segments,
+                int nextTaskId) {
+            this.snapshot = snapshot;
+            this.records = records;
+            this.segments = segments;
+            this.nextTaskId = nextTaskId;
+        }
+    }
+
+    /**
+     * The tasks, headers and corrupted lines read from part of a snapshot.
+     * Ids of tasks saved without one are left for mergeSnapshotChunks to
+     * assign, as they depend on the tasks in earlier chunks.
+     */
+    private class SnapshotChunk {
+        final ArrayList<Task> tasks = new ArrayList<>();
+        final ArrayList<String> corruptedLines = new ArrayList<>();
+        long sequence = -1;
+        int nextId = 1;
+
+        /**
+         * Reads one line of the snapshot.
+         *
+         * @param line The line, without its line break.
+         */
+        void addLine(String line) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                return;
+            }
+            if (line.startsWith(SEQUENCE_HEADER)) {
+                sequence = parseSequenceHeader(line);
+                return;
+            }
+            if (line.startsWith(NEXT_ID_HEADER)) {
+                nextId = Math.max(nextId, parseNextIdHeader(line));
+                return;
+            }
+            try {
+                tasks.add(parseTaskFromFile(line));
+            } catch (EncikException e) {
+                corruptedLines.add(line);
+            }
+        }
+    }
+
+    /**
+     * Decodes and parses one chunk of a snapshot file. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class ChunkParse extends RecursiveTask<SnapshotChunk> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkParse(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected SnapshotChunk compute() {
+            try {
+                ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, start + bytes.position()) < 0) {
+                        throw new IOException("Snapshot file shrank while it was read.");
+                    }
+                }
+                bytes.flip();
+                CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+                SnapshotChunk chunk = new SnapshotChunk();
+                int lineStart = 0;
+                for (int i = 0; i < chars.length(); i++) {
+                    char c = chars.charAt(i);
+                    if (c == '\n' || c == '\r') {
+                        chunk.addLine(chars.subSequence(lineStart, i).toString());
+                        lineStart = i + 1;
+                    }
+                }
+                if (lineStart < chars.length()) {
+                    chunk.addLine(chars.subSequence(lineStart, chars.length()).toString());
+                }
+                return chunk;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * A segment file listed in the manifest: the number of the segment, the
+     * number of tasks in it and the name of the file holding them.
+     */
+    private static class Segment {
+        final int number;
+        final int count;
+        final String fileName;
+
+        Segment(int number, int count, String fileName) {
+            this.number = number;
+            this.count = count;
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * The tasks of one segment, encoded in the data file format.
+     */
+    private static class EncodedSegment {
+        final int number;
+        final int count;
+        final ByteBuffer bytes;
+
+        EncodedSegment(int number, int count, ByteBuffer bytes) {
+            this.number = number;
+            this.count = count;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Reads one segment file. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class SegmentRead extends RecursiveTask<SnapshotChunk> {
+        private final String fileName;
+
+        SegmentRead(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        protected SnapshotChunk compute() {
+            try {
+                return readSegment(fileName);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
@@ -2,16 +2,20 @@
  * Represents a generic task.
  */
 public class Task {
+    public static final int UNASSIGNED_ID = -1;
+
     protected String description;
-    protected boolean isDone;
+    protected volatile boolean isDone;
+    private int id = UNASSIGNED_ID;
 
     /**
-     * Constructs a new Task with the given description.
+     * Constructs a new Task with the given description. The description is
+     * shared with other tasks that have the same one where possible.
      *
      * @param description The description of the task.
      */
     public Task(String description) {
-        this.description = description;
+        this.description = DescriptionPool.canonical(description);
         this.isDone = false;
     }
 
@@ -47,6 +51,26 @@ public class Task {
         this.isDone = false;
     }
 
+    /**
+     * Returns the id assigned to the task by its task list.
+     * Ids increase in the order tasks are added, and are kept when tasks are
+     * saved and loaded.
+     *
+     * @return The task id, or UNASSIGNED_ID if none has been assigned.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Assigns an id to the task.
+     *
+     * @param id The task id.
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Returns the description of the task.
      *
@@ -0,0 +1,89 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Formats tasks for display by appending them to a caller's buffer, without
+ * building intermediate strings.
+ * Formatted dates are remembered per epoch day, so listing many tasks that
+ * share dates formats each date only once. A TaskFormatter is not safe for
+ * use by several threads at once.
+ */
+public class TaskFormatter {
+    /** The pattern tasks use to display their dates, e.g. "Oct 15 2019". */
+    public static final DateTimeFormatter DISPLAY_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d yyyy");
+
+    private static final int DATE_CACHE_SIZE = 1024;
+    private static final int DATE_CACHE_MASK = DATE_CACHE_SIZE - 1;
+
+    private final long[] cachedDays = new long[DATE_CACHE_SIZE];
+    private final String[] cachedDates = new String[DATE_CACHE_SIZE];
+
+    /**
+     * Constructs a TaskFormatter with an empty date cache.
+     */
+    public TaskFormatter() {
+        Arrays.fill(cachedDays, Long.MIN_VALUE);
+    }
+
+    /**
+     * Appends a task as it is shown to the user, in the same form as its
+     * toString.
+     *
+     * @param buffer The buffer to append to.
+     * @param task   The task.
+     * @return The buffer.
+     */
+    public StringBuilder appendTask(StringBuilder buffer, Task task) {
+        if (task instanceof Deadline) {
+            buffer.append("[D]");
+            appendStatusAndDescription(buffer, task);
+            buffer.append(" (by: ");
+            appendDate(buffer, ((Deadline) task).getByDate());
+            return buffer.append(')');
+        }
+        if (task instanceof Event) {
+            Event event = (Event) task;
+            buffer.append("[E]");
+            appendStatusAndDescription(buffer, task);
+            buffer.append(" (from: ");
+            appendDate(buffer, event.getFromDate());
+            buffer.append(" to: ");
+            appendDate(buffer, event.getToDate());
+            return buffer.append(')');
+        }
+        if (task instanceof Todo) {
+            buffer.append("[T]");
+            return appendStatusAndDescription(buffer, task);
+        }
+        return buffer.append(task);
+    }
+
+    /**
+     * Appends a date in the display format.
+     *
+     * @param buffer The buffer to append to.
+     * @param date   The date.
+     * @return The buffer.
+     */
+    public StringBuilder appendDate(StringBuilder buffer, LocalDate date) {
+        long day = date.toEpochDay();
+        int slot = (int) (day & DATE_CACHE_MASK);
+        if (cachedDays[slot] != day) {
+            cachedDates[slot] = date.format(DISPLAY_DATE_FORMAT);
+            cachedDays[slot] = day;
+        }
+        return buffer.append(cachedDates[slot]);
+    }
+
+    /**
+     * Appends the done marker and description shared by every task type.
+     *
+     * @param buffer The buffer to append to.
+     * @param task   The task.
+     * @return The buffer.
+     */
+    private static StringBuilder appendStatusAndDescription(StringBuilder buffer, Task task) {
+        return buffer.append('[').append(task.getStatusIcon()).append("] ").append(task.getDescription());
+    }
+}
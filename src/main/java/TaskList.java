@@ -1,25 +1,107 @@
+import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Contains the task list and provides operations to manage tasks.
+ * The tasks themselves are held by a TaskStore.
+ *
+ * Removing a task leaves a tombstone in its slot of the store instead of
+ * shifting every later task down. A Fenwick tree over the slots counts the
+ * live tasks, so the slot of the task at a position is found in O(log n),
+ * and the store is compacted once tombstones outnumber live tasks. Until
+ * the first removal, positions and slots are the same and no tree is kept.
+ * Tasks can also be found by id through a map from ids to slots, which is
+ * built the first time it is needed, or by binary search over the slots, as
+ * ids increase from slot to slot.
  */
 public class TaskList {
-    private final ArrayList<Task> tasks;
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+
+    private final TaskStore tasks;
+    private int nextId = 1;
+    private SearchIndex searchIndex;
+    private DateIndex dateIndex;
+    private FilterIndex filterIndex;
+    private HashMap<Integer, Integer> slotsById;
+    private BitSet removedSlots;
+    private int removedCount;
+    private int[] liveCounts;
+    private ReminderScheduler reminders;
 
     /**
      * Constructs an empty TaskList.
      */
     public TaskList() {
-        this.tasks = new ArrayList<>();
+        this(new ArrayList<>());
     }
 
     /**
      * Constructs a TaskList with the given list of tasks.
+     * Tasks without an id are assigned one in list order.
      *
      * @param tasks The initial list of tasks.
      */
     public TaskList(ArrayList<Task> tasks) {
-        this.tasks = tasks;
+        this.tasks = new ArrayTaskStore(tasks);
+        for (int i = 0; i < tasks.size(); i++) {
+            assignId(tasks.get(i));
+        }
+    }
+
+    /**
+     * Constructs a TaskList over the given store.
+     * The store is responsible for the ids of the tasks it already holds,
+     * which must increase in list order.
+     *
+     * @param store The store holding the tasks.
+     */
+    public TaskList(TaskStore store) {
+        this.tasks = store;
+        if (store.size() > 0) {
+            nextId = store.getId(store.size() - 1) + 1;
+        }
+    }
+
+    /**
+     * Makes sure that tasks added from now on are given ids of at least the
+     * given id, so that the ids of deleted tasks are never reused.
+     *
+     * @param id The lowest id to give a new task.
+     */
+    public void reserveIds(int id) {
+        nextId = Math.max(nextId, id);
+    }
+
+    /**
+     * Returns the id the next added task will be given.
+     *
+     * @return The next task id.
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Keeps the given scheduler's reminders up to date as tasks are added,
+     * marked and removed. The tasks already in the list are not read here;
+     * the scheduler reads their dates through forEachUndoneDate once it is
+     * started.
+     *
+     * @param reminders The reminder scheduler.
+     */
+    public void setReminders(ReminderScheduler reminders) {
+        this.reminders = reminders;
     }
 
     /**
@@ -28,17 +110,115 @@ public class TaskList {
      * @param task The task to add.
      */
     public void add(Task task) {
+        assignId(task);
+        int slot = tasks.size();
         tasks.add(task);
+        if (liveCounts != null) {
+            appendLiveCount(slot);
+        }
+        if (slotsById != null) {
+            slotsById.put(task.getId(), slot);
+        }
+        if (searchIndex != null) {
+            searchIndex.add(task);
+        }
+        if (dateIndex != null) {
+            dateIndex.add(task);
+        }
+        if (filterIndex != null) {
+            filterIndex.add(task);
+        }
+        if (reminders != null) {
+            reminders.schedule(task);
+        }
     }
 
     /**
      * Removes and returns the task at the specified index.
+     * The task's slot is marked as removed rather than closed up, and the
+     * store is compacted once most of its slots are removed.
      *
      * @param index The 0-based index of the task to remove.
      * @return The removed task.
      */
     public Task remove(int index) {
-        return tasks.remove(index);
+        Task task = removeSlot(slotAt(index));
+        compactIfSparse();
+        return task;
+    }
+
+    /**
+     * Removes the tasks at the given indexes, checking whether the store
+     * needs compacting only once at the end.
+     *
+     * @param indexes The 0-based indexes of the tasks to remove.
+     * @return The removed tasks, in list order.
+     */
+    public List<Task> removeAll(BitSet indexes) {
+        ArrayList<Task> removedTasks = new ArrayList<>(indexes.cardinality());
+        for (int i = indexes.length() - 1; i >= 0; i = indexes.previousSetBit(i - 1)) {
+            removedTasks.add(removeSlot(slotAt(i)));
+        }
+        Collections.reverse(removedTasks);
+        compactIfSparse();
+        return removedTasks;
+    }
+
+    /**
+     * Puts removed tasks back at the given indexes with their old ids, as
+     * when a removal is undone. Tasks whose slots still hold them as
+     * tombstones are revived in place; otherwise the store is compacted and
+     * the tasks are inserted into it in a single pass.
+     *
+     * @param indexes      The 0-based indexes the tasks will have afterwards,
+     *                     in ascending order.
+     * @param removedTasks The tasks to put back, in the same order.
+     * @return The restored tasks, as now held by the list, in index order.
+     */
+    public List<Task> restoreAll(int[] indexes, List<Task> removedTasks) {
+        int[] slots = new int[removedTasks.size()];
+        boolean isRevivable = true;
+        for (int i = 0; i < slots.length && isRevivable; i++) {
+            slots[i] = slotOfId(removedTasks.get(i).getId());
+            isRevivable = slots[i] >= 0 && isRemoved(slots[i]);
+        }
+        if (!isRevivable) {
+            if (removedSlots != null) {
+                compact();
+            }
+            tasks.insertAll(indexes, removedTasks);
+            System.arraycopy(indexes, 0, slots, 0, slots.length);
+            if (slotsById != null) {
+                buildSlotsById();
+            }
+        }
+        ArrayList<Task> restoredTasks = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            if (isRevivable) {
+                removedSlots.clear(slot);
+                removedCount--;
+                addLiveCount(slot, 1);
+            }
+            Task task = tasks.get(slot);
+            nextId = Math.max(nextId, task.getId() + 1);
+            if (slotsById != null) {
+                slotsById.put(task.getId(), slot);
+            }
+            if (searchIndex != null) {
+                searchIndex.add(task);
+            }
+            if (dateIndex != null) {
+                dateIndex.add(task);
+            }
+            if (filterIndex != null) {
+                filterIndex.add(task);
+            }
+            if (reminders != null) {
+                reminders.schedule(task);
+            }
+            restoredTasks.add(task);
+        }
+        return restoredTasks;
     }
 
     /**
@@ -48,7 +228,41 @@ public class TaskList {
      * @return The task at the given index.
      */
     public Task get(int index) {
-        return tasks.get(index);
+        return tasks.get(slotAt(index));
+    }
+
+    /**
+     * Marks the task at the specified index as done.
+     *
+     * @param index The 0-based index of the task.
+     * @return The marked task.
+     */
+    public Task markAsDone(int index) {
+        Task task = tasks.setDone(slotAt(index), true);
+        if (filterIndex != null) {
+            filterIndex.updateStatus(task);
+        }
+        if (reminders != null) {
+            reminders.cancel(task.getId());
+        }
+        return task;
+    }
+
+    /**
+     * Marks the task at the specified index as not done.
+     *
+     * @param index The 0-based index of the task.
+     * @return The unmarked task.
+     */
+    public Task markAsNotDone(int index) {
+        Task task = tasks.setDone(slotAt(index), false);
+        if (filterIndex != null) {
+            filterIndex.updateStatus(task);
+        }
+        if (reminders != null) {
+            reminders.schedule(task);
+        }
+        return task;
     }
 
     /**
@@ -57,16 +271,26 @@ public class TaskList {
      * @return The size of the task list.
      */
     public int size() {
-        return tasks.size();
+        return liveSize();
     }
 
     /**
-     * Returns the underlying ArrayList of tasks.
+     * Returns a read-only view of the tasks in list order.
      *
-     * @return The ArrayList containing all tasks.
+     * @return A list view backed by the task store.
      */
-    public ArrayList<Task> getTasks() {
-        return tasks;
+    public List<Task> getTasks() {
+        return new AbstractList<>() {
+            @Override
+            public Task get(int index) {
+                return tasks.get(slotAt(index));
+            }
+
+            @Override
+            public int size() {
+                return liveSize();
+            }
+        };
     }
 
     /**
@@ -76,23 +300,544 @@ public class TaskList {
      * @return True if the index is within bounds, false otherwise.
      */
     public boolean isValidIndex(int index) {
-        return index >= 0 && index < tasks.size();
+        return index >= 0 && index < liveSize();
+    }
+
+    /**
+     * Returns the position of the task with the given id.
+     *
+     * @param id The task id.
+     * @return The 0-based index of the task, or -1 if no task has that id.
+     */
+    public int indexOfId(int id) {
+        if (slotsById == null) {
+            buildSlotsById();
+        }
+        Integer slot = slotsById.get(id);
+        if (slot == null) {
+            return -1;
+        }
+        return liveCounts == null ? slot : countLive(slot + 1) - 1;
     }
 
     /**
      * Finds tasks whose descriptions contain the given keyword.
+     * Keywords of three or more characters are answered from the trigram
+     * index; shorter keywords fall back to a scan of the list.
      *
      * @param keyword The keyword to search for (case-insensitive).
      * @return A new TaskList containing only the matching tasks.
      */
     public TaskList find(String keyword) {
-        ArrayList<Task> matchingTasks = new ArrayList<>();
-        String lowerKeyword = keyword.toLowerCase();
-        for (int i = 0; i < tasks.size(); i++) {
-            if (tasks.get(i).getDescription().toLowerCase().contains(lowerKeyword)) {
-                matchingTasks.add(tasks.get(i));
+        if (SearchIndex.supportsSubstring(keyword)) {
+            ArrayList<Task> matchingTasks = getSearchIndex().findSubstring(keyword);
+            if (Metrics.ENABLED) {
+                Metrics.FIND_MATCHED.record(matchingTasks.size());
+            }
+            return new TaskList(matchingTasks);
+        }
+        try (Stream<Task> matches = streamFind(keyword)) {
+            ArrayList<Task> matchingTasks = matches.collect(Collectors.toCollection(ArrayList::new));
+            return new TaskList(matchingTasks);
+        }
+    }
+
+    /**
+     * Finds tasks whose descriptions contain the given keyword, yielding
+     * them in list order as they are found instead of collecting them first.
+     * Keywords of three or more characters are checked against the tasks
+     * the trigram index suggests; shorter keywords are matched by a scan of
+     * the list, run in parallel when the store can be read that way.
+     * The stream should be closed once it is no longer needed, which stops
+     * any scanning still in progress.
+     *
+     * @param keyword The keyword to search for (case-insensitive).
+     * @return The matching tasks.
+     */
+    public Stream<Task> streamFind(String keyword) {
+        if (SearchIndex.supportsSubstring(keyword)) {
+            List<Task> candidates = getSearchIndex().findSubstringCandidates(keyword);
+            return searchStream(keyword, matches -> candidates.stream().filter(matches));
+        }
+        return searchStream(keyword, matches -> ParallelTaskScan.stream(
+                slot -> isRemoved(slot) ? null : tasks.get(slot), tasks.size(), tasks.supportsConcurrentReads(),
+                matches));
+    }
+
+    /**
+     * Finds tasks whose descriptions contain the given whole word.
+     *
+     * @param word The word to search for (case-insensitive).
+     * @return A new TaskList containing only the matching tasks.
+     */
+    public TaskList findWord(String word) {
+        return new TaskList(getSearchIndex().findWord(word));
+    }
+
+    /**
+     * Finds tasks whose descriptions contain a word starting with the given
+     * prefix.
+     *
+     * @param prefix The prefix to search for (case-insensitive).
+     * @return A new TaskList containing only the matching tasks.
+     */
+    public TaskList findPrefix(String prefix) {
+        return new TaskList(getSearchIndex().findPrefix(prefix));
+    }
+
+    /**
+     * Finds the tasks that best match the given words, allowing for typos,
+     * ranked by how closely they match.
+     *
+     * @param query The words to search for (case-insensitive).
+     * @param limit The most tasks to return.
+     * @return The best matching tasks, best first.
+     */
+    public List<Task> findFuzzy(String query, int limit) {
+        ArrayList<Task> matchingTasks = getSearchIndex().findFuzzy(query, limit);
+        if (Metrics.ENABLED) {
+            Metrics.FIND_MATCHED.record(matchingTasks.size());
+        }
+        return matchingTasks;
+    }
+
+    /**
+     * Finds deadlines due on the given date.
+     *
+     * @param date The due date.
+     * @return A new TaskList containing only the matching tasks.
+     */
+    public TaskList findDue(LocalDate date) {
+        return new TaskList(getDateIndex().findDue(date));
+    }
+
+    /**
+     * Finds deadlines due within, and events overlapping, the given range.
+     *
+     * @param from The first date of the range.
+     * @param to   The last date of the range.
+     * @return A new TaskList containing only the matching tasks.
+     */
+    public TaskList findBetween(LocalDate from, LocalDate to) {
+        return new TaskList(getDateIndex().findBetween(from, to));
+    }
+
+    /**
+     * Finds events taking place on the given date.
+     *
+     * @param date The date.
+     * @return A new TaskList containing only the matching tasks.
+     */
+    public TaskList findOverlapping(LocalDate date) {
+        return new TaskList(getDateIndex().findOverlapping(date));
+    }
+
+    /**
+     * Finds the tasks with the given status and type and every given tag.
+     *
+     * @param status The status to match, or null to match any.
+     * @param type   The type to match, or null to match any.
+     * @param tags   The tags to match, in lower case.
+     * @return The ids of the matching tasks, as a new set.
+     */
+    public IdBitmap filter(FilterIndex.Status status, FilterIndex.Type type, List<String> tags) {
+        return getFilterIndex().filter(status, type, tags);
+    }
+
+    /**
+     * Returns the tasks with the given ids. Ids of tasks no longer in the
+     * list are skipped.
+     *
+     * @param ids The task ids, in ascending order.
+     * @return The tasks, in list order.
+     */
+    public List<Task> getByIds(int[] ids) {
+        ArrayList<Task> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            int slot = slotOfId(id);
+            if (slot >= 0 && !isRemoved(slot)) {
+                found.add(tasks.get(slot));
             }
         }
-        return new TaskList(matchingTasks);
+        return found;
+    }
+
+    /**
+     * Returns the tasks whose ids fall in a range. Only the tasks in the
+     * range are read, even from a store that reads tasks lazily.
+     *
+     * @param firstId The lowest id in the range.
+     * @param endId   The id after the highest id in the range.
+     * @return The tasks, in list order.
+     */
+    public List<Task> getTasksWithIds(int firstId, int endId) {
+        ArrayList<Task> found = new ArrayList<>();
+        int end = tasks.indexOfFirstIdAtLeast(endId);
+        for (int slot = tasks.indexOfFirstIdAtLeast(firstId); slot < end; slot++) {
+            if (!isRemoved(slot)) {
+                found.add(tasks.get(slot));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Passes the id and date of every undone deadline and event whose id is
+     * in a range to a consumer, in list order. The dates are read from the
+     * store, which builds no tasks if it does not hold them as objects.
+     *
+     * @param firstId  The lowest id to include.
+     * @param endId    The id after the highest id to include.
+     * @param consumer The consumer of the dates.
+     */
+    public void forEachUndoneDate(int firstId, int endId, TaskStore.DateConsumer consumer) {
+        int end = tasks.indexOfFirstIdAtLeast(endId);
+        int slot = tasks.indexOfFirstIdAtLeast(firstId);
+        while (slot < end) {
+            int removed = removedSlots == null ? -1 : removedSlots.nextSetBit(slot);
+            int liveEnd = removed < 0 ? end : Math.min(removed, end);
+            tasks.forEachUndoneDate(slot, liveEnd, consumer);
+            slot = liveEnd + 1;
+        }
+    }
+
+    /**
+     * Returns the filter index, building it from the current tasks on first
+     * use.
+     *
+     * @return The filter index.
+     */
+    private FilterIndex getFilterIndex() {
+        if (filterIndex == null) {
+            filterIndex = new FilterIndex();
+            for (int slot = 0; slot < tasks.size(); slot++) {
+                if (!isRemoved(slot)) {
+                    filterIndex.add(tasks.get(slot));
+                }
+            }
+        }
+        return filterIndex;
+    }
+
+    /**
+     * Returns the date index, building it from the current tasks on first
+     * use.
+     *
+     * @return The date index.
+     */
+    private DateIndex getDateIndex() {
+        if (dateIndex == null) {
+            dateIndex = new DateIndex(this::tasksWithIds);
+            for (int slot = 0; slot < tasks.size(); slot++) {
+                if (!isRemoved(slot)) {
+                    dateIndex.add(tasks.get(slot));
+                }
+            }
+        }
+        return dateIndex;
+    }
+
+    /**
+     * Returns the search index, building it from the current tasks on first
+     * use. Lists that are never searched, such as search results, never pay
+     * for an index.
+     *
+     * @return The search index.
+     */
+    private SearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex(this::tasksWithIds);
+            for (int slot = 0; slot < tasks.size(); slot++) {
+                if (!isRemoved(slot)) {
+                    searchIndex.add(tasks.get(slot));
+                }
+            }
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Returns the number of live tasks.
+     *
+     * @return The number of tasks that have not been removed.
+     */
+    private int liveSize() {
+        return tasks.size() - removedCount;
+    }
+
+    /**
+     * Checks whether a slot of the store holds a removed task.
+     *
+     * @param slot The 0-based slot.
+     * @return True if the task in the slot has been removed.
+     */
+    private boolean isRemoved(int slot) {
+        return removedSlots != null && removedSlots.get(slot);
+    }
+
+    /**
+     * Marks the task in a slot as removed and drops it from the indexes.
+     *
+     * @param slot The 0-based slot.
+     * @return The removed task.
+     */
+    private Task removeSlot(int slot) {
+        Task task = tasks.get(slot);
+        if (liveCounts == null) {
+            buildLiveCounts();
+        }
+        removedSlots.set(slot);
+        removedCount++;
+        addLiveCount(slot, -1);
+        if (slotsById != null) {
+            slotsById.remove(task.getId());
+        }
+        if (searchIndex != null) {
+            searchIndex.remove(task);
+        }
+        if (dateIndex != null) {
+            dateIndex.remove(task);
+        }
+        if (filterIndex != null) {
+            filterIndex.remove(task);
+        }
+        if (reminders != null) {
+            reminders.cancel(task.getId());
+        }
+        return task;
+    }
+
+    /**
+     * Returns the tasks with the given ids, for the indexes, which hold ids
+     * rather than tasks. Ids in ascending order are each looked for from
+     * the slot after the one before, so no map from ids is needed.
+     *
+     * @param ids The ids of tasks in the list.
+     * @return The tasks, in the same order.
+     */
+    private ArrayList<Task> tasksWithIds(int[] ids) {
+        ArrayList<Task> found = new ArrayList<>(ids.length);
+        int fromSlot = 0;
+        int previousId = Integer.MIN_VALUE;
+        for (int id : ids) {
+            int slot = slotOfId(id, id < previousId ? 0 : fromSlot);
+            found.add(tasks.get(slot));
+            fromSlot = slot + 1;
+            previousId = id;
+        }
+        return found;
+    }
+
+    /**
+     * Finds the slot holding the task with the given id, live or removed,
+     * at or after a slot. Ids increase by at least one from slot to slot,
+     * so the task is at most as many slots on as its id is above the id at
+     * that slot. That slot is checked first, which finds the task at once
+     * when no ids are missing in between; otherwise the slots up to it are
+     * searched by binary search.
+     *
+     * @param id       The task id.
+     * @param fromSlot The first slot that may hold it.
+     * @return The 0-based slot, or -1 if no slot from fromSlot holds that id.
+     */
+    private int slotOfId(int id, int fromSlot) {
+        if (fromSlot >= tasks.size()) {
+            return -1;
+        }
+        int low = fromSlot;
+        int high = (int) Math.min(tasks.size() - 1, (long) fromSlot + id - tasks.getId(fromSlot));
+        if (high >= low && tasks.getId(high) == id) {
+            return high;
+        }
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = tasks.getId(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slot holding the task with the given id, live or removed.
+     *
+     * @param id The task id.
+     * @return The 0-based slot, or -1 if no slot holds that id.
+     */
+    private int slotOfId(int id) {
+        return slotOfId(id, 0);
+    }
+
+    /**
+     * Compacts the store once tombstones outnumber live tasks.
+     */
+    private void compactIfSparse() {
+        if (removedCount >= MIN_TOMBSTONES_TO_COMPACT && removedCount > liveSize()) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the slot of the store that holds the task at a position, by
+     * descending the Fenwick tree to the slot with the given live rank.
+     *
+     * @param index The 0-based index of the task.
+     * @return The 0-based slot of the task.
+     */
+    private int slotAt(int index) {
+        if (index < 0 || index >= liveSize()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + liveSize());
+        }
+        if (liveCounts == null) {
+            return index;
+        }
+        int slotCount = tasks.size();
+        int position = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(slotCount); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= slotCount && liveCounts[next] < remaining) {
+                position = next;
+                remaining -= liveCounts[next];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the number of live tasks in the first slots of the store.
+     *
+     * @param slotCount The number of slots to count.
+     * @return The number of those slots holding tasks that are not removed.
+     */
+    private int countLive(int slotCount) {
+        int count = 0;
+        for (int i = slotCount; i > 0; i -= i & -i) {
+            count += liveCounts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Changes the live count of a slot in the Fenwick tree.
+     *
+     * @param slot  The 0-based slot.
+     * @param delta The change in its count.
+     */
+    private void addLiveCount(int slot, int delta) {
+        for (int i = slot + 1; i <= tasks.size(); i += i & -i) {
+            liveCounts[i] += delta;
+        }
+    }
+
+    /**
+     * Extends the Fenwick tree with a new live slot at the end of the store.
+     *
+     * @param slot The 0-based slot, which must be the last one.
+     */
+    private void appendLiveCount(int slot) {
+        int i = slot + 1;
+        if (i >= liveCounts.length) {
+            liveCounts = Arrays.copyOf(liveCounts, Math.max(i + 1, liveCounts.length * 2));
+        }
+        liveCounts[i] = 1 + countLive(i - 1) - countLive(i - (i & -i));
+    }
+
+    /**
+     * Builds the Fenwick tree when the first task is removed. Every slot is
+     * live at that point, so each node counts the slots it covers.
+     */
+    private void buildLiveCounts() {
+        int slotCount = tasks.size();
+        liveCounts = new int[Math.max(slotCount + 1, 16)];
+        for (int i = 1; i <= slotCount; i++) {
+            liveCounts[i] = i & -i;
+        }
+        removedSlots = new BitSet(slotCount);
+    }
+
+    /**
+     * Drops every removed task from the store in one pass. Positions and
+     * slots are the same again afterwards.
+     */
+    private void compact() {
+        tasks.removeAll(removedSlots);
+        removedSlots = null;
+        removedCount = 0;
+        liveCounts = null;
+        if (slotsById != null) {
+            buildSlotsById();
+        }
+    }
+
+    /**
+     * Builds the map from task ids to the slots that hold them.
+     */
+    private void buildSlotsById() {
+        HashMap<Integer, Integer> slots = new HashMap<>();
+        for (int slot = 0; slot < tasks.size(); slot++) {
+            if (!isRemoved(slot)) {
+                slots.put(tasks.getId(slot), slot);
+            }
+        }
+        slotsById = slots;
+    }
+
+    /**
+     * Assigns the next id to a task that does not have one yet.
+     *
+     * @param task The task to assign an id to.
+     */
+    private void assignId(Task task) {
+        if (task.getId() == Task.UNASSIGNED_ID) {
+            task.setId(nextId++);
+        } else {
+            nextId = Math.max(nextId, task.getId() + 1);
+        }
+    }
+
+    /**
+     * Builds a stream of the tasks whose descriptions contain a keyword.
+     * When metrics are on, the tasks the stream examines and the tasks that
+     * match are counted, and recorded once the stream is closed.
+     *
+     * @param keyword The keyword to search for (case-insensitive).
+     * @param search  Builds the stream from a test for matching tasks.
+     * @return The matching tasks.
+     */
+    protected static Stream<Task> searchStream(String keyword, Function<Predicate<Task>, Stream<Task>> search) {
+        Predicate<Task> matches = descriptionContains(keyword);
+        if (!Metrics.ENABLED) {
+            return search.apply(matches);
+        }
+        LongAdder scanned = new LongAdder();
+        LongAdder matched = new LongAdder();
+        return search.apply(task -> {
+            scanned.increment();
+            boolean isMatch = matches.test(task);
+            if (isMatch) {
+                matched.increment();
+            }
+            return isMatch;
+        }).onClose(() -> {
+            Metrics.FIND_SCANNED.record(scanned.sum());
+            Metrics.FIND_MATCHED.record(matched.sum());
+        });
+    }
+
+    /**
+     * Returns a test for descriptions containing a keyword, ignoring case.
+     *
+     * @param keyword The keyword.
+     * @return The test.
+     */
+    private static Predicate<Task> descriptionContains(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        return task -> task.getDescription().toLowerCase().contains(lowerKeyword);
     }
 }
@@ -0,0 +1,150 @@
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Holds the tasks behind a TaskList.
+ * Implementations may keep tasks as objects, decode them on demand from a
+ * data file, or pack them into primitive arrays; TaskList only relies on
+ * positional access through this interface.
+ */
+public interface TaskStore {
+    /**
+     * Returns the number of tasks in the store.
+     *
+     * @return The number of tasks.
+     */
+    int size();
+
+    /**
+     * Returns the task at the specified index.
+     *
+     * @param index The 0-based index of the task.
+     * @return The task at the given index.
+     */
+    Task get(int index);
+
+    /**
+     * Returns the id of the task at the specified index, without building
+     * the task if the store does not hold it as an object.
+     *
+     * @param index The 0-based index of the task.
+     * @return The task id.
+     */
+    int getId(int index);
+
+    /**
+     * Returns the index of the first task whose id is at least the given
+     * id, by binary search, as ids increase in store order. Stores that read
+     * tasks only when they are accessed may answer without reading any.
+     *
+     * @param id The task id.
+     * @return The 0-based index, or size() if every task has a smaller id.
+     */
+    default int indexOfFirstIdAtLeast(int id) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getId(middle) < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Passes the id and date of every undone deadline and event from one
+     * index up to another to a consumer, in store order. Stores that do not
+     * hold their tasks as objects read the dates directly, without building
+     * the tasks.
+     *
+     * @param from     The 0-based index of the first task.
+     * @param to       The index after the last task.
+     * @param consumer The consumer of the dates.
+     */
+    default void forEachUndoneDate(int from, int to, DateConsumer consumer) {
+        for (int i = from; i < to; i++) {
+            acceptUndoneDate(get(i), consumer);
+        }
+    }
+
+    /**
+     * Passes the id and date of a task to a consumer if it is an undone
+     * deadline or event.
+     *
+     * @param task     The task.
+     * @param consumer The consumer of the date.
+     */
+    static void acceptUndoneDate(Task task, DateConsumer consumer) {
+        if (task.isDone()) {
+            return;
+        }
+        if (task instanceof Deadline) {
+            consumer.accept(task.getId(), false, ((Deadline) task).getByDate().toEpochDay());
+        } else if (task instanceof Event) {
+            consumer.accept(task.getId(), true, ((Event) task).getFromDate().toEpochDay());
+        }
+    }
+
+    /**
+     * Returns whether tasks may be read from several threads at once, as
+     * long as nothing changes the store meanwhile. Stores that cache or
+     * decode tasks on reads are not safe to read this way.
+     *
+     * @return True if concurrent calls to get are safe.
+     */
+    boolean supportsConcurrentReads();
+
+    /**
+     * Appends a task to the store.
+     *
+     * @param task The task to add.
+     */
+    void add(Task task);
+
+    /**
+     * Removes the tasks at the given indexes in a single pass, moving the
+     * remaining tasks down to close the gaps.
+     *
+     * @param indexes The 0-based indexes of the tasks to remove.
+     */
+    void removeAll(BitSet indexes);
+
+    /**
+     * Inserts tasks so that they end up at the given indexes, moving the
+     * other tasks up to make room, in a single pass. This is the reverse of
+     * removeAll.
+     *
+     * @param indexes The 0-based indexes the tasks will have afterwards, in
+     *                ascending order.
+     * @param tasks   The tasks to insert, in the same order.
+     */
+    void insertAll(int[] indexes, List<Task> tasks);
+
+    /**
+     * Marks the task at the specified index as done or not done.
+     *
+     * @param index  The 0-based index of the task.
+     * @param isDone Whether the task is done.
+     * @return The updated task.
+     */
+    Task setDone(int index, boolean isDone);
+
+    /**
+     * Receives the dates of undone deadlines and events from a store.
+     */
+    @FunctionalInterface
+    interface DateConsumer {
+        /**
+         * Accepts the date of one task.
+         *
+         * @param id      The task id.
+         * @param isEvent Whether the task is an event rather than a deadline.
+         * @param day     The epoch day the deadline is due or the event
+         *                starts.
+         */
+        void accept(int id, boolean isEvent, long day);
+    }
+}
@@ -0,0 +1,71 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+/**
+ * Remembers the Task objects a store has handed out, without keeping them
+ * alive.
+ * Stores that build Task objects on demand use it to return the same object
+ * for a task for as long as anyone still holds it, so that a change made
+ * through the store is visible to every holder.
+ */
+public class TaskViewCache {
+    private final HashMap<Integer, TaskReference> tasks = new HashMap<>();
+    private final ReferenceQueue<Task> collectedTasks = new ReferenceQueue<>();
+
+    /**
+     * Returns the object previously handed out for a key, if it is still
+     * reachable.
+     *
+     * @param key The key of the task in its store.
+     * @return The task, or null if there is none.
+     */
+    public Task get(int key) {
+        expungeCollectedTasks();
+        TaskReference reference = tasks.get(key);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Records the object handed out for a key.
+     *
+     * @param key  The key of the task in its store.
+     * @param task The task object.
+     */
+    public void put(int key, Task task) {
+        tasks.put(key, new TaskReference(key, task, collectedTasks));
+    }
+
+    /**
+     * Forgets the object handed out for a key.
+     *
+     * @param key The key of the task in its store.
+     */
+    public void remove(int key) {
+        tasks.remove(key);
+    }
+
+    /**
+     * Drops entries for objects that have been garbage collected.
+     */
+    private void expungeCollectedTasks() {
+        TaskReference reference;
+        while ((reference = (TaskReference) collectedTasks.poll()) != null) {
+            if (tasks.get(reference.key) == reference) {
+                tasks.remove(reference.key);
+            }
+        }
+    }
+
+    /**
+     * A weak reference to a task that remembers its key.
+     */
+    private static class TaskReference extends WeakReference<Task> {
+        private final int key;
+
+        TaskReference(int key, Task task, ReferenceQueue<Task> queue) {
+            super(task, queue);
+            this.key = key;
+        }
+    }
+}
@@ -1,20 +1,76 @@
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * Handles all interactions with the user.
  * Reads user input and displays messages to the console.
+ * Each response is built in a reusable buffer and written out in one go, so
+ * the console is flushed once per response rather than once per line.
+ * Warnings, which may come from the background persistence thread, and
+ * reminders, which come from the reminder thread, are written directly
+ * instead.
  */
 public class Ui {
     private static final int LINE_LENGTH = 60;
     private static final char LINE_SEPARATOR = '-';
+    private static final String SEPARATOR_LINE = String.valueOf(LINE_SEPARATOR).repeat(LINE_LENGTH);
+    private static final String NEWLINE = System.lineSeparator();
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = 200_000_000L;
+    private static final int CHANGED_TASKS_SHOWN = 10;
 
     private final Scanner scanner;
+    private final PrintStream out;
+    private final boolean isSilent;
+    private final StringBuilder buffer = new StringBuilder();
+    private final TaskFormatter formatter = new TaskFormatter();
+    private final TaskFormatter reminderFormatter = new TaskFormatter();
+    private long renderStartNanos;
 
     /**
-     * Constructs a new Ui and initializes the input scanner.
+     * Constructs a new Ui that reads from standard input and writes to
+     * standard output.
      */
     public Ui() {
-        this.scanner = new Scanner(System.in);
+        this(System.in, System.out);
+    }
+
+    /**
+     * Constructs a new Ui that reads from and writes to the given streams.
+     *
+     * @param in  The stream to read commands from.
+     * @param out The stream to write responses to.
+     */
+    public Ui(InputStream in, PrintStream out) {
+        this(in, out, false);
+    }
+
+    /**
+     * Constructs a new Ui.
+     *
+     * @param in       The stream to read commands from.
+     * @param out      The stream to write responses to.
+     * @param isSilent Whether to skip formatting and writing responses to
+     *                 commands. Warnings are still shown.
+     */
+    private Ui(InputStream in, PrintStream out, boolean isSilent) {
+        this.scanner = new Scanner(in);
+        this.out = out;
+        this.isSilent = isSilent;
+    }
+
+    /**
+     * Returns a Ui that reads nothing and shows only warnings, for running
+     * commands whose responses are not wanted.
+     *
+     * @return The silent Ui.
+     */
+    public static Ui silent() {
+        return new Ui(InputStream.nullInputStream(), System.out, true);
     }
 
     /**
@@ -30,19 +86,27 @@ public class Ui {
      * Prints the welcome message when the chatbot starts.
      */
     public void showWelcome() {
-        showLine();
-        System.out.println("Hello! I'm Encik");
-        System.out.println("What can I do for you?");
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText("Hello! I'm Encik");
+        appendText("What can I do for you?");
+        appendLine();
+        flush();
     }
 
     /**
      * Prints the exit message when the chatbot ends.
      */
     public void showExit() {
-        showLine();
-        System.out.println("Bye. Hope to see you again soon!");
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText("Bye. Hope to see you again soon!");
+        appendLine();
+        flush();
     }
 
     /**
@@ -51,9 +115,13 @@ public class Ui {
      * @param message The error message to display.
      */
     public void showError(String message) {
-        showLine();
-        System.out.println(message);
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText(message);
+        appendLine();
+        flush();
     }
 
     /**
@@ -63,11 +131,15 @@ public class Ui {
      * @param taskCount The total number of tasks after adding.
      */
     public void showTaskAdded(Task task, int taskCount) {
-        showLine();
-        System.out.println("Got it. I've added this task:");
-        System.out.println("  " + task);
-        System.out.println("Now you have " + taskCount + " tasks in the list.");
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText("Got it. I've added this task:");
+        appendTask("  ", task);
+        appendTaskCount(taskCount);
+        appendLine();
+        flush();
     }
 
     /**
@@ -77,11 +149,15 @@ public class Ui {
      * @param taskCount The total number of tasks remaining.
      */
     public void showTaskDeleted(Task task, int taskCount) {
-        showLine();
-        System.out.println("Noted. I've removed this task:");
-        System.out.println("  " + task);
-        System.out.println("Now you have " + taskCount + " tasks in the list.");
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText("Noted. I've removed this task:");
+        appendTask("  ", task);
+        appendTaskCount(taskCount);
+        appendLine();
+        flush();
     }
 
     /**
@@ -90,10 +166,14 @@ public class Ui {
      * @param task The task that was marked.
      */
     public void showTaskMarked(Task task) {
-        showLine();
-        System.out.println("Nice! I've marked this task as done:");
-        System.out.println("  " + task);
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText("Nice! I've marked this task as done:");
+        appendTask("  ", task);
+        appendLine();
+        flush();
     }
 
     /**
@@ -102,10 +182,119 @@ public class Ui {
      * @param task The task that was unmarked.
      */
     public void showTaskUnmarked(Task task) {
-        showLine();
-        System.out.println("OK, I've marked this task as not done yet:");
-        System.out.println("  " + task);
-        showLine();
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendText("OK, I've marked this task as not done yet:");
+        appendTask("  ", task);
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays a message indicating several tasks have been marked as done.
+     *
+     * @param tasks The tasks that were marked.
+     */
+    public void showTasksMarked(List<Task> tasks) {
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendChangedTasks("Nice! I've marked " + tasks.size() + " tasks as done:", tasks);
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays a message indicating several tasks have been unmarked.
+     *
+     * @param tasks The tasks that were unmarked.
+     */
+    public void showTasksUnmarked(List<Task> tasks) {
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendChangedTasks("OK, I've marked " + tasks.size() + " tasks as not done yet:", tasks);
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays a message indicating several tasks have been deleted.
+     *
+     * @param tasks     The tasks that were removed.
+     * @param taskCount The total number of tasks remaining.
+     */
+    public void showTasksDeleted(List<Task> tasks, int taskCount) {
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        appendChangedTasks("Noted. I've removed " + tasks.size() + " tasks:", tasks);
+        appendTaskCount(taskCount);
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays the changes made in undoing a command.
+     *
+     * @param mutations The changes made, in order.
+     * @param taskCount The total number of tasks remaining in the list.
+     */
+    public void showUndone(List<Mutation> mutations, int taskCount) {
+        showReverted("Undone!", mutations, taskCount);
+    }
+
+    /**
+     * Displays the changes made in redoing a command.
+     *
+     * @param mutations The changes made, in order.
+     * @param taskCount The total number of tasks remaining in the list.
+     */
+    public void showRedone(List<Mutation> mutations, int taskCount) {
+        showReverted("Redone!", mutations, taskCount);
+    }
+
+    /**
+     * Displays the changes made in undoing or redoing a command, which are
+     * all of one type.
+     *
+     * @param heading   The first words of the response.
+     * @param mutations The changes made, in order.
+     * @param taskCount The total number of tasks remaining in the list.
+     */
+    private void showReverted(String heading, List<Mutation> mutations, int taskCount) {
+        if (isSilent) {
+            return;
+        }
+        ArrayList<Task> changedTasks = new ArrayList<>(mutations.size());
+        for (Mutation mutation : mutations) {
+            changedTasks.add(mutation.getTask());
+        }
+        String change;
+        switch (mutations.get(0).getType()) {
+            case ADD:
+                change = " I've put back " + changedTasks.size() + " tasks:";
+                break;
+            case DELETE:
+                change = " I've removed " + changedTasks.size() + " tasks:";
+                break;
+            case MARK:
+                change = " I've marked " + changedTasks.size() + " tasks as done:";
+                break;
+            default:
+                change = " I've marked " + changedTasks.size() + " tasks as not done yet:";
+                break;
+        }
+        appendLine();
+        appendChangedTasks(heading + change, changedTasks);
+        appendTaskCount(taskCount);
+        appendLine();
+        flush();
     }
 
     /**
@@ -114,17 +303,85 @@ public class Ui {
      * @param tasks The task list to display.
      */
     public void showTaskList(TaskList tasks) {
-        showLine();
-        if (tasks.size() == 0) {
-            System.out.println("There are no tasks in your list.");
-            showLine();
+        if (isSilent) {
+            return;
+        }
+        List<Task> list = tasks.getTasks();
+        appendLine();
+        if (list.isEmpty()) {
+            appendText("There are no tasks in your list.");
+        } else {
+            appendText("Here are the tasks in your list:");
+            appendNumberedTasks(list, 0, list.size());
+        }
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays one page of the task list, numbered by position in the whole
+     * list.
+     *
+     * @param tasks    The task list to display.
+     * @param page     The 1-based page number. Pages past the end of the
+     *                 list show the last page.
+     * @param pageSize The number of tasks per page.
+     */
+    public void showTaskPage(TaskList tasks, int page, int pageSize) {
+        if (isSilent) {
+            return;
+        }
+        List<Task> list = tasks.getTasks();
+        if (list.isEmpty()) {
+            showTaskList(tasks);
             return;
         }
-        System.out.println("Here are the tasks in your list:");
-        for (int i = 0; i < tasks.size(); i++) {
-            System.out.println((i + 1) + "." + tasks.get(i));
+        int pageCount = (list.size() + pageSize - 1) / pageSize;
+        page = Math.min(page, pageCount);
+        int from = (page - 1) * pageSize;
+        int to = Math.min(from + pageSize, list.size());
+        appendLine();
+        appendText("Here are the tasks in your list:");
+        appendNumberedTasks(list, from, to);
+        buffer.append("Showing tasks ").append(from + 1).append('-').append(to).append(" of ").append(list.size())
+                .append(" (page ").append(page).append(" of ").append(pageCount).append(").")
+                .append(NEWLINE);
+        if (pageCount > 1) {
+            appendText("Use list <page> to see another page.");
         }
-        showLine();
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays one page of the tasks that match a filter, numbered by
+     * position among all the matches.
+     *
+     * @param tasks     The matching tasks on the page.
+     * @param from      The number of matches before the page.
+     * @param total     The number of matches.
+     * @param page      The 1-based page number.
+     * @param pageCount The number of pages.
+     */
+    public void showFilteredTasks(List<Task> tasks, int from, int total, int page, int pageCount) {
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        if (total == 0) {
+            appendText("No matching tasks found.");
+        } else {
+            appendText("Here are the matching tasks in your list:");
+            appendNumberedTasks(tasks, 0, tasks.size(), from + 1);
+        }
+        if (pageCount > 1) {
+            buffer.append("Showing tasks ").append(from + 1).append('-').append(from + tasks.size())
+                    .append(" of ").append(total).append(" (page ").append(page).append(" of ")
+                    .append(pageCount).append(").").append(NEWLINE);
+            appendText("Add a page number to the same list command to see another page.");
+        }
+        appendLine();
+        flush();
     }
 
     /**
@@ -133,17 +390,108 @@ public class Ui {
      * @param tasks The list of matching tasks.
      */
     public void showFoundTasks(TaskList tasks) {
-        showLine();
-        if (tasks.size() == 0) {
-            System.out.println("No matching tasks found.");
-            showLine();
+        if (isSilent) {
+            return;
+        }
+        List<Task> list = tasks.getTasks();
+        appendLine();
+        if (list.isEmpty()) {
+            appendText("No matching tasks found.");
+        } else {
+            appendText("Here are the matching tasks in your list:");
+            appendNumberedTasks(list, 0, list.size());
+        }
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays matching tasks as a search yields them, stopping after the
+     * given number, and says so if there were more matches. Matches are
+     * written out at least every few hundred milliseconds, so a slow search
+     * over a long list shows its first results without waiting for the rest.
+     *
+     * @param matches The matching tasks.
+     * @param limit   The most tasks to show.
+     */
+    public void showFoundTasks(Iterator<Task> matches, int limit) {
+        if (isSilent) {
+            return;
+        }
+        appendLine();
+        if (!matches.hasNext()) {
+            appendText("No matching tasks found.");
+            appendLine();
+            flush();
+            return;
+        }
+        appendText("Here are the matching tasks in your list:");
+        long lastFlush = System.nanoTime();
+        int count = 0;
+        while (count < limit && matches.hasNext()) {
+            Task task = matches.next();
+            count++;
+            appendTaskId(formatter.appendTask(buffer.append(count).append('.'), task), task).append(NEWLINE);
+            if (buffer.length() >= FLUSH_THRESHOLD || System.nanoTime() - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                writeBuffer();
+                out.flush();
+                lastFlush = System.nanoTime();
+            }
+        }
+        if (matches.hasNext()) {
+            appendText("Showing the first " + limit + " matches.");
+        }
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Displays a reminder about tasks that have come due. The reminder is
+     * built apart from the response buffer, with a formatter of its own, and
+     * written in one go, as it may be shown while a command is running.
+     *
+     * @param message The message to show before the tasks.
+     * @param tasks   The tasks.
+     */
+    public synchronized void showReminder(String message, List<Task> tasks) {
+        if (isSilent) {
+            return;
+        }
+        StringBuilder reminder = new StringBuilder();
+        reminder.append(SEPARATOR_LINE).append(NEWLINE).append(message).append(NEWLINE);
+        int shown = Math.min(tasks.size(), CHANGED_TASKS_SHOWN);
+        for (int i = 0; i < shown; i++) {
+            Task task = tasks.get(i);
+            appendTaskId(reminderFormatter.appendTask(reminder.append("  "), task), task).append(NEWLINE);
+        }
+        if (tasks.size() > shown) {
+            reminder.append("  ...and ").append(tasks.size() - shown).append(" more.").append(NEWLINE);
+        }
+        reminder.append(SEPARATOR_LINE).append(NEWLINE);
+        out.print(reminder);
+        out.flush();
+    }
+
+    /**
+     * Displays the metrics recorded since Encik started, one per line.
+     *
+     * @param lines The descriptions of the metrics.
+     */
+    public void showStats(List<String> lines) {
+        if (isSilent) {
             return;
         }
-        System.out.println("Here are the matching tasks in your list:");
-        for (int i = 0; i < tasks.size(); i++) {
-            System.out.println((i + 1) + "." + tasks.get(i));
+        appendLine();
+        if (lines.isEmpty()) {
+            appendText("Nothing has been measured yet.");
+        } else {
+            appendText("Here is where the time has gone since Encik started:");
+            for (String line : lines) {
+                appendText("  " + line);
+            }
         }
-        showLine();
+        appendLine();
+        flush();
     }
 
     /**
@@ -152,31 +500,185 @@ public class Ui {
      * @param line The corrupted line.
      */
     public void showLoadingWarning(String line) {
-        System.out.println("Warning: Skipping corrupted line: " + line);
+        out.println("Warning: Skipping corrupted line: " + line);
     }
 
     /**
      * Displays a warning about file loading failure.
      */
     public void showLoadingError() {
-        System.out.println("Warning: Unable to load tasks from file.");
+        out.println("Warning: Unable to load tasks from file.");
     }
 
     /**
      * Displays a warning about file saving failure.
      */
     public void showSavingError() {
-        System.out.println("Warning: Unable to save tasks to file.");
+        out.println("Warning: Unable to save tasks to file.");
+    }
+
+    /**
+     * Displays a warning that the journal could not be compacted into a new
+     * snapshot, so that it will be retried at the next compaction.
+     */
+    public void showCompactionError() {
+        out.println("Warning: Unable to compact the task journal, retrying at the next compaction.");
+    }
+
+    /**
+     * Displays a summary of a batch run.
+     *
+     * @param commandCount  The number of commands run.
+     * @param failureCount  The number of commands that failed.
+     * @param firstFailure  The line number of the first failed command, or 0
+     *                      if none failed.
+     * @param elapsedMillis The time taken in milliseconds.
+     */
+    public void showBatchSummary(long commandCount, long failureCount, long firstFailure, long elapsedMillis) {
+        appendLine();
+        appendText("Ran " + commandCount + " commands in " + elapsedMillis + " ms.");
+        if (failureCount > 0) {
+            appendText(failureCount + " commands failed, the first on line " + firstFailure + ".");
+        }
+        appendLine();
+        flush();
     }
 
     /**
      * Prints a horizontal separator line.
      */
     public void showLine() {
-        for (int i = 0; i < LINE_LENGTH; i++) {
-            System.out.print(LINE_SEPARATOR);
+        if (isSilent) {
+            return;
         }
-        System.out.println();
+        appendLine();
+        flush();
+    }
+
+    /**
+     * Appends a horizontal separator line to the response.
+     */
+    private void appendLine() {
+        if (Metrics.ENABLED && renderStartNanos == 0) {
+            renderStartNanos = System.nanoTime();
+        }
+        buffer.append(SEPARATOR_LINE).append(NEWLINE);
+    }
+
+    /**
+     * Appends a line of text to the response.
+     *
+     * @param text The text.
+     */
+    private void appendText(String text) {
+        buffer.append(text).append(NEWLINE);
+    }
+
+    /**
+     * Appends a task on its own line to the response.
+     *
+     * @param prefix The text to show before the task.
+     * @param task   The task.
+     */
+    private void appendTask(String prefix, Task task) {
+        appendTaskId(formatter.appendTask(buffer.append(prefix), task), task).append(NEWLINE);
+    }
+
+    /**
+     * Appends a task's id after the task, so that it can be referred to as
+     * "#id" in later commands.
+     *
+     * @param line The response line holding the task.
+     * @param task The task.
+     * @return The response line.
+     */
+    private static StringBuilder appendTaskId(StringBuilder line, Task task) {
+        return line.append(" (#").append(task.getId()).append(')');
+    }
+
+    /**
+     * Appends the outcome of a command that changed several tasks, showing
+     * only the first few of a long list of tasks.
+     *
+     * @param message The message to show if any task changed.
+     * @param tasks   The tasks that changed.
+     */
+    private void appendChangedTasks(String message, List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            appendText("No tasks needed changing.");
+            return;
+        }
+        appendText(message);
+        int shown = Math.min(tasks.size(), CHANGED_TASKS_SHOWN);
+        for (int i = 0; i < shown; i++) {
+            appendTask("  ", tasks.get(i));
+        }
+        if (tasks.size() > shown) {
+            appendText("  ...and " + (tasks.size() - shown) + " more.");
+        }
+    }
+
+    /**
+     * Appends the number of tasks in the list to the response.
+     *
+     * @param taskCount The number of tasks.
+     */
+    private void appendTaskCount(int taskCount) {
+        buffer.append("Now you have ").append(taskCount).append(" tasks in the list.").append(NEWLINE);
+    }
+
+    /**
+     * Appends a range of tasks to the response, each numbered by its
+     * position in the list. Long listings are written out in chunks so that
+     * the buffer stays small.
+     *
+     * @param tasks The tasks.
+     * @param from  The index of the first task to append.
+     * @param to    The index after the last task to append.
+     */
+    private void appendNumberedTasks(List<Task> tasks, int from, int to) {
+        appendNumberedTasks(tasks, from, to, 1);
+    }
+
+    /**
+     * Appends a range of tasks to the response, numbered from the given
+     * number.
+     *
+     * @param tasks       The tasks.
+     * @param from        The index of the first task to append.
+     * @param to          The index after the last task to append.
+     * @param firstNumber The number to give the task at index 0.
+     */
+    private void appendNumberedTasks(List<Task> tasks, int from, int to, int firstNumber) {
+        for (int i = from; i < to; i++) {
+            Task task = tasks.get(i);
+            appendTaskId(formatter.appendTask(buffer.append(i + firstNumber).append('.'), task), task)
+                    .append(NEWLINE);
+            if (buffer.length() >= FLUSH_THRESHOLD) {
+                writeBuffer();
+            }
+        }
+    }
+
+    /**
+     * Writes the response built so far and flushes the output stream,
+     * recording how long the response took to render.
+     */
+    private void flush() {
+        writeBuffer();
+        out.flush();
+        if (Metrics.ENABLED && renderStartNanos != 0) {
+            Metrics.UI_RENDER.recordSince(renderStartNanos);
+            renderStartNanos = 0;
+        }
+    }
+
+    /**
+     * Writes the response built so far and clears the buffer for reuse.
+     */
+    private void writeBuffer() {
+        out.append(buffer);
+        buffer.setLength(0);
     }
 
     /**
@@ -0,0 +1,205 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Remembers recent changes to the task list so that they can be undone and
+ * redone.
+ *
+ * Each change is kept as the deltas a command made rather than as a copy of
+ * the list: the positions of the tasks it marked or unmarked, and the
+ * positions and tasks it added or deleted. Undoing or redoing a change
+ * applies these deltas in one pass and returns them as mutations, so that
+ * they are persisted like any other change, through the journal where one is
+ * used.
+ *
+ * The memory the history takes is estimated as changes are recorded, and
+ * the oldest changes are forgotten once it exceeds the budget.
+ */
+public class UndoHistory {
+    public static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+    private static final int CHANGE_OVERHEAD_BYTES = 64;
+    private static final int TASK_OVERHEAD_BYTES = 96;
+
+    private final ArrayDeque<Change> undoChanges = new ArrayDeque<>();
+    private final ArrayDeque<Change> redoChanges = new ArrayDeque<>();
+    private long budgetBytes;
+    private long usedBytes;
+
+    /**
+     * Constructs an empty UndoHistory.
+     *
+     * @param budgetBytes The most memory, in bytes, the history may take.
+     */
+    public UndoHistory(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Changes the most memory the history may take, forgetting the oldest
+     * changes if it now takes more.
+     *
+     * @param budgetBytes The budget in bytes, or 0 to keep no history.
+     */
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    /**
+     * Records the change made by one command, which can no longer be redone
+     * past. The mutations of one command are all of one type.
+     *
+     * @param mutations The mutations the command made, in order.
+     */
+    public synchronized void record(List<Mutation> mutations) {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        for (Change change : redoChanges) {
+            usedBytes -= change.bytes;
+        }
+        redoChanges.clear();
+        Change change = Change.of(mutations);
+        undoChanges.addLast(change);
+        usedBytes += change.bytes;
+        trim();
+    }
+
+    /**
+     * Undoes the most recent change that has not been undone.
+     *
+     * @param tasks The task list the change was made to.
+     * @return The mutations made in undoing it, in order.
+     * @throws EncikException If there is no change to undo.
+     */
+    public synchronized List<Mutation> undo(TaskList tasks) throws EncikException {
+        Change change = undoChanges.pollLast();
+        if (change == null) {
+            throw new EncikException("OOPS!!! There is nothing to undo.");
+        }
+        redoChanges.addLast(change);
+        return change.apply(tasks, change.type.inverse());
+    }
+
+    /**
+     * Redoes the most recently undone change.
+     *
+     * @param tasks The task list the change was made to.
+     * @return The mutations made in redoing it, in order.
+     * @throws EncikException If there is no change to redo.
+     */
+    public synchronized List<Mutation> redo(TaskList tasks) throws EncikException {
+        Change change = redoChanges.pollLast();
+        if (change == null) {
+            throw new EncikException("OOPS!!! There is nothing to redo.");
+        }
+        undoChanges.addLast(change);
+        return change.apply(tasks, change.type);
+    }
+
+    /**
+     * Forgets the oldest changes, and then the changes furthest from being
+     * redone, until the history fits in its budget.
+     */
+    private void trim() {
+        while (usedBytes > budgetBytes && !undoChanges.isEmpty()) {
+            usedBytes -= undoChanges.pollFirst().bytes;
+        }
+        while (usedBytes > budgetBytes && !redoChanges.isEmpty()) {
+            usedBytes -= redoChanges.pollFirst().bytes;
+        }
+    }
+
+    /**
+     * The deltas of one command: a type of change and the positions it was
+     * made at, in ascending order, with the tasks added or deleted there.
+     */
+    private static class Change {
+        final Mutation.Type type;
+        final int[] indexes;
+        final Task[] tasks;
+        final long bytes;
+
+        Change(Mutation.Type type, int[] indexes, Task[] tasks) {
+            this.type = type;
+            this.indexes = indexes;
+            this.tasks = tasks;
+            long size = CHANGE_OVERHEAD_BYTES + 4L * indexes.length;
+            if (tasks != null) {
+                for (Task task : tasks) {
+                    size += 4 + TASK_OVERHEAD_BYTES + task.getDescription().length();
+                }
+            }
+            this.bytes = size;
+        }
+
+        /**
+         * Builds the deltas of a command from the mutations it made. Tasks
+         * are kept only for additions and deletions.
+         *
+         * @param mutations The mutations, in ascending or descending order
+         *                  of index.
+         * @return The change.
+         */
+        static Change of(List<Mutation> mutations) {
+            Mutation.Type type = mutations.get(0).getType();
+            boolean isDescending = mutations.get(0).getIndex() > mutations.get(mutations.size() - 1).getIndex();
+            boolean hasTasks = type == Mutation.Type.ADD || type == Mutation.Type.DELETE;
+            int[] indexes = new int[mutations.size()];
+            Task[] tasks = hasTasks ? new Task[mutations.size()] : null;
+            for (int i = 0; i < indexes.length; i++) {
+                Mutation mutation = mutations.get(isDescending ? indexes.length - 1 - i : i);
+                indexes[i] = mutation.getIndex();
+                if (hasTasks) {
+                    tasks[i] = mutation.getTask();
+                }
+            }
+            return new Change(type, indexes, tasks);
+        }
+
+        /**
+         * Makes a change of the given type at every position of this one.
+         * Deletions are returned last first, so that each index is still
+         * valid when the journal is replayed.
+         *
+         * @param taskList The task list.
+         * @param as       The type of change to make.
+         * @return The mutations made.
+         */
+        List<Mutation> apply(TaskList taskList, Mutation.Type as) {
+            ArrayList<Mutation> mutations = new ArrayList<>(indexes.length);
+            switch (as) {
+                case ADD:
+                    List<Task> restoredTasks = taskList.restoreAll(indexes, List.of(tasks));
+                    for (int i = 0; i < indexes.length; i++) {
+                        mutations.add(new Mutation(as, indexes[i], restoredTasks.get(i)));
+                    }
+                    break;
+                case DELETE:
+                    if (indexes.length == 1) {
+                        mutations.add(new Mutation(as, indexes[0], taskList.remove(indexes[0])));
+                        break;
+                    }
+                    BitSet positions = new BitSet();
+                    for (int index : indexes) {
+                        positions.set(index);
+                    }
+                    List<Task> removedTasks = taskList.removeAll(positions);
+                    for (int i = indexes.length - 1; i >= 0; i--) {
+                        mutations.add(new Mutation(as, indexes[i], removedTasks.get(i)));
+                    }
+                    break;
+                default:
+                    for (int index : indexes) {
+                        Task task = as == Mutation.Type.MARK ? taskList.markAsDone(index)
+                                : taskList.markAsNotDone(index);
+                        mutations.add(new Mutation(as, index, task));
+                    }
+                    break;
+            }
+            return mutations;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checks that server mode keeps each user's tasks across connections, and
+ * that saving one user's tasks does not hold up other users.
+ *
+ * The storage of the user "slow" takes a second to close. While it is being
+ * saved after its last connection ends, another user must still be able to
+ * connect at once, and a new connection of "slow" must see the task it
+ * added.
+ *
+ * Usage: {@code java EncikServerTest}
+ * Exits with status 1 if a check fails.
+ */
+public class EncikServerTest {
+    private static final long SLOW_CLOSE_MILLIS = 1000;
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Not used.
+     * @throws Exception If the server cannot be started or a connection
+     *                   fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("encik-server");
+        int port = freePort();
+        EncikServer server = new EncikServer(port, userName -> {
+            String filePath = directory.resolve(userName).resolve("encik.txt").toString();
+            if (!userName.equals("slow")) {
+                return new Storage(filePath);
+            }
+            return new Storage(filePath) {
+                @Override
+                public void close() {
+                    sleep(SLOW_CLOSE_MILLIS);
+                    super.close();
+                }
+            };
+        });
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                System.out.println("Unable to start the server: " + e.getMessage());
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        boolean isPassed = true;
+        try (Session slow = Session.open(port, "slow")) {
+            slow.send("todo water the plants");
+            slow.send("bye");
+        }
+        long startMillis = System.currentTimeMillis();
+        try (Session fast = Session.open(port, "fast")) {
+            fast.send("list");
+            long millis = System.currentTimeMillis() - startMillis;
+            if (millis >= SLOW_CLOSE_MILLIS / 2) {
+                System.out.println("Connecting took " + millis + " ms while another user was being saved.");
+                isPassed = false;
+            }
+        }
+        try (Session slow = Session.open(port, "slow")) {
+            String listing = slow.send("list");
+            if (!listing.contains("water the plants")) {
+                System.out.println("Reconnecting did not see the saved task:\n" + listing);
+                isPassed = false;
+            }
+            slow.send("bye");
+        }
+
+        server.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Returns a local port that is not in use.
+     *
+     * @return The port.
+     * @throws IOException If no port can be found.
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Sleeps, ignoring interruptions.
+     *
+     * @param millis How long to sleep.
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One client connection.
+     */
+    private static class Session implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintStream out;
+
+        private Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Connects as a user, retrying until the server is listening, and
+         * reads the welcome message.
+         *
+         * @param port     The server port.
+         * @param userName The user name.
+         * @return The session.
+         * @throws IOException If the server cannot be reached in time.
+         */
+        static Session open(int port, String userName) throws IOException {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            while (true) {
+                try {
+                    Session session = new Session(new Socket(InetAddress.getLoopbackAddress(), port));
+                    session.out.println(userName);
+                    session.readResponse();
+                    return session;
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    sleep(20);
+                }
+            }
+        }
+
+        /**
+         * Sends a command and reads its response.
+         *
+         * @param command The command.
+         * @return The response, without the empty line that ends it.
+         * @throws IOException If the connection fails.
+         */
+        String send(String command) throws IOException {
+            out.println(command);
+            return readResponse();
+        }
+
+        /**
+         * Reads lines up to the empty line that ends a response.
+         *
+         * @return The response.
+         * @throws IOException If the connection fails.
+         */
+        private String readResponse() throws IOException {
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                response.append(line).append(System.lineSeparator());
+            }
+            return response.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a find with a limit says it showed only the first matches
+ * exactly when more tasks matched than it showed.
+ *
+ * Three of four tasks match "read". Each kind of search is run with a limit
+ * of two, which must show two tasks and say more matched, then with a limit
+ * of three and of four, which must show all three and say nothing more.
+ *
+ * Usage: {@code java FindLimitTest}
+ * Exits with status 1 if a check fails.
+ */
+public class FindLimitTest {
+    private static final String LIMITED_MESSAGE = "Showing the first";
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Not used.
+     * @throws Exception If the data directory cannot be created or a command
+     *                   fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("encik-find-limit");
+        TaskList tasks = new TaskList();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Ui ui = new Ui(InputStream.nullInputStream(), new PrintStream(output, true, StandardCharsets.UTF_8));
+        PersistenceExecutor persistence = new PersistenceExecutor(
+                new Storage(directory.resolve("encik.txt").toString()), tasks, ui);
+        for (String command : List.of("todo read book", "todo write essay", "todo read paper", "todo read news")) {
+            Parser.handleCommand(command, tasks, ui, persistence);
+        }
+
+        boolean isPassed = true;
+        for (String search : List.of("read", "/word read", "/prefix rea")) {
+            isPassed &= checkFind("find " + search + " limit 2", 2, true, tasks, ui, persistence, output);
+            isPassed &= checkFind("find " + search + " limit 3", 3, false, tasks, ui, persistence, output);
+            isPassed &= checkFind("find " + search + " limit 4", 3, false, tasks, ui, persistence, output);
+        }
+        persistence.close();
+        deleteDirectory(directory);
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Runs a find and checks what it showed.
+     *
+     * @param command     The find command.
+     * @param shownCount  The number of tasks it should show.
+     * @param isLimited   Whether it should say more tasks matched.
+     * @param tasks       The task list.
+     * @param ui          The UI handler writing to the output.
+     * @param persistence The persistence executor.
+     * @param output      The output of the UI handler.
+     * @return True if the find showed what it should.
+     * @throws EncikException If the command fails.
+     */
+    private static boolean checkFind(String command, int shownCount, boolean isLimited, TaskList tasks, Ui ui,
+            PersistenceExecutor persistence, ByteArrayOutputStream output) throws EncikException {
+        output.reset();
+        Parser.handleCommand(command, tasks, ui, persistence);
+        String shown = output.toString(StandardCharsets.UTF_8);
+        boolean isMatching = shown.contains(shownCount + ".[T]") && !shown.contains((shownCount + 1) + ".[T]")
+                && shown.contains(LIMITED_MESSAGE) == isLimited;
+        if (!isMatching) {
+            System.out.println(command + ": expected " + shownCount + " tasks"
+                    + (isLimited ? " and a limit message" : " and no limit message") + " but showed:\n" + shown);
+        }
+        return isMatching;
+    }
+
+    /**
+     * Deletes a data directory and everything in it.
+     *
+     * @param directory The directory.
+     * @throws IOException If it cannot be listed.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
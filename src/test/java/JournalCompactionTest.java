@@ -0,0 +1,205 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that compacting the journal while commands keep running neither
+ * loses nor repeats a change.
+ *
+ * Several threads run random commands against a task list persisted in
+ * journal mode with a compaction threshold so low that the journal is
+ * compacted every few batches. Once every change has been written, the data
+ * file is loaded again and must hold exactly the tasks in memory.
+ *
+ * Then compactions are made to fail by putting a directory where the new
+ * snapshot is written. The failure must be reported, and once the snapshot
+ * can be written again the next compaction must fold the old journal back
+ * in, so that the journal shrinks and no change is lost.
+ *
+ * Usage: {@code java JournalCompactionTest [rounds]}
+ * Exits with status 1 if a check fails.
+ */
+public class JournalCompactionTest {
+    private static final int THREADS = 4;
+    private static final int COMMANDS_PER_THREAD = 400;
+    private static final long COMPACTION_THRESHOLD = 256;
+
+    /**
+     * Runs the given number of rounds, each with its own data directory.
+     *
+     * @param args See the class description.
+     * @throws Exception If a data directory cannot be created or a thread is
+     *                   interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        boolean isPassed = true;
+        for (int seed = 1; seed <= rounds; seed++) {
+            isPassed &= checkRound(seed);
+        }
+        isPassed &= checkFailedCompaction();
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Runs one round.
+     *
+     * @param seed The seed of the random commands.
+     * @return True if the reloaded tasks match the tasks in memory.
+     * @throws Exception If the data directory cannot be created or a thread
+     *                   is interrupted.
+     */
+    private static boolean checkRound(long seed) throws Exception {
+        Path directory = Files.createTempDirectory("encik-compaction");
+        String filePath = directory.resolve("encik.txt").toString();
+        Storage storage = new Storage(filePath, Storage.Mode.JOURNAL, COMPACTION_THRESHOLD,
+                Storage.Durability.NEVER, 0);
+        TaskList tasks = new TaskList(storage.load());
+        tasks.reserveIds(storage.getNextId());
+        PersistenceExecutor persistence = new PersistenceExecutor(storage, tasks, Ui.silent());
+        Ui ui = Ui.silent();
+
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(seed * THREADS + t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                    String command = randomCommand(random, i);
+                    try {
+                        synchronized (tasks) {
+                            Parser.handleCommand(command, tasks, ui, persistence);
+                        }
+                    } catch (EncikException e) {
+                        // Commands on indexes that no longer exist are expected to fail.
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        persistence.close();
+
+        List<String> expected = describe(tasks.getTasks());
+        List<String> actual = describe(new Storage(filePath, Storage.Mode.JOURNAL, COMPACTION_THRESHOLD).load());
+        deleteDirectory(directory);
+        if (!actual.equals(expected)) {
+            System.out.println("Round " + seed + ": reloaded " + actual.size() + " tasks, expected "
+                    + expected.size());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds tasks while the snapshot cannot be written, then again once it
+     * can.
+     *
+     * @return True if the failure was reported, the old journal was folded
+     *         in and the reloaded tasks match the tasks in memory.
+     * @throws Exception If the data directory cannot be created or a
+     *                   command fails.
+     */
+    private static boolean checkFailedCompaction() throws Exception {
+        Path directory = Files.createTempDirectory("encik-compaction");
+        String filePath = directory.resolve("encik.txt").toString();
+        Path blocker = Files.createDirectories(directory.resolve("encik.txt.tmp").resolve("blocker"));
+        Storage storage = new Storage(filePath, Storage.Mode.JOURNAL, COMPACTION_THRESHOLD,
+                Storage.Durability.NEVER, 0);
+        TaskList tasks = new TaskList(storage.load());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Ui ui = new Ui(InputStream.nullInputStream(), new PrintStream(output, true, StandardCharsets.UTF_8));
+        PersistenceExecutor persistence = new PersistenceExecutor(storage, tasks, ui);
+        for (int i = 0; i < 40; i++) {
+            Parser.handleCommand("todo blocked task " + i, tasks, ui, persistence);
+            persistence.flush();
+        }
+        boolean isReported = output.toString(StandardCharsets.UTF_8).contains("Unable to compact the task journal");
+        boolean isLeftOver = Files.exists(directory.resolve("encik.txt.journal.old"));
+
+        Files.delete(blocker);
+        Files.delete(blocker.getParent());
+        for (int i = 0; i < 40; i++) {
+            Parser.handleCommand("todo unblocked task " + i, tasks, ui, persistence);
+            persistence.flush();
+        }
+        persistence.close();
+        boolean isFolded = !Files.exists(directory.resolve("encik.txt.journal.old"))
+                && directory.resolve("encik.txt.journal").toFile().length() < 4 * COMPACTION_THRESHOLD;
+
+        List<String> expected = describe(tasks.getTasks());
+        List<String> actual = describe(new Storage(filePath, Storage.Mode.JOURNAL, COMPACTION_THRESHOLD).load());
+        deleteDirectory(directory);
+        if (!isReported || !isLeftOver || !isFolded || !actual.equals(expected)) {
+            System.out.println("Failed compaction: reported " + isReported + ", old journal left " + isLeftOver
+                    + ", folded " + isFolded + ", reloaded " + actual.size() + " tasks, expected "
+                    + expected.size());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a random command that changes the list.
+     *
+     * @param random The source of randomness.
+     * @param number The number of the command within its thread.
+     * @return The command.
+     */
+    private static String randomCommand(Random random, int number) {
+        int index = 1 + random.nextInt(20);
+        switch (random.nextInt(8)) {
+            case 0:
+            case 1:
+            case 2:
+                return "todo task " + number;
+            case 3:
+                return "mark " + index;
+            case 4:
+                return "unmark " + index;
+            case 5:
+                return "delete " + index;
+            case 6:
+                return "mark " + index + "," + (index + 2);
+            default:
+                return random.nextBoolean() ? "undo" : "redo";
+        }
+    }
+
+    /**
+     * Describes each task by its id and its text, which includes its status.
+     *
+     * @param tasks The tasks.
+     * @return One description per task, in order.
+     */
+    private static List<String> describe(List<Task> tasks) {
+        ArrayList<String> descriptions = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            descriptions.add(task.getId() + " " + task);
+        }
+        return descriptions;
+    }
+
+    /**
+     * Deletes a data directory and everything in it.
+     *
+     * @param directory The directory.
+     * @throws IOException If it cannot be listed.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
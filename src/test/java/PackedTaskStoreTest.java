@@ -0,0 +1,186 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Checks that searches over a packed task list show each task as it is
+ * now, however it was added and changed.
+ *
+ * First the commands "find /word x", "todo read book", "mark 1" and
+ * "find /word read" are run on an empty packed list, and the last find must
+ * show the task as done. Then random adds, marks, unmarks, deletes and
+ * undone deletes are applied, and after each one, substring, whole-word,
+ * prefix and date searches must match a scan of the list.
+ *
+ * Usage: {@code java PackedTaskStoreTest}
+ * Exits with status 1 if a check fails.
+ */
+public class PackedTaskStoreTest {
+    private static final int CHANGES = 3000;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Not used.
+     * @throws Exception If the data directory cannot be created or a command
+     *                   fails.
+     */
+    public static void main(String[] args) throws Exception {
+        boolean isPassed = checkCommands() && checkSearches();
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Runs a find, adds and marks a task, then finds it again.
+     *
+     * @return True if the last find showed the task as done.
+     * @throws EncikException If a command fails.
+     * @throws IOException    If the data directory cannot be created or
+     *                        deleted.
+     */
+    private static boolean checkCommands() throws EncikException, IOException {
+        Path directory = Files.createTempDirectory("encik-packed");
+        TaskList tasks = new TaskList(new PackedTaskStore());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Ui ui = new Ui(InputStream.nullInputStream(), new PrintStream(output, true, StandardCharsets.UTF_8));
+        PersistenceExecutor persistence = new PersistenceExecutor(
+                new Storage(directory.resolve("encik.txt").toString()), tasks, ui);
+        for (String command : List.of("find /word x", "todo read book", "mark 1")) {
+            Parser.handleCommand(command, tasks, ui, persistence);
+        }
+        output.reset();
+        Parser.handleCommand("find /word read", tasks, ui, persistence);
+        persistence.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        String found = output.toString(StandardCharsets.UTF_8);
+        if (!found.contains("[T][X] read book")) {
+            System.out.println("The find did not show the marked task as done:\n" + found);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies random changes to a packed list, comparing every kind of
+     * search with a scan of the list after each one.
+     *
+     * @return True if every search matched.
+     */
+    private static boolean checkSearches() {
+        ArrayList<Task> initial = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            initial.add(randomTask(random));
+        }
+        TaskList tasks = new TaskList(PackedTaskStore.of(initial));
+        for (int change = 0; change < CHANGES; change++) {
+            applyRandomChange(tasks, random);
+            String word = "word" + random.nextInt(20);
+            LocalDate day = FIRST_DAY.plusDays(random.nextInt(30));
+            boolean isMatching = matches("find " + word, tasks.find(word), tasks,
+                            task -> task.getDescription().contains(word))
+                    && matches("find /word " + word, tasks.findWord(word), tasks,
+                            task -> List.of(task.getDescription().split(" ")).contains(word))
+                    && matches("find /prefix wor", tasks.findPrefix("wor"), tasks,
+                            task -> task.getDescription().contains(" wor") || task.getDescription().startsWith("wor"))
+                    && matches("due " + day, tasks.findDue(day), tasks,
+                            task -> task instanceof Deadline && ((Deadline) task).getByDate().equals(day))
+                    && matches("overlapping " + day, tasks.findOverlapping(day), tasks,
+                            task -> task instanceof Event && !((Event) task).getFromDate().isAfter(day)
+                                    && !((Event) task).getToDate().isBefore(day));
+            if (!isMatching) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies one random change to a list.
+     *
+     * @param tasks  The list.
+     * @param random The source of randomness.
+     */
+    private static void applyRandomChange(TaskList tasks, Random random) {
+        int index = tasks.size() == 0 ? -1 : random.nextInt(tasks.size());
+        switch (index < 0 ? 0 : random.nextInt(5)) {
+            case 0:
+                tasks.add(randomTask(random));
+                break;
+            case 1:
+                tasks.markAsDone(index);
+                break;
+            case 2:
+                tasks.markAsNotDone(index);
+                break;
+            case 3:
+                tasks.remove(index);
+                break;
+            default:
+                Task removed = tasks.remove(index);
+                tasks.restoreAll(new int[] {index}, List.of(removed));
+                break;
+        }
+    }
+
+    /**
+     * Returns a random todo, deadline or event described by a few words.
+     *
+     * @param random The source of randomness.
+     * @return The task.
+     */
+    private static Task randomTask(Random random) {
+        String description = "word" + random.nextInt(20) + " task word" + random.nextInt(20);
+        LocalDate day = FIRST_DAY.plusDays(random.nextInt(30));
+        switch (random.nextInt(3)) {
+            case 0:
+                return new Todo(description);
+            case 1:
+                return new Deadline(description, day);
+            default:
+                return new Event(description, day, day.plusDays(random.nextInt(4)));
+        }
+    }
+
+    /**
+     * Compares the results of a search with a scan of the list.
+     *
+     * @param name    The search, for the failure message.
+     * @param found   The results of the search.
+     * @param tasks   The list.
+     * @param isMatch Whether a task should be found.
+     * @return True if the results, and the done state of each, match.
+     */
+    private static boolean matches(String name, TaskList found, TaskList tasks, Predicate<Task> isMatch) {
+        ArrayList<String> expected = new ArrayList<>();
+        for (Task task : tasks.getTasks()) {
+            if (isMatch.test(task)) {
+                expected.add(task.getId() + " " + task);
+            }
+        }
+        ArrayList<String> actual = new ArrayList<>();
+        for (Task task : found.getTasks()) {
+            actual.add(task.getId() + " " + task);
+        }
+        if (!actual.equals(expected)) {
+            System.out.println(name + ": expected " + expected + " but found " + actual);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the reminder scheduler finds the tasks already in the list
+ * from the dates the task store reads, whichever store holds them.
+ *
+ * The same tasks are held in memory, packed, in a lazily read binary file
+ * and in lazily read segments, then marked, unmarked, deleted and added to.
+ * The undone deadlines and events each store reports, in one scan and a
+ * range of ids at a time, must be exactly those the tasks themselves show.
+ * Finally a started scheduler must remind of overdue deadlines it only
+ * learns of from its own scan, leaving out those done or deleted.
+ *
+ * Usage: {@code java ReminderDatesTest}
+ * Exits with status 1 if a check fails.
+ */
+public class ReminderDatesTest {
+    private static final int TASK_COUNT = 20_000;
+    private static final int IDS_PER_RANGE = 777;
+    private static final long REMINDER_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args Not used.
+     * @throws Exception If a data directory cannot be created or written.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("encik-reminder-dates");
+        boolean isPassed = true;
+        isPassed &= checkDates("array", new TaskList(generate()));
+        isPassed &= checkDates("packed", new TaskList(PackedTaskStore.of(generate())));
+
+        String binaryPath = directory.resolve("binary").resolve("encik.txt").toString();
+        new Storage(binaryPath, Storage.Mode.BINARY, 0).save(generate());
+        isPassed &= checkDates("mapped", new TaskList(new Storage(binaryPath, Storage.Mode.BINARY, 0).loadLazily(16)));
+
+        String segmentsPath = directory.resolve("segmented").resolve("encik.txt").toString();
+        new Storage(segmentsPath, Storage.Mode.SEGMENTED, 0).save(generate());
+        isPassed &= checkDates("segmented",
+                new TaskList(new Storage(segmentsPath, Storage.Mode.SEGMENTED, 0).loadLazily(0)));
+
+        isPassed &= checkReminders();
+        deleteDirectory(directory);
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Changes a list, then compares the dates it reports with the dates of
+     * its tasks.
+     *
+     * @param name  The name of the store, for the failure message.
+     * @param tasks The list.
+     * @return True if the dates matched.
+     */
+    private static boolean checkDates(String name, TaskList tasks) {
+        tasks.reserveIds(TASK_COUNT + 1);
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            tasks.markAsDone(random.nextInt(tasks.size()));
+            tasks.markAsNotDone(random.nextInt(tasks.size()));
+        }
+        BitSet deleted = new BitSet();
+        deleted.set(100, 160);
+        deleted.set(9000, 9010);
+        tasks.removeAll(deleted);
+        tasks.remove(tasks.size() - 1);
+        tasks.add(new Deadline("added deadline", LocalDate.of(2030, 1, 1)));
+        tasks.add(new Event("added event", LocalDate.of(2030, 1, 2), LocalDate.of(2030, 1, 3)));
+
+        ArrayList<String> expected = new ArrayList<>();
+        for (Task task : tasks.getTasks()) {
+            TaskStore.acceptUndoneDate(task, (id, isEvent, day) -> expected.add(id + " " + isEvent + " " + day));
+        }
+        ArrayList<String> whole = new ArrayList<>();
+        tasks.forEachUndoneDate(0, tasks.getNextId(), (id, isEvent, day) -> whole.add(id + " " + isEvent + " " + day));
+        ArrayList<String> ranged = new ArrayList<>();
+        for (int firstId = 0; firstId < tasks.getNextId(); firstId += IDS_PER_RANGE) {
+            tasks.forEachUndoneDate(firstId, firstId + IDS_PER_RANGE,
+                    (id, isEvent, day) -> ranged.add(id + " " + isEvent + " " + day));
+        }
+        if (!whole.equals(expected) || !ranged.equals(expected)) {
+            System.out.println(name + ": expected " + expected.size() + " dates but read " + whole.size()
+                    + " in one scan and " + ranged.size() + " in ranges.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts a scheduler on a list with overdue deadlines and checks that
+     * it reminds of the undone ones still in the list.
+     *
+     * @return True if the reminder listed exactly those deadlines.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private static boolean checkReminders() throws InterruptedException {
+        LocalDate lastWeek = LocalDate.now().minusDays(7);
+        ArrayList<Task> initial = new ArrayList<>();
+        initial.add(new Deadline("overdue kept", lastWeek));
+        initial.add(new Deadline("overdue done", lastWeek));
+        initial.add(new Todo("not dated"));
+        initial.add(new Deadline("overdue deleted", lastWeek));
+        initial.add(new Deadline("overdue unmarked", lastWeek));
+        initial.get(4).markAsDone();
+        TaskList tasks = new TaskList(PackedTaskStore.of(initial));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Ui ui = new Ui(InputStream.nullInputStream(), new PrintStream(output, true, StandardCharsets.UTF_8));
+        ReminderScheduler reminders = new ReminderScheduler(tasks, ui);
+        synchronized (tasks) {
+            tasks.setReminders(reminders);
+            tasks.markAsDone(1);
+            tasks.remove(3);
+            tasks.markAsNotDone(3);
+        }
+        reminders.start();
+        long deadline = System.currentTimeMillis() + REMINDER_TIMEOUT_MILLIS;
+        while (!output.toString(StandardCharsets.UTF_8).contains("overdue")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        reminders.close();
+        String shown = output.toString(StandardCharsets.UTF_8);
+        boolean isPassed = shown.contains("overdue kept") && shown.contains("overdue unmarked")
+                && !shown.contains("overdue done") && !shown.contains("overdue deleted");
+        if (!isPassed) {
+            System.out.println("The reminder did not list exactly the undone overdue deadlines:\n" + shown);
+        }
+        return isPassed;
+    }
+
+    /**
+     * Generates a list of todos, deadlines and events from last year to
+     * next year, some of them done, with ids in list order.
+     *
+     * @return The tasks.
+     */
+    private static ArrayList<Task> generate() {
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        ArrayList<Task> tasks = new ArrayList<>(TASK_COUNT);
+        for (int i = 1; i <= TASK_COUNT; i++) {
+            LocalDate date = today.plusDays(random.nextInt(731) - 365);
+            Task task;
+            switch (random.nextInt(3)) {
+                case 0:
+                    task = new Todo("todo " + i);
+                    break;
+                case 1:
+                    task = new Deadline("deadline " + i, date);
+                    break;
+                default:
+                    task = new Event("event " + i, date, date.plusDays(random.nextInt(5)));
+                    break;
+            }
+            if (random.nextInt(4) == 0) {
+                task.markAsDone();
+            }
+            task.setId(i);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Deletes a data directory and everything in it.
+     *
+     * @param directory The directory.
+     * @throws IOException If it cannot be listed.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
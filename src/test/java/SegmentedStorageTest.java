@@ -0,0 +1,99 @@
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that committing a change to a lazily opened segmented store reads
+ * and rewrites only the segment holding the changed task.
+ *
+ * A list spanning several segments is saved, then opened lazily, and every
+ * segment file except the one holding the task to change is deleted. Marking
+ * that task and committing must succeed, which it cannot if any other
+ * segment is read, and the change must be seen when the store is opened
+ * again.
+ *
+ * Usage: {@code java SegmentedStorageTest}
+ * Exits with status 1 if a check fails.
+ */
+public class SegmentedStorageTest {
+    private static final int TASK_COUNT = 40_000;
+    private static final int CHANGED_ID = 20_000;
+
+    /**
+     * Runs the check.
+     *
+     * @param args Not used.
+     * @throws Exception If the data directory cannot be created or written.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("encik-segments");
+        String filePath = directory.resolve("encik.txt").toString();
+        ArrayList<Task> tasks = new ArrayList<>(TASK_COUNT);
+        for (int id = 1; id <= TASK_COUNT; id++) {
+            Task task = new Todo("task " + id);
+            task.setId(id);
+            tasks.add(task);
+        }
+        new Storage(filePath, Storage.Mode.SEGMENTED, 0).save(tasks);
+
+        Storage storage = new Storage(filePath, Storage.Mode.SEGMENTED, 0);
+        TaskList list = new TaskList(storage.loadLazily(0));
+        list.reserveIds(storage.getNextId());
+        int index = CHANGED_ID - 1;
+        Task changed = list.get(index);
+        String keptFile = segmentFileHolding(directory, changed);
+        File[] files = directory.resolve("encik.segments").toFile().listFiles();
+        for (File file : files) {
+            if (file.getName().startsWith("segment-") && !file.getName().equals(keptFile)) {
+                file.delete();
+            }
+        }
+
+        boolean isPassed = true;
+        try {
+            list.markAsDone(index);
+            storage.commit(List.of(new Mutation(Mutation.Type.MARK, index, changed)), list);
+            storage.close();
+            Task reloaded = new Storage(filePath, Storage.Mode.SEGMENTED, 0).loadLazily(0).get(index);
+            if (reloaded.getId() != CHANGED_ID || !reloaded.isDone()) {
+                System.out.println("The change was not saved: " + reloaded);
+                isPassed = false;
+            }
+        } catch (UncheckedIOException e) {
+            System.out.println("Committing read a segment that was not changed: " + e.getCause());
+            isPassed = false;
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Returns the name of the segment file that holds a task.
+     *
+     * @param directory The data directory.
+     * @param task      The task.
+     * @return The file name.
+     * @throws Exception If the segment files cannot be read.
+     */
+    private static String segmentFileHolding(Path directory, Task task) throws Exception {
+        String line = task.getId() + " | ";
+        try (Stream<Path> files = Files.list(directory.resolve("encik.segments"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith("segment-")
+                        && Files.readAllLines(file).stream().anyMatch(text -> text.startsWith(line))) {
+                    return file.getFileName().toString();
+                }
+            }
+        }
+        throw new IllegalStateException("No segment file holds task " + task.getId());
+    }
+}
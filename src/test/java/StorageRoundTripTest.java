@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that every storage mode saves the task list exactly, however it is
+ * held in memory.
+ *
+ * For each storage mode and way of loading, random commands are run in two
+ * sessions, as if Encik were started twice. After each session the data
+ * files are loaded again and must hold the same tasks, with the same ids
+ * and status, and the same next id, as the list in memory. The commands add
+ * every kind of task, mark, unmark and delete tasks one at a time and
+ * several at once, and undo and redo.
+ *
+ * Data files written in text are also loaded in binary and segmented mode,
+ * which migrates them, and the binary format is checked with and without
+ * its dictionary of shared descriptions.
+ *
+ * Usage: {@code java StorageRoundTripTest [seeds]}
+ * Exits with status 1 if a check fails.
+ */
+public class StorageRoundTripTest {
+    private static final int COMMANDS_PER_SESSION = 1500;
+    private static final long COMPACTION_THRESHOLD = 4096;
+
+    /**
+     * Runs the checks with the given number of seeds.
+     *
+     * @param args See the class description.
+     * @throws IOException If a data directory cannot be created or deleted.
+     */
+    public static void main(String[] args) throws IOException {
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        boolean isPassed = true;
+        for (int seed = 1; seed <= seeds; seed++) {
+            for (Storage.Mode mode : Storage.Mode.values()) {
+                for (Encik.Loading loading : Encik.Loading.values()) {
+                    isPassed &= checkSessions(seed, mode, loading);
+                }
+            }
+            isPassed &= checkMigration(seed, Storage.Mode.BINARY);
+            isPassed &= checkMigration(seed, Storage.Mode.SEGMENTED);
+            isPassed &= checkBinaryEncodings(seed);
+        }
+        System.out.println(isPassed ? "PASSED" : "FAILED");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Runs two sessions of random commands in one storage mode, checking the
+     * data files after each.
+     *
+     * @param seed    The seed of the random commands.
+     * @param mode    The storage mode.
+     * @param loading How tasks are held in memory.
+     * @return True if the data files matched the list both times.
+     * @throws IOException If the data directory cannot be created or deleted.
+     */
+    private static boolean checkSessions(long seed, Storage.Mode mode, Encik.Loading loading) throws IOException {
+        Path directory = Files.createTempDirectory("encik-round-trip");
+        String filePath = directory.resolve("encik.txt").toString();
+        Random random = new Random(seed);
+        boolean isPassed = true;
+        for (int session = 1; session <= 2 && isPassed; session++) {
+            Storage storage = newStorage(filePath, mode);
+            TaskList tasks = open(storage, loading);
+            runCommands(tasks, new PersistenceExecutor(storage, tasks, Ui.silent()), random);
+            isPassed = matches(describe(tasks.getTasks(), tasks.getNextId()), filePath, mode,
+                    mode + " " + loading + " seed " + seed + " session " + session);
+        }
+        deleteDirectory(directory);
+        return isPassed;
+    }
+
+    /**
+     * Writes tasks in text mode, then loads them in another mode, which
+     * migrates the data file, and checks that nothing changed.
+     *
+     * @param seed The seed of the random commands.
+     * @param mode The mode to migrate to.
+     * @return True if the migrated tasks matched.
+     * @throws IOException If the data directory cannot be created or deleted.
+     */
+    private static boolean checkMigration(long seed, Storage.Mode mode) throws IOException {
+        Path directory = Files.createTempDirectory("encik-migration");
+        String filePath = directory.resolve("encik.txt").toString();
+        Storage storage = newStorage(filePath, Storage.Mode.JOURNAL);
+        TaskList tasks = open(storage, Encik.Loading.EAGER);
+        runCommands(tasks, new PersistenceExecutor(storage, tasks, Ui.silent()), new Random(seed));
+        List<String> expected = describe(tasks.getTasks(), tasks.getNextId());
+        boolean isPassed = matches(expected, filePath, mode, "migration to " + mode + " seed " + seed)
+                && matches(expected, filePath, mode, "migrated " + mode + " seed " + seed);
+        deleteDirectory(directory);
+        return isPassed;
+    }
+
+    /**
+     * Encodes a list in the binary format with and without the dictionary
+     * of shared descriptions, and checks that both decode to the same list.
+     *
+     * @param seed The seed of the random commands.
+     * @return True if both encodings decoded to the list.
+     */
+    private static boolean checkBinaryEncodings(long seed) {
+        TaskList tasks = new TaskList();
+        Random random = new Random(seed);
+        for (int i = 0; i < COMMANDS_PER_SESSION; i++) {
+            Task task = new Todo(random.nextInt(4) == 0 ? "unique " + i : "recurring " + random.nextInt(8));
+            if (random.nextBoolean()) {
+                task.markAsDone();
+            }
+            tasks.add(task);
+        }
+        List<String> expected = describe(tasks.getTasks(), tasks.getNextId());
+        boolean isPassed = true;
+        for (boolean isDeduplicating : new boolean[] {true, false}) {
+            ByteBuffer encoded = BinaryTaskFile.encode(tasks.getTasks(), tasks.getNextId(), isDeduplicating);
+            List<String> actual = describe(BinaryTaskFile.read(encoded), BinaryTaskFile.nextId(encoded));
+            if (!actual.equals(expected)) {
+                System.out.println("Binary encoding with deduplication " + isDeduplicating + " seed " + seed
+                        + " decoded differently.");
+                isPassed = false;
+            }
+        }
+        return isPassed;
+    }
+
+    /**
+     * Loads the data files in a mode and compares them with the expected
+     * tasks.
+     *
+     * @param expected The expected descriptions, from describe.
+     * @param filePath The path to the data file.
+     * @param mode     The storage mode.
+     * @param name     What is being checked, for the failure message.
+     * @return True if the loaded tasks matched.
+     */
+    private static boolean matches(List<String> expected, String filePath, Storage.Mode mode, String name) {
+        Storage storage = newStorage(filePath, mode);
+        List<String> actual;
+        try {
+            ArrayList<Task> loaded = storage.load();
+            actual = describe(loaded, Math.max(storage.getNextId(), new TaskList(loaded).getNextId()));
+        } catch (EncikException e) {
+            System.out.println(name + ": " + e.getMessage());
+            return false;
+        }
+        if (actual.equals(expected)) {
+            return true;
+        }
+        for (int i = 0; i < Math.min(actual.size(), expected.size()); i++) {
+            if (!actual.get(i).equals(expected.get(i))) {
+                System.out.println(name + ": expected " + expected.get(i) + " but loaded " + actual.get(i));
+                return false;
+            }
+        }
+        System.out.println(name + ": expected " + expected.size() + " lines but loaded " + actual.size());
+        return false;
+    }
+
+    /**
+     * Creates the storage for a data file.
+     *
+     * @param filePath The path to the data file.
+     * @param mode     The storage mode.
+     * @return The storage.
+     */
+    private static Storage newStorage(String filePath, Storage.Mode mode) {
+        return new Storage(filePath, mode, COMPACTION_THRESHOLD, Storage.Durability.NEVER, 0);
+    }
+
+    /**
+     * Loads a task list the way Encik does at start-up.
+     *
+     * @param storage The storage.
+     * @param loading How tasks are held in memory.
+     * @return The task list.
+     */
+    private static TaskList open(Storage storage, Encik.Loading loading) {
+        TaskList tasks;
+        try {
+            if (loading == Encik.Loading.LAZY && storage.canLoadLazily()) {
+                tasks = new TaskList(storage.loadLazily(MappedTaskStore.DEFAULT_CACHE_SIZE));
+            } else if (loading == Encik.Loading.PACKED) {
+                tasks = new TaskList(PackedTaskStore.of(storage.load()));
+            } else {
+                tasks = new TaskList(storage.load());
+            }
+            tasks.reserveIds(storage.getNextId());
+        } catch (EncikException e) {
+            System.out.println("Unable to load: " + e.getMessage());
+            tasks = new TaskList();
+        }
+        return tasks;
+    }
+
+    /**
+     * Runs random commands one at a time, as Encik does, then writes every
+     * change and closes the storage.
+     *
+     * @param tasks       The task list.
+     * @param persistence The persistence of the task list.
+     * @param random      The source of randomness.
+     */
+    private static void runCommands(TaskList tasks, PersistenceExecutor persistence, Random random) {
+        Ui ui = Ui.silent();
+        for (int i = 0; i < COMMANDS_PER_SESSION; i++) {
+            try {
+                synchronized (tasks) {
+                    Parser.handleCommand(randomCommand(random, tasks.size()), tasks, ui, persistence);
+                }
+            } catch (EncikException e) {
+                // Undoing with nothing to undo and the like are expected to fail.
+            }
+        }
+        persistence.close();
+    }
+
+    /**
+     * Returns a random command that changes the list.
+     *
+     * @param random The source of randomness.
+     * @param size   The number of tasks in the list.
+     * @return The command.
+     */
+    private static String randomCommand(Random random, int size) {
+        int index = 1 + random.nextInt(Math.max(1, size));
+        int day = 1 + random.nextInt(28);
+        switch (random.nextInt(12)) {
+            case 0:
+            case 1:
+            case 2:
+                return "todo water the plants " + random.nextInt(50) + (random.nextBoolean() ? " #home" : "");
+            case 3:
+                return "deadline file report " + random.nextInt(50) + " /by 2026-03-" + String.format("%02d", day);
+            case 4:
+                return "event offsite " + random.nextInt(50) + " /from 2026-04-" + String.format("%02d", day)
+                        + " /to 2026-05-01";
+            case 5:
+                return "mark " + index;
+            case 6:
+                return "unmark " + index;
+            case 7:
+                return "delete " + index;
+            case 8:
+                return "mark " + index + "-" + (index + random.nextInt(5)) + "," + (1 + random.nextInt(size + 1));
+            case 9:
+                return random.nextInt(10) == 0 ? "delete done" : "delete " + index + "," + (index + 3);
+            case 10:
+                return "undo";
+            default:
+                return "redo";
+        }
+    }
+
+    /**
+     * Describes each task by its id and its text, which includes its type,
+     * status and dates, followed by the next id to assign.
+     *
+     * @param tasks  The tasks.
+     * @param nextId The id the next new task will be given.
+     * @return One description per task, in order, then the next id.
+     */
+    private static List<String> describe(List<Task> tasks, int nextId) {
+        ArrayList<String> descriptions = new ArrayList<>(tasks.size() + 1);
+        for (Task task : tasks) {
+            descriptions.add(task.getId() + " " + task);
+        }
+        descriptions.add("next id " + nextId);
+        return descriptions;
+    }
+
+    /**
+     * Deletes a data directory and everything in it.
+     *
+     * @param directory The directory.
+     * @throws IOException If it cannot be listed.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+#!/usr/bin/env bash
+
+# usage: ./runtests.sh [TestName ...]
+# runs every test in src/test/java, or only the ones named
+
+# create bin directories if they don't exist
+if [ ! -d "../bin" ]
+then
+    mkdir ../bin
+fi
+if [ ! -d "../test-bin" ]
+then
+    mkdir ../test-bin
+fi
+
+# compile the code and the tests, terminates if error occurred
+if ! javac -Xlint:none -d ../bin ../src/main/java/*.java
+then
+    echo "********** BUILD FAILURE **********"
+    exit 1
+fi
+if ! javac -Xlint:none -cp ../bin -d ../test-bin ../src/test/java/*.java
+then
+    echo "********** TEST BUILD FAILURE **********"
+    exit 1
+fi
+
+# run each test, which prints PASSED or FAILED and exits with status 1 on failure
+TESTS=("$@")
+if [ ${#TESTS[@]} -eq 0 ]
+then
+    for FILE in ../src/test/java/*Test.java
+    do
+        TESTS+=("$(basename "$FILE" .java)")
+    done
+fi
+FAILED=0
+for TEST in "${TESTS[@]}"
+do
+    echo "$TEST:"
+    if ! java -classpath ../bin:../test-bin "$TEST"
+    then
+        FAILED=1
+    fi
+done
+
+if [ $FAILED -eq 0 ]
+then
+    echo "Test result: PASSED"
+    exit 0
+else
+    echo "Test result: FAILED"
+    exit 1
+fi
@@ -6,11 +6,12 @@ then
     mkdir ../bin
 fi
 
-# delete output from previous run
+# delete output and data from previous run
 if [ -e "./ACTUAL.TXT" ]
 then
     rm ACTUAL.TXT
 fi
+rm -rf ./data
 
 # compile the code into the bin folder, terminates if error occurred
 if ! javac -cp ../src/main/java -Xlint:none -d ../bin ../src/main/java/*.java
@@ -20,7 +21,8 @@ then
 fi
 
 # run the program, feed commands from input.txt file and redirect the output to the ACTUAL.TXT
-java -classpath ../bin Duke < input.txt > ACTUAL.TXT
+java -classpath ../bin Encik < input.txt > ACTUAL.TXT
+rm -rf ./data
 
 # convert to UNIX format
 cp EXPECTED.TXT EXPECTED-UNIX.TXT